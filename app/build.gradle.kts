@@ -36,6 +36,7 @@ android {
 
 dependencies {
 
+    implementation(project(":processing"))
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation(libs.constraintlayout)
@@ -0,0 +1,117 @@
+package com.iir4g8.tpsensor.store;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.hardware.Sensor;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.iir4g8.tpsensor.replay.ReplayClock;
+import com.iir4g8.tpsensor.replay.ReplaySource;
+import com.iir4g8.tpsensor.replay.SampleStream;
+import com.iir4g8.tpsensor.sensor.SensorSample;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Subscribes a {@link SessionWriter} to a replayed stream, the way the recording
+ * service subscribes it to the hub, and reads the rows back from the samples table.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SessionWriterTest {
+
+    // More than one batch, and not a multiple of it
+    private static final int SAMPLES = 3 * SessionWriter.BATCH_SIZE + 7;
+    private static final long PERIOD_NANOS = 20_000_000L;
+
+    private SessionStore store;
+    private HandlerThread thread;
+    private long sessionId = -1L;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        store = SessionStore.getInstance(context);
+        thread = new HandlerThread("SessionWriterTest");
+        thread.start();
+    }
+
+    @After
+    public void tearDown() {
+        thread.quitSafely();
+        if (sessionId != -1L) {
+            store.deleteSession(sessionId);
+        }
+    }
+
+    @Test
+    public void subscribedWriter_storesEverySampleInOrder() throws Exception {
+        final CountDownLatch exhausted = new CountDownLatch(1);
+        SampleStream stream = new SampleStream() {
+            private int index;
+
+            @Override
+            public boolean next(SensorSample out) {
+                if (index == SAMPLES) {
+                    exhausted.countDown();
+                    return false;
+                }
+                float[] values = {index, -index, 0.5f * index};
+                out.set(Sensor.TYPE_ACCELEROMETER, 1_000_000_000L + index * PERIOD_NANOS, 3, values, 3);
+                index++;
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        ReplaySource source = new ReplaySource(new Handler(thread.getLooper()), stream,
+                ReplayClock.AS_FAST_AS_POSSIBLE);
+
+        SessionWriter writer = store.openSession("SessionWriterTest");
+        assertTrue(source.subscribe(Sensor.TYPE_ACCELEROMETER, 0, writer));
+        assertTrue(exhausted.await(10, TimeUnit.SECONDS));
+        source.release();
+        writer.close();
+        assertTrue(writer.awaitClosed(10_000));
+
+        sessionId = writer.getSessionId();
+        assertNotEquals(-1L, sessionId);
+        assertEquals(0L, writer.getDroppedCount());
+        assertEquals(SAMPLES, writer.getWrittenCount());
+        assertEquals(SAMPLES, store.countSessionSamples(sessionId));
+
+        Cursor cursor = store.querySessionSamples(sessionId);
+        try {
+            long previousTimestamp = 0L;
+            for (int i = 0; cursor.moveToNext(); i++) {
+                assertEquals(Sensor.TYPE_ACCELEROMETER, cursor.getInt(0));
+                if (i > 0) {
+                    // Shifted to wall-clock time, spacing untouched
+                    assertEquals(PERIOD_NANOS, cursor.getLong(1) - previousTimestamp);
+                }
+                previousTimestamp = cursor.getLong(1);
+                assertEquals(3, cursor.getInt(2));
+                assertEquals(i, cursor.getFloat(3), 0f);
+                assertEquals(-i, cursor.getFloat(4), 0f);
+                assertEquals(0.5f * i, cursor.getFloat(5), 0f);
+                assertTrue(cursor.isNull(6));
+            }
+            assertEquals(SAMPLES, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+}
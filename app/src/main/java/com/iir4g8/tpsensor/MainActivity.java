@@ -1,5 +1,8 @@
 package com.iir4g8.tpsensor;
 
+import android.Manifest;
+import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Bundle;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
@@ -18,8 +21,16 @@ import androidx.drawerlayout.widget.DrawerLayout;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
+import androidx.core.app.ActivityCompat;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.Observer;
 
 import android.view.Menu;
+import android.view.MenuItem;
+
+import com.iir4g8.tpsensor.recording.RecordingService;
+import com.iir4g8.tpsensor.replay.ReplaySession;
+import com.iir4g8.tpsensor.sensor.SensorHub;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -31,12 +42,27 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
         Toolbar toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
-        FloatingActionButton fab = findViewById(R.id.fab);
+        // The button starts and stops a recording session, which goes on in the background
+        final FloatingActionButton fab = findViewById(R.id.fab);
         fab.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                Snackbar.make(view, "Replace with your own action", Snackbar.LENGTH_LONG)
-                        .setAction("Action", null).show();
+                if (Boolean.TRUE.equals(RecordingService.isRunning().getValue())) {
+                    RecordingService.stop(MainActivity.this);
+                    Snackbar.make(view, "Recording saved", Snackbar.LENGTH_LONG).show();
+                } else {
+                    requestNotificationPermission();
+                    RecordingService.start(MainActivity.this);
+                    Snackbar.make(view, "Recording sensors, also in the background", Snackbar.LENGTH_LONG).show();
+                }
+            }
+        });
+        RecordingService.isRunning().observe(this, new Observer<Boolean>() {
+            @Override
+            public void onChanged(Boolean running) {
+                boolean recording = Boolean.TRUE.equals(running);
+                fab.setImageResource(recording ? android.R.drawable.ic_media_pause : android.R.drawable.ic_media_play);
+                fab.setContentDescription(recording ? "Stop recording" : "Start recording");
             }
         });
         DrawerLayout drawer = findViewById(R.id.drawer_layout);
@@ -52,6 +78,22 @@ public class MainActivity extends AppCompatActivity {
         NavigationUI.setupWithNavController(navigationView, navController);
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // Samples batched in the sensor FIFOs while we were away are delivered now
+        SensorHub.getInstance(this).flush();
+    }
+
+    /** The recording notification is only shown once the user allows notifications. */
+    private void requestNotificationPermission() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS)
+                != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.POST_NOTIFICATIONS}, 0);
+        }
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
@@ -59,6 +101,28 @@ public class MainActivity extends AppCompatActivity {
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.action_replay).setChecked(ReplaySession.getSource() != null);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() != R.id.action_replay) {
+            return super.onOptionsItemSelected(item);
+        }
+        if (item.isChecked()) {
+            ReplaySession.stop();
+        } else if (!ReplaySession.start(this)) {
+            Snackbar.make(findViewById(R.id.fab), "No recording yet", Snackbar.LENGTH_LONG).show();
+            return true;
+        }
+        // Screens pick their sensor source when created
+        recreate();
+        return true;
+    }
+
     @Override
     public boolean onSupportNavigateUp() {
         NavController navController = Navigation.findNavController(this, R.id.nav_host_fragment);
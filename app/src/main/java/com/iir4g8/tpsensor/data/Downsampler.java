@@ -0,0 +1,146 @@
+package com.iir4g8.tpsensor.data;
+
+/**
+ * Point-count reduction for line charts.
+ * <p>
+ * Both strategies work on caller-provided primitive arrays and never allocate,
+ * so they can run on every chart refresh. X values must be ascending.
+ */
+public final class Downsampler {
+
+    public enum Strategy {
+        /** Largest-Triangle-Three-Buckets: keeps the visual shape of smooth signals. */
+        LTTB,
+        /** Per-bucket min and max: keeps every spike and step edge. */
+        MIN_MAX
+    }
+
+    private Downsampler() {
+    }
+
+    /**
+     * Reduces {@code count} points starting at {@code offset} to at most {@code budget} points.
+     *
+     * @return the number of points written to {@code outX}/{@code outY}
+     */
+    public static int downsample(Strategy strategy, float[] xs, float[] ys, int offset, int count,
+                                 int budget, float[] outX, float[] outY) {
+        if (strategy == Strategy.MIN_MAX) {
+            return minMax(xs, ys, offset, count, budget / 2, outX, outY);
+        }
+        return lttb(xs, ys, offset, count, budget, outX, outY);
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets (Steinarsson, 2013). The first and last points
+     * are always kept; each bucket in between contributes the point forming the
+     * largest triangle with the previously selected point and the next bucket's average.
+     */
+    public static int lttb(float[] xs, float[] ys, int offset, int count, int threshold,
+                           float[] outX, float[] outY) {
+        if (threshold >= count) {
+            return copy(xs, ys, offset, count, outX, outY);
+        }
+
+        int n = 0;
+        if (threshold < 3) {
+            // Not enough room for a bucket, keep the end points
+            outX[n] = xs[offset];
+            outY[n++] = ys[offset];
+            outX[n] = xs[offset + count - 1];
+            outY[n++] = ys[offset + count - 1];
+            return n;
+        }
+
+        double every = (double) (count - 2) / (threshold - 2);
+        int a = offset;
+        outX[n] = xs[a];
+        outY[n++] = ys[a];
+
+        for (int i = 0; i < threshold - 2; i++) {
+            // Average of the next bucket, the third corner of the triangle
+            int avgStart = offset + (int) ((i + 1) * every) + 1;
+            int avgEnd = Math.min(offset + (int) ((i + 2) * every) + 1, offset + count);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = avgStart; j < avgEnd; j++) {
+                avgX += xs[j];
+                avgY += ys[j];
+            }
+            int avgLength = avgEnd - avgStart;
+            if (avgLength > 0) {
+                avgX /= avgLength;
+                avgY /= avgLength;
+            } else {
+                avgX = xs[offset + count - 1];
+                avgY = ys[offset + count - 1];
+            }
+
+            // Pick the point of the current bucket with the largest triangle area
+            int rangeStart = offset + (int) (i * every) + 1;
+            int rangeEnd = offset + (int) ((i + 1) * every) + 1;
+            double ax = xs[a];
+            double ay = ys[a];
+            double maxArea = -1;
+            int selected = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double area = Math.abs((ax - avgX) * (ys[j] - ay) - (ax - xs[j]) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    selected = j;
+                }
+            }
+
+            outX[n] = xs[selected];
+            outY[n++] = ys[selected];
+            a = selected;
+        }
+
+        outX[n] = xs[offset + count - 1];
+        outY[n++] = ys[offset + count - 1];
+        return n;
+    }
+
+    /**
+     * Splits the input into {@code buckets} equal index ranges and emits the minimum
+     * and maximum of each, in their original order. Writes at most {@code 2 * buckets} points.
+     */
+    public static int minMax(float[] xs, float[] ys, int offset, int count, int buckets,
+                             float[] outX, float[] outY) {
+        if (buckets <= 0 || count <= 2 * buckets) {
+            return copy(xs, ys, offset, count, outX, outY);
+        }
+
+        int n = 0;
+        double every = (double) count / buckets;
+        for (int b = 0; b < buckets; b++) {
+            int start = offset + (int) (b * every);
+            int end = b == buckets - 1 ? offset + count : offset + (int) ((b + 1) * every);
+            int min = start;
+            int max = start;
+            for (int j = start + 1; j < end; j++) {
+                if (ys[j] < ys[min]) {
+                    min = j;
+                }
+                if (ys[j] > ys[max]) {
+                    max = j;
+                }
+            }
+            int first = Math.min(min, max);
+            int second = Math.max(min, max);
+            outX[n] = xs[first];
+            outY[n++] = ys[first];
+            if (second != first) {
+                outX[n] = xs[second];
+                outY[n++] = ys[second];
+            }
+        }
+        return n;
+    }
+
+    private static int copy(float[] xs, float[] ys, int offset, int count, float[] outX, float[] outY) {
+        System.arraycopy(xs, offset, outX, 0, count);
+        System.arraycopy(ys, offset, outY, 0, count);
+        return count;
+    }
+}
@@ -0,0 +1,140 @@
+package com.iir4g8.tpsensor.data;
+
+/**
+ * Fixed-resolution aggregate of a time series: one min/max/mean/count bucket per
+ * {@code resolutionNanos} of sensor time, in a ring of {@code capacity} buckets.
+ * <p>
+ * Samples are folded into the newest bucket in O(1); a sample past its end opens the
+ * next one, evicting the oldest bucket when the ring is full. The newest bucket is
+ * readable while it is still filling. Buckets with no samples are not stored, so a
+ * gap in the stream costs nothing. Index 0 is the oldest retained bucket.
+ * <p>
+ * Not thread-safe: a buffer must be written and read from a single thread.
+ */
+public final class RollupBuffer {
+
+    private final long resolutionNanos;
+    private final int capacity;
+    private final long[] starts;
+    private final float[] mins;
+    private final float[] maxs;
+    private final double[] sums;
+    private final int[] counts;
+
+    private int head; // slot of the newest bucket
+    private int size;
+    private boolean evicted;
+
+    public RollupBuffer(long resolutionNanos, int capacity) {
+        if (resolutionNanos <= 0L || capacity <= 0) {
+            throw new IllegalArgumentException("resolution and capacity must be positive");
+        }
+        this.resolutionNanos = resolutionNanos;
+        this.capacity = capacity;
+        this.starts = new long[capacity];
+        this.mins = new float[capacity];
+        this.maxs = new float[capacity];
+        this.sums = new double[capacity];
+        this.counts = new int[capacity];
+        clear();
+    }
+
+    public void add(long timestampNanos, float value) {
+        long start = Math.floorDiv(timestampNanos, resolutionNanos) * resolutionNanos;
+        if (size > 0 && start <= starts[head]) {
+            // Same bucket; a late sample from an older one is folded into the newest
+            mins[head] = Math.min(mins[head], value);
+            maxs[head] = Math.max(maxs[head], value);
+            sums[head] += value;
+            counts[head]++;
+            return;
+        }
+        head = head + 1 == capacity ? 0 : head + 1;
+        if (size < capacity) {
+            size++;
+        } else {
+            evicted = true;
+        }
+        starts[head] = start;
+        mins[head] = value;
+        maxs[head] = value;
+        sums[head] = value;
+        counts[head] = 1;
+    }
+
+    public void clear() {
+        head = capacity - 1;
+        size = 0;
+        evicted = false;
+    }
+
+    public long getResolutionNanos() {
+        return resolutionNanos;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Whether buckets have been dropped since the last {@link #clear()}. */
+    public boolean hasEvicted() {
+        return evicted;
+    }
+
+    /** Start of the bucket, in sensor time. */
+    public long getStart(int index) {
+        return starts[physical(index)];
+    }
+
+    public float getMin(int index) {
+        return mins[physical(index)];
+    }
+
+    public float getMax(int index) {
+        return maxs[physical(index)];
+    }
+
+    public float getMean(int index) {
+        int p = physical(index);
+        return (float) (sums[p] / counts[p]);
+    }
+
+    public int getCount(int index) {
+        return counts[physical(index)];
+    }
+
+    /**
+     * @return the logical index of the first bucket ending after {@code timestampNanos},
+     * or {@link #size()} if there is none
+     */
+    public int indexAtOrAfter(long timestampNanos) {
+        long start = Math.floorDiv(timestampNanos, resolutionNanos) * resolutionNanos;
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[physical(mid)] < start) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int physical(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        int p = head - size + 1 + index;
+        return p < 0 ? p + capacity : p;
+    }
+}
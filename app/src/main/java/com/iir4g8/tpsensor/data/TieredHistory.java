@@ -0,0 +1,185 @@
+package com.iir4g8.tpsensor.data;
+
+/**
+ * Long-term history of one scalar stream at several resolutions.
+ * <p>
+ * Tier 0 is a {@link TimeSeriesBuffer} of recent raw samples. Each further tier is a
+ * {@link RollupBuffer} with a coarser bucket, updated incrementally on every append,
+ * so all tiers are always current and appending costs O(number of tiers).
+ * <p>
+ * Readers ask {@link #selectTier} for a time range and a point budget and get the
+ * coarsest tier that still has at least one point per budget slot and that reaches
+ * back to the start of the range. Reading a day therefore touches about as many
+ * points as reading a minute.
+ * <p>
+ * Not thread-safe: a history must be written and read from a single thread.
+ */
+public final class TieredHistory {
+
+    public static final long SECOND_NANOS = 1_000_000_000L;
+    public static final long MINUTE_NANOS = 60 * SECOND_NANOS;
+    public static final long HOUR_NANOS = 60 * MINUTE_NANOS;
+
+    private final TimeSeriesBuffer raw;
+    private final RollupBuffer[] rollups;
+
+    /**
+     * Raw samples plus 1 s buckets for two hours, 1 min buckets for two days and
+     * 1 h buckets for a month. Twice the span of the next tier, so a full hour or day
+     * back from now is always covered.
+     */
+    public static TieredHistory withDefaultTiers(int rawCapacity) {
+        return new TieredHistory(rawCapacity,
+                new long[]{SECOND_NANOS, MINUTE_NANOS, HOUR_NANOS},
+                new int[]{2 * 3600, 2 * 24 * 60, 30 * 24});
+    }
+
+    /**
+     * @param resolutionsNanos bucket sizes of the rollup tiers, finest first
+     * @param capacities       number of buckets each rollup tier retains
+     */
+    public TieredHistory(int rawCapacity, long[] resolutionsNanos, int[] capacities) {
+        if (resolutionsNanos.length != capacities.length) {
+            throw new IllegalArgumentException("one capacity per resolution");
+        }
+        raw = new TimeSeriesBuffer(rawCapacity);
+        rollups = new RollupBuffer[resolutionsNanos.length];
+        for (int i = 0; i < rollups.length; i++) {
+            if (i > 0 && resolutionsNanos[i] <= resolutionsNanos[i - 1]) {
+                throw new IllegalArgumentException("resolutions must be ascending");
+            }
+            rollups[i] = new RollupBuffer(resolutionsNanos[i], capacities[i]);
+        }
+    }
+
+    public void append(long timestampNanos, float value) {
+        raw.append(timestampNanos, value);
+        for (RollupBuffer rollup : rollups) {
+            rollup.add(timestampNanos, value);
+        }
+    }
+
+    public void clear() {
+        raw.clear();
+        for (RollupBuffer rollup : rollups) {
+            rollup.clear();
+        }
+    }
+
+    /** The raw tier, e.g. for a live chart of the newest samples. */
+    public TimeSeriesBuffer getRaw() {
+        return raw;
+    }
+
+    public boolean isEmpty() {
+        return raw.isEmpty();
+    }
+
+    public long latestTimestamp() {
+        return raw.latestTimestamp();
+    }
+
+    /** Number of tiers, the raw tier included. */
+    public int tierCount() {
+        return rollups.length + 1;
+    }
+
+    /** Bucket size of a tier, 0 for the raw tier. */
+    public long getResolutionNanos(int tier) {
+        return tier == 0 ? 0L : rollups[tier - 1].getResolutionNanos();
+    }
+
+    /** Upper bound of what {@link #read} can return, to size the destination arrays. */
+    public int maxTierSize() {
+        int max = raw.capacity();
+        for (RollupBuffer rollup : rollups) {
+            max = Math.max(max, rollup.capacity());
+        }
+        return max;
+    }
+
+    /** Whether the tier still holds everything appended since {@code fromNanos}. */
+    public boolean covers(int tier, long fromNanos) {
+        if (tier == 0) {
+            return !raw.isEmpty()
+                    && (raw.appendedCount() == raw.size() || raw.getTimestamp(0) <= fromNanos);
+        }
+        RollupBuffer rollup = rollups[tier - 1];
+        return !rollup.isEmpty() && (!rollup.hasEvicted() || rollup.getStart(0) <= fromNanos);
+    }
+
+    /**
+     * Picks the tier to read {@code [fromNanos, toNanos]} from when at most about
+     * {@code maxPoints} points are wanted.
+     *
+     * @return the coarsest tier whose buckets are no wider than the range divided by
+     * the budget and that covers the range; failing that the finest tier that covers
+     * it, and the coarsest tier when none does
+     */
+    public int selectTier(long fromNanos, long toNanos, int maxPoints) {
+        long slot = (toNanos - fromNanos) / Math.max(1, maxPoints);
+        int finestCovering = -1;
+        for (int tier = tierCount() - 1; tier >= 0; tier--) {
+            if (!covers(tier, fromNanos)) {
+                continue;
+            }
+            if (getResolutionNanos(tier) <= slot) {
+                return tier;
+            }
+            finestCovering = tier;
+        }
+        return finestCovering >= 0 ? finestCovering : tierCount() - 1;
+    }
+
+    /**
+     * Copies the points of {@code tier} that fall in {@code [fromNanos, toNanos]},
+     * oldest first, at most {@code maxCount} of them. Raw samples have the same min,
+     * max and mean; rollup points are stamped with their bucket start. Any destination
+     * may be null when that column is not needed.
+     *
+     * @return the number of points written
+     */
+    public int read(int tier, long fromNanos, long toNanos, long[] timestampsOut, float[] minsOut,
+                    float[] maxsOut, float[] meansOut, int offset, int maxCount) {
+        int n = 0;
+        if (tier == 0) {
+            int size = raw.size();
+            for (int i = raw.indexAtOrAfter(fromNanos); i < size && n < maxCount; i++) {
+                long t = raw.getTimestamp(i);
+                if (t > toNanos) {
+                    break;
+                }
+                float value = raw.getValue(i);
+                put(timestampsOut, minsOut, maxsOut, meansOut, offset + n++, t, value, value, value);
+            }
+            return n;
+        }
+        RollupBuffer rollup = rollups[tier - 1];
+        int size = rollup.size();
+        for (int i = rollup.indexAtOrAfter(fromNanos); i < size && n < maxCount; i++) {
+            long t = rollup.getStart(i);
+            if (t > toNanos) {
+                break;
+            }
+            put(timestampsOut, minsOut, maxsOut, meansOut, offset + n++,
+                    t, rollup.getMin(i), rollup.getMax(i), rollup.getMean(i));
+        }
+        return n;
+    }
+
+    private static void put(long[] timestampsOut, float[] minsOut, float[] maxsOut, float[] meansOut,
+                            int index, long timestamp, float min, float max, float mean) {
+        if (timestampsOut != null) {
+            timestampsOut[index] = timestamp;
+        }
+        if (minsOut != null) {
+            minsOut[index] = min;
+        }
+        if (maxsOut != null) {
+            maxsOut[index] = max;
+        }
+        if (meansOut != null) {
+            meansOut[index] = mean;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.iir4g8.tpsensor.data;
+
+/**
+ * Bounded time series backed by parallel primitive arrays.
+ * <p>
+ * Appends are O(1); once the buffer is full the oldest sample is overwritten.
+ * Index 0 is always the oldest retained sample. Every sample also gets a
+ * monotonically increasing sequence number, which survives eviction and is
+ * what the charts use as their X value.
+ * <p>
+ * Not thread-safe: a buffer must be written and read from a single thread.
+ */
+public final class TimeSeriesBuffer {
+
+    /** Zero-allocation iteration callback. */
+    public interface Visitor {
+        void visit(long sequence, long timestampNanos, float value);
+    }
+
+    private final long[] timestamps;
+    private final float[] values;
+    private final int capacity;
+
+    private int head; // next write position
+    private int size;
+    private long appended;
+
+    public TimeSeriesBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.timestamps = new long[capacity];
+        this.values = new float[capacity];
+    }
+
+    public void append(long timestampNanos, float value) {
+        timestamps[head] = timestampNanos;
+        values[head] = value;
+        head = head + 1 == capacity ? 0 : head + 1;
+        if (size < capacity) {
+            size++;
+        }
+        appended++;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+        appended = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Total number of samples ever appended, including evicted ones. */
+    public long appendedCount() {
+        return appended;
+    }
+
+    public long getSequence(int index) {
+        checkIndex(index);
+        return appended - size + index;
+    }
+
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps[physical(index)];
+    }
+
+    public float getValue(int index) {
+        checkIndex(index);
+        return values[physical(index)];
+    }
+
+    public long latestTimestamp() {
+        return getTimestamp(size - 1);
+    }
+
+    public float latestValue() {
+        return getValue(size - 1);
+    }
+
+    /**
+     * @return the logical index of the first sample whose timestamp is at or after
+     * {@code timestampNanos}, or {@link #size()} if there is none
+     */
+    public int indexAtOrAfter(long timestampNanos) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[physical(mid)] < timestampNanos) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public void forEach(Visitor visitor) {
+        forEach(0, size, visitor);
+    }
+
+    /** Visits logical indexes {@code [from, to)} in order, oldest first. */
+    public void forEach(int from, int to, Visitor visitor) {
+        checkRange(from, to);
+        long sequence = appended - size + from;
+        int p = physical(from);
+        for (int i = from; i < to; i++) {
+            visitor.visit(sequence++, timestamps[p], values[p]);
+            if (++p == capacity) {
+                p = 0;
+            }
+        }
+    }
+
+    /**
+     * Copies logical indexes {@code [from, from + count)} into the destination arrays.
+     * Either destination may be null when only one of the columns is needed.
+     */
+    public void copyTo(int from, int count, long[] timestampsOut, float[] valuesOut, int offset) {
+        checkRange(from, from + count);
+        int p = physical(from);
+        int first = Math.min(count, capacity - p);
+        if (timestampsOut != null) {
+            System.arraycopy(timestamps, p, timestampsOut, offset, first);
+            System.arraycopy(timestamps, 0, timestampsOut, offset + first, count - first);
+        }
+        if (valuesOut != null) {
+            System.arraycopy(values, p, valuesOut, offset, first);
+            System.arraycopy(values, 0, valuesOut, offset + first, count - first);
+        }
+    }
+
+    private int physical(int index) {
+        int p = head - size + index;
+        return p < 0 ? p + capacity : p;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+    }
+
+    private void checkRange(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("range [" + from + ", " + to + "), size " + size);
+        }
+    }
+}
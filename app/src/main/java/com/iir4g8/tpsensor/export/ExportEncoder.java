@@ -0,0 +1,289 @@
+package com.iir4g8.tpsensor.export;
+
+import com.iir4g8.tpsensor.processing.GorillaEncoder;
+import com.iir4g8.tpsensor.sensor.SensorSample;
+import com.iir4g8.tpsensor.ui.text.FixedPoint;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Streams sample rows into a channel as CSV or binary, optionally gzip-compressed.
+ * <p>
+ * Rows are encoded into a {@link #CHUNK_SIZE} chunk. A full chunk is written to the
+ * channel, or first run through a {@link Deflater} into a second chunk-sized buffer.
+ * Memory use does not depend on the number of rows and adding a row allocates nothing,
+ * so a multi-hour 100 Hz session costs the same heap as a short one.
+ * <p>
+ * CSV values are written with {@link FixedPoint} at {@link #CSV_DECIMALS} decimals,
+ * trailing zeros removed; the binary format keeps the exact float bits.
+ * <p>
+ * The binary format is little-endian:
+ *
+ * <pre>
+ * file  := 'TPSX' version:int frame*
+ * frame := sensor:int valueCount:int block(accuracy) block(v0) .. block(v[valueCount - 1])
+ * </pre>
+ *
+ * Each block is a {@link GorillaEncoder} block with lossless timestamps; the blocks of a
+ * frame hold the same up to {@link #FRAME_ROWS} timestamps. Consecutive rows of one
+ * sensor share a frame, so export rows grouped by sensor for the best compression.
+ * Compressed output is a standard gzip file.
+ * <p>
+ * Call {@link #finish()} after the last row, then {@link #close()}. Not thread-safe.
+ */
+public final class ExportEncoder implements Closeable {
+
+    public static final int CHUNK_SIZE = 64 * 1024;
+    static final int FRAME_ROWS = 512;
+    static final int BINARY_VERSION = 1;
+    static final byte[] BINARY_MAGIC = {'T', 'P', 'S', 'X'};
+    static final String CSV_HEADER = "sensor,timestamp_ns,accuracy,v0,v1,v2,v3,v4,v5\n";
+    static final int CSV_DECIMALS = FixedPoint.MAX_DECIMALS;
+
+    private static final int MAX_VALUES = SensorSample.MAX_VALUES;
+    // Longest CSV row: three integers and six floats with their separators
+    private static final int MAX_CSV_ROW = 256;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final WritableByteChannel channel;
+    private final ExportFormat format;
+    private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    // Compression, null when writing plain output
+    private final Deflater deflater;
+    private final CRC32 crc;
+    private final ByteBuffer deflated;
+
+    // Binary: the open frame
+    private final GorillaEncoder blockEncoder = new GorillaEncoder(1);
+    private final long[] frameTimestamps;
+    private final int[] frameAccuracies;
+    private final float[] frameValues;
+    private int frameSensor;
+    private int frameValueCount;
+    private int frameRows;
+
+    // CSV: number formatting scratch
+    private final byte[] digits = new byte[20];
+    private final char[] number = new char[FixedPoint.maxLength(CSV_DECIMALS)];
+
+    private long rowCount;
+    private long inputBytes;
+    private long outputBytes;
+
+    public ExportEncoder(WritableByteChannel channel, ExportFormat format, boolean compress) {
+        this.channel = channel;
+        this.format = format;
+        if (compress) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            crc = new CRC32();
+            deflated = ByteBuffer.allocate(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            deflated.put(GZIP_HEADER);
+        } else {
+            deflater = null;
+            crc = null;
+            deflated = null;
+        }
+        if (format == ExportFormat.BINARY) {
+            frameTimestamps = new long[FRAME_ROWS];
+            frameAccuracies = new int[FRAME_ROWS];
+            frameValues = new float[FRAME_ROWS * MAX_VALUES];
+            chunk.put(BINARY_MAGIC).putInt(BINARY_VERSION);
+        } else {
+            frameTimestamps = null;
+            frameAccuracies = null;
+            frameValues = null;
+            chunk.put(CSV_HEADER.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    /** Appends one sample; values past {@link SensorSample#MAX_VALUES} are ignored. */
+    public void write(int sensorType, long timestampNanos, int accuracy, float[] values, int offset, int count)
+            throws IOException {
+        int n = Math.min(count, MAX_VALUES);
+        if (format == ExportFormat.BINARY) {
+            addToFrame(sensorType, timestampNanos, accuracy, values, offset, n);
+        } else {
+            writeCsvRow(sensorType, timestampNanos, accuracy, values, offset, n);
+        }
+        rowCount++;
+    }
+
+    /** Writes everything still buffered and, when compressing, the gzip trailer. */
+    public void finish() throws IOException {
+        if (format == ExportFormat.BINARY) {
+            flushFrame();
+        }
+        flushChunk();
+        if (deflater != null) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+            if (deflated.remaining() < 8) {
+                drainDeflated();
+            }
+            deflated.putInt((int) crc.getValue()).putInt((int) inputBytes);
+            drainDeflated();
+        }
+    }
+
+    /** Releases the compressor and closes the channel; output is incomplete unless {@link #finish()} ran. */
+    @Override
+    public void close() throws IOException {
+        if (deflater != null) {
+            deflater.end();
+        }
+        channel.close();
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /** Bytes of encoded output before compression, including what is still buffered. */
+    public long getEncodedBytes() {
+        return inputBytes + chunk.position();
+    }
+
+    /** Bytes written to the channel so far. */
+    public long getWrittenBytes() {
+        return outputBytes;
+    }
+
+    private void writeCsvRow(int sensorType, long timestampNanos, int accuracy, float[] values, int offset,
+                             int count) throws IOException {
+        if (chunk.remaining() < MAX_CSV_ROW) {
+            flushChunk();
+        }
+        putDecimal(sensorType);
+        chunk.put((byte) ',');
+        putDecimal(timestampNanos);
+        chunk.put((byte) ',');
+        putDecimal(accuracy);
+        for (int i = 0; i < MAX_VALUES; i++) {
+            chunk.put((byte) ',');
+            if (i < count) {
+                putFixed(values[offset + i]);
+            }
+        }
+        chunk.put((byte) '\n');
+    }
+
+    private void putFixed(float value) {
+        int end = FixedPoint.format(value, CSV_DECIMALS, number, 0);
+        if (!Float.isNaN(value) && !Float.isInfinite(value)) {
+            // "20.500000" as "20.5", "20.000000" as "20"
+            while (number[end - 1] == '0') {
+                end--;
+            }
+            if (number[end - 1] == '.') {
+                end--;
+            }
+        }
+        for (int c = 0; c < end; c++) {
+            chunk.put((byte) number[c]);
+        }
+    }
+
+    private void putDecimal(long value) {
+        // Digits of the non-positive twin, so Long.MIN_VALUE needs no special case
+        long n = value < 0L ? value : -value;
+        int i = digits.length;
+        do {
+            digits[--i] = (byte) ('0' - n % 10L);
+            n /= 10L;
+        } while (n != 0L);
+        if (value < 0L) {
+            chunk.put((byte) '-');
+        }
+        chunk.put(digits, i, digits.length - i);
+    }
+
+    private void addToFrame(int sensorType, long timestampNanos, int accuracy, float[] values, int offset,
+                            int count) throws IOException {
+        if (frameRows > 0 && (frameRows == FRAME_ROWS || sensorType != frameSensor || count != frameValueCount)) {
+            flushFrame();
+        }
+        if (frameRows == 0) {
+            frameSensor = sensorType;
+            frameValueCount = count;
+        }
+        frameTimestamps[frameRows] = timestampNanos;
+        frameAccuracies[frameRows] = accuracy;
+        System.arraycopy(values, offset, frameValues, frameRows * MAX_VALUES, count);
+        frameRows++;
+    }
+
+    private void flushFrame() throws IOException {
+        if (frameRows == 0) {
+            return;
+        }
+        ensureRoom(8);
+        chunk.putInt(frameSensor).putInt(frameValueCount);
+        encodeBlock(-1);
+        for (int column = 0; column < frameValueCount; column++) {
+            encodeBlock(column);
+        }
+        frameRows = 0;
+    }
+
+    /** Encodes one column of the frame, the accuracies for column -1. */
+    private void encodeBlock(int column) throws IOException {
+        ensureRoom(GorillaEncoder.HEADER_SIZE + frameRows * GorillaEncoder.MAX_POINT_BYTES);
+        blockEncoder.begin(chunk);
+        for (int row = 0; row < frameRows; row++) {
+            float value = column < 0 ? frameAccuracies[row] : frameValues[row * MAX_VALUES + column];
+            blockEncoder.add(frameTimestamps[row], value);
+        }
+        blockEncoder.finish();
+    }
+
+    private void ensureRoom(int bytes) throws IOException {
+        if (chunk.remaining() < bytes) {
+            flushChunk();
+        }
+    }
+
+    private void flushChunk() throws IOException {
+        chunk.flip();
+        inputBytes += chunk.remaining();
+        if (deflater == null) {
+            writeFully(chunk);
+        } else if (chunk.hasRemaining()) {
+            crc.update(chunk.array(), chunk.position(), chunk.remaining());
+            deflater.setInput(chunk.array(), chunk.position(), chunk.remaining());
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        }
+        chunk.clear();
+    }
+
+    private void deflate() throws IOException {
+        if (!deflated.hasRemaining()) {
+            drainDeflated();
+        }
+        int n = deflater.deflate(deflated.array(), deflated.position(), deflated.remaining());
+        deflated.position(deflated.position() + n);
+    }
+
+    private void drainDeflated() throws IOException {
+        deflated.flip();
+        writeFully(deflated);
+        deflated.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            outputBytes += channel.write(buffer);
+        }
+    }
+}
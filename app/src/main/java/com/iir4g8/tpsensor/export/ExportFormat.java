@@ -0,0 +1,28 @@
+package com.iir4g8.tpsensor.export;
+
+/** File formats a session can be exported to. */
+public enum ExportFormat {
+
+    /** One line per sample: {@code sensor,timestamp_ns,accuracy,v0,...,v5}. */
+    CSV("csv", "text/csv"),
+    /** Gorilla-compressed frames, see {@link ExportEncoder}. */
+    BINARY("tpsx", "application/octet-stream");
+
+    static final String GZIP_MIME_TYPE = "application/gzip";
+
+    private final String extension;
+    private final String mimeType;
+
+    ExportFormat(String extension, String mimeType) {
+        this.extension = extension;
+        this.mimeType = mimeType;
+    }
+
+    public String fileName(String baseName, boolean compressed) {
+        return baseName + '.' + extension + (compressed ? ".gz" : "");
+    }
+
+    public String mimeType(boolean compressed) {
+        return compressed ? GZIP_MIME_TYPE : mimeType;
+    }
+}
@@ -0,0 +1,50 @@
+package com.iir4g8.tpsensor.export;
+
+/**
+ * What to export: one recorded session, or every stored sample of the last
+ * {@code spanNanos}, measured when the export starts.
+ */
+public final class ExportSource {
+
+    private static final long NO_SESSION = -1L;
+
+    private final String label;
+    private final long sessionId;
+    private final long spanNanos;
+
+    private ExportSource(String label, long sessionId, long spanNanos) {
+        this.label = label;
+        this.sessionId = sessionId;
+        this.spanNanos = spanNanos;
+    }
+
+    public static ExportSource session(long sessionId, String label) {
+        return new ExportSource(label, sessionId, 0L);
+    }
+
+    public static ExportSource lastSpan(long spanNanos, String label) {
+        return new ExportSource(label, NO_SESSION, spanNanos);
+    }
+
+    public boolean isSession() {
+        return sessionId != NO_SESSION;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    public long getSpanNanos() {
+        return spanNanos;
+    }
+
+    String fileBaseName(long nowMillis) {
+        return isSession() ? "session-" + sessionId : "samples-" + nowMillis;
+    }
+
+    /** The label, as list adapters display it. */
+    @Override
+    public String toString() {
+        return label;
+    }
+}
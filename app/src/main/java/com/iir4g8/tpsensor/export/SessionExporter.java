@@ -0,0 +1,172 @@
+package com.iir4g8.tpsensor.export;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import androidx.annotation.WorkerThread;
+import androidx.core.content.FileProvider;
+
+import com.iir4g8.tpsensor.sensor.SensorSample;
+import com.iir4g8.tpsensor.store.SessionStore;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+
+/**
+ * Exports samples of the {@link SessionStore} to a file other apps can open.
+ * <p>
+ * Rows stream from a database cursor into an {@link ExportEncoder}, which writes
+ * through the file channel of the {@link ParcelFileDescriptor} the {@link FileProvider}
+ * opens for the output URI. Nothing holds more than a cursor window and two encoder
+ * chunks, whatever the length of the session. Rows are grouped by sensor, oldest first.
+ * <p>
+ * {@link #export} blocks for the whole export; call it from a background thread and
+ * cancel through {@link ProgressListener#isCancelled()}. Interrupting the thread also
+ * stops it, but the file channel then fails with {@link ClosedByInterruptException}.
+ */
+public final class SessionExporter {
+
+    public interface ProgressListener {
+        /** Called every few thousand rows on the exporting thread. */
+        void onExportProgress(long rows, long totalRows);
+
+        /**
+         * Polled as often as progress is reported; once true, {@link #export} stops and
+         * throws an {@link InterruptedIOException}.
+         */
+        default boolean isCancelled() {
+            return false;
+        }
+    }
+
+    /** A finished export, ready to be shared. */
+    public static final class Result {
+        public final Uri uri;
+        public final String mimeType;
+        public final long rowCount;
+        public final long byteCount;
+
+        Result(Uri uri, String mimeType, long rowCount, long byteCount) {
+            this.uri = uri;
+            this.mimeType = mimeType;
+            this.rowCount = rowCount;
+            this.byteCount = byteCount;
+        }
+    }
+
+    private static final String DIRECTORY = "exports";
+    private static final int PROGRESS_INTERVAL_ROWS = 4096;
+    // Leading columns of the sample queries: sensor or session, timestamp, accuracy
+    private static final int TIMESTAMP_COLUMN = 1;
+    private static final int ACCURACY_COLUMN = 2;
+    private static final int FIRST_VALUE_COLUMN = 3;
+
+    private final Context context;
+    private final SessionStore store;
+    private final float[] values = new float[SensorSample.MAX_VALUES];
+
+    public SessionExporter(Context context) {
+        this.context = context.getApplicationContext();
+        this.store = SessionStore.getInstance(context);
+    }
+
+    /** Authority of the export {@link FileProvider} declared in the manifest. */
+    public static String authority(Context context) {
+        return context.getPackageName() + ".exports";
+    }
+
+    @WorkerThread
+    public Result export(ExportSource source, ExportFormat format, boolean compress, ProgressListener listener)
+            throws IOException {
+        long nowMillis = System.currentTimeMillis();
+        File file = new File(prepareDirectory(), format.fileName(source.fileBaseName(nowMillis), compress));
+        Uri uri = FileProvider.getUriForFile(context, authority(context), file);
+        ParcelFileDescriptor descriptor = context.getContentResolver().openFileDescriptor(uri, "w");
+        if (descriptor == null) {
+            throw new FileNotFoundException("No descriptor for " + uri);
+        }
+        ExportEncoder encoder = new ExportEncoder(
+                new ParcelFileDescriptor.AutoCloseOutputStream(descriptor).getChannel(), format, compress);
+        boolean finished = false;
+        try {
+            if (source.isSession()) {
+                exportSession(source.getSessionId(), encoder, listener);
+            } else {
+                long toNanos = nowMillis * 1_000_000L;
+                exportRange(toNanos - source.getSpanNanos(), toNanos, encoder, listener);
+            }
+            encoder.finish();
+            finished = true;
+        } finally {
+            encoder.close();
+            if (!finished) {
+                file.delete();
+            }
+        }
+        return new Result(uri, format.mimeType(compress), encoder.getRowCount(), file.length());
+    }
+
+    private void exportSession(long sessionId, ExportEncoder encoder, ProgressListener listener)
+            throws IOException {
+        long total = store.countSessionSamples(sessionId);
+        for (int sensorType : store.querySensorTypes(sessionId)) {
+            writeRows(store.querySessionSamples(sessionId, sensorType), sensorType, encoder, total, listener);
+        }
+    }
+
+    private void exportRange(long fromNanos, long toNanos, ExportEncoder encoder, ProgressListener listener)
+            throws IOException {
+        int[] sensorTypes = store.querySensorTypes();
+        long total = 0L;
+        for (int sensorType : sensorTypes) {
+            total += store.countSamples(sensorType, fromNanos, toNanos);
+        }
+        for (int sensorType : sensorTypes) {
+            writeRows(store.querySamples(sensorType, fromNanos, toNanos), sensorType, encoder, total, listener);
+        }
+    }
+
+    private void writeRows(Cursor cursor, int sensorType, ExportEncoder encoder, long total,
+                           ProgressListener listener) throws IOException {
+        try {
+            while (cursor.moveToNext()) {
+                // Values a sensor does not report are NULL, and only ever the trailing ones
+                int count = 0;
+                while (count < values.length && !cursor.isNull(FIRST_VALUE_COLUMN + count)) {
+                    values[count] = cursor.getFloat(FIRST_VALUE_COLUMN + count);
+                    count++;
+                }
+                encoder.write(sensorType, cursor.getLong(TIMESTAMP_COLUMN), cursor.getInt(ACCURACY_COLUMN),
+                        values, 0, count);
+                if (encoder.getRowCount() % PROGRESS_INTERVAL_ROWS == 0) {
+                    if (listener.isCancelled() || Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("Export cancelled");
+                    }
+                    listener.onExportProgress(encoder.getRowCount(), total);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** Creates the export directory and deletes earlier exports, so the cache holds at most one. */
+    private File prepareDirectory() throws IOException {
+        File directory = new File(context.getCacheDir(), DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File[] previous = directory.listFiles();
+        if (previous != null) {
+            for (File file : previous) {
+                file.delete();
+            }
+        }
+        return directory;
+    }
+}
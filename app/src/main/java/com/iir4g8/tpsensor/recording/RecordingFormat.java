@@ -0,0 +1,136 @@
+package com.iir4g8.tpsensor.recording;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk layout of a recording segment. All integers are little-endian.
+ *
+ * <pre>
+ * segment := header block*
+ * header  := magic:int version:short headerSize:short valuesPerRecord:short recordSize:short
+ *            recordsPerBlock:int segmentIndex:int startWallMillis:long reserved[32] headerCrc:int
+ * block   := recordCount:int payloadCrc:int flags:int reserved:int record[recordsPerBlock]
+ * record  := sensorType:int timestampNanos:long accuracy:byte valueCount:byte reserved:short
+ *            value:float[valuesPerRecord]
+ * </pre>
+ *
+ * Every block has the same size, so block {@code n} starts at
+ * {@code HEADER_SIZE + n * blockSize()}. The block's record count is updated after
+ * each record; the CRC is only written when the block is sealed (full, rolled over
+ * or closed). An unsealed block at the end of a segment is what a crash leaves behind.
+ */
+public final class RecordingFormat {
+
+    public static final int MAGIC = 0x52535054; // "TPSR"
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    public static final int BLOCK_HEADER_SIZE = 16;
+    public static final int RECORD_FIXED_SIZE = 16;
+    public static final String FILE_EXTENSION = ".tps";
+
+    static final int FLAG_SEALED = 1;
+
+    // Header field offsets
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_VERSION = 4;
+    private static final int OFF_HEADER_SIZE = 6;
+    private static final int OFF_VALUES = 8;
+    private static final int OFF_RECORD_SIZE = 10;
+    private static final int OFF_RECORDS_PER_BLOCK = 12;
+    private static final int OFF_SEGMENT_INDEX = 16;
+    private static final int OFF_START_MILLIS = 20;
+    private static final int OFF_HEADER_CRC = HEADER_SIZE - 4;
+
+    // Block header field offsets, relative to the block start
+    static final int OFF_BLOCK_COUNT = 0;
+    static final int OFF_BLOCK_CRC = 4;
+    static final int OFF_BLOCK_FLAGS = 8;
+
+    // Record field offsets, relative to the record start
+    static final int OFF_RECORD_TYPE = 0;
+    static final int OFF_RECORD_TIMESTAMP = 4;
+    static final int OFF_RECORD_ACCURACY = 12;
+    static final int OFF_RECORD_VALUE_COUNT = 13;
+    static final int OFF_RECORD_VALUES = RECORD_FIXED_SIZE;
+
+    public final int valuesPerRecord;
+    public final int recordsPerBlock;
+    public final int recordSize;
+    public final int blockSize;
+
+    public RecordingFormat(int valuesPerRecord, int recordsPerBlock) {
+        if (valuesPerRecord <= 0 || valuesPerRecord > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("valuesPerRecord out of range: " + valuesPerRecord);
+        }
+        if (recordsPerBlock <= 0) {
+            throw new IllegalArgumentException("recordsPerBlock must be positive: " + recordsPerBlock);
+        }
+        this.valuesPerRecord = valuesPerRecord;
+        this.recordsPerBlock = recordsPerBlock;
+        this.recordSize = RECORD_FIXED_SIZE + 4 * valuesPerRecord;
+        this.blockSize = BLOCK_HEADER_SIZE + recordsPerBlock * recordSize;
+    }
+
+    public long blockOffset(int block) {
+        return HEADER_SIZE + (long) block * blockSize;
+    }
+
+    void writeHeader(ByteBuffer buffer, int segmentIndex, long startWallMillis) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < HEADER_SIZE; i++) {
+            buffer.put(i, (byte) 0);
+        }
+        buffer.putInt(OFF_MAGIC, MAGIC);
+        buffer.putShort(OFF_VERSION, VERSION);
+        buffer.putShort(OFF_HEADER_SIZE, (short) HEADER_SIZE);
+        buffer.putShort(OFF_VALUES, (short) valuesPerRecord);
+        buffer.putShort(OFF_RECORD_SIZE, (short) recordSize);
+        buffer.putInt(OFF_RECORDS_PER_BLOCK, recordsPerBlock);
+        buffer.putInt(OFF_SEGMENT_INDEX, segmentIndex);
+        buffer.putLong(OFF_START_MILLIS, startWallMillis);
+        buffer.putInt(OFF_HEADER_CRC, crc(buffer, 0, OFF_HEADER_CRC));
+    }
+
+    /** Parses and validates a segment header. */
+    static Header readHeader(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(OFF_MAGIC) != MAGIC) {
+            throw new IOException("Not a recording segment");
+        }
+        if (buffer.getShort(OFF_VERSION) != VERSION) {
+            throw new IOException("Unsupported recording version " + buffer.getShort(OFF_VERSION));
+        }
+        if (buffer.getInt(OFF_HEADER_CRC) != crc(buffer, 0, OFF_HEADER_CRC)) {
+            throw new IOException("Corrupt recording header");
+        }
+        RecordingFormat format = new RecordingFormat(
+                buffer.getShort(OFF_VALUES), buffer.getInt(OFF_RECORDS_PER_BLOCK));
+        if (format.recordSize != buffer.getShort(OFF_RECORD_SIZE)) {
+            throw new IOException("Inconsistent record size");
+        }
+        return new Header(format, buffer.getInt(OFF_SEGMENT_INDEX), buffer.getLong(OFF_START_MILLIS));
+    }
+
+    static int crc(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(offset + length).position(offset);
+        CRC32 crc = new CRC32();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    static final class Header {
+        final RecordingFormat format;
+        final int segmentIndex;
+        final long startWallMillis;
+
+        Header(RecordingFormat format, int segmentIndex, long startWallMillis) {
+            this.format = format;
+            this.segmentIndex = segmentIndex;
+            this.startWallMillis = startWallMillis;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.iir4g8.tpsensor.recording;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cursor over the records of one or more recording segments, in file order.
+ * <p>
+ * Sealed blocks are checked against their CRC before any of their records is
+ * returned; a block that fails the check is skipped and counted in
+ * {@link #getCorruptBlocks()}. The unsealed block a crash leaves at the end of a
+ * segment has no CRC and is read up to its published record count.
+ * <p>
+ * The accessors describe the record returned by the last successful {@link #next()}.
+ */
+public final class RecordingReader implements Closeable {
+
+    private final List<File> segments;
+    private int segmentIndex = -1;
+
+    private FileChannel channel;
+    private MappedByteBuffer mapping;
+    private RecordingFormat format;
+    private long blockOffset;
+    private int blockCount;
+    private int recordInBlock;
+    private int recordPosition;
+    private int corruptBlocks;
+
+    public RecordingReader(List<File> segments) {
+        this.segments = new ArrayList<>(segments);
+    }
+
+    public RecordingReader(File segment) {
+        this(Arrays.asList(segment));
+    }
+
+    /** Segments of a session in {@code directory}, in recording order. */
+    public static List<File> listSegments(File directory, String session) {
+        List<File> result = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return result;
+        }
+        String prefix = session + "-";
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(prefix) && name.endsWith(RecordingFormat.FILE_EXTENSION)) {
+                result.add(file);
+            }
+        }
+        // Zero-padded indices sort lexicographically
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Name of the session in {@code directory} that sorts last, or null without
+     * recordings. Session names are expected to sort in recording order.
+     */
+    public static String latestSession(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return null;
+        }
+        String latest = null;
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(RecordingFormat.FILE_EXTENSION)) {
+                continue;
+            }
+            // Strip "-NNNN.ext" left by RecordingWriter.segmentName
+            int dash = name.lastIndexOf('-');
+            if (dash <= 0) {
+                continue;
+            }
+            String session = name.substring(0, dash);
+            if (latest == null || session.compareTo(latest) > 0) {
+                latest = session;
+            }
+        }
+        return latest;
+    }
+
+    /** Advances to the next valid record. */
+    public boolean next() throws IOException {
+        while (true) {
+            if (mapping != null) {
+                if (recordInBlock + 1 < blockCount) {
+                    recordInBlock++;
+                    recordPosition += format.recordSize;
+                    return true;
+                }
+                if (enterNextBlock()) {
+                    return true;
+                }
+            }
+            if (!openNextSegment()) {
+                return false;
+            }
+        }
+    }
+
+    public int sensorType() {
+        return mapping.getInt(recordPosition + RecordingFormat.OFF_RECORD_TYPE);
+    }
+
+    public long timestampNanos() {
+        return mapping.getLong(recordPosition + RecordingFormat.OFF_RECORD_TIMESTAMP);
+    }
+
+    public int accuracy() {
+        return mapping.get(recordPosition + RecordingFormat.OFF_RECORD_ACCURACY);
+    }
+
+    public int valueCount() {
+        return mapping.get(recordPosition + RecordingFormat.OFF_RECORD_VALUE_COUNT);
+    }
+
+    public float value(int index) {
+        return mapping.getFloat(recordPosition + RecordingFormat.OFF_RECORD_VALUES + 4 * index);
+    }
+
+    /** Copies the current record's values into {@code out} and returns how many were written. */
+    public int copyValues(float[] out) {
+        int n = Math.min(valueCount(), out.length);
+        for (int i = 0; i < n; i++) {
+            out[i] = value(i);
+        }
+        return n;
+    }
+
+    public int getCorruptBlocks() {
+        return corruptBlocks;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+        segmentIndex = segments.size();
+    }
+
+    /**
+     * Moves past the current block to the next one holding at least one valid record.
+     * Returns false at the end of the segment.
+     */
+    private boolean enterNextBlock() {
+        long limit = mapping.limit();
+        long offset = blockCount < 0 ? RecordingFormat.HEADER_SIZE : blockOffset + format.blockSize;
+        while (offset + RecordingFormat.BLOCK_HEADER_SIZE <= limit) {
+            int start = (int) offset;
+            int count = mapping.getInt(start + RecordingFormat.OFF_BLOCK_COUNT);
+            int payload = start + RecordingFormat.BLOCK_HEADER_SIZE;
+            if (count <= 0 || count > format.recordsPerBlock
+                    || payload + (long) count * format.recordSize > limit) {
+                // Never written, or a torn header: nothing after it can be trusted
+                return false;
+            }
+            boolean sealed = (mapping.getInt(start + RecordingFormat.OFF_BLOCK_FLAGS)
+                    & RecordingFormat.FLAG_SEALED) != 0;
+            if (sealed && mapping.getInt(start + RecordingFormat.OFF_BLOCK_CRC)
+                    != RecordingFormat.crc(mapping, payload, count * format.recordSize)) {
+                corruptBlocks++;
+                offset += format.blockSize;
+                continue;
+            }
+            blockOffset = offset;
+            blockCount = count;
+            recordInBlock = 0;
+            recordPosition = payload;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean openNextSegment() throws IOException {
+        closeSegment();
+        if (segmentIndex + 1 >= segments.size()) {
+            return false;
+        }
+        segmentIndex++;
+        FileInputStream in = new FileInputStream(segments.get(segmentIndex));
+        channel = in.getChannel();
+        try {
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapping.order(ByteOrder.LITTLE_ENDIAN);
+            format = RecordingFormat.readHeader(mapping).format;
+        } catch (IOException e) {
+            closeSegment();
+            throw e;
+        }
+        // Marks "before the first block"
+        blockCount = -1;
+        return true;
+    }
+
+    private void closeSegment() throws IOException {
+        mapping = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
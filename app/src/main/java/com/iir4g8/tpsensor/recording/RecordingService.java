@@ -0,0 +1,170 @@
+package com.iir4g8.tpsensor.recording;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.hardware.Sensor;
+import android.os.IBinder;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.iir4g8.tpsensor.MainActivity;
+import com.iir4g8.tpsensor.R;
+import com.iir4g8.tpsensor.sensor.SensorBatch;
+import com.iir4g8.tpsensor.sensor.SensorBatchListener;
+import com.iir4g8.tpsensor.sensor.SensorHistories;
+import com.iir4g8.tpsensor.sensor.SensorHub;
+import com.iir4g8.tpsensor.store.SessionStore;
+import com.iir4g8.tpsensor.store.SessionWriter;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Foreground service owning the recording session, so that recording goes on with the
+ * app in the background or the screen off.
+ * <p>
+ * {@link #start} begins a session of every sensor in {@link #SENSOR_TYPES} the device
+ * has, written by a {@link SessionRecorder} under
+ * {@link SessionRecorder#defaultDirectory} for replay, and by a {@link SessionWriter}
+ * into the {@link SessionStore} for export; {@link #stop} or the notification's Stop
+ * action ends it. {@link #isRunning()} follows the service for the UI.
+ * <p>
+ * Sensors are recorded in batch mode, so the device can sleep while their FIFOs fill;
+ * the activity flushes them when it comes back to the foreground.
+ */
+public final class RecordingService extends Service {
+
+    /** Recorded when the device has them; the others are skipped. */
+    static final int[] SENSOR_TYPES = {
+            Sensor.TYPE_ACCELEROMETER,
+            Sensor.TYPE_GYROSCOPE,
+            Sensor.TYPE_MAGNETIC_FIELD,
+            Sensor.TYPE_AMBIENT_TEMPERATURE,
+            Sensor.TYPE_RELATIVE_HUMIDITY,
+    };
+    static final int SAMPLING_PERIOD_US = 20_000; // 50 Hz
+    /** Also fed into the app-wide histories behind the 1 h and 24 h chart ranges. */
+    static final int[] HISTORY_TYPES = {
+            Sensor.TYPE_AMBIENT_TEMPERATURE,
+            Sensor.TYPE_RELATIVE_HUMIDITY,
+    };
+
+    private static final String ACTION_STOP = "com.iir4g8.tpsensor.recording.STOP";
+    private static final String CHANNEL_ID = "recording";
+    private static final int NOTIFICATION_ID = 1;
+
+    private static final MutableLiveData<Boolean> running = new MutableLiveData<>(false);
+
+    private SessionRecorder recorder;
+    private SessionWriter storeWriter;
+    private final SensorBatchListener historyFeed = new SensorBatchListener() {
+        @Override
+        public void onSensorBatch(SensorBatch batch) {
+            SensorHistories.getInstance().post(batch);
+        }
+    };
+
+    /** Starts a recording session, unless one is running. Call from the foreground. */
+    public static void start(Context context) {
+        ContextCompat.startForegroundService(context, new Intent(context, RecordingService.class));
+    }
+
+    public static void stop(Context context) {
+        context.stopService(new Intent(context, RecordingService.class));
+    }
+
+    /** Whether a session is being recorded; main thread values. */
+    public static LiveData<Boolean> isRunning() {
+        return running;
+    }
+
+    /** Session names sort in recording order. */
+    static String newSessionName() {
+        return "session-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_STOP.equals(intent.getAction())) {
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        if (recorder != null) {
+            return START_NOT_STICKY;
+        }
+        String session = newSessionName();
+        ServiceCompat.startForeground(this, NOTIFICATION_ID, buildNotification(session),
+                ServiceInfo.FOREGROUND_SERVICE_TYPE_SPECIAL_USE);
+        SensorHub hub = SensorHub.getInstance(this);
+        recorder = new SessionRecorder(hub, SessionRecorder.defaultDirectory(this), RolloverPolicy.defaults());
+        recorder.start(session, SENSOR_TYPES, SAMPLING_PERIOD_US, true);
+        // Same types and rate as the recorder: shares its batched registrations
+        storeWriter = SessionStore.getInstance(this).openSession(session);
+        for (int type : SENSOR_TYPES) {
+            hub.subscribeBatched(type, SAMPLING_PERIOD_US, storeWriter);
+        }
+        for (int type : HISTORY_TYPES) {
+            hub.subscribeBatched(type, SAMPLING_PERIOD_US, historyFeed);
+        }
+        running.setValue(true);
+        // Not restarted after the process dies: a new session is the user's call
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        if (recorder != null) {
+            final SensorHub hub = SensorHub.getInstance(this);
+            hub.unsubscribeBatched(historyFeed);
+            recorder.stop();
+            recorder = null;
+            // The recorder's flush drains the shared FIFOs into the store as well: stay
+            // subscribed for as long as the recorder waits for it
+            final SessionWriter writer = storeWriter;
+            storeWriter = null;
+            hub.getHandler().postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    hub.unsubscribeBatched(writer);
+                    writer.close();
+                }
+            }, SessionRecorder.FLUSH_TIMEOUT_MS);
+        }
+        running.setValue(false);
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private Notification buildNotification(String session) {
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID, "Recording",
+                NotificationManager.IMPORTANCE_LOW));
+        PendingIntent open = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class), PendingIntent.FLAG_IMMUTABLE);
+        PendingIntent stop = PendingIntent.getService(this, 0,
+                new Intent(this, RecordingService.class).setAction(ACTION_STOP), PendingIntent.FLAG_IMMUTABLE);
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_sensors)
+                .setContentTitle("Recording sensors")
+                .setContentText(session)
+                .setContentIntent(open)
+                .addAction(0, "Stop", stop)
+                .setOngoing(true)
+                .build();
+    }
+}
@@ -0,0 +1,190 @@
+package com.iir4g8.tpsensor.recording;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Appends fixed-width sensor records to memory-mapped segment files.
+ * <p>
+ * Each segment is mapped once at its full size when it is created, so appending a
+ * record is a handful of absolute puts into the mapping: no system call, no stream
+ * buffer and no allocation. The kernel writes dirty pages back in the background.
+ * See {@link RecordingFormat} for the layout.
+ * <p>
+ * Segments are named {@code <session>-0000.tps}, {@code <session>-0001.tps}, ...
+ * Not thread-safe: a writer belongs to the thread that appends to it.
+ */
+public final class RecordingWriter implements Closeable {
+
+    private final File directory;
+    private final String session;
+    private final RecordingFormat format;
+    private final RolloverPolicy policy;
+    private final int blocksPerSegment;
+    private final ArrayDeque<File> segments = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+
+    private int segmentIndex = -1;
+    private FileChannel channel;
+    private MappedByteBuffer mapping;
+    private ByteBuffer crcView;
+    private long segmentStartNanos;
+    private int block;
+    private int recordInBlock;
+    private long recordCount;
+    private boolean closed;
+
+    public RecordingWriter(File directory, String session, RecordingFormat format, RolloverPolicy policy) {
+        this.directory = directory;
+        this.session = session;
+        this.format = format;
+        this.policy = policy;
+        this.blocksPerSegment = policy.blocksPerSegment(format);
+    }
+
+    public static String segmentName(String session, int index) {
+        return String.format(Locale.US, "%s-%04d%s", session, index, RecordingFormat.FILE_EXTENSION);
+    }
+
+    public RecordingFormat getFormat() {
+        return format;
+    }
+
+    /** Total number of records appended to this session. */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Appends one record. Values beyond {@link RecordingFormat#valuesPerRecord} are dropped.
+     */
+    public void append(int sensorType, long timestampNanos, int accuracy, float[] values, int count)
+            throws IOException {
+        append(sensorType, timestampNanos, accuracy, values, 0, count);
+    }
+
+    /** Same as {@link #append(int, long, int, float[], int)}, values starting at {@code offset}. */
+    public void append(int sensorType, long timestampNanos, int accuracy, float[] values, int offset, int count)
+            throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+        if (mapping == null || block == blocksPerSegment
+                || (policy.maxSegmentNanos > 0 && timestampNanos - segmentStartNanos >= policy.maxSegmentNanos)) {
+            rollOver(timestampNanos);
+        }
+
+        int n = Math.min(count, format.valuesPerRecord);
+        int blockStart = (int) format.blockOffset(block);
+        int position = blockStart + RecordingFormat.BLOCK_HEADER_SIZE + recordInBlock * format.recordSize;
+        MappedByteBuffer out = mapping;
+        out.putInt(position + RecordingFormat.OFF_RECORD_TYPE, sensorType);
+        out.putLong(position + RecordingFormat.OFF_RECORD_TIMESTAMP, timestampNanos);
+        out.put(position + RecordingFormat.OFF_RECORD_ACCURACY, (byte) accuracy);
+        out.put(position + RecordingFormat.OFF_RECORD_VALUE_COUNT, (byte) n);
+        int valueStart = position + RecordingFormat.OFF_RECORD_VALUES;
+        for (int i = 0; i < n; i++) {
+            out.putFloat(valueStart + 4 * i, values[offset + i]);
+        }
+
+        recordInBlock++;
+        recordCount++;
+        // Published per record so an unsealed block is still readable after a crash
+        out.putInt(blockStart + RecordingFormat.OFF_BLOCK_COUNT, recordInBlock);
+        if (recordInBlock == format.recordsPerBlock) {
+            sealBlock();
+        }
+    }
+
+    /** Asks the kernel to write the current segment back to storage. */
+    public void flush() {
+        if (mapping != null) {
+            mapping.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeSegment();
+    }
+
+    private void rollOver(long timestampNanos) throws IOException {
+        closeSegment();
+
+        segmentIndex++;
+        File file = new File(directory, segmentName(session, segmentIndex));
+        long size = format.blockOffset(blocksPerSegment);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            channel = raf.getChannel();
+            // Mapping past the end grows the file to its final size, zero-filled
+            mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            raf.close();
+            channel = null;
+            throw e;
+        }
+        mapping.order(ByteOrder.LITTLE_ENDIAN);
+        crcView = mapping.duplicate();
+        format.writeHeader(mapping, segmentIndex, System.currentTimeMillis());
+
+        segmentStartNanos = timestampNanos;
+        block = 0;
+        recordInBlock = 0;
+
+        segments.addLast(file);
+        while (policy.maxSegments > 0 && segments.size() > policy.maxSegments) {
+            segments.removeFirst().delete();
+        }
+    }
+
+    private void sealBlock() {
+        int blockStart = (int) format.blockOffset(block);
+        int payloadStart = blockStart + RecordingFormat.BLOCK_HEADER_SIZE;
+        crcView.limit(payloadStart + recordInBlock * format.recordSize).position(payloadStart);
+        crc.reset();
+        crc.update(crcView);
+        crcView.clear();
+
+        mapping.putInt(blockStart + RecordingFormat.OFF_BLOCK_COUNT, recordInBlock);
+        mapping.putInt(blockStart + RecordingFormat.OFF_BLOCK_CRC, (int) crc.getValue());
+        mapping.putInt(blockStart + RecordingFormat.OFF_BLOCK_FLAGS, RecordingFormat.FLAG_SEALED);
+        block++;
+        recordInBlock = 0;
+    }
+
+    private void closeSegment() throws IOException {
+        if (mapping == null) {
+            return;
+        }
+        long used = format.blockOffset(block);
+        if (recordInBlock > 0) {
+            // The last block is cut right after its records
+            used += RecordingFormat.BLOCK_HEADER_SIZE + (long) recordInBlock * format.recordSize;
+            sealBlock();
+        }
+        mapping.force();
+        mapping = null;
+        crcView = null;
+        try {
+            channel.truncate(used);
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+}
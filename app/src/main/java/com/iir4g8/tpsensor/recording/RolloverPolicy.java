@@ -0,0 +1,43 @@
+package com.iir4g8.tpsensor.recording;
+
+/**
+ * When a {@link RecordingWriter} closes its current segment and starts the next one.
+ * A segment is rolled over when it is full or when its first record is older than
+ * {@link #maxSegmentNanos}; with {@link #maxSegments} set, the oldest segments of the
+ * session are deleted so the recording keeps a bounded footprint on disk.
+ */
+public final class RolloverPolicy {
+
+    public static final long DEFAULT_SEGMENT_BYTES = 8L * 1024 * 1024;
+    public static final long DEFAULT_SEGMENT_NANOS = 10L * 60 * 1_000_000_000L;
+
+    public final long maxSegmentBytes;
+    public final long maxSegmentNanos;
+    public final int maxSegments;
+
+    /**
+     * @param maxSegmentNanos 0 for no time limit
+     * @param maxSegments     0 to keep every segment
+     */
+    public RolloverPolicy(long maxSegmentBytes, long maxSegmentNanos, int maxSegments) {
+        if (maxSegmentBytes <= RecordingFormat.HEADER_SIZE) {
+            throw new IllegalArgumentException("maxSegmentBytes too small: " + maxSegmentBytes);
+        }
+        if (maxSegmentNanos < 0 || maxSegments < 0) {
+            throw new IllegalArgumentException("Limits must not be negative");
+        }
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentNanos = maxSegmentNanos;
+        this.maxSegments = maxSegments;
+    }
+
+    public static RolloverPolicy defaults() {
+        return new RolloverPolicy(DEFAULT_SEGMENT_BYTES, DEFAULT_SEGMENT_NANOS, 0);
+    }
+
+    /** Number of whole blocks that fit in a segment, at least one. */
+    int blocksPerSegment(RecordingFormat format) {
+        long blocks = (maxSegmentBytes - RecordingFormat.HEADER_SIZE) / format.blockSize;
+        return (int) Math.max(1, Math.min(blocks, Integer.MAX_VALUE));
+    }
+}
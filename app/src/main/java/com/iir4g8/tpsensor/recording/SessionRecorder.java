@@ -0,0 +1,193 @@
+package com.iir4g8.tpsensor.recording;
+
+import android.content.Context;
+import android.os.Handler;
+import android.util.Log;
+
+import com.iir4g8.tpsensor.sensor.SensorBatch;
+import com.iir4g8.tpsensor.sensor.SensorBatchListener;
+import com.iir4g8.tpsensor.sensor.SensorHub;
+import com.iir4g8.tpsensor.sensor.SensorSample;
+import com.iir4g8.tpsensor.sensor.SensorSampleListener;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Records every sample of a set of sensors into a {@link RecordingWriter}.
+ * <p>
+ * The writer lives on the {@link SensorHub} thread: it is opened and closed through the
+ * hub handler and appended to from the sensor callbacks, so recording adds a few
+ * stores into a memory mapping per sample and never touches the main thread.
+ * <p>
+ * For long unattended sessions, {@code batched} recording lets the sensor FIFO collect
+ * samples and wakes the application processor only when it is nearly full, a few times
+ * a minute instead of at the sampling rate.
+ */
+public final class SessionRecorder implements SensorSampleListener, SensorBatchListener {
+
+    private static final String TAG = "SessionRecorder";
+    private static final int RECORDS_PER_BLOCK = 256;
+    // Upper bound on waiting for the FIFOs to drain when a batched session stops
+    static final long FLUSH_TIMEOUT_MS = 2000;
+
+    private final SensorHub sensorHub;
+    private final Handler hubHandler;
+    private final File directory;
+    private final RolloverPolicy policy;
+
+    // Only touched on the hub thread
+    private RecordingWriter writer;
+    private int pendingFlushes;
+    private final Runnable finishBatched = new Runnable() {
+        @Override
+        public void run() {
+            finishBatched();
+        }
+    };
+
+    // Main thread state
+    private boolean recording;
+    private boolean batched;
+    private int batchedSensors;
+
+    public SessionRecorder(SensorHub sensorHub, File directory, RolloverPolicy policy) {
+        this.sensorHub = sensorHub;
+        this.hubHandler = sensorHub.getHandler();
+        this.directory = directory;
+        this.policy = policy;
+    }
+
+    /** Default location of recordings, private to the app. */
+    public static File defaultDirectory(Context context) {
+        return new File(context.getFilesDir(), "recordings");
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Starts a session named {@code session}, recording each sensor type at the given rate.
+     */
+    public void start(String session, int[] sensorTypes, int samplingPeriodUs) {
+        start(session, sensorTypes, samplingPeriodUs, false);
+    }
+
+    /**
+     * Same as {@link #start(String, int[], int)}; with {@code batched}, samples are
+     * buffered in the sensor FIFO and written in batches.
+     */
+    public void start(final String session, int[] sensorTypes, int samplingPeriodUs, boolean batched) {
+        if (recording) {
+            throw new IllegalStateException("Already recording");
+        }
+        recording = true;
+        this.batched = batched;
+        batchedSensors = 0;
+        hubHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!directory.isDirectory() && !directory.mkdirs()) {
+                    Log.e(TAG, "Unable to create " + directory);
+                    return;
+                }
+                RecordingFormat format = new RecordingFormat(SensorSample.MAX_VALUES, RECORDS_PER_BLOCK);
+                writer = new RecordingWriter(directory, session, format, policy);
+            }
+        });
+        // Sensor events queue up behind the runnable above, so the first callback finds the writer
+        for (int sensorType : sensorTypes) {
+            if (batched) {
+                if (sensorHub.subscribeBatched(sensorType, samplingPeriodUs, this)) {
+                    batchedSensors++;
+                }
+            } else {
+                sensorHub.subscribe(sensorType, samplingPeriodUs, this);
+            }
+        }
+    }
+
+    public void stop() {
+        if (!recording) {
+            return;
+        }
+        recording = false;
+        if (batched) {
+            // Drain the FIFOs first, the writer closes once every sensor reported back
+            final int sensors = batchedSensors;
+            hubHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    pendingFlushes = sensors;
+                    sensorHub.flush();
+                    hubHandler.postDelayed(finishBatched, FLUSH_TIMEOUT_MS);
+                }
+            });
+            return;
+        }
+        sensorHub.unsubscribeAll(this);
+        hubHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                closeWriter();
+            }
+        });
+    }
+
+    @Override
+    public void onSensorSample(SensorSample sample) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.append(sample.sensorType, sample.timestampNanos, sample.accuracy,
+                    sample.values, sample.valueCount);
+        } catch (IOException e) {
+            Log.e(TAG, "Recording failed, closing the session", e);
+            closeWriter();
+        }
+    }
+
+    @Override
+    public void onSensorBatch(SensorBatch batch) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            for (int i = 0; i < batch.count; i++) {
+                writer.append(batch.sensorType, batch.timestamps[i], batch.accuracies[i],
+                        batch.values, i * SensorBatch.STRIDE, batch.valueCount);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Recording failed, closing the session", e);
+            closeWriter();
+        }
+    }
+
+    @Override
+    public void onBatchFlushed(int sensorType) {
+        if (pendingFlushes > 0 && --pendingFlushes == 0) {
+            finishBatched();
+        }
+    }
+
+    private void finishBatched() {
+        hubHandler.removeCallbacks(finishBatched);
+        pendingFlushes = 0;
+        sensorHub.unsubscribeBatched(this);
+        closeWriter();
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to close recording", e);
+        }
+        writer = null;
+    }
+}
@@ -0,0 +1,35 @@
+package com.iir4g8.tpsensor.replay;
+
+import com.iir4g8.tpsensor.recording.RecordingReader;
+import com.iir4g8.tpsensor.sensor.SensorSample;
+
+import java.io.IOException;
+
+/**
+ * Plays back a session written by the recorder, with its original timestamps,
+ * sensor types and accuracies.
+ */
+public final class RecordedStream implements SampleStream {
+
+    private final RecordingReader reader;
+    private final float[] values = new float[SensorSample.MAX_VALUES];
+
+    public RecordedStream(RecordingReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean next(SensorSample out) throws IOException {
+        if (!reader.next()) {
+            return false;
+        }
+        int count = reader.copyValues(values);
+        out.set(reader.sensorType(), reader.timestampNanos(), reader.accuracy(), values, count);
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,52 @@
+package com.iir4g8.tpsensor.replay;
+
+/**
+ * Maps sample timestamps to wall-clock due times for a playback speed.
+ * <p>
+ * The clock is anchored on one sample: that sample is due at the anchor wall time and
+ * every later one {@code (timestamp - anchor) / speed} after it. Re-anchoring after a
+ * pause keeps the gaps between samples without replaying the time spent paused.
+ */
+public final class ReplayClock {
+
+    /** Speed value meaning "deliver samples as fast as the consumers take them". */
+    public static final float AS_FAST_AS_POSSIBLE = 0f;
+
+    private final float speed;
+    private long anchorWallNanos;
+    private long anchorSampleNanos;
+    private boolean anchored;
+
+    public ReplayClock(float speed) {
+        if (speed < 0 || Float.isNaN(speed) || Float.isInfinite(speed)) {
+            throw new IllegalArgumentException("Invalid speed: " + speed);
+        }
+        this.speed = speed;
+    }
+
+    public boolean isUnpaced() {
+        return speed == AS_FAST_AS_POSSIBLE;
+    }
+
+    public boolean isAnchored() {
+        return anchored;
+    }
+
+    public void anchor(long wallNanos, long sampleNanos) {
+        anchorWallNanos = wallNanos;
+        anchorSampleNanos = sampleNanos;
+        anchored = true;
+    }
+
+    public void reset() {
+        anchored = false;
+    }
+
+    /** Wall time at which the sample is due; always "now" when unpaced or not anchored. */
+    public long dueWallNanos(long sampleNanos) {
+        if (!anchored || isUnpaced()) {
+            return Long.MIN_VALUE;
+        }
+        return anchorWallNanos + (long) ((sampleNanos - anchorSampleNanos) / (double) speed);
+    }
+}
@@ -0,0 +1,63 @@
+package com.iir4g8.tpsensor.replay;
+
+import android.content.Context;
+
+import com.iir4g8.tpsensor.recording.RecordingReader;
+import com.iir4g8.tpsensor.recording.SessionRecorder;
+import com.iir4g8.tpsensor.sensor.SensorHub;
+import com.iir4g8.tpsensor.sensor.SensorSource;
+
+import java.io.File;
+
+/**
+ * App-wide replay of the latest recording, toggled from the options menu.
+ * <p>
+ * While a replay is active, every screen showing a recorded sensor takes
+ * {@link #getSource()} instead of the hardware, and sees the recorded session played
+ * back at its original pace on the {@code SensorHub} thread. Orientation is fused in
+ * the app from the recorded accelerometer, gyroscope and magnetometer, since rotation
+ * vector sensors are not recorded. Screens pick their source when created, so the
+ * activity is recreated after {@link #start} and {@link #stop}.
+ */
+public final class ReplaySession {
+
+    private static ReplaySource source;
+    private static String sessionName;
+
+    private ReplaySession() {
+    }
+
+    /**
+     * Replaces any running replay with the newest session in
+     * {@link SessionRecorder#defaultDirectory}. Returns false when nothing was recorded.
+     */
+    public static synchronized boolean start(Context context) {
+        stop();
+        File directory = SessionRecorder.defaultDirectory(context);
+        String latest = RecordingReader.latestSession(directory);
+        if (latest == null) {
+            return false;
+        }
+        RecordingReader reader = new RecordingReader(RecordingReader.listSegments(directory, latest));
+        source = new ReplaySource(SensorHub.getInstance(context).getHandler(), new RecordedStream(reader), 1f);
+        sessionName = latest;
+        return true;
+    }
+
+    public static synchronized void stop() {
+        if (source != null) {
+            source.release();
+            source = null;
+            sessionName = null;
+        }
+    }
+
+    /** The replayed recording, or null when screens should read their sensors. */
+    public static synchronized SensorSource getSource() {
+        return source;
+    }
+
+    public static synchronized String getSessionName() {
+        return sessionName;
+    }
+}
@@ -0,0 +1,202 @@
+package com.iir4g8.tpsensor.replay;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.iir4g8.tpsensor.sensor.SensorSample;
+import com.iir4g8.tpsensor.sensor.SensorSampleListener;
+import com.iir4g8.tpsensor.sensor.SensorSource;
+
+import java.io.IOException;
+
+/**
+ * {@link SensorSource} that plays a {@link SampleStream} instead of reading hardware.
+ * <p>
+ * Samples are delivered on the given handler's thread, normally the {@code SensorHub}
+ * thread, so subscribers run exactly the code path they run for live data. Timestamps
+ * are passed through untouched; only the wall-clock pacing depends on the speed:
+ * 1x reproduces the original timing, Nx compresses it, and
+ * {@link ReplayClock#AS_FAST_AS_POSSIBLE} delivers in batches while yielding the
+ * thread between them.
+ * <p>
+ * Playback runs while at least one listener is subscribed. Sampling periods passed to
+ * {@link #subscribe} are ignored: the stream's own timing is replayed.
+ */
+public final class ReplaySource implements SensorSource {
+
+    private static final String TAG = "ReplaySource";
+
+    // Samples delivered per message when unpaced, so the thread still serves other work
+    private static final int UNPACED_BATCH = 256;
+
+    private static final Subscriber[] NO_SUBSCRIBERS = new Subscriber[0];
+
+    private final Handler handler;
+    private final SampleStream stream;
+    private final ReplayClock clock;
+
+    // Copied on write, read by the playback thread
+    private volatile Subscriber[] subscribers = NO_SUBSCRIBERS;
+    private volatile boolean running;
+
+    // Playback thread state
+    private final SensorSample sample = new SensorSample();
+    private boolean pending;
+    private boolean finished;
+
+    private final Runnable pump = new Runnable() {
+        @Override
+        public void run() {
+            pump();
+        }
+    };
+
+    private final Runnable pause = new Runnable() {
+        @Override
+        public void run() {
+            // The time spent paused is not replayed
+            clock.reset();
+        }
+    };
+
+    public ReplaySource(Handler handler, SampleStream stream, float speed) {
+        this.handler = handler;
+        this.stream = stream;
+        this.clock = new ReplayClock(speed);
+    }
+
+    @Override
+    public synchronized boolean subscribe(int sensorType, int samplingPeriodUs, SensorSampleListener listener) {
+        Subscriber[] current = subscribers;
+        for (Subscriber s : current) {
+            if (s.sensorType == sensorType && s.listener == listener) {
+                return true;
+            }
+        }
+        Subscriber[] next = new Subscriber[current.length + 1];
+        System.arraycopy(current, 0, next, 0, current.length);
+        next[current.length] = new Subscriber(sensorType, listener);
+        subscribers = next;
+
+        if (!running) {
+            running = true;
+            handler.post(pump);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void unsubscribe(int sensorType, int samplingPeriodUs, SensorSampleListener listener) {
+        remove(sensorType, listener, false);
+    }
+
+    @Override
+    public synchronized void unsubscribeAll(SensorSampleListener listener) {
+        remove(0, listener, true);
+    }
+
+    /** Stops playback and closes the stream. */
+    public synchronized void release() {
+        subscribers = NO_SUBSCRIBERS;
+        stopLocked();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                finished = true;
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Unable to close replay stream", e);
+                }
+            }
+        });
+    }
+
+    private void remove(int sensorType, SensorSampleListener listener, boolean anyType) {
+        Subscriber[] current = subscribers;
+        int kept = 0;
+        Subscriber[] next = new Subscriber[current.length];
+        for (Subscriber s : current) {
+            if (s.listener != listener || (!anyType && s.sensorType != sensorType)) {
+                next[kept++] = s;
+            }
+        }
+        if (kept == current.length) {
+            return;
+        }
+        Subscriber[] trimmed = new Subscriber[kept];
+        System.arraycopy(next, 0, trimmed, 0, kept);
+        subscribers = trimmed;
+        if (kept == 0) {
+            stopLocked();
+        }
+    }
+
+    private void stopLocked() {
+        if (running) {
+            running = false;
+            handler.removeCallbacks(pump);
+            handler.post(pause);
+        }
+    }
+
+    private void pump() {
+        long now = SystemClock.elapsedRealtimeNanos();
+        int delivered = 0;
+        while (running) {
+            if (!pending) {
+                if (finished || !readNext()) {
+                    finished = true;
+                    return;
+                }
+                pending = true;
+            }
+            if (!clock.isAnchored()) {
+                clock.anchor(now, sample.timestampNanos);
+            }
+            long due = clock.dueWallNanos(sample.timestampNanos);
+            if (due > now) {
+                // Round up so a sample is never delivered early
+                handler.postDelayed(pump, (due - now + 999_999) / 1_000_000);
+                return;
+            }
+
+            pending = false;
+            dispatch(sample);
+
+            if (clock.isUnpaced() && ++delivered == UNPACED_BATCH) {
+                handler.post(pump);
+                return;
+            }
+        }
+    }
+
+    private boolean readNext() {
+        try {
+            return stream.next(sample);
+        } catch (IOException e) {
+            Log.e(TAG, "Replay stream failed", e);
+            return false;
+        }
+    }
+
+    private void dispatch(SensorSample sample) {
+        Subscriber[] targets = subscribers;
+        for (int i = 0; i < targets.length; i++) {
+            if (targets[i].sensorType == sample.sensorType) {
+                targets[i].listener.onSensorSample(sample);
+            }
+        }
+    }
+
+    private static final class Subscriber {
+        final int sensorType;
+        final SensorSampleListener listener;
+
+        Subscriber(int sensorType, SensorSampleListener listener) {
+            this.sensorType = sensorType;
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.iir4g8.tpsensor.replay;
+
+import com.iir4g8.tpsensor.sensor.SensorSample;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Ordered sequence of samples for a {@link ReplaySource}. Timestamps must not decrease.
+ */
+public interface SampleStream extends Closeable {
+
+    /**
+     * Fills {@code out} with the next sample.
+     *
+     * @return false once the stream is exhausted
+     */
+    boolean next(SensorSample out) throws IOException;
+}
@@ -0,0 +1,49 @@
+package com.iir4g8.tpsensor.replay;
+
+import android.hardware.SensorManager;
+
+import com.iir4g8.tpsensor.sensor.SensorSample;
+
+import java.util.Random;
+
+/**
+ * Endless synthetic sensor: one {@link Waveform} per value channel, sampled at a fixed
+ * period. The same script and seed always produce the same samples.
+ */
+public final class ScriptedStream implements SampleStream {
+
+    private final int sensorType;
+    private final long periodNanos;
+    private final Waveform[] channels;
+    private final float[] values;
+    private final Random random;
+    private long timestampNanos;
+
+    public ScriptedStream(int sensorType, long periodNanos, long seed, Waveform... channels) {
+        if (periodNanos <= 0) {
+            throw new IllegalArgumentException("periodNanos must be positive: " + periodNanos);
+        }
+        if (channels.length == 0 || channels.length > SensorSample.MAX_VALUES) {
+            throw new IllegalArgumentException("Unsupported channel count: " + channels.length);
+        }
+        this.sensorType = sensorType;
+        this.periodNanos = periodNanos;
+        this.channels = channels.clone();
+        this.values = new float[channels.length];
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public boolean next(SensorSample out) {
+        for (int i = 0; i < channels.length; i++) {
+            values[i] = channels[i].valueAt(timestampNanos, random);
+        }
+        out.set(sensorType, timestampNanos, SensorManager.SENSOR_STATUS_ACCURACY_HIGH, values, values.length);
+        timestampNanos += periodNanos;
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,61 @@
+package com.iir4g8.tpsensor.replay;
+
+import java.util.Random;
+
+/**
+ * One channel of a {@link ScriptedStream}, as a function of the sample time.
+ * Randomness must come from the supplied generator so that a script replays identically.
+ */
+public interface Waveform {
+
+    float valueAt(long timestampNanos, Random random);
+
+    static Waveform constant(final float value) {
+        return new Waveform() {
+            @Override
+            public float valueAt(long timestampNanos, Random random) {
+                return value;
+            }
+        };
+    }
+
+    static Waveform sine(final float offset, final float amplitude, final double periodSeconds) {
+        final double omega = 2 * Math.PI / (periodSeconds * 1e9);
+        return new Waveform() {
+            @Override
+            public float valueAt(long timestampNanos, Random random) {
+                return offset + amplitude * (float) Math.sin(omega * timestampNanos);
+            }
+        };
+    }
+
+    static Waveform square(final float low, final float high, final double periodSeconds) {
+        final long period = (long) (periodSeconds * 1e9);
+        return new Waveform() {
+            @Override
+            public float valueAt(long timestampNanos, Random random) {
+                return timestampNanos % period < period / 2 ? high : low;
+            }
+        };
+    }
+
+    static Waveform uniform(final float min, final float max) {
+        return new Waveform() {
+            @Override
+            public float valueAt(long timestampNanos, Random random) {
+                return min + random.nextFloat() * (max - min);
+            }
+        };
+    }
+
+    /** This waveform with {@code other} added to it, typically a noise term. */
+    default Waveform plus(final Waveform other) {
+        final Waveform self = this;
+        return new Waveform() {
+            @Override
+            public float valueAt(long timestampNanos, Random random) {
+                return self.valueAt(timestampNanos, random) + other.valueAt(timestampNanos, random);
+            }
+        };
+    }
+}
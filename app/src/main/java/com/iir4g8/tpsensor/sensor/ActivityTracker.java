@@ -0,0 +1,59 @@
+package com.iir4g8.tpsensor.sensor;
+
+import android.hardware.Sensor;
+
+import com.iir4g8.tpsensor.processing.ActivityClassifier;
+
+/**
+ * Classifies what the user is doing from the accelerometer sampled at 200 Hz.
+ * <p>
+ * Samples go straight into an {@link ActivityClassifier} on the source's thread; every
+ * {@code hopSize} samples the listener gets the activity and cadence of the last
+ * {@value #WINDOW_SIZE} samples, about 2.5 s.
+ * <p>
+ * The 200 Hz registration is costly: callers stop the tracker once it keeps reporting
+ * {@code STILL} and start it again on movement or after a while, since a vehicle
+ * moving in a straight line may not show up on cheaper sensors.
+ */
+public final class ActivityTracker implements SensorSampleListener {
+
+    public interface Listener {
+        /**
+         * Called on the source's thread after each analysis.
+         *
+         * @param cadence steps per minute, 0 unless walking or running
+         */
+        void onActivity(ActivityClassifier.Activity activity, float cadence);
+    }
+
+    public static final int SAMPLING_PERIOD_US = 5_000;
+    static final int WINDOW_SIZE = 512;
+
+    private final SensorSource source;
+    private final ActivityClassifier classifier;
+    private final Listener listener;
+
+    public ActivityTracker(SensorSource source, int hopSize, Listener listener) {
+        this.source = source;
+        this.classifier = new ActivityClassifier(WINDOW_SIZE, hopSize);
+        this.listener = listener;
+    }
+
+    /** @return false when the device has no accelerometer */
+    public boolean start() {
+        classifier.reset();
+        return source.subscribe(Sensor.TYPE_ACCELEROMETER, SAMPLING_PERIOD_US, this);
+    }
+
+    public void stop() {
+        source.unsubscribe(Sensor.TYPE_ACCELEROMETER, SAMPLING_PERIOD_US, this);
+    }
+
+    @Override
+    public void onSensorSample(SensorSample sample) {
+        if (sample.sensorType == Sensor.TYPE_ACCELEROMETER
+                && classifier.add(sample.timestampNanos, sample.values[0], sample.values[1], sample.values[2])) {
+            listener.onActivity(classifier.getActivity(), classifier.getCadence());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.iir4g8.tpsensor.sensor;
+
+import com.iir4g8.tpsensor.processing.RateController;
+
+/**
+ * Subscription whose sampling rate follows the activity of its own signal.
+ * <p>
+ * Samples are forwarded to the wrapped listener unchanged. Their first value (or the
+ * magnitude, for vector sensors) feeds a {@link RateController}; when it picks another
+ * period, the subscription re-registers at that rate from the sensor thread, so a flat
+ * signal costs fewer wake-ups, callbacks and redraws.
+ */
+public final class AdaptiveSubscription implements SensorSampleListener {
+
+    private final SensorSource source;
+    private final int sensorType;
+    private final SensorSampleListener listener;
+    private final RateController controller;
+
+    // Rate of the live registration, -1 when stopped; guarded by "this"
+    private int subscribedPeriodUs = -1;
+
+    public AdaptiveSubscription(SensorSource source, int sensorType, RateController controller,
+                                SensorSampleListener listener) {
+        this.source = source;
+        this.sensorType = sensorType;
+        this.controller = controller;
+        this.listener = listener;
+    }
+
+    /** Subscribes at the fastest rate; the controller steps it down from there. */
+    public synchronized boolean start() {
+        if (subscribedPeriodUs >= 0) {
+            return true;
+        }
+        controller.reset();
+        int period = controller.getSamplingPeriodUs();
+        if (!source.subscribe(sensorType, period, this)) {
+            return false;
+        }
+        subscribedPeriodUs = period;
+        return true;
+    }
+
+    public synchronized void stop() {
+        if (subscribedPeriodUs < 0) {
+            return;
+        }
+        source.unsubscribe(sensorType, subscribedPeriodUs, this);
+        subscribedPeriodUs = -1;
+    }
+
+    /** Period of the current registration in microseconds, -1 when stopped. */
+    public synchronized int getSamplingPeriodUs() {
+        return subscribedPeriodUs;
+    }
+
+    @Override
+    public void onSensorSample(SensorSample sample) {
+        listener.onSensorSample(sample);
+        float value = sample.valueCount >= 3
+                ? (float) Math.sqrt(sample.values[0] * sample.values[0]
+                        + sample.values[1] * sample.values[1]
+                        + sample.values[2] * sample.values[2])
+                : sample.values[0];
+        if (controller.update(sample.timestampNanos, value)) {
+            resubscribe(controller.getSamplingPeriodUs());
+        }
+    }
+
+    private synchronized void resubscribe(int periodUs) {
+        if (subscribedPeriodUs < 0 || subscribedPeriodUs == periodUs) {
+            return;
+        }
+        // Runs on the sensor thread, so no sample slips in between
+        source.unsubscribe(sensorType, subscribedPeriodUs, this);
+        if (source.subscribe(sensorType, periodUs, this)) {
+            subscribedPeriodUs = periodUs;
+        } else {
+            subscribedPeriodUs = -1;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.iir4g8.tpsensor.sensor;
+
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+import android.os.Handler;
+
+import com.iir4g8.tpsensor.processing.OrientationFusion;
+import com.iir4g8.tpsensor.processing.QuaternionFilter;
+import com.iir4g8.tpsensor.processing.Quaternions;
+
+/**
+ * Device orientation from the cheapest source the device offers.
+ * <p>
+ * Most devices fuse accelerometer, gyroscope and magnetometer in the sensor hub and
+ * expose the result as rotation vector sensors, at a fraction of the power and CPU an
+ * app-side filter costs. The provider picks the first available {@link Mode} from the
+ * candidates of the requested {@link Quantity}, and only falls back to fusing raw
+ * sensors in the app when no hardware-fused sensor fits. Whatever the mode, listeners
+ * receive the same stream: a device-to-world quaternion per sample, on the thread of
+ * the {@link SensorSource}.
+ * <p>
+ * Recordings only hold raw sensors, so a provider reading a replay takes its mode from
+ * {@link #selectRecorded} and always fuses in the app.
+ */
+public final class AttitudeProvider implements SensorSampleListener {
+
+    /** What the caller needs the orientation for. */
+    public enum Quantity {
+        /** Compass heading; tilt may lag, the gyroscope is not needed. */
+        HEADING(Mode.GEOMAGNETIC_ROTATION_VECTOR, Mode.ROTATION_VECTOR, Mode.ACCEL_MAG_FUSION),
+        /** Full, smooth orientation referenced to magnetic north. */
+        ATTITUDE(Mode.ROTATION_VECTOR, Mode.GYRO_FUSION, Mode.GEOMAGNETIC_ROTATION_VECTOR, Mode.ACCEL_MAG_FUSION),
+        /** Smooth orientation whose heading may drift, immune to magnetic disturbances. */
+        RELATIVE_ATTITUDE(Mode.GAME_ROTATION_VECTOR, Mode.ROTATION_VECTOR, Mode.GYRO_FUSION, Mode.ACCEL_MAG_FUSION);
+
+        final Mode[] candidates;
+
+        Quantity(Mode... candidates) {
+            this.candidates = candidates;
+        }
+    }
+
+    /** Where the orientation comes from, hardware-fused modes first. */
+    public enum Mode {
+        ROTATION_VECTOR(true, Sensor.TYPE_ROTATION_VECTOR),
+        GAME_ROTATION_VECTOR(true, Sensor.TYPE_GAME_ROTATION_VECTOR),
+        GEOMAGNETIC_ROTATION_VECTOR(false, Sensor.TYPE_GEOMAGNETIC_ROTATION_VECTOR),
+        /** {@link QuaternionFilter} over gyroscope, accelerometer and magnetometer. */
+        GYRO_FUSION(true, Sensor.TYPE_GYROSCOPE, Sensor.TYPE_ACCELEROMETER, Sensor.TYPE_MAGNETIC_FIELD),
+        /** {@link OrientationFusion} over accelerometer and magnetometer. */
+        ACCEL_MAG_FUSION(false, Sensor.TYPE_ACCELEROMETER, Sensor.TYPE_MAGNETIC_FIELD),
+        NONE(false);
+
+        /** Whether the stream is gyroscope-smooth enough to extrapolate from. */
+        public final boolean smooth;
+        final int[] sensorTypes;
+
+        Mode(boolean smooth, int... sensorTypes) {
+            this.smooth = smooth;
+            this.sensorTypes = sensorTypes;
+        }
+
+        public boolean isHardwareFused() {
+            return sensorTypes.length == 1;
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Called on the hub thread for every new orientation. The arrays are reused.
+         *
+         * @param quaternion      device-to-world rotation, w x y z
+         * @param angularVelocity rad/s in device axes, or {@code null} when the source is
+         *                        not smooth enough to derive one
+         */
+        void onAttitude(long timestampNanos, float[] quaternion, float[] angularVelocity);
+    }
+
+    // Longer gaps between samples give no usable angular velocity
+    private static final long MAX_RATE_GAP_NANOS = 200_000_000L;
+
+    private final SensorSource source;
+    private final Handler handler;
+    private final Mode mode;
+    private final Listener listener;
+    // Guarded by "this"
+    private boolean started;
+    private int samplingPeriodUs;
+
+    // Hub thread state
+    private final QuaternionFilter filter = new QuaternionFilter();
+    private final OrientationFusion fusion = new OrientationFusion();
+    private final float[] quaternion = new float[4];
+    private final float[] previous = new float[4];
+    private final float[] angularVelocity = new float[3];
+    private long previousNanos;
+
+    public AttitudeProvider(SensorHub sensorHub, Quantity quantity, Listener listener) {
+        this(sensorHub, sensorHub.getHandler(), select(quantity, sensorHub), listener);
+    }
+
+    /**
+     * @param handler the thread {@code source} delivers on
+     * @param mode    how to derive the orientation; the source must provide its sensors
+     */
+    public AttitudeProvider(SensorSource source, Handler handler, Mode mode, Listener listener) {
+        this.source = source;
+        this.handler = handler;
+        this.listener = listener;
+        this.mode = mode;
+    }
+
+    /** First candidate of {@code quantity} whose sensors all exist, or {@link Mode#NONE}. */
+    static Mode select(Quantity quantity, SensorHub sensorHub) {
+        for (Mode candidate : quantity.candidates) {
+            boolean available = true;
+            for (int type : candidate.sensorTypes) {
+                if (sensorHub.getDefaultSensor(type) == null) {
+                    available = false;
+                    break;
+                }
+            }
+            if (available) {
+                return candidate;
+            }
+        }
+        return Mode.NONE;
+    }
+
+    /**
+     * First candidate of {@code quantity} fused in the app, for sources that only carry
+     * raw sensors such as a recording.
+     */
+    public static Mode selectRecorded(Quantity quantity) {
+        for (Mode candidate : quantity.candidates) {
+            if (!candidate.isHardwareFused()) {
+                return candidate;
+            }
+        }
+        return Mode.NONE;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public boolean isAvailable() {
+        return mode != Mode.NONE;
+    }
+
+    /**
+     * Subscribes the sensors of the selected mode.
+     *
+     * @param samplingPeriodUs rate of the orientation stream, as for {@link SensorSource#subscribe}
+     */
+    public synchronized void start(int samplingPeriodUs) {
+        if (started || mode == Mode.NONE) {
+            return;
+        }
+        started = true;
+        this.samplingPeriodUs = samplingPeriodUs;
+        // Start from a fresh alignment, on the thread that owns the filters
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                filter.reset();
+                previousNanos = 0L;
+            }
+        });
+        subscribe();
+    }
+
+    /**
+     * Changes the rate of a started stream without resetting the fusion state. Can be
+     * called from the listener.
+     */
+    public synchronized void setSamplingPeriod(int samplingPeriodUs) {
+        if (this.samplingPeriodUs == samplingPeriodUs) {
+            return;
+        }
+        this.samplingPeriodUs = samplingPeriodUs;
+        if (started) {
+            source.unsubscribeAll(this);
+            subscribe();
+        }
+    }
+
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        source.unsubscribeAll(this);
+    }
+
+    private void subscribe() {
+        for (int type : mode.sensorTypes) {
+            int rate = samplingPeriodUs;
+            if (mode == Mode.GYRO_FUSION && type == Sensor.TYPE_MAGNETIC_FIELD) {
+                // The magnetometer only corrects the heading, a lower rate is enough
+                rate = SensorManager.SENSOR_DELAY_UI;
+            }
+            source.subscribe(type, rate, this);
+        }
+    }
+
+    @Override
+    public void onSensorSample(SensorSample sample) {
+        switch (mode) {
+            case ROTATION_VECTOR:
+            case GAME_ROTATION_VECTOR:
+            case GEOMAGNETIC_ROTATION_VECTOR:
+                Quaternions.fromRotationVector(sample.values, sample.valueCount, quaternion);
+                deliver(sample.timestampNanos, mode.smooth);
+                break;
+            case GYRO_FUSION:
+                processGyroFusion(sample);
+                break;
+            case ACCEL_MAG_FUSION:
+                processAccelMagFusion(sample);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void processGyroFusion(SensorSample sample) {
+        switch (sample.sensorType) {
+            case Sensor.TYPE_GYROSCOPE:
+                filter.updateGyroscope(sample.values, sample.timestampNanos);
+                break;
+            case Sensor.TYPE_ACCELEROMETER:
+                filter.updateAccelerometer(sample.values, sample.timestampNanos);
+                break;
+            case Sensor.TYPE_MAGNETIC_FIELD:
+                // Used by the next accelerometer correction
+                filter.updateMagnetometer(sample.values);
+                return;
+            default:
+                return;
+        }
+        if (filter.isInitialized()) {
+            filter.getQuaternion(quaternion);
+            filter.getAngularVelocity(angularVelocity);
+            listener.onAttitude(sample.timestampNanos, quaternion, angularVelocity);
+        }
+    }
+
+    private void processAccelMagFusion(SensorSample sample) {
+        if (sample.sensorType == Sensor.TYPE_ACCELEROMETER) {
+            fusion.setAccelerometer(sample.values);
+        } else if (sample.sensorType == Sensor.TYPE_MAGNETIC_FIELD) {
+            fusion.setMagnetometer(sample.values);
+        }
+        if (fusion.update()) {
+            Quaternions.fromRotationMatrix(fusion.getRotationMatrix(), quaternion);
+            deliver(sample.timestampNanos, false);
+        }
+    }
+
+    /** Hands {@link #quaternion} over, with a rate differentiated from the previous sample if smooth. */
+    private void deliver(long timestampNanos, boolean smooth) {
+        float[] rate = null;
+        long gap = timestampNanos - previousNanos;
+        if (smooth && previousNanos != 0L && gap > 0L && gap <= MAX_RATE_GAP_NANOS) {
+            Quaternions.angularVelocity(previous, quaternion, gap * 1e-9f, angularVelocity);
+            rate = angularVelocity;
+        }
+        System.arraycopy(quaternion, 0, previous, 0, 4);
+        previousNanos = timestampNanos;
+        listener.onAttitude(timestampNanos, quaternion, rate);
+    }
+}
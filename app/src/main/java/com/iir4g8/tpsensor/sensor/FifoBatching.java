@@ -0,0 +1,56 @@
+package com.iir4g8.tpsensor.sensor;
+
+import android.hardware.SensorManager;
+
+/**
+ * Sizing of the report latency for batched sensor registrations.
+ * <p>
+ * With a non-zero {@code maxReportLatencyUs} the sensor hub stores samples in its FIFO
+ * and only wakes the application processor when the latency expires or the FIFO is
+ * about to overflow. The latency is chosen so that the space reserved for the sensor
+ * fills up just before the deadline, minus a safety margin, so no sample is dropped.
+ */
+public final class FifoBatching {
+
+    // Fraction of the FIFO we plan to fill, leaves room for delivery jitter
+    private static final float FILL_FACTOR = 0.8f;
+
+    private FifoBatching() {
+    }
+
+    /** Sampling period in microseconds of a rate given as for {@link SensorHub#subscribe}. */
+    public static int samplingPeriodUs(int rate) {
+        switch (rate) {
+            case SensorManager.SENSOR_DELAY_FASTEST:
+                return 0;
+            case SensorManager.SENSOR_DELAY_GAME:
+                return 20_000;
+            case SensorManager.SENSOR_DELAY_UI:
+                return 66_667;
+            case SensorManager.SENSOR_DELAY_NORMAL:
+                return 200_000;
+            default:
+                return rate;
+        }
+    }
+
+    /**
+     * Report latency that lets {@code fifoEvents} samples accumulate at {@code rate}.
+     *
+     * @param fifoEvents events the FIFO can hold for this sensor; the reserved count when
+     *                   the device reserves one, otherwise the shared maximum
+     * @param minDelayUs fastest period the sensor supports, used for {@code SENSOR_DELAY_FASTEST}
+     * @return 0 when the sensor cannot batch
+     */
+    public static int maxReportLatencyUs(int fifoEvents, int rate, int minDelayUs) {
+        if (fifoEvents <= 0) {
+            return 0;
+        }
+        long periodUs = Math.max(samplingPeriodUs(rate), minDelayUs);
+        if (periodUs <= 0) {
+            return 0;
+        }
+        long latency = (long) (fifoEvents * FILL_FACTOR) * periodUs;
+        return (int) Math.min(latency, Integer.MAX_VALUE);
+    }
+}
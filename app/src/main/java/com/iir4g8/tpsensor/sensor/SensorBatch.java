@@ -0,0 +1,55 @@
+package com.iir4g8.tpsensor.sensor;
+
+import android.hardware.SensorEvent;
+
+/**
+ * Readings of one sensor delivered together, typically drained from the hardware FIFO.
+ * <p>
+ * Values are stored with a fixed stride of {@link SensorSample#MAX_VALUES} floats per
+ * sample. Instances are reused by the producer, so consumers must copy whatever they
+ * need before returning from the callback.
+ */
+public final class SensorBatch {
+
+    public static final int STRIDE = SensorSample.MAX_VALUES;
+
+    public final int sensorType;
+    public int count;
+    public int valueCount;
+    public final long[] timestamps;
+    public final int[] accuracies;
+    public final float[] values;
+
+    public SensorBatch(int sensorType, int capacity) {
+        this.sensorType = sensorType;
+        this.timestamps = new long[capacity];
+        this.accuracies = new int[capacity];
+        this.values = new float[capacity * STRIDE];
+    }
+
+    public int capacity() {
+        return timestamps.length;
+    }
+
+    public boolean isFull() {
+        return count == timestamps.length;
+    }
+
+    /** Value {@code axis} of sample {@code index}. */
+    public float value(int index, int axis) {
+        return values[index * STRIDE + axis];
+    }
+
+    void add(SensorEvent event) {
+        int n = Math.min(event.values.length, STRIDE);
+        timestamps[count] = event.timestamp;
+        accuracies[count] = event.accuracy;
+        System.arraycopy(event.values, 0, values, count * STRIDE, n);
+        valueCount = n;
+        count++;
+    }
+
+    void clear() {
+        count = 0;
+    }
+}
@@ -0,0 +1,15 @@
+package com.iir4g8.tpsensor.sensor;
+
+/**
+ * Consumer of batched sensor readings, see {@link SensorHub#subscribeBatched}.
+ * <p>
+ * Called on the {@link SensorHub} thread. The batch is reused after the callback returns.
+ */
+public interface SensorBatchListener {
+
+    void onSensorBatch(SensorBatch batch);
+
+    /** Called after the samples buffered when {@link SensorHub#flush()} was called have been delivered. */
+    default void onBatchFlushed(int sensorType) {
+    }
+}
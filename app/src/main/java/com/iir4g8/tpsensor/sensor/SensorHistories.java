@@ -0,0 +1,134 @@
+package com.iir4g8.tpsensor.sensor;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.iir4g8.tpsensor.data.TieredHistory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * App-scoped long-term history of scalar sensors, one {@link TieredHistory} per sensor
+ * type, so that the 1 h and 24 h chart ranges outlive the screens showing them.
+ * <p>
+ * Histories are only touched on the main thread, as {@link TieredHistory} requires.
+ * Screens append from their frame callbacks; the recording service {@link #post posts}
+ * batches from the hub thread, appended on the main looper whether or not a screen is
+ * open. A sample not newer than the history's latest is skipped, so when both feed the
+ * same sensor the history never goes back in time.
+ * <p>
+ * What a history covers is what the process saw: the time a screen was open or a
+ * recording was running. It starts empty after the process is restarted.
+ */
+public final class SensorHistories {
+
+    /** Raw samples kept per sensor, on top of the rollup tiers. */
+    public static final int RAW_CAPACITY = 4096;
+
+    private static SensorHistories instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Main thread only
+    private final Map<Integer, TieredHistory> histories = new HashMap<>();
+
+    // Swapped between the posting threads and the main thread, as in FramePublisher
+    private final Object lock = new Object();
+    private Pending back = new Pending(); // guarded by lock
+    private Pending front = new Pending();
+    private boolean scheduled;
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    public static synchronized SensorHistories getInstance() {
+        if (instance == null) {
+            instance = new SensorHistories();
+        }
+        return instance;
+    }
+
+    private SensorHistories() {
+    }
+
+    /** The history of a sensor, created empty on first use. Main thread. */
+    public TieredHistory get(int sensorType) {
+        TieredHistory history = histories.get(sensorType);
+        if (history == null) {
+            history = TieredHistory.withDefaultTiers(RAW_CAPACITY);
+            histories.put(sensorType, history);
+        }
+        return history;
+    }
+
+    /**
+     * Appends a sample unless the history already holds a newer or equal timestamp.
+     *
+     * @return true when the sample was appended
+     */
+    public static boolean appendNewer(TieredHistory history, long timestampNanos, float value) {
+        if (!history.isEmpty() && timestampNanos <= history.latestTimestamp()) {
+            return false;
+        }
+        history.append(timestampNanos, value);
+        return true;
+    }
+
+    /** Any thread: queues the first value of every sample in the batch for the main thread. */
+    public void post(SensorBatch batch) {
+        synchronized (lock) {
+            for (int i = 0; i < batch.count; i++) {
+                back.add(batch.sensorType, batch.timestamps[i], batch.value(i, 0));
+            }
+            if (!scheduled && back.count > 0) {
+                scheduled = true;
+                mainHandler.post(drain);
+            }
+        }
+    }
+
+    private void drain() {
+        Pending ready;
+        synchronized (lock) {
+            scheduled = false;
+            ready = back;
+            back = front;
+            back.count = 0;
+            front = ready;
+        }
+        for (int i = 0; i < ready.count; i++) {
+            appendNewer(get(ready.types[i]), ready.timestamps[i], ready.values[i]);
+        }
+    }
+
+    private static final class Pending {
+        int count;
+        int[] types = new int[256];
+        long[] timestamps = new long[256];
+        float[] values = new float[256];
+
+        void add(int type, long timestampNanos, float value) {
+            if (count == types.length) {
+                // One more doubling per larger batch, then reused
+                int capacity = count * 2;
+                int[] newTypes = new int[capacity];
+                long[] newTimestamps = new long[capacity];
+                float[] newValues = new float[capacity];
+                System.arraycopy(types, 0, newTypes, 0, count);
+                System.arraycopy(timestamps, 0, newTimestamps, 0, count);
+                System.arraycopy(values, 0, newValues, 0, count);
+                types = newTypes;
+                timestamps = newTimestamps;
+                values = newValues;
+            }
+            types[count] = type;
+            timestamps[count] = timestampNanos;
+            values[count] = value;
+            count++;
+        }
+    }
+}
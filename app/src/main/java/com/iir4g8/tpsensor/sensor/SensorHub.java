@@ -0,0 +1,346 @@
+package com.iir4g8.tpsensor.sensor;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorEventListener2;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Process-wide owner of every {@link SensorManager} registration.
+ * <p>
+ * Sensor callbacks are delivered on a dedicated {@link HandlerThread} instead of the
+ * main looper. Subscribers are reference-counted per sensor type and sampling rate:
+ * the first subscriber registers with the framework, the last one unregisters, and
+ * everyone in between shares the same registration.
+ * <p>
+ * Batched subscriptions ({@link #subscribeBatched}) are registered separately with a
+ * report latency, so the hardware FIFO collects samples while the application
+ * processor sleeps; {@link #flush()} drains them on demand.
+ */
+public final class SensorHub implements SensorSource {
+
+    private static final String TAG = "SensorHub";
+
+    private static SensorHub instance;
+
+    private final SensorManager sensorManager;
+    private final Handler handler;
+
+    // Keyed by (sensor type, sampling period), guarded by "this"
+    private final Map<Long, Registration> registrations = new HashMap<>();
+    private final Map<Long, BatchRegistration> batchRegistrations = new HashMap<>();
+
+    public static synchronized SensorHub getInstance(Context context) {
+        if (instance == null) {
+            instance = new SensorHub(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private SensorHub(Context context) {
+        sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+
+        HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_MORE_FAVORABLE);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    public Sensor getDefaultSensor(int sensorType) {
+        return sensorManager.getDefaultSensor(sensorType);
+    }
+
+    /** Handler bound to the hub thread, for work that must run alongside the callbacks. */
+    public Handler getHandler() {
+        return handler;
+    }
+
+    public Looper getLooper() {
+        return handler.getLooper();
+    }
+
+    public boolean isHubThread() {
+        return Looper.myLooper() == handler.getLooper();
+    }
+
+    /**
+     * Subscribes a listener to a sensor.
+     *
+     * @param samplingPeriodUs one of the {@code SensorManager.SENSOR_DELAY_*} constants or a period in microseconds
+     * @return false when the device has no such sensor
+     */
+    @Override
+    public synchronized boolean subscribe(int sensorType, int samplingPeriodUs, SensorSampleListener listener) {
+        long key = key(sensorType, samplingPeriodUs);
+        Registration registration = registrations.get(key);
+
+        if (registration == null) {
+            Sensor sensor = sensorManager.getDefaultSensor(sensorType);
+            if (sensor == null) {
+                return false;
+            }
+            registration = new Registration(sensor, samplingPeriodUs);
+            if (!sensorManager.registerListener(registration, sensor, samplingPeriodUs, handler)) {
+                Log.w(TAG, "Unable to register sensor type " + sensorType);
+                return false;
+            }
+            registrations.put(key, registration);
+        }
+
+        registration.add(listener);
+        return true;
+    }
+
+    @Override
+    public synchronized void unsubscribe(int sensorType, int samplingPeriodUs, SensorSampleListener listener) {
+        long key = key(sensorType, samplingPeriodUs);
+        Registration registration = registrations.get(key);
+        if (registration != null && registration.remove(listener)) {
+            sensorManager.unregisterListener(registration);
+            registrations.remove(key);
+        }
+    }
+
+    @Override
+    public synchronized void unsubscribeAll(SensorSampleListener listener) {
+        Iterator<Registration> it = registrations.values().iterator();
+        while (it.hasNext()) {
+            Registration registration = it.next();
+            if (registration.remove(listener)) {
+                sensorManager.unregisterListener(registration);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Subscribes a listener to a sensor in batch mode: samples are buffered in the sensor
+     * FIFO for as long as it can hold them at this rate and delivered in batches.
+     * Sensors without a FIFO fall back to a report latency of zero, still delivered as
+     * (small) batches.
+     * <p>
+     * The wake-up variant of the sensor is preferred: its FIFO wakes the application
+     * processor before it overflows, so a long batch is delivered rather than lost
+     * while the device sleeps. Without one, the non-wake-up sensor is used and samples
+     * can be dropped once its FIFO is full during suspend.
+     *
+     * @return false when the device has no such sensor
+     */
+    public synchronized boolean subscribeBatched(int sensorType, int samplingPeriodUs, SensorBatchListener listener) {
+        long key = key(sensorType, samplingPeriodUs);
+        BatchRegistration registration = batchRegistrations.get(key);
+
+        if (registration == null) {
+            Sensor sensor = sensorManager.getDefaultSensor(sensorType, true);
+            if (sensor == null) {
+                sensor = sensorManager.getDefaultSensor(sensorType);
+                if (sensor == null) {
+                    return false;
+                }
+                Log.i(TAG, "No wake-up variant of sensor type " + sensorType + ", batching may drop samples in suspend");
+            }
+            int reserved = sensor.getFifoReservedEventCount();
+            int fifoEvents = reserved > 0 ? reserved : sensor.getFifoMaxEventCount();
+            int latencyUs = FifoBatching.maxReportLatencyUs(fifoEvents, samplingPeriodUs, sensor.getMinDelay());
+            registration = new BatchRegistration(sensor, handler);
+            if (!sensorManager.registerListener(registration, sensor, samplingPeriodUs, latencyUs, handler)) {
+                Log.w(TAG, "Unable to register batched sensor type " + sensorType);
+                return false;
+            }
+            batchRegistrations.put(key, registration);
+        }
+
+        registration.add(listener);
+        return true;
+    }
+
+    public synchronized void unsubscribeBatched(SensorBatchListener listener) {
+        Iterator<BatchRegistration> it = batchRegistrations.values().iterator();
+        while (it.hasNext()) {
+            BatchRegistration registration = it.next();
+            if (registration.remove(listener)) {
+                sensorManager.unregisterListener(registration);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Asks every batched sensor to deliver what its FIFO holds now, e.g. when the UI
+     * comes back and wants to show up-to-date data. Completes asynchronously.
+     */
+    public synchronized void flush() {
+        for (BatchRegistration registration : batchRegistrations.values()) {
+            sensorManager.flush(registration);
+        }
+    }
+
+    private static long key(int sensorType, int samplingPeriodUs) {
+        return ((long) sensorType << 32) | (samplingPeriodUs & 0xffffffffL);
+    }
+
+    /**
+     * One framework registration shared by all subscribers of the same sensor and rate.
+     * The consumer array is copied on write so that dispatch never locks or allocates.
+     */
+    private static final class Registration implements SensorEventListener {
+        final Sensor sensor;
+        final int samplingPeriodUs;
+        private final SensorSample sample = new SensorSample();
+        private volatile SensorSampleListener[] consumers = new SensorSampleListener[0];
+
+        Registration(Sensor sensor, int samplingPeriodUs) {
+            this.sensor = sensor;
+            this.samplingPeriodUs = samplingPeriodUs;
+        }
+
+        void add(SensorSampleListener listener) {
+            SensorSampleListener[] current = consumers;
+            for (SensorSampleListener l : current) {
+                if (l == listener) {
+                    return;
+                }
+            }
+            SensorSampleListener[] next = new SensorSampleListener[current.length + 1];
+            System.arraycopy(current, 0, next, 0, current.length);
+            next[current.length] = listener;
+            consumers = next;
+        }
+
+        /** @return true when no subscriber is left */
+        boolean remove(SensorSampleListener listener) {
+            SensorSampleListener[] current = consumers;
+            int index = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == listener) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index >= 0) {
+                SensorSampleListener[] next = new SensorSampleListener[current.length - 1];
+                System.arraycopy(current, 0, next, 0, index);
+                System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+                consumers = next;
+            }
+            return consumers.length == 0;
+        }
+
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            sample.set(event);
+            SensorSampleListener[] targets = consumers;
+            for (int i = 0; i < targets.length; i++) {
+                targets[i].onSensorSample(sample);
+            }
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+            // Accuracy travels with every sample
+        }
+    }
+
+    /**
+     * Batched registration. Events of one FIFO drain arrive back to back on the hub
+     * thread; they are collected and handed over in one call once the drain is over
+     * (the dispatch is queued behind it), when the batch is full, or on flush completion.
+     */
+    private static final class BatchRegistration implements SensorEventListener2, Runnable {
+        private static final int CAPACITY = 256;
+
+        private final Handler handler;
+        private final SensorBatch batch;
+        private boolean dispatchPosted;
+        private volatile SensorBatchListener[] consumers = new SensorBatchListener[0];
+
+        BatchRegistration(Sensor sensor, Handler handler) {
+            this.handler = handler;
+            this.batch = new SensorBatch(sensor.getType(), CAPACITY);
+        }
+
+        void add(SensorBatchListener listener) {
+            SensorBatchListener[] current = consumers;
+            for (SensorBatchListener l : current) {
+                if (l == listener) {
+                    return;
+                }
+            }
+            SensorBatchListener[] next = new SensorBatchListener[current.length + 1];
+            System.arraycopy(current, 0, next, 0, current.length);
+            next[current.length] = listener;
+            consumers = next;
+        }
+
+        /** @return true when no subscriber is left */
+        boolean remove(SensorBatchListener listener) {
+            SensorBatchListener[] current = consumers;
+            int index = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == listener) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index >= 0) {
+                SensorBatchListener[] next = new SensorBatchListener[current.length - 1];
+                System.arraycopy(current, 0, next, 0, index);
+                System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+                consumers = next;
+            }
+            return consumers.length == 0;
+        }
+
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            batch.add(event);
+            if (batch.isFull()) {
+                dispatch();
+            } else if (!dispatchPosted) {
+                dispatchPosted = true;
+                handler.post(this);
+            }
+        }
+
+        @Override
+        public void onFlushCompleted(Sensor sensor) {
+            dispatch();
+            SensorBatchListener[] targets = consumers;
+            for (int i = 0; i < targets.length; i++) {
+                targets[i].onBatchFlushed(batch.sensorType);
+            }
+        }
+
+        @Override
+        public void run() {
+            dispatchPosted = false;
+            dispatch();
+        }
+
+        private void dispatch() {
+            if (batch.count == 0) {
+                return;
+            }
+            SensorBatchListener[] targets = consumers;
+            for (int i = 0; i < targets.length; i++) {
+                targets[i].onSensorBatch(batch);
+            }
+            batch.clear();
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+            // Accuracy travels with every sample
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.iir4g8.tpsensor.sensor;
+
+import android.hardware.SensorEvent;
+
+/**
+ * Mutable holder for a single sensor reading.
+ * <p>
+ * Instances are reused by the producer for every event, so consumers must copy
+ * whatever they need before returning from the callback.
+ */
+public final class SensorSample {
+
+    // Largest value count reported by a platform sensor (rotation vector / uncalibrated types)
+    public static final int MAX_VALUES = 6;
+
+    public int sensorType;
+    public long timestampNanos;
+    public int accuracy;
+    public final float[] values = new float[MAX_VALUES];
+    public int valueCount;
+
+    public void set(SensorEvent event) {
+        sensorType = event.sensor.getType();
+        timestampNanos = event.timestamp;
+        accuracy = event.accuracy;
+        valueCount = Math.min(event.values.length, MAX_VALUES);
+        System.arraycopy(event.values, 0, values, 0, valueCount);
+    }
+
+    public void set(int sensorType, long timestampNanos, int accuracy, float[] source, int count) {
+        this.sensorType = sensorType;
+        this.timestampNanos = timestampNanos;
+        this.accuracy = accuracy;
+        valueCount = Math.min(count, MAX_VALUES);
+        System.arraycopy(source, 0, values, 0, valueCount);
+    }
+}
@@ -0,0 +1,11 @@
+package com.iir4g8.tpsensor.sensor;
+
+/**
+ * Receives readings fanned out by a {@link SensorSource}.
+ * <p>
+ * Callbacks arrive on the hub thread, never on the main thread. The sample is
+ * reused for the next event, so copy what you need.
+ */
+public interface SensorSampleListener {
+    void onSensorSample(SensorSample sample);
+}
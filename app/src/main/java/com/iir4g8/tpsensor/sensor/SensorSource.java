@@ -0,0 +1,20 @@
+package com.iir4g8.tpsensor.sensor;
+
+/**
+ * Anything that delivers {@link SensorSample}s to subscribers: the live
+ * {@link SensorHub}, or a replay of recorded or scripted data. Consumers subscribe
+ * the same way to either and cannot tell them apart.
+ */
+public interface SensorSource {
+
+    /**
+     * @param samplingPeriodUs one of the {@code SensorManager.SENSOR_DELAY_*} constants or a period in microseconds
+     * @return false when the source cannot provide this sensor
+     */
+    boolean subscribe(int sensorType, int samplingPeriodUs, SensorSampleListener listener);
+
+    void unsubscribe(int sensorType, int samplingPeriodUs, SensorSampleListener listener);
+
+    /** Removes the listener from every sensor and rate it is subscribed to. */
+    void unsubscribeAll(SensorSampleListener listener);
+}
@@ -0,0 +1,184 @@
+package com.iir4g8.tpsensor.store;
+
+import com.iir4g8.tpsensor.sensor.SensorBatch;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded hand-off of sample rows from the sensor thread to a database writer.
+ * <p>
+ * Rows live in a preallocated ring, so offering a sample copies a few primitives and
+ * allocates nothing. When the ring is full, {@link #offer} blocks the producer for up
+ * to its timeout: the sensor thread slows down and the framework queues events
+ * upstream instead of the app buffering without bound. Only after the timeout is a
+ * sample dropped and counted. A batch shares one timeout for all of its rows.
+ * <p>
+ * The producer thread is shared with every other sensor subscriber, so it waits once
+ * per stall: after a timeout, offers drop without waiting until the consumer has
+ * drained rows again.
+ * <p>
+ * The consumer wakes once a batch is worth writing: when the first row arrives it
+ * waits up to {@code maxDelayNanos} for {@code batchSize} rows, so a commit covers
+ * many rows even at low rates.
+ */
+final class SampleQueue {
+
+    private final SampleRows ring;
+    private final int batchSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    // Guarded by lock
+    private int head;
+    private int size;
+    private boolean closed;
+    private boolean stalled;
+    private long dropped;
+
+    SampleQueue(int capacity, int batchSize) {
+        this.ring = new SampleRows(capacity);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Queues one row, waiting up to {@code timeoutNanos} for room.
+     *
+     * @return false when the queue is closed or stayed full; the row is dropped
+     */
+    boolean offer(int sensorType, long timestampNanos, int accuracy, float[] values, int offset, int count,
+                  long timeoutNanos) {
+        lock.lock();
+        try {
+            if (awaitRoom(timeoutNanos) < 0L) {
+                dropped++;
+                return false;
+            }
+            if (closed) {
+                return false;
+            }
+            append(sensorType, timestampNanos, accuracy, values, offset, count);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped++;
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues every sample of a batch, its timestamps shifted by {@code timestampOffsetNanos},
+     * waiting up to {@code timeoutNanos} in total for room.
+     *
+     * @return the number of rows queued; the rest of the batch is dropped
+     */
+    int offer(SensorBatch batch, long timestampOffsetNanos, long timeoutNanos) {
+        int queued = 0;
+        lock.lock();
+        try {
+            long remaining = timeoutNanos;
+            for (; queued < batch.count; queued++) {
+                remaining = awaitRoom(remaining);
+                if (remaining < 0L) {
+                    dropped += batch.count - queued;
+                    break;
+                }
+                if (closed) {
+                    break;
+                }
+                append(batch.sensorType, batch.timestamps[queued] + timestampOffsetNanos, batch.accuracies[queued],
+                        batch.values, queued * SensorBatch.STRIDE, batch.valueCount);
+            }
+            return queued;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped += batch.count - queued;
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a free row, unless the queue is closed or already stalled.
+     *
+     * @return the time left to wait, or -1 when the row must be dropped
+     */
+    private long awaitRoom(long remaining) throws InterruptedException {
+        while (size == ring.capacity && !closed) {
+            if (stalled || remaining <= 0L) {
+                stalled = true;
+                return -1L;
+            }
+            remaining = notFull.awaitNanos(remaining);
+        }
+        return Math.max(remaining, 0L);
+    }
+
+    private void append(int sensorType, long timestampNanos, int accuracy, float[] values, int offset, int count) {
+        int tail = head + size < ring.capacity ? head + size : head + size - ring.capacity;
+        ring.set(tail, sensorType, timestampNanos, accuracy, values, offset, count);
+        size++;
+        // Wake the writer for the first row of a batch and once the batch is full
+        if (size == 1 || size == batchSize) {
+            notEmpty.signal();
+        }
+    }
+
+    /**
+     * Moves up to {@code out.capacity} rows into {@code out}. Blocks until a row is
+     * available, then up to {@code maxDelayNanos} more for a full batch.
+     *
+     * @return the number of rows moved, 0 once the queue is closed and empty
+     */
+    int drain(SampleRows out, long maxDelayNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            while (size == 0 && !closed) {
+                notEmpty.await();
+            }
+            long remaining = maxDelayNanos;
+            while (size < batchSize && !closed && remaining > 0L) {
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            int n = Math.min(size, out.capacity);
+            for (int i = 0; i < n; i++) {
+                ring.copy(head, out, i);
+                head = head + 1 == ring.capacity ? 0 : head + 1;
+            }
+            size -= n;
+            out.count = n;
+            if (n > 0) {
+                stalled = false;
+            }
+            notFull.signalAll();
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Refuses new rows and lets the consumer drain what is left without waiting. */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getDroppedCount() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.iir4g8.tpsensor.store;
+
+import com.iir4g8.tpsensor.sensor.SensorSample;
+
+/**
+ * Column-oriented block of sample rows, reused between batches.
+ * Row {@code i} has its values at {@code values[i * STRIDE ...]}.
+ */
+final class SampleRows {
+
+    static final int STRIDE = SensorSample.MAX_VALUES;
+
+    final int capacity;
+    final int[] sensorTypes;
+    final long[] timestamps;
+    final int[] accuracies;
+    final int[] valueCounts;
+    final float[] values;
+    int count;
+
+    SampleRows(int capacity) {
+        this.capacity = capacity;
+        this.sensorTypes = new int[capacity];
+        this.timestamps = new long[capacity];
+        this.accuracies = new int[capacity];
+        this.valueCounts = new int[capacity];
+        this.values = new float[capacity * STRIDE];
+    }
+
+    void set(int row, int sensorType, long timestampNanos, int accuracy, float[] source, int offset, int count) {
+        int n = Math.min(count, STRIDE);
+        sensorTypes[row] = sensorType;
+        timestamps[row] = timestampNanos;
+        accuracies[row] = accuracy;
+        valueCounts[row] = n;
+        System.arraycopy(source, offset, values, row * STRIDE, n);
+    }
+
+    void copy(int row, SampleRows to, int toRow) {
+        to.sensorTypes[toRow] = sensorTypes[row];
+        to.timestamps[toRow] = timestamps[row];
+        to.accuracies[toRow] = accuracies[row];
+        to.valueCounts[toRow] = valueCounts[row];
+        System.arraycopy(values, row * STRIDE, to.values, toRow * STRIDE, valueCounts[row]);
+    }
+}
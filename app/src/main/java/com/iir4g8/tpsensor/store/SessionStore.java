@@ -0,0 +1,188 @@
+package com.iir4g8.tpsensor.store;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * SQLite store of recorded sessions and their samples.
+ *
+ * <pre>
+ * sessions(id, name, started_at, ended_at, sample_count)
+ * samples(session_id, sensor, timestamp, accuracy, v0 .. v5)   index (sensor, timestamp)
+ * </pre>
+ *
+ * Timestamps are wall-clock nanoseconds since the epoch, so ranges can be compared
+ * across sessions and reboots; values a sensor does not report are NULL. The database
+ * runs in write-ahead-log mode: readers never block the writer and a commit is one
+ * sequential append to the log.
+ * <p>
+ * Samples are written through a {@link SessionWriter}, never row by row from the
+ * caller. Queries hit the disk; run them off the main thread.
+ */
+public final class SessionStore extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "sessions.db";
+    private static final int DATABASE_VERSION = 1;
+
+    static final String TABLE_SESSIONS = "sessions";
+    static final String TABLE_SAMPLES = "samples";
+    static final int MAX_VALUES = SampleRows.STRIDE;
+
+    private static SessionStore instance;
+
+    public static synchronized SessionStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new SessionStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private SessionStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_SESSIONS + " ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "name TEXT NOT NULL, "
+                + "started_at INTEGER NOT NULL, "
+                + "ended_at INTEGER, "
+                + "sample_count INTEGER NOT NULL DEFAULT 0)");
+        StringBuilder samples = new StringBuilder("CREATE TABLE " + TABLE_SAMPLES + " ("
+                + "session_id INTEGER NOT NULL, "
+                + "sensor INTEGER NOT NULL, "
+                + "timestamp INTEGER NOT NULL, "
+                + "accuracy INTEGER NOT NULL");
+        for (int i = 0; i < MAX_VALUES; i++) {
+            samples.append(", v").append(i).append(" REAL");
+        }
+        db.execSQL(samples.append(')').toString());
+        db.execSQL("CREATE INDEX samples_sensor_time ON " + TABLE_SAMPLES + " (sensor, timestamp)");
+        db.execSQL("CREATE INDEX samples_session ON " + TABLE_SAMPLES + " (session_id)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SAMPLES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SESSIONS);
+        onCreate(db);
+    }
+
+    /**
+     * Starts recording a session. Subscribe the returned writer to the sensors to
+     * record and close it when done; the session row is created on the writer thread.
+     */
+    public SessionWriter openSession(String name) {
+        SessionWriter writer = new SessionWriter(this, name);
+        writer.start();
+        return writer;
+    }
+
+    /** All sessions, newest first: id, name, started_at, ended_at, sample_count. */
+    public Cursor querySessions() {
+        return getReadableDatabase().rawQuery("SELECT id, name, started_at, ended_at, sample_count FROM "
+                + TABLE_SESSIONS + " ORDER BY started_at DESC", null);
+    }
+
+    /**
+     * Samples of one sensor in a wall-clock range, served from the (sensor, timestamp)
+     * index: session_id, timestamp, accuracy, v0 .. v5, oldest first.
+     */
+    public Cursor querySamples(int sensorType, long fromNanos, long toNanos) {
+        return getReadableDatabase().rawQuery("SELECT session_id, timestamp, accuracy, " + valueColumns()
+                        + " FROM " + TABLE_SAMPLES + " WHERE sensor = ? AND timestamp BETWEEN ? AND ?"
+                        + " ORDER BY timestamp",
+                new String[]{Integer.toString(sensorType), Long.toString(fromNanos), Long.toString(toNanos)});
+    }
+
+    /** Samples of one session, in the order they were written: sensor, timestamp, accuracy, v0 .. v5. */
+    public Cursor querySessionSamples(long sessionId) {
+        return getReadableDatabase().rawQuery("SELECT sensor, timestamp, accuracy, " + valueColumns()
+                + " FROM " + TABLE_SAMPLES + " WHERE session_id = ? ORDER BY rowid",
+                new String[]{Long.toString(sessionId)});
+    }
+
+    /**
+     * Samples of one sensor in one session, oldest first: sensor, timestamp, accuracy,
+     * v0 .. v5, as {@link #querySessionSamples(long)}.
+     */
+    public Cursor querySessionSamples(long sessionId, int sensorType) {
+        return getReadableDatabase().rawQuery("SELECT sensor, timestamp, accuracy, " + valueColumns()
+                        + " FROM " + TABLE_SAMPLES + " WHERE session_id = ? AND sensor = ? ORDER BY timestamp",
+                new String[]{Long.toString(sessionId), Integer.toString(sensorType)});
+    }
+
+    /** Sensor types with at least one stored sample, read from the (sensor, timestamp) index. */
+    public int[] querySensorTypes() {
+        return sensorTypes(getReadableDatabase().rawQuery("SELECT DISTINCT sensor FROM " + TABLE_SAMPLES
+                + " ORDER BY sensor", null));
+    }
+
+    /** Sensor types recorded in one session. */
+    public int[] querySensorTypes(long sessionId) {
+        return sensorTypes(getReadableDatabase().rawQuery("SELECT DISTINCT sensor FROM " + TABLE_SAMPLES
+                + " WHERE session_id = ? ORDER BY sensor", new String[]{Long.toString(sessionId)}));
+    }
+
+    /** Number of rows {@link #querySamples} returns for the same arguments. */
+    public long countSamples(int sensorType, long fromNanos, long toNanos) {
+        return longForQuery("SELECT COUNT(*) FROM " + TABLE_SAMPLES
+                        + " WHERE sensor = ? AND timestamp BETWEEN ? AND ?",
+                new String[]{Integer.toString(sensorType), Long.toString(fromNanos), Long.toString(toNanos)});
+    }
+
+    /** Number of rows {@link #querySessionSamples(long)} returns, also while the session is recording. */
+    public long countSessionSamples(long sessionId) {
+        return longForQuery("SELECT COUNT(*) FROM " + TABLE_SAMPLES + " WHERE session_id = ?",
+                new String[]{Long.toString(sessionId)});
+    }
+
+    public void deleteSession(long sessionId) {
+        SQLiteDatabase db = getWritableDatabase();
+        String[] args = {Long.toString(sessionId)};
+        db.beginTransactionNonExclusive();
+        try {
+            db.delete(TABLE_SAMPLES, "session_id = ?", args);
+            db.delete(TABLE_SESSIONS, "id = ?", args);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static int[] sensorTypes(Cursor cursor) {
+        try {
+            int[] types = new int[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                types[i] = cursor.getInt(0);
+            }
+            return types;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long longForQuery(String sql, String[] args) {
+        Cursor cursor = getReadableDatabase().rawQuery(sql, args);
+        try {
+            return cursor.moveToNext() ? cursor.getLong(0) : 0L;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    static String valueColumns() {
+        StringBuilder columns = new StringBuilder();
+        for (int i = 0; i < MAX_VALUES; i++) {
+            if (i > 0) {
+                columns.append(", ");
+            }
+            columns.append('v').append(i);
+        }
+        return columns.toString();
+    }
+}
@@ -0,0 +1,187 @@
+package com.iir4g8.tpsensor.store;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.iir4g8.tpsensor.sensor.SensorBatch;
+import com.iir4g8.tpsensor.sensor.SensorBatchListener;
+import com.iir4g8.tpsensor.sensor.SensorSample;
+import com.iir4g8.tpsensor.sensor.SensorSampleListener;
+
+/**
+ * Writes the samples of one session into a {@link SessionStore} from its own thread.
+ * <p>
+ * Subscribe it to the {@link com.iir4g8.tpsensor.sensor.SensorHub} like any listener.
+ * Callbacks only copy the sample into a bounded {@link SampleQueue}; the writer thread
+ * takes up to {@link #BATCH_SIZE} rows at a time and inserts them in one transaction
+ * through a single prepared statement, so the cost of a commit is shared by hundreds of
+ * rows. When the disk falls behind, the queue blocks the sensor thread briefly before
+ * dropping samples, see {@link #getDroppedCount()}.
+ */
+public final class SessionWriter implements SensorSampleListener, SensorBatchListener {
+
+    private static final String TAG = "SessionWriter";
+
+    static final int QUEUE_CAPACITY = 8192;
+    static final int BATCH_SIZE = 512;
+    // Longest a sample waits for its batch to fill before being committed anyway
+    private static final long MAX_BATCH_DELAY_NANOS = 500_000_000L;
+    // Longest a sensor callback blocks on a full queue, once per stall of the writer
+    private static final long OFFER_TIMEOUT_NANOS = 50_000_000L;
+
+    private final SessionStore store;
+    private final String name;
+    private final SampleQueue queue = new SampleQueue(QUEUE_CAPACITY, BATCH_SIZE);
+    private final Thread thread;
+    // Sensor timestamps count from boot; stored timestamps from the epoch
+    private final long wallClockOffsetNanos;
+    private final long startedAtMillis;
+
+    private volatile long sessionId = -1L;
+    private volatile long writtenCount;
+
+    SessionWriter(SessionStore store, String name) {
+        this.store = store;
+        this.name = name;
+        this.startedAtMillis = System.currentTimeMillis();
+        this.wallClockOffsetNanos = startedAtMillis * 1_000_000L - SystemClock.elapsedRealtimeNanos();
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                writeLoop();
+            }
+        }, TAG);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /** Row id of the session, -1 until the writer thread has created it. */
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    /** Samples committed so far. */
+    public long getWrittenCount() {
+        return writtenCount;
+    }
+
+    /** Samples lost because the queue stayed full. */
+    public long getDroppedCount() {
+        return queue.getDroppedCount();
+    }
+
+    /**
+     * Stops accepting samples. Queued samples are still committed and the session is
+     * closed on the writer thread; this call does not wait for it.
+     */
+    public void close() {
+        queue.close();
+    }
+
+    /** Waits for the writer thread to finish after {@link #close()}. */
+    public boolean awaitClosed(long timeoutMillis) throws InterruptedException {
+        thread.join(timeoutMillis);
+        return !thread.isAlive();
+    }
+
+    @Override
+    public void onSensorSample(SensorSample sample) {
+        queue.offer(sample.sensorType, sample.timestampNanos + wallClockOffsetNanos, sample.accuracy,
+                sample.values, 0, sample.valueCount, OFFER_TIMEOUT_NANOS);
+    }
+
+    @Override
+    public void onSensorBatch(SensorBatch batch) {
+        // One lock and one timeout for the whole batch, not per row
+        queue.offer(batch, wallClockOffsetNanos, OFFER_TIMEOUT_NANOS);
+    }
+
+    private void writeLoop() {
+        SQLiteDatabase db = null;
+        SQLiteStatement insertSample = null;
+        try {
+            db = store.getWritableDatabase();
+            SQLiteStatement insertSession = db.compileStatement("INSERT INTO " + SessionStore.TABLE_SESSIONS
+                    + " (name, started_at) VALUES (?, ?)");
+            try {
+                insertSession.bindString(1, name);
+                insertSession.bindLong(2, startedAtMillis);
+                sessionId = insertSession.executeInsert();
+            } finally {
+                insertSession.close();
+            }
+
+            StringBuilder sql = new StringBuilder("INSERT INTO " + SessionStore.TABLE_SAMPLES
+                    + " (session_id, sensor, timestamp, accuracy, " + SessionStore.valueColumns() + ") VALUES (?, ?, ?, ?");
+            for (int i = 0; i < SessionStore.MAX_VALUES; i++) {
+                sql.append(", ?");
+            }
+            insertSample = db.compileStatement(sql.append(')').toString());
+            SampleRows rows = new SampleRows(BATCH_SIZE);
+            while (queue.drain(rows, MAX_BATCH_DELAY_NANOS) > 0) {
+                writeBatch(db, insertSample, rows);
+            }
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Interrupted, closing session " + sessionId);
+        } catch (RuntimeException e) {
+            // Disk full, database locked for too long...: stop taking samples
+            Log.e(TAG, "Writing session " + sessionId + " failed", e);
+        } finally {
+            // However the loop ended, including a database that failed to open, the
+            // sensor callbacks must stop waiting for room
+            queue.close();
+            if (insertSample != null) {
+                insertSample.close();
+            }
+            if (db != null && sessionId != -1L) {
+                finishSession(db);
+            }
+        }
+    }
+
+    private void writeBatch(SQLiteDatabase db, SQLiteStatement insert, SampleRows rows) {
+        db.beginTransactionNonExclusive();
+        try {
+            for (int row = 0; row < rows.count; row++) {
+                insert.bindLong(1, sessionId);
+                insert.bindLong(2, rows.sensorTypes[row]);
+                insert.bindLong(3, rows.timestamps[row]);
+                insert.bindLong(4, rows.accuracies[row]);
+                int base = row * SampleRows.STRIDE;
+                for (int i = 0; i < SessionStore.MAX_VALUES; i++) {
+                    if (i < rows.valueCounts[row]) {
+                        insert.bindDouble(5 + i, rows.values[base + i]);
+                    } else {
+                        insert.bindNull(5 + i);
+                    }
+                }
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        writtenCount += rows.count;
+    }
+
+    private void finishSession(SQLiteDatabase db) {
+        SQLiteStatement update = db.compileStatement("UPDATE " + SessionStore.TABLE_SESSIONS
+                + " SET ended_at = ?, sample_count = ? WHERE id = ?");
+        try {
+            update.bindLong(1, System.currentTimeMillis());
+            update.bindLong(2, writtenCount);
+            update.bindLong(3, sessionId);
+            update.executeUpdateDelete();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Unable to close session " + sessionId, e);
+        } finally {
+            update.close();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.iir4g8.tpsensor.ui.chart;
+
+import android.view.MotionEvent;
+
+import com.github.mikephil.charting.charts.LineChart;
+import com.github.mikephil.charting.components.XAxis;
+import com.github.mikephil.charting.data.LineData;
+import com.github.mikephil.charting.listener.ChartTouchListener;
+import com.github.mikephil.charting.listener.OnChartGestureListener;
+import com.iir4g8.tpsensor.data.Downsampler;
+import com.iir4g8.tpsensor.data.TimeSeriesBuffer;
+
+/**
+ * Render stage between a {@link TimeSeriesBuffer} and a {@link LineChart}.
+ * <p>
+ * The chart never receives the raw history. While it follows the newest samples,
+ * points are appended to a {@link SlidingLineDataSet} one by one. When the user
+ * zooms or pans, the visible X range is re-read from the buffer and reduced to
+ * roughly one point per horizontal pixel, so the number of drawn points is bounded
+ * by the screen width instead of the history length.
+ * <p>
+ * X values are buffer sequence numbers counted from an origin. Floats hold integers
+ * exactly only up to 2^24, which a 100 Hz stream passes in under two days, so the
+ * origin moves up to the oldest retained sample whenever the newest X value grows past
+ * {@link #MAX_X}; that happens while following, when the live window is redrawn anyway.
+ * The X axis is pinned to the retained history so that zooming out still reaches
+ * samples that are not in the data set.
+ */
+public final class DownsampledSeries implements OnChartGestureListener {
+
+    // Well below 2^24, so X values and the steps between them stay exact
+    static final long MAX_X = 1L << 22;
+
+    private final LineChart chart;
+    private final TimeSeriesBuffer history;
+    private final SlidingLineDataSet dataSet;
+    private final LineData data;
+    private final Downsampler.Strategy strategy;
+    private final int liveWindow;
+
+    // Scratch space sized to the buffer, reused for every refresh
+    private final float[] rawX;
+    private final float[] rawY;
+    private final float[] outX;
+    private final float[] outY;
+
+    private boolean following = true;
+    private long lastDrawn = -1;
+    // Sequence number drawn at X = 0
+    private long origin;
+
+    /**
+     * @param liveWindow number of X units shown while following the newest samples
+     */
+    public DownsampledSeries(LineChart chart, TimeSeriesBuffer history, String label,
+                             int liveWindow, Downsampler.Strategy strategy) {
+        this.chart = chart;
+        this.history = history;
+        this.strategy = strategy;
+        this.liveWindow = liveWindow;
+        this.dataSet = new SlidingLineDataSet(label, liveWindow + 1);
+        this.data = new LineData(dataSet);
+
+        int capacity = history.capacity();
+        rawX = new float[capacity];
+        rawY = new float[capacity];
+        outX = new float[capacity];
+        outY = new float[capacity];
+
+        chart.setData(data);
+        chart.setOnChartGestureListener(this);
+    }
+
+    /** Takes the chart back after another series drew on it, and redraws the live window. */
+    public void attach() {
+        chart.setData(data);
+        chart.setOnChartGestureListener(this);
+        chart.fitScreen();
+        reset();
+        onAppended();
+    }
+
+    /** The data set drawn by the chart, exposed for styling. */
+    public SlidingLineDataSet getDataSet() {
+        return dataSet;
+    }
+
+    /** Must be called after appending one or more samples to the history buffer. */
+    public void onAppended() {
+        if (history.isEmpty()) {
+            return;
+        }
+        long first = history.getSequence(0);
+        long last = history.appendedCount() - 1;
+        if (following && last - origin > MAX_X) {
+            // Drawn points are relative to the old origin: start the live window over
+            origin = first;
+            dataSet.clear();
+        }
+        pinAxis(first, last);
+
+        if (following) {
+            long next = Math.max(lastDrawn + 1, last - liveWindow);
+            if (dataSet.getEntryCount() > 0 && next >= first
+                    && Math.min(liveWindow + 1, history.size()) <= pixelBudget()) {
+                for (long sequence = next; sequence <= last; sequence++) {
+                    dataSet.append(sequence - origin, history.getValue((int) (sequence - first)));
+                }
+                lastDrawn = last;
+            } else {
+                decimate(Math.max(first, last - liveWindow), last);
+            }
+            notifyChart();
+            chart.setVisibleXRangeMaximum(liveWindow);
+            chart.moveViewToX(last - liveWindow - origin);
+        } else if (chart.getHighestVisibleX() >= last - 1 - origin) {
+            // A zoomed-out view that still shows the newest samples
+            refresh();
+        }
+    }
+
+    /** Forgets the drawn points, to be called together with {@link TimeSeriesBuffer#clear()}. */
+    public void reset() {
+        following = true;
+        lastDrawn = -1;
+        origin = history.isEmpty() ? history.appendedCount() : history.getSequence(0);
+        dataSet.clear();
+        XAxis xAxis = chart.getXAxis();
+        xAxis.resetAxisMinimum();
+        xAxis.resetAxisMaximum();
+        notifyChart();
+    }
+
+    /** Rebuilds the data set from the range currently visible on screen. */
+    public void refresh() {
+        if (history.isEmpty()) {
+            return;
+        }
+        long first = history.getSequence(0);
+        long last = history.appendedCount() - 1;
+
+        // One extra sample on each side so the line reaches the edges
+        long from = Math.max(first, (long) Math.floor(chart.getLowestVisibleX()) + origin - 1);
+        long to = Math.min(last, (long) Math.ceil(chart.getHighestVisibleX()) + origin + 1);
+        if (from > to) {
+            return;
+        }
+        decimate(from, to);
+        notifyChart();
+    }
+
+    private void decimate(long fromSequence, long toSequence) {
+        int from = (int) (fromSequence - history.getSequence(0));
+        int count = (int) (toSequence - fromSequence + 1);
+        history.copyTo(from, count, null, rawY, 0);
+        for (int i = 0; i < count; i++) {
+            rawX[i] = fromSequence + i - origin;
+        }
+        int n = Downsampler.downsample(strategy, rawX, rawY, 0, count, pixelBudget(), outX, outY);
+        dataSet.setPoints(outX, outY, n);
+        lastDrawn = toSequence;
+    }
+
+    private int pixelBudget() {
+        int width = (int) chart.getViewPortHandler().contentWidth();
+        // Not laid out yet: nothing to size against, keep every point
+        return width > 0 ? width : Integer.MAX_VALUE;
+    }
+
+    private void pinAxis(long first, long last) {
+        XAxis xAxis = chart.getXAxis();
+        xAxis.setAxisMinimum(first - origin);
+        xAxis.setAxisMaximum(Math.max(last, first + 1) - origin);
+    }
+
+    private void notifyChart() {
+        chart.getData().notifyDataChanged();
+        chart.notifyDataSetChanged();
+        chart.invalidate();
+    }
+
+    @Override
+    public void onChartGestureStart(MotionEvent me, ChartTouchListener.ChartGesture lastPerformedGesture) {
+        // Stop following and allow zooming out over the whole history
+        following = false;
+        if (history.size() > 1) {
+            chart.setVisibleXRangeMaximum(history.size());
+        }
+    }
+
+    @Override
+    public void onChartGestureEnd(MotionEvent me, ChartTouchListener.ChartGesture lastPerformedGesture) {
+        if (!history.isEmpty() && chart.getHighestVisibleX() >= history.appendedCount() - 1 - origin) {
+            // Back at the newest sample: resume following
+            following = true;
+            long last = history.appendedCount() - 1;
+            decimate(Math.max(history.getSequence(0), last - liveWindow), last);
+            notifyChart();
+        } else {
+            refresh();
+        }
+    }
+
+    @Override
+    public void onChartScale(MotionEvent me, float scaleX, float scaleY) {
+        refresh();
+    }
+
+    @Override
+    public void onChartTranslate(MotionEvent me, float dX, float dY) {
+        refresh();
+    }
+
+    @Override
+    public void onChartDoubleTapped(MotionEvent me) {
+        refresh();
+    }
+
+    @Override
+    public void onChartLongPressed(MotionEvent me) {
+    }
+
+    @Override
+    public void onChartSingleTapped(MotionEvent me) {
+    }
+
+    @Override
+    public void onChartFling(MotionEvent me1, MotionEvent me2, float velocityX, float velocityY) {
+    }
+}
@@ -0,0 +1,47 @@
+package com.iir4g8.tpsensor.ui.chart;
+
+import android.content.Context;
+import android.widget.RadioButton;
+import android.widget.RadioGroup;
+
+import com.iir4g8.tpsensor.data.TieredHistory;
+
+/**
+ * Row of radio buttons choosing how much history a chart shows: the live window,
+ * the last hour or the last day.
+ */
+public final class HistoryRangeBar extends RadioGroup {
+
+    public interface Listener {
+        /** @param spanNanos span to show, 0 for the live window */
+        void onRangeSelected(long spanNanos);
+    }
+
+    private static final String[] LABELS = {"Live", "1 h", "24 h"};
+    private static final long[] SPANS = {0L, TieredHistory.HOUR_NANOS, 24 * TieredHistory.HOUR_NANOS};
+
+    public HistoryRangeBar(Context context, final Listener listener) {
+        super(context);
+        setOrientation(HORIZONTAL);
+        final int[] ids = new int[LABELS.length];
+        for (int i = 0; i < LABELS.length; i++) {
+            RadioButton button = new RadioButton(context);
+            ids[i] = generateViewId();
+            button.setId(ids[i]);
+            button.setText(LABELS[i]);
+            addView(button);
+        }
+        check(ids[0]);
+        setOnCheckedChangeListener(new OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(RadioGroup group, int checkedId) {
+                for (int i = 0; i < ids.length; i++) {
+                    if (ids[i] == checkedId) {
+                        listener.onRangeSelected(SPANS[i]);
+                        return;
+                    }
+                }
+            }
+        });
+    }
+}
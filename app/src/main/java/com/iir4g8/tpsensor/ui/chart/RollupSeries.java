@@ -0,0 +1,127 @@
+package com.iir4g8.tpsensor.ui.chart;
+
+import com.github.mikephil.charting.charts.LineChart;
+import com.github.mikephil.charting.components.XAxis;
+import com.github.mikephil.charting.data.LineData;
+import com.iir4g8.tpsensor.data.Downsampler;
+import com.iir4g8.tpsensor.data.TieredHistory;
+
+/**
+ * Render stage for long time spans of a {@link TieredHistory}.
+ * <p>
+ * While shown, the chart draws the mean of the last {@code span} of sensor time, read
+ * from the tier {@link TieredHistory#selectTier} picks for the chart width and then
+ * reduced to one point per pixel. A day of history therefore costs about as much to
+ * draw as a minute. The chart is redrawn when the newest point enters a new bucket of
+ * that tier, not on every sample.
+ * <p>
+ * X values are minutes before the newest sample. Shares its chart with a
+ * {@link DownsampledSeries}; whichever was attached last owns the chart.
+ */
+public final class RollupSeries {
+
+    private final LineChart chart;
+    private final TieredHistory history;
+    private final SlidingLineDataSet dataSet;
+    private final LineData data;
+    private final Downsampler.Strategy strategy;
+
+    // Scratch space sized to the largest tier, reused for every redraw
+    private final long[] timestamps;
+    private final float[] means;
+    private final float[] rawX;
+    private final float[] outX;
+    private final float[] outY;
+
+    private long spanNanos; // 0 while hidden
+    private int tier;
+    private long drawnUntil;
+
+    public RollupSeries(LineChart chart, TieredHistory history, String label,
+                        Downsampler.Strategy strategy) {
+        this.chart = chart;
+        this.history = history;
+        this.strategy = strategy;
+        this.dataSet = new SlidingLineDataSet(label, 1);
+        this.data = new LineData(dataSet);
+
+        int capacity = history.maxTierSize();
+        timestamps = new long[capacity];
+        means = new float[capacity];
+        rawX = new float[capacity];
+        outX = new float[capacity];
+        outY = new float[capacity];
+    }
+
+    /** The data set drawn by the chart, exposed for styling. */
+    public SlidingLineDataSet getDataSet() {
+        return dataSet;
+    }
+
+    /** Takes over the chart and draws the last {@code spanNanos} of history. */
+    public void show(long spanNanos) {
+        this.spanNanos = spanNanos;
+        chart.setOnChartGestureListener(null);
+        chart.setData(data);
+        XAxis xAxis = chart.getXAxis();
+        xAxis.resetAxisMinimum();
+        xAxis.resetAxisMaximum();
+        chart.fitScreen();
+        render();
+    }
+
+    /** Stops redrawing; the caller hands the chart to another series. */
+    public void hide() {
+        spanNanos = 0L;
+    }
+
+    public boolean isShown() {
+        return spanNanos > 0L;
+    }
+
+    /** Must be called after appending one or more samples to the history. */
+    public void onAppended() {
+        if (!isShown() || history.isEmpty()) {
+            return;
+        }
+        long resolution = history.getResolutionNanos(tier);
+        long latest = history.latestTimestamp();
+        if (resolution > 0L && dataSet.getEntryCount() > 0
+                && Math.floorDiv(latest, resolution) == Math.floorDiv(drawnUntil, resolution)) {
+            return;
+        }
+        render();
+    }
+
+    private void render() {
+        if (history.isEmpty()) {
+            dataSet.clear();
+            notifyChart();
+            return;
+        }
+        long latest = history.latestTimestamp();
+        long from = latest - spanNanos;
+        int budget = pixelBudget();
+        tier = history.selectTier(from, latest, budget);
+        int n = history.read(tier, from, latest, timestamps, null, null, means, 0, timestamps.length);
+        for (int i = 0; i < n; i++) {
+            rawX[i] = (float) (timestamps[i] - latest) / TieredHistory.MINUTE_NANOS;
+        }
+        int m = Downsampler.downsample(strategy, rawX, means, 0, n, budget, outX, outY);
+        dataSet.setPoints(outX, outY, m);
+        drawnUntil = latest;
+        notifyChart();
+    }
+
+    private int pixelBudget() {
+        int width = (int) chart.getViewPortHandler().contentWidth();
+        // Not laid out yet: nothing to size against, keep every point
+        return width > 0 ? width : Integer.MAX_VALUE;
+    }
+
+    private void notifyChart() {
+        chart.getData().notifyDataChanged();
+        chart.notifyDataSetChanged();
+        chart.invalidate();
+    }
+}
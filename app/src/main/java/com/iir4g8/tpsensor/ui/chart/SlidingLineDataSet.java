@@ -0,0 +1,196 @@
+package com.iir4g8.tpsensor.ui.chart;
+
+import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.data.LineDataSet;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Line data set that keeps only the most recent {@code windowSize} points.
+ * <p>
+ * Entries live in a ring, so evicting the oldest point does not shift the others.
+ * Appending reuses the evicted {@link Entry} and updates the cached bounds in
+ * O(1). The window is only rescanned when the evicted point was holding the
+ * current Y minimum or maximum, so the per-sample cost does not depend on how
+ * long the chart has been running.
+ */
+public class SlidingLineDataSet extends LineDataSet {
+
+    private final int windowSize;
+
+    public SlidingLineDataSet(String label, int windowSize) {
+        super(new EntryRing(Math.max(windowSize, 1)), label);
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be positive: " + windowSize);
+        }
+        this.windowSize = windowSize;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void append(float x, float y) {
+        List<Entry> values = getValues();
+        Entry entry;
+        boolean evictedExtreme = false;
+
+        if (values.size() >= windowSize) {
+            entry = values.remove(0);
+            evictedExtreme = entry.getY() <= mYMin || entry.getY() >= mYMax;
+            entry.setX(x);
+            entry.setY(y);
+        } else {
+            entry = new Entry(x, y);
+        }
+        values.add(entry);
+
+        if (evictedExtreme) {
+            // The old extreme left the window: rescan what is left
+            calcMinMax();
+        } else {
+            calcMinMax(entry);
+            mXMin = values.get(0).getX();
+        }
+    }
+
+    /**
+     * Replaces the content with the given points, recycling the existing entries.
+     * The point count is not limited by the window size.
+     */
+    public void setPoints(float[] xs, float[] ys, int count) {
+        List<Entry> values = getValues();
+        int reused = Math.min(count, values.size());
+        for (int i = 0; i < reused; i++) {
+            Entry entry = values.get(i);
+            entry.setX(xs[i]);
+            entry.setY(ys[i]);
+        }
+        for (int i = reused; i < count; i++) {
+            values.add(new Entry(xs[i], ys[i]));
+        }
+        if (values.size() > count) {
+            values.subList(count, values.size()).clear();
+        }
+        calcMinMax();
+    }
+
+    /**
+     * Entry list over a circular array: adding at the end and removing the first entry
+     * are O(1). Inserting or removing elsewhere shifts entries, as an ArrayList does;
+     * the chart library only does that on explicit edits, never while appending.
+     */
+    static final class EntryRing extends AbstractList<Entry> implements RandomAccess {
+
+        private Entry[] entries;
+        private int head;
+        private int size;
+
+        EntryRing(int capacity) {
+            entries = new Entry[capacity];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Entry get(int index) {
+            checkIndex(index, size - 1);
+            return entries[slot(index)];
+        }
+
+        @Override
+        public Entry set(int index, Entry entry) {
+            checkIndex(index, size - 1);
+            int slot = slot(index);
+            Entry previous = entries[slot];
+            entries[slot] = entry;
+            return previous;
+        }
+
+        @Override
+        public void add(int index, Entry entry) {
+            checkIndex(index, size);
+            if (size == entries.length) {
+                grow();
+            }
+            modCount++;
+            if (index == 0) {
+                head = head == 0 ? entries.length - 1 : head - 1;
+            } else {
+                for (int i = size; i > index; i--) {
+                    entries[slot(i)] = entries[slot(i - 1)];
+                }
+            }
+            entries[slot(index)] = entry;
+            size++;
+        }
+
+        @Override
+        public Entry remove(int index) {
+            checkIndex(index, size - 1);
+            modCount++;
+            Entry removed = entries[slot(index)];
+            if (index == 0) {
+                entries[head] = null;
+                head = head + 1 == entries.length ? 0 : head + 1;
+            } else {
+                for (int i = index; i < size - 1; i++) {
+                    entries[slot(i)] = entries[slot(i + 1)];
+                }
+                entries[slot(size - 1)] = null;
+            }
+            size--;
+            return removed;
+        }
+
+        @Override
+        protected void removeRange(int fromIndex, int toIndex) {
+            int removed = toIndex - fromIndex;
+            if (removed <= 0) {
+                return;
+            }
+            modCount++;
+            for (int i = fromIndex; i < size - removed; i++) {
+                entries[slot(i)] = entries[slot(i + removed)];
+            }
+            for (int i = size - removed; i < size; i++) {
+                entries[slot(i)] = null;
+            }
+            size -= removed;
+        }
+
+        @Override
+        public void clear() {
+            modCount++;
+            Arrays.fill(entries, null);
+            head = 0;
+            size = 0;
+        }
+
+        private int slot(int index) {
+            int slot = head + index;
+            return slot < entries.length ? slot : slot - entries.length;
+        }
+
+        private void grow() {
+            Entry[] grown = new Entry[entries.length * 2];
+            for (int i = 0; i < size; i++) {
+                grown[i] = entries[slot(i)];
+            }
+            entries = grown;
+            head = 0;
+        }
+
+        private void checkIndex(int index, int maxIndex) {
+            if (index < 0 || index > maxIndex) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+        }
+    }
+}
@@ -1,44 +1,48 @@
 package com.iir4g8.tpsensor.ui.compass;
 
-import android.content.Context;
-import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.graphics.BitmapFactory;
 import android.os.Bundle;
+import android.os.SystemClock;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.animation.Animation;
-import android.view.animation.RotateAnimation;
-import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.iir4g8.tpsensor.R;
+import com.iir4g8.tpsensor.processing.Quaternions;
+import com.iir4g8.tpsensor.replay.ReplaySession;
+import com.iir4g8.tpsensor.sensor.AttitudeProvider;
+import com.iir4g8.tpsensor.sensor.SensorHub;
+import com.iir4g8.tpsensor.sensor.SensorSource;
+import com.iir4g8.tpsensor.ui.frame.FramePublisher;
+import com.iir4g8.tpsensor.ui.frame.FrameSnapshot;
+import com.iir4g8.tpsensor.ui.text.TextReadout;
 
 /**
  * A simple {@link Fragment} subclass.
  */
-public class CompassFragment extends Fragment implements SensorEventListener {
+public class CompassFragment extends Fragment implements AttitudeProvider.Listener, FramePublisher.Consumer {
 
-    // define the display assembly compass picture
-    private ImageView image;
+    // compass rose, animates towards the latest heading by itself
+    private CompassView compassView;
 
-    // record the compass picture angle turned
-    private float currentDegree = 0f;
+    // shared sensor hub
+    private SensorHub mSensorHub;
 
-    // device sensor manager
-    private SensorManager mSensorManager;
-
-    private Sensor mCompassSensor;
+    // Heading from the cheapest source the device has
+    private AttitudeProvider mAttitude;
 
     TextView tvHeading;
+    private TextReadout headingReadout;
     private boolean sensorAvailable = true;
 
+    // Headings computed on the hub thread, picked up once per display frame
+    private FramePublisher publisher;
+
     public CompassFragment() {
         // Required empty public constructor
     }
@@ -50,11 +54,12 @@ public class CompassFragment extends Fragment implements SensorEventListener {
         View root = inflater.inflate(R.layout.fragment_compass, container, false);
 
         // Make sure we're using the correct image resource
-        image = (ImageView) root.findViewById(R.id.imageViewCompass);
-        image.setImageResource(R.mipmap.compass); // Use compass.png instead of compass1.png if needed
+        compassView = (CompassView) root.findViewById(R.id.compass_view);
+        compassView.setRose(BitmapFactory.decodeResource(getResources(), R.mipmap.compass));
 
         // TextView that will tell the user what degree is he heading
         tvHeading = (TextView) root.findViewById(R.id.tvHeading);
+        headingReadout = new TextReadout(tvHeading);
 
         if (!sensorAvailable) {
             tvHeading.setText("Compass sensor not available on this device");
@@ -67,24 +72,23 @@ public class CompassFragment extends Fragment implements SensorEventListener {
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        mSensorManager = (SensorManager)getActivity().getSystemService(Context.SENSOR_SERVICE);
-
-        // Try to get the orientation sensor first
-        mCompassSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_ORIENTATION);
-
-        // If orientation sensor is not available, try to use the magnetic field and accelerometer sensors
-        if(mCompassSensor == null){
-            // Check if we have the required sensors to calculate orientation
-            Sensor accelerometer = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-            Sensor magnetometer = mSensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
-
-            if (accelerometer != null && magnetometer != null) {
-                // We can calculate orientation using these sensors
-                sensorAvailable = true;
-            } else {
-                sensorAvailable = false;
-                Toast.makeText(getContext(), R.string.message_neg, Toast.LENGTH_LONG).show();
-            }
+        mSensorHub = SensorHub.getInstance(requireContext());
+        publisher = new FramePublisher(1, this);
+
+        // Geomagnetic rotation vector first, then rotation vector, then accelerometer and
+        // magnetometer fused in the app; a replayed recording only has the last
+        SensorSource replay = ReplaySession.getSource();
+        if (replay != null) {
+            mAttitude = new AttitudeProvider(replay, mSensorHub.getHandler(),
+                    AttitudeProvider.selectRecorded(AttitudeProvider.Quantity.HEADING), this);
+            Toast.makeText(getContext(), "Replaying recording " + ReplaySession.getSessionName(),
+                    Toast.LENGTH_SHORT).show();
+        } else {
+            mAttitude = new AttitudeProvider(mSensorHub, AttitudeProvider.Quantity.HEADING, this);
+        }
+        sensorAvailable = mAttitude.isAvailable();
+        if (!sensorAvailable) {
+            Toast.makeText(getContext(), R.string.message_neg, Toast.LENGTH_LONG).show();
         }
     }
 
@@ -92,16 +96,8 @@ public class CompassFragment extends Fragment implements SensorEventListener {
     public void onResume() {
         super.onResume();
         if (sensorAvailable) {
-            if (mCompassSensor != null) {
-                mSensorManager.registerListener(this, mCompassSensor, SensorManager.SENSOR_DELAY_GAME);
-            } else {
-                // Register for both accelerometer and magnetic field sensors
-                Sensor accelerometer = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-                Sensor magnetometer = mSensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
-
-                mSensorManager.registerListener(this, accelerometer, SensorManager.SENSOR_DELAY_GAME);
-                mSensorManager.registerListener(this, magnetometer, SensorManager.SENSOR_DELAY_GAME);
-            }
+            publisher.start();
+            mAttitude.start(SensorManager.SENSOR_DELAY_GAME);
         }
     }
 
@@ -109,90 +105,34 @@ public class CompassFragment extends Fragment implements SensorEventListener {
     public void onPause() {
         super.onPause();
         if (sensorAvailable) {
-            mSensorManager.unregisterListener(this);
+            mAttitude.stop();
+            publisher.stop();
         }
     }
 
-    // Rotation matrix and orientation values for sensor fusion
-    float[] rotationMatrix = new float[9];
-    float[] orientation = new float[3];
-    float[] lastAccelerometer = new float[3];
-    float[] lastMagnetometer = new float[3];
-    boolean hasAccelerometerData = false;
-    boolean hasMagnetometerData = false;
+    // Hub thread scratch
+    private final float[] orientation = new float[3];
 
     @Override
-    public void onSensorChanged(SensorEvent event) {
-        if (event.sensor.getType() == Sensor.TYPE_ORIENTATION) {
-            // Direct orientation sensor (deprecated but still works on many devices)
-            processOrientationSensor(event);
-        } else {
-            // Sensor fusion approach
-            processSensorFusion(event);
-        }
+    public void onAttitude(long timestampNanos, float[] quaternion, float[] angularVelocity) {
+        Quaternions.toOrientation(quaternion, orientation);
+        // Azimuth in degrees, normalized to 0-360
+        float azimuth = (float) Math.toDegrees(orientation[0]);
+        float degree = Math.round(azimuth < 0 ? azimuth + 360 : azimuth);
+        publishHeading(degree);
     }
 
-    private void processOrientationSensor(SensorEvent event) {
-        // Get the angle around the z-axis rotated
-        float degree = Math.round(event.values[0]);
-        tvHeading.setText("Heading: " + Float.toString(degree) + " degrees");
-
-        // Create and start the rotation animation
-        rotateCompassImage(degree);
-    }
-
-    private void processSensorFusion(SensorEvent event) {
-        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-            System.arraycopy(event.values, 0, lastAccelerometer, 0, event.values.length);
-            hasAccelerometerData = true;
-        } else if (event.sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD) {
-            System.arraycopy(event.values, 0, lastMagnetometer, 0, event.values.length);
-            hasMagnetometerData = true;
-        }
-
-        if (hasAccelerometerData && hasMagnetometerData) {
-            SensorManager.getRotationMatrix(rotationMatrix, null, lastAccelerometer, lastMagnetometer);
-            SensorManager.getOrientation(rotationMatrix, orientation);
-
-            // Convert radians to degrees
-            float degree = (float) Math.toDegrees(orientation[0]);
-
-            // Normalize to 0-360
-            if (degree < 0) {
-                degree += 360;
-            }
-
-            degree = Math.round(degree);
-            tvHeading.setText("Heading: " + Float.toString(degree) + " degrees");
-
-            // Create and start the rotation animation
-            rotateCompassImage(degree);
-        }
-    }
-
-    private void rotateCompassImage(float degree) {
-        // Create a rotation animation (reverse turn degree degrees)
-        RotateAnimation ra = new RotateAnimation(
-                currentDegree,
-                -degree,
-                Animation.RELATIVE_TO_SELF, 0.5f,
-                Animation.RELATIVE_TO_SELF, 0.5f);
-
-        // How long the animation will take place
-        ra.setDuration(210);
-
-        // Set the animation after the end of the reservation status
-        ra.setFillAfter(true);
-
-        // Start the animation
-        image.startAnimation(ra);
-
-        // Save current degree for next rotation
-        currentDegree = -degree;
+    private void publishHeading(float degree) {
+        publisher.publish(SystemClock.elapsedRealtimeNanos(), degree);
     }
 
     @Override
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {
-        // Not used
+    public void onFrame(FrameSnapshot snapshot) {
+        // Only the newest heading of the frame matters
+        float degree = snapshot.latest[0];
+        headingReadout.begin().append("Heading: ").append(degree, 0).append(" degrees").commit();
+
+        // Retarget the rose, it keeps animating from wherever it is
+        compassView.setHeading(degree);
     }
 }
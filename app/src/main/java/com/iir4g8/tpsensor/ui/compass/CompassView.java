@@ -0,0 +1,138 @@
+package com.iir4g8.tpsensor.ui.compass;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.View;
+
+import com.iir4g8.tpsensor.processing.HeadingSpring;
+
+/**
+ * Compass rose that turns smoothly towards the latest heading.
+ * <p>
+ * The rose is drawn once into a hardware layer; turning it only changes the view's
+ * rotation property, so the bitmap is neither redrawn nor re-uploaded while it moves.
+ * A {@link HeadingSpring} advances the displayed heading on each {@link Choreographer}
+ * frame until it settles, then the frame callbacks stop. New headings only move the
+ * spring's target, whatever the animation is doing.
+ */
+public class CompassView extends View implements Choreographer.FrameCallback {
+
+    // Natural frequency of the spring, settles in roughly a quarter of a second
+    private static final float SPRING_OMEGA = 16f;
+    private static final float NANOS_TO_SECONDS = 1e-9f;
+    // Frame gaps longer than this (first frame, stalls) are treated as one frame
+    private static final float MAX_FRAME_SECONDS = 0.05f;
+    private static final float DEFAULT_FRAME_SECONDS = 1f / 60f;
+
+    private final HeadingSpring spring = new HeadingSpring(SPRING_OMEGA);
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect destination = new Rect();
+
+    private Bitmap rose;
+    private boolean animating;
+    private boolean hasHeading;
+    private long lastFrameNanos;
+
+    public CompassView(Context context) {
+        super(context);
+        init();
+    }
+
+    public CompassView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    private void init() {
+        // Rotation becomes a property of the cached layer, not a redraw
+        setLayerType(LAYER_TYPE_HARDWARE, null);
+    }
+
+    public void setRose(Bitmap rose) {
+        this.rose = rose;
+        updateDestination(getWidth(), getHeight());
+        invalidate();
+    }
+
+    /**
+     * Sets the heading in degrees the rose turns towards. North on the rose ends up
+     * pointing at magnetic north.
+     */
+    public void setHeading(float degrees) {
+        if (!hasHeading) {
+            // Nothing to animate from yet
+            hasHeading = true;
+            spring.reset(degrees);
+            setRotation(-spring.getHeading());
+            return;
+        }
+        spring.setTarget(degrees);
+        if (!animating && isAttachedToWindow()) {
+            animating = true;
+            lastFrameNanos = 0L;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        float seconds = lastFrameNanos == 0L
+                ? DEFAULT_FRAME_SECONDS
+                : (frameTimeNanos - lastFrameNanos) * NANOS_TO_SECONDS;
+        if (seconds <= 0f || seconds > MAX_FRAME_SECONDS) {
+            seconds = DEFAULT_FRAME_SECONDS;
+        }
+        lastFrameNanos = frameTimeNanos;
+
+        boolean moving = spring.step(seconds);
+        setRotation(-spring.getHeading());
+        if (moving) {
+            Choreographer.getInstance().postFrameCallback(this);
+        } else {
+            animating = false;
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (animating) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            animating = false;
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateDestination(w, h);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        // Only runs when the layer is (re)built, not while the rose turns
+        if (rose != null) {
+            canvas.drawBitmap(rose, null, destination, paint);
+        }
+    }
+
+    private void updateDestination(int width, int height) {
+        if (rose == null || width == 0 || height == 0) {
+            return;
+        }
+        // Fit the rose, keeping its aspect, in the largest centered square so that it
+        // turns about its center without being clipped
+        int size = Math.min(width, height);
+        float scale = Math.min((float) size / rose.getWidth(), (float) size / rose.getHeight());
+        int roseWidth = Math.round(rose.getWidth() * scale);
+        int roseHeight = Math.round(rose.getHeight() * scale);
+        int left = (width - roseWidth) / 2;
+        int top = (height - roseHeight) / 2;
+        destination.set(left, top, left + roseWidth, top + roseHeight);
+    }
+}
@@ -0,0 +1,105 @@
+package com.iir4g8.tpsensor.ui.frame;
+
+import android.view.Choreographer;
+
+/**
+ * Hands sensor samples to the views at most once per display frame.
+ * <p>
+ * Producers on any thread call {@link #publish}; every sample is kept. The first
+ * sample after a frame schedules a {@link Choreographer} callback, and on that
+ * frame the consumer receives all samples gathered since the previous one in a
+ * single {@link FrameSnapshot}. Processing stays lossless while view work is
+ * capped at the refresh rate.
+ * <p>
+ * Two snapshots are swapped between the producer and the main thread, so steady
+ * state publishing does not allocate.
+ */
+public final class FramePublisher implements Choreographer.FrameCallback {
+
+    public interface Consumer {
+        /** Called on the main thread. */
+        void onFrame(FrameSnapshot snapshot);
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Choreographer choreographer;
+    private final Consumer consumer;
+    private final int channels;
+    private final float[] single = new float[1];
+
+    private final Object lock = new Object();
+    private FrameSnapshot back;   // filled by producers, guarded by lock
+    private FrameSnapshot front;  // read by the consumer on the main thread
+    private boolean scheduled;
+    private boolean running;
+
+    /** Must be created on the main thread. */
+    public FramePublisher(int channels, Consumer consumer) {
+        this.choreographer = Choreographer.getInstance();
+        this.consumer = consumer;
+        this.channels = channels;
+        this.back = new FrameSnapshot(channels, INITIAL_CAPACITY);
+        this.front = new FrameSnapshot(channels, INITIAL_CAPACITY);
+    }
+
+    public void start() {
+        synchronized (lock) {
+            running = true;
+        }
+    }
+
+    /** Drops pending samples and cancels the frame callback. */
+    public void stop() {
+        synchronized (lock) {
+            running = false;
+            back.reset();
+            if (scheduled) {
+                scheduled = false;
+                choreographer.removeFrameCallback(this);
+            }
+        }
+    }
+
+    public void publish(long timestampNanos, float value) {
+        synchronized (lock) {
+            single[0] = value;
+            publishLocked(timestampNanos, single, 0);
+        }
+    }
+
+    /** Publishes {@code channels} values starting at {@code offset}. */
+    public void publish(long timestampNanos, float[] values, int offset) {
+        synchronized (lock) {
+            publishLocked(timestampNanos, values, offset);
+        }
+    }
+
+    private void publishLocked(long timestampNanos, float[] values, int offset) {
+        if (!running) {
+            return;
+        }
+        back.add(timestampNanos, values, offset);
+        if (!scheduled) {
+            scheduled = true;
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        FrameSnapshot ready;
+        synchronized (lock) {
+            scheduled = false;
+            if (!running || back.count == 0) {
+                return;
+            }
+            ready = back;
+            back = front;
+            back.reset();
+            front = ready;
+        }
+        ready.frameTimeNanos = frameTimeNanos;
+        consumer.onFrame(ready);
+    }
+}
@@ -0,0 +1,78 @@
+package com.iir4g8.tpsensor.ui.frame;
+
+/**
+ * Samples collected between two display frames.
+ * <p>
+ * Values are interleaved per sample: with 3 channels, sample {@code i} occupies
+ * {@code values[3 * i]} to {@code values[3 * i + 2]}. {@link #latest}, {@link #min}
+ * and {@link #max} are per channel and cover this frame's samples only.
+ * <p>
+ * A snapshot is only valid for the duration of {@link FramePublisher.Consumer#onFrame}.
+ */
+public final class FrameSnapshot {
+
+    public final int channels;
+    public long frameTimeNanos;
+    public int count;
+    public long[] timestamps;
+    public float[] values;
+    public final float[] latest;
+    public final float[] min;
+    public final float[] max;
+
+    FrameSnapshot(int channels, int initialCapacity) {
+        this.channels = channels;
+        this.timestamps = new long[initialCapacity];
+        this.values = new float[initialCapacity * channels];
+        this.latest = new float[channels];
+        this.min = new float[channels];
+        this.max = new float[channels];
+        reset();
+    }
+
+    public float value(int sample, int channel) {
+        return values[sample * channels + channel];
+    }
+
+    public long latestTimestamp() {
+        return timestamps[count - 1];
+    }
+
+    void add(long timestampNanos, float[] source, int offset) {
+        if (count == timestamps.length) {
+            grow();
+        }
+        timestamps[count] = timestampNanos;
+        int base = count * channels;
+        for (int c = 0; c < channels; c++) {
+            float v = source[offset + c];
+            values[base + c] = v;
+            latest[c] = v;
+            if (v < min[c]) {
+                min[c] = v;
+            }
+            if (v > max[c]) {
+                max[c] = v;
+            }
+        }
+        count++;
+    }
+
+    void reset() {
+        count = 0;
+        for (int c = 0; c < channels; c++) {
+            min[c] = Float.POSITIVE_INFINITY;
+            max[c] = Float.NEGATIVE_INFINITY;
+        }
+    }
+
+    private void grow() {
+        // Only happens when the main thread stalls for many frames; nothing is dropped
+        long[] newTimestamps = new long[timestamps.length * 2];
+        System.arraycopy(timestamps, 0, newTimestamps, 0, count);
+        timestamps = newTimestamps;
+        float[] newValues = new float[values.length * 2];
+        System.arraycopy(values, 0, newValues, 0, count * channels);
+        values = newValues;
+    }
+}
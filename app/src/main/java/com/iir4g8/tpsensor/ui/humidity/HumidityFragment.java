@@ -1,43 +1,63 @@
 package com.iir4g8.tpsensor.ui.humidity;
 
-import android.content.Context;
 import android.graphics.Color;
 import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
-import android.hardware.SensorManager;
 import android.os.Bundle;
-import android.os.Handler;
-import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.LinearLayout;
 import android.widget.TextView;
-import android.widget.Toast;
 
 import com.github.mikephil.charting.charts.LineChart;
-import com.github.mikephil.charting.components.XAxis;
-import com.github.mikephil.charting.data.Entry;
-import com.github.mikephil.charting.data.LineData;
-import com.github.mikephil.charting.data.LineDataSet;
-
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.Random;
 
 import com.iir4g8.tpsensor.R;
-
-public class HumidityFragment extends Fragment implements SensorEventListener {
+import com.iir4g8.tpsensor.data.Downsampler;
+import com.iir4g8.tpsensor.data.TieredHistory;
+import com.iir4g8.tpsensor.processing.RateController;
+import com.iir4g8.tpsensor.replay.ReplaySession;
+import com.iir4g8.tpsensor.replay.ReplaySource;
+import com.iir4g8.tpsensor.replay.ScriptedStream;
+import com.iir4g8.tpsensor.replay.Waveform;
+import com.iir4g8.tpsensor.sensor.AdaptiveSubscription;
+import com.iir4g8.tpsensor.sensor.SensorHistories;
+import com.iir4g8.tpsensor.sensor.SensorHub;
+import com.iir4g8.tpsensor.sensor.SensorSample;
+import com.iir4g8.tpsensor.sensor.SensorSampleListener;
+import com.iir4g8.tpsensor.sensor.SensorSource;
+import com.iir4g8.tpsensor.ui.chart.DownsampledSeries;
+import com.iir4g8.tpsensor.ui.chart.HistoryRangeBar;
+import com.iir4g8.tpsensor.ui.chart.RollupSeries;
+import com.iir4g8.tpsensor.ui.frame.FramePublisher;
+import com.iir4g8.tpsensor.ui.frame.FrameSnapshot;
+
+public class HumidityFragment extends Fragment implements SensorSampleListener, FramePublisher.Consumer,
+        HistoryRangeBar.Listener {
     private LineChart chart;
-    private SensorManager mSensorManager;
+    private SensorHub mSensorHub;
     private Sensor mHumidSensor;
-    static ArrayList<Entry> entries = new ArrayList<>();
+    private static final int HISTORY_CAPACITY = 4096; // Samples kept in memory
+    private static final int CHART_WINDOW = 300; // Points shown on the live chart
+    private static final long MOCK_PERIOD_NANOS = 1_000_000_000L; // One simulated reading per second
+    private static final long MOCK_SEED = 1L;
+    // Sampling steps down from SENSOR_DELAY_NORMAL to 1 s and 5 s while the reading is flat
+    private static final int[] SAMPLING_PERIODS_US = {200_000, 1_000_000, 5_000_000};
+    private static final float ACTIVE_RATE = 0.5f; // % RH per second
+    private static final float QUIET_RATE = 0.1f;
+    private static final long QUIET_HOLD_NANOS = 10_000_000_000L;
+    private static final float ACTIVITY_SMOOTHING_SECONDS = 2f;
+    // Raw samples plus 1 s, 1 min and 1 h rollups. Device readings go to the app-wide
+    // history, which outlives this screen; replayed and simulated ones stay here
+    private TieredHistory history;
+    private DownsampledSeries series;
+    private RollupSeries rollups;
     private boolean useMockData = false;
-    private Handler mockDataHandler;
-    private Random random = new Random();
+    private String replayedSession; // Null unless a recording is replayed
+    private SensorSource source;
+    private AdaptiveSubscription subscription;
+    private FramePublisher publisher;
     private TextView statusText;
 
     public HumidityFragment() {
@@ -47,13 +67,29 @@ public class HumidityFragment extends Fragment implements SensorEventListener {
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        mSensorManager = (SensorManager)getActivity().getSystemService(Context.SENSOR_SERVICE);
-        mHumidSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_RELATIVE_HUMIDITY);
-
-        if(mHumidSensor == null){
+        mSensorHub = SensorHub.getInstance(requireContext());
+        mHumidSensor = mSensorHub.getDefaultSensor(Sensor.TYPE_RELATIVE_HUMIDITY);
+        publisher = new FramePublisher(1, this);
+
+        SensorSource replay = ReplaySession.getSource();
+        if (replay != null) {
+            replayedSession = ReplaySession.getSessionName();
+            source = replay;
+        } else if(mHumidSensor == null){
             useMockData = true;
-            mockDataHandler = new Handler();
+            // Scripted humidity between 30-70%, replayed through the hub thread like real readings
+            source = new ReplaySource(mSensorHub.getHandler(),
+                    new ScriptedStream(Sensor.TYPE_RELATIVE_HUMIDITY, MOCK_PERIOD_NANOS, MOCK_SEED,
+                            Waveform.uniform(30f, 70f)), 1f);
+        } else {
+            source = mSensorHub;
         }
+        history = source == mSensorHub
+                ? SensorHistories.getInstance().get(Sensor.TYPE_RELATIVE_HUMIDITY)
+                : TieredHistory.withDefaultTiers(HISTORY_CAPACITY);
+        subscription = new AdaptiveSubscription(source, Sensor.TYPE_RELATIVE_HUMIDITY,
+                new RateController(SAMPLING_PERIODS_US, ACTIVE_RATE, QUIET_RATE,
+                        QUIET_HOLD_NANOS, ACTIVITY_SMOOTHING_SECONDS), this);
     }
 
     @Override
@@ -63,12 +99,25 @@ public class HumidityFragment extends Fragment implements SensorEventListener {
         View root = inflater.inflate(R.layout.fragment_humidity, container, false);
         chart = (LineChart) root.findViewById(R.id.chart);
 
+        // One data set for the lifetime of the view, fed through the downsampling stage
+        series = new DownsampledSeries(chart, history.getRaw(), "Humidity - Time series",
+                CHART_WINDOW, Downsampler.Strategy.LTTB);
+        series.getDataSet().setColor(Color.BLUE);
+        series.getDataSet().setValueTextColor(Color.BLACK);
+        rollups = new RollupSeries(chart, history, "Humidity - minutes ago",
+                Downsampler.Strategy.LTTB);
+        rollups.getDataSet().setColor(Color.BLUE);
+        rollups.getDataSet().setValueTextColor(Color.BLACK);
+
         // Add a status text view to show if we're using mock data
         statusText = new TextView(getContext());
         statusText.setTextSize(16);
         statusText.setPadding(20, 20, 20, 20);
 
-        if (useMockData) {
+        if (replayedSession != null) {
+            statusText.setText("Replaying recording " + replayedSession);
+            statusText.setTextColor(Color.BLUE);
+        } else if (useMockData) {
             statusText.setText("Humidity sensor not available. Showing simulated data.");
             statusText.setTextColor(Color.RED);
         } else {
@@ -76,70 +125,63 @@ public class HumidityFragment extends Fragment implements SensorEventListener {
             statusText.setTextColor(Color.GREEN);
         }
 
-        // Add the status text to the layout
+        // Status text and the Live / 1 h / 24 h selector above the chart
+        LinearLayout header = new LinearLayout(getContext());
+        header.setOrientation(LinearLayout.VERTICAL);
+        header.addView(statusText);
+        header.addView(new HistoryRangeBar(getContext(), this));
         ViewGroup parent = (ViewGroup) chart.getParent();
-        parent.addView(statusText, 0);
+        parent.addView(header, 0);
 
         return root;
     }
 
-    private void addEntry(float value) {
-        entries.add(new Entry(entries.size(), value));
-
-        LineDataSet dataSet = new LineDataSet(entries, "Humidity - Time series");
-        dataSet.setColor(Color.BLUE);
-        dataSet.setValueTextColor(Color.BLACK);
-
-        LineData data = new LineData(dataSet);
-        Log.d("size", entries.size()+"");
-
-        chart.setData(data);
-        chart.notifyDataSetChanged();
-        chart.invalidate();
-    }
-
-    private void generateMockData() {
-        // Generate humidity between 30-70%
-        float mockHumidity = 30 + random.nextFloat() * 40;
-        addEntry(mockHumidity);
-
-        // Schedule next update
-        mockDataHandler.postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                generateMockData();
-            }
-        }, 1000); // Update every second
+    @Override
+    public void onFrame(FrameSnapshot snapshot) {
+        for (int i = 0; i < snapshot.count; i++) {
+            // Skips what the recording service already added
+            SensorHistories.appendNewer(history, snapshot.timestamps[i], snapshot.values[i]);
+        }
+        // One chart update per display frame
+        if (rollups.isShown()) {
+            rollups.onAppended();
+        } else {
+            series.onAppended();
+        }
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        entries.clear();
-
-        if (useMockData) {
-            generateMockData();
-        } else {
-            mSensorManager.registerListener(this, mHumidSensor, SensorManager.SENSOR_DELAY_NORMAL);
+        // The history is kept, only the live window is redrawn
+        if (!rollups.isShown()) {
+            series.reset();
         }
+
+        publisher.start();
+        subscription.start();
     }
 
     @Override
     public void onPause() {
         super.onPause();
-        if (useMockData) {
-            mockDataHandler.removeCallbacksAndMessages(null);
-        } else {
-            mSensorManager.unregisterListener(this);
-        }
-        entries.clear();
+        subscription.stop();
+        publisher.stop();
     }
 
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {
-        // Not used
+    @Override
+    public void onRangeSelected(long spanNanos) {
+        if (spanNanos == 0L) {
+            rollups.hide();
+            series.attach();
+        } else {
+            rollups.show(spanNanos);
+        }
     }
 
-    public void onSensorChanged(SensorEvent event) {
-        addEntry(event.values[0]);
+    @Override
+    public void onSensorSample(SensorSample sample) {
+        // Hub thread: queue the reading for the next display frame
+        publisher.publish(sample.timestampNanos, sample.values[0]);
     }
 }
\ No newline at end of file
@@ -1,55 +1,76 @@
 package com.iir4g8.tpsensor.ui.magnetic;
 
 
-import android.content.Context;
 import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
-import android.media.AudioManager;
-import android.media.MediaPlayer;
-import android.media.Ringtone;
-import android.media.RingtoneManager;
-import android.net.Uri;
 import android.os.Bundle;
 
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.CompoundButton;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.github.mikephil.charting.charts.LineChart;
-import com.github.mikephil.charting.components.XAxis;
-import com.github.mikephil.charting.data.Entry;
-import com.github.mikephil.charting.data.LineData;
-import com.github.mikephil.charting.data.LineDataSet;
-
-import java.io.IOException;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.Locale;
 
 import com.iir4g8.tpsensor.R;
+import com.iir4g8.tpsensor.processing.SpectrumAnalyzer;
+import com.iir4g8.tpsensor.processing.StreamingStats;
+import com.iir4g8.tpsensor.processing.VectorMath;
+import com.iir4g8.tpsensor.data.Downsampler;
+import com.iir4g8.tpsensor.data.TimeSeriesBuffer;
+import com.iir4g8.tpsensor.replay.ReplaySession;
+import com.iir4g8.tpsensor.sensor.SensorHub;
+import com.iir4g8.tpsensor.sensor.SensorSample;
+import com.iir4g8.tpsensor.sensor.SensorSampleListener;
+import com.iir4g8.tpsensor.sensor.SensorSource;
+import com.iir4g8.tpsensor.ui.chart.DownsampledSeries;
+import com.iir4g8.tpsensor.ui.frame.FramePublisher;
+import com.iir4g8.tpsensor.ui.frame.FrameSnapshot;
+import com.iir4g8.tpsensor.ui.text.TextReadout;
 
 /**
  * A simple {@link Fragment} subclass.
  */
-public class MagneticFragment extends Fragment implements SensorEventListener {
-    private SensorManager mSensorManager;
+public class MagneticFragment extends Fragment implements SensorSampleListener, FramePublisher.Consumer {
+    private SensorHub mSensorHub;
+    private SensorSource source; // The hub, or the replayed recording
     private Sensor mMagneticSensor;
-    public static DecimalFormat DECIMAL_FORMATTER;
-    static ArrayList<Entry> entries = new ArrayList<>();
+    private static final int HISTORY_CAPACITY = 4096; // Samples kept in memory
+    private static final int CHART_WINDOW = 300; // Points shown on the live chart
+    private static final long STATS_WINDOW_NANOS = 10_000_000_000L; // Range shown under the value
+    private final TimeSeriesBuffer history = new TimeSeriesBuffer(HISTORY_CAPACITY);
+    private final StreamingStats stats = StreamingStats.ofDuration(STATS_WINDOW_NANOS, HISTORY_CAPACITY);
+    private DownsampledSeries series;
     private LineChart chart;
+    private FramePublisher publisher;
 
 
     private TextView value;
+    private TextReadout valueReadout;
+
+    // Spectrum mode: per-axis spectra of 128 samples every 32 (75 % overlap), about
+    // three waterfall rows a second at 100 Hz, computed on the hub thread
+    private static final int SPECTRUM_WINDOW = 128;
+    private static final int SPECTRUM_HOP = 32;
+    private final SpectrumAnalyzer spectrum = new SpectrumAnalyzer(3, SPECTRUM_WINDOW, SPECTRUM_HOP, 8);
+    private WaterfallView waterfall;
+    private volatile boolean spectrumMode;
+    private volatile float peakHz;
+    private volatile float spectrumRateHz;
+    private final Runnable resetSpectrum = new Runnable() {
+        @Override
+        public void run() {
+            spectrum.reset();
+            peakHz = 0f;
+            spectrumRateHz = 0f;
+            waterfall.clear();
+        }
+    };
 
     public MagneticFragment() {
         // Required empty public constructor
@@ -58,26 +79,39 @@ public class MagneticFragment extends Fragment implements SensorEventListener {
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        mSensorManager = (SensorManager)getActivity().getSystemService(Context.SENSOR_SERVICE);
-        mMagneticSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
-        if(mMagneticSensor == null){
+        mSensorHub = SensorHub.getInstance(requireContext());
+        mMagneticSensor = mSensorHub.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
+        publisher = new FramePublisher(1, this);
+        SensorSource replay = ReplaySession.getSource();
+        if (replay != null) {
+            // Recorded at 50 Hz, whatever rate is asked for
+            source = replay;
+            Toast.makeText(getContext(), "Replaying recording " + ReplaySession.getSessionName(),
+                    Toast.LENGTH_SHORT).show();
+        } else {
+            source = mSensorHub;
+        }
+        if(source == mSensorHub && mMagneticSensor == null){
             Toast.makeText(getContext(), R.string.message_neg, Toast.LENGTH_LONG).show();
         }
     }
 
-    private void addEntry(double value) {
-        Date d = new Date();
-        entries.add(new Entry(entries.size(), (float) value));
-        LineDataSet dataSet = new LineDataSet(entries, "Magnetic - Time series");
-        LineData data = new LineData(dataSet);
-        Log.d("size", entries.size()+"");
-        XAxis xAxis = chart.getXAxis();
-        chart.setData(data);
-        chart.notifyDataSetChanged();
-        // chart.animateX(900000000);
-        //refresh
-        chart.invalidate();
-
+    @Override
+    public void onFrame(FrameSnapshot snapshot) {
+        for (int i = 0; i < snapshot.count; i++) {
+            history.append(snapshot.timestamps[i], snapshot.values[i]);
+            stats.add(snapshot.timestamps[i], snapshot.values[i]);
+        }
+        // set value on the screen, once per display frame
+        valueReadout.begin().append(snapshot.latest[0], 3).append(" \u00B5Tesla")
+                .append("\n10 s: ").append(stats.getMin(), 1)
+                .append(" - ").append(stats.getMax(), 1);
+        if (spectrumMode && spectrumRateHz > 0f) {
+            valueReadout.append("\nStrongest line: ").append(peakHz, 1)
+                    .append(" Hz at ").append(spectrumRateHz, 0).append(" Hz");
+        }
+        valueReadout.commit();
+        series.onAppended();
     }
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
@@ -85,41 +119,75 @@ public class MagneticFragment extends Fragment implements SensorEventListener {
         // Inflate the layout for this fragment
         View root =  inflater.inflate(R.layout.fragment_magnetic, container, false);
         value = (TextView) root.findViewById(R.id.value);
+        valueReadout = new TextReadout(value, 96);
         chart = (LineChart) root.findViewById(R.id.chart);
-        // define decimal formatter
-        DecimalFormatSymbols symbols = new DecimalFormatSymbols(Locale.US);
-        symbols.setDecimalSeparator('.');
-        DECIMAL_FORMATTER = new DecimalFormat("#.000", symbols);
+        // One data set for the lifetime of the view, fed through the downsampling stage
+        series = new DownsampledSeries(chart, history, "Magnetic - Time series",
+                CHART_WINDOW, Downsampler.Strategy.LTTB);
+        waterfall = (WaterfallView) root.findViewById(R.id.waterfall);
+        waterfall.configure(spectrum.getChannelCount(), spectrum.getBinCount());
+        waterfall.setVisibility(spectrumMode ? View.VISIBLE : View.GONE);
+        CompoundButton spectrumToggle = (CompoundButton) root.findViewById(R.id.spectrum_toggle);
+        spectrumToggle.setChecked(spectrumMode);
+        spectrumToggle.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton button, boolean checked) {
+                setSpectrumMode(checked);
+            }
+        });
         return root;
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        mSensorManager.registerListener(this, mMagneticSensor, SensorManager.SENSOR_DELAY_NORMAL);
-        entries.clear();
+        publisher.start();
+        subscribe();
+        history.clear();
+        stats.reset();
+        series.reset();
     }
 
     @Override
     public void onPause() {
         super.onPause();
-        mSensorManager.unregisterListener(this);
-        entries.clear();
+        source.unsubscribeAll(this);
+        publisher.stop();
+        history.clear();
     }
 
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    private void setSpectrumMode(boolean enabled) {
+        spectrumMode = enabled;
+        waterfall.setVisibility(enabled ? View.VISIBLE : View.GONE);
+        if (isResumed()) {
+            // Same listener, new rate
+            source.unsubscribeAll(this);
+            subscribe();
+        }
+    }
 
+    private void subscribe() {
+        if (spectrumMode) {
+            // Start from an empty window, on the thread that feeds the analyzer
+            mSensorHub.getHandler().post(resetSpectrum);
+        }
+        // Spectral lines need every sample the sensor can give; the plain chart does not.
+        // Above 200 Hz needs HIGH_SAMPLING_RATE_SENSORS, declared in the manifest
+        source.subscribe(Sensor.TYPE_MAGNETIC_FIELD,
+                spectrumMode ? SensorManager.SENSOR_DELAY_FASTEST : SensorManager.SENSOR_DELAY_NORMAL, this);
     }
 
-    public void onSensorChanged(SensorEvent event) {
-        if (event.sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD) {
-            float magX = event.values[0];
-            float magY = event.values[1];
-            float magZ = event.values[2];
-            double magnitude = Math.sqrt((magX * magX) + (magY * magY) + (magZ * magZ));
-            // set value on the screen
-            value.setText(DECIMAL_FORMATTER.format(magnitude) + " \u00B5Tesla");
-            addEntry(magnitude);
+    @Override
+    public void onSensorSample(SensorSample sample) {
+        if (sample.sensorType == Sensor.TYPE_MAGNETIC_FIELD) {
+            // Magnitude is computed on the hub thread, the UI picks it up on the next frame
+            float magnitude = VectorMath.magnitude(sample.values[0], sample.values[1], sample.values[2]);
+            publisher.publish(sample.timestampNanos, magnitude);
+            if (spectrumMode && spectrum.add(sample.timestampNanos, sample.values, 0)) {
+                peakHz = spectrum.getBinFrequency(spectrum.getPeakBin());
+                spectrumRateHz = spectrum.getSampleRate();
+                waterfall.addRow(spectrum);
+            }
         }
     }
 }
@@ -0,0 +1,165 @@
+package com.iir4g8.tpsensor.ui.magnetic;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.AttributeSet;
+import android.view.View;
+
+import com.iir4g8.tpsensor.processing.SpectrumAnalyzer;
+
+/**
+ * Scrolling spectrogram: one row per spectrum frame, newest at the top, the channels of
+ * a frame side by side from 0 Hz to the Nyquist frequency.
+ * <p>
+ * Every row is a bitmap of its own, one pixel high, in a ring of {@link #ROWS}. A new
+ * frame is colour-mapped into the oldest row on the thread that computed it, then the
+ * ring moves on; drawing blits the rows stretched to the view. Scrolling never copies or
+ * redraws older rows, and with hardware rendering only the new row is uploaded. The
+ * row being written is never among the rows drawn.
+ * <p>
+ * Colours span {@link #RANGE_DB} under a ceiling that follows the strongest bin: it
+ * rises at once and falls slowly, so a line that appears stands out at full colour.
+ */
+public class WaterfallView extends View {
+
+    static final int ROWS = 128;
+    private static final float RANGE_DB = 50f;
+    private static final float CEILING_DECAY_DB = 0.05f;
+    // Power floor, keeps log10 finite for empty bins
+    private static final float MIN_POWER = 1e-12f;
+    private static final int SEPARATOR_COLOR = 0xFF404040;
+
+    private static final int[] PALETTE = buildPalette();
+
+    private final Bitmap[] rows = new Bitmap[ROWS];
+    private final Paint paint = new Paint();
+    private final Rect source = new Rect();
+    private final Rect destination = new Rect();
+
+    // Written by the producer thread only
+    private int[] pixels;
+    private float[] levels;
+    private float ceilingDb = Float.NaN;
+
+    private int channels;
+    private int bins;
+    private int rowWidth;
+    private volatile int newest = ROWS - 1;
+    private volatile int filled;
+
+    public WaterfallView(Context context) {
+        super(context);
+    }
+
+    public WaterfallView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    /**
+     * Sizes the rows for {@code channels} spectra of {@code bins} bins and clears the
+     * view. Call it while no rows are being added.
+     */
+    public void configure(int channels, int bins) {
+        int width = channels * bins + channels - 1;
+        if (width != rowWidth) {
+            for (int i = 0; i < ROWS; i++) {
+                if (rows[i] != null) {
+                    rows[i].recycle();
+                }
+                rows[i] = Bitmap.createBitmap(width, 1, Bitmap.Config.ARGB_8888);
+            }
+            pixels = new int[width];
+            levels = new float[width];
+        }
+        this.channels = channels;
+        this.bins = bins;
+        this.rowWidth = width;
+        clear();
+    }
+
+    /** Drops every row; the next one starts a fresh colour range. */
+    public void clear() {
+        filled = 0;
+        ceilingDb = Float.NaN;
+        postInvalidateOnAnimation();
+    }
+
+    /** Adds the last frame of {@code analyzer} as the newest row. Call from the thread feeding it. */
+    public void addRow(SpectrumAnalyzer analyzer) {
+        if (rowWidth == 0) {
+            return;
+        }
+        float rowMax = -Float.MAX_VALUE;
+        for (int c = 0; c < channels; c++) {
+            float[] power = analyzer.getPower(c);
+            int base = c * (bins + 1);
+            for (int k = 0; k < bins; k++) {
+                float db = 10f * (float) Math.log10(Math.max(power[k], MIN_POWER));
+                levels[base + k] = db;
+                if (k > 0 && db > rowMax) {
+                    rowMax = db;
+                }
+            }
+        }
+        ceilingDb = Float.isNaN(ceilingDb) ? rowMax : Math.max(rowMax, ceilingDb - CEILING_DECAY_DB);
+        float floorDb = ceilingDb - RANGE_DB;
+        for (int c = 0; c < channels; c++) {
+            int base = c * (bins + 1);
+            for (int k = 0; k < bins; k++) {
+                int level = (int) ((levels[base + k] - floorDb) * (PALETTE.length - 1) / RANGE_DB);
+                pixels[base + k] = PALETTE[Math.max(0, Math.min(PALETTE.length - 1, level))];
+            }
+            if (c + 1 < channels) {
+                pixels[base + bins] = SEPARATOR_COLOR;
+            }
+        }
+        int next = newest + 1 == ROWS ? 0 : newest + 1;
+        rows[next].setPixels(pixels, 0, rowWidth, 0, 0, rowWidth, 1);
+        newest = next;
+        if (filled < ROWS - 1) {
+            filled++;
+        }
+        postInvalidateOnAnimation();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        int count = filled;
+        int head = newest;
+        if (count == 0) {
+            return;
+        }
+        float rowHeight = (float) getHeight() / (ROWS - 1);
+        source.set(0, 0, rowWidth, 1);
+        for (int i = 0; i < count; i++) {
+            int index = head - i < 0 ? head - i + ROWS : head - i;
+            destination.set(0, Math.round(i * rowHeight), getWidth(), Math.round((i + 1) * rowHeight));
+            canvas.drawBitmap(rows[index], source, destination, paint);
+        }
+    }
+
+    /** Black through blue, magenta and orange to pale yellow. */
+    private static int[] buildPalette() {
+        int[][] stops = {
+                {0x00, 0x00, 0x00},
+                {0x20, 0x0c, 0x80},
+                {0xa0, 0x20, 0x90},
+                {0xf0, 0x70, 0x30},
+                {0xff, 0xf0, 0xa0},
+        };
+        int[] palette = new int[256];
+        for (int i = 0; i < palette.length; i++) {
+            float position = i * (stops.length - 1) / (float) (palette.length - 1);
+            int stop = Math.min((int) position, stops.length - 2);
+            float t = position - stop;
+            int r = Math.round(stops[stop][0] + t * (stops[stop + 1][0] - stops[stop][0]));
+            int g = Math.round(stops[stop][1] + t * (stops[stop + 1][1] - stops[stop][1]));
+            int b = Math.round(stops[stop][2] + t * (stops[stop + 1][2] - stops[stop][2]));
+            palette[i] = 0xFF000000 | r << 16 | g << 8 | b;
+        }
+        return palette;
+    }
+}
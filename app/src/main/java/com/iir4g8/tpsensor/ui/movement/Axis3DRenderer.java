@@ -4,6 +4,11 @@ import android.content.Context;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
+import android.os.SystemClock;
+
+import com.iir4g8.tpsensor.processing.OrientationExchange;
+import com.iir4g8.tpsensor.processing.OrientationPredictor;
+import com.iir4g8.tpsensor.processing.Quaternions;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -19,28 +24,38 @@ public class Axis3DRenderer implements GLSurfaceView.Renderer {
     private final float[] modelMatrix = new float[16];
     private final float[] viewMatrix = new float[16];
     private final float[] projectionMatrix = new float[16];
+    private final float[] viewProjectionMatrix = new float[16];
     private final float[] mvpMatrix = new float[16]; // Model-View-Projection matrix
 
-    // Rotation values
-    private float azimuth = 0f;
-    private float pitch = 0f;
-    private float roll = 0f;
+    // Device rotation as a quaternion (w, x, y, z), GL thread only
+    private final float[] rotation = {1f, 0f, 0f, 0f};
+    private volatile OrientationExchange orientationSource;
+    private final OrientationPredictor predictor = new OrientationPredictor();
+
+    // How long after onDrawFrame the frame reaches the screen, about one vsync period
+    private volatile long presentLatencyNanos = 16_666_667L;
 
     // Shader program
     private int program;
 
-    // Vertex and color buffers for X, Y, Z axes
-    private FloatBuffer xAxisVertexBuffer;
-    private FloatBuffer yAxisVertexBuffer;
-    private FloatBuffer zAxisVertexBuffer;
-    private FloatBuffer xAxisColorBuffer;
-    private FloatBuffer yAxisColorBuffer;
-    private FloatBuffer zAxisColorBuffer;
+    // Interleaved vertex data: position (x, y, z) then color (r, g, b, a)
+    private static final int POSITION_SIZE = 3;
+    private static final int COLOR_SIZE = 4;
+    private static final int BYTES_PER_FLOAT = 4;
+    private static final int STRIDE = (POSITION_SIZE + COLOR_SIZE) * BYTES_PER_FLOAT;
+
+    // Vertex ranges in the shared buffer
+    private static final int CUBE_VERTEX_COUNT = 24;
+    private static final int CUBE_INDEX_COUNT = 36;
+    private static final int AXIS_FIRST_VERTEX = CUBE_VERTEX_COUNT;
+    private static final int AXIS_VERTEX_COUNT = 6;
+
+    // Client-side copies, uploaded once per GL context
+    private FloatBuffer vertexData;
+    private ByteBuffer indexData;
 
-    // Cube buffers
-    private FloatBuffer cubeVertexBuffer;
-    private FloatBuffer cubeColorBuffer;
-    private ByteBuffer cubeIndexBuffer;
+    // GPU buffer objects: [0] vertices, [1] cube indices
+    private final int[] bufferIds = new int[2];
 
     // Shader handles
     private int positionHandle;
@@ -56,168 +71,107 @@ public class Axis3DRenderer implements GLSurfaceView.Renderer {
     }
 
     private void setupBuffers() {
-        // X-axis vertices (RED)
-        float[] xAxisVertices = {
-                0.0f, 0.0f, 0.0f,
-                axisLength, 0.0f, 0.0f
-        };
-
-        // Y-axis vertices (GREEN)
-        float[] yAxisVertices = {
-                0.0f, 0.0f, 0.0f,
-                0.0f, axisLength, 0.0f
-        };
-
-        // Z-axis vertices (BLUE)
-        float[] zAxisVertices = {
-                0.0f, 0.0f, 0.0f,
-                0.0f, 0.0f, axisLength
-        };
-
-        // X-axis colors (RED)
-        float[] xAxisColors = {
-                1.0f, 0.0f, 0.0f, 1.0f,
-                1.0f, 0.0f, 0.0f, 1.0f
-        };
-
-        // Y-axis colors (GREEN)
-        float[] yAxisColors = {
-                0.0f, 1.0f, 0.0f, 1.0f,
-                0.0f, 1.0f, 0.0f, 1.0f
-        };
-
-        // Z-axis colors (BLUE)
-        float[] zAxisColors = {
-                0.0f, 0.0f, 1.0f, 1.0f,
-                0.0f, 0.0f, 1.0f, 1.0f
-        };
-
-        // Create vertex buffers
-        xAxisVertexBuffer = createFloatBuffer(xAxisVertices);
-        yAxisVertexBuffer = createFloatBuffer(yAxisVertices);
-        zAxisVertexBuffer = createFloatBuffer(zAxisVertices);
-
-        // Create color buffers
-        xAxisColorBuffer = createFloatBuffer(xAxisColors);
-        yAxisColorBuffer = createFloatBuffer(yAxisColors);
-        zAxisColorBuffer = createFloatBuffer(zAxisColors);
-
-        // Create cube vertices - Fixed ordering to ensure correct face orientation
         float cubeSize = 0.3f;
-        float[] cubeVertices = {
-                // Front face - vertices in counter-clockwise order when viewed from front
+        float[] vertices = new float[(CUBE_VERTEX_COUNT + AXIS_VERTEX_COUNT) * (POSITION_SIZE + COLOR_SIZE)];
+        int offset = 0;
+
+        // Cube faces, vertices in counter-clockwise order when viewed from outside,
+        // each face with a distinct color to better visualize orientation
+        // Front face - light red
+        offset = putQuad(vertices, offset, 1.0f, 0.5f, 0.5f,
                 -cubeSize, -cubeSize, cubeSize,  // bottom-left
                 -cubeSize, cubeSize, cubeSize,   // top-left
                 cubeSize, cubeSize, cubeSize,    // top-right
-                cubeSize, -cubeSize, cubeSize,   // bottom-right
+                cubeSize, -cubeSize, cubeSize);  // bottom-right
 
-                // Back face - vertices in counter-clockwise order when viewed from back
+        // Back face - light blue
+        offset = putQuad(vertices, offset, 0.5f, 0.5f, 1.0f,
                 cubeSize, -cubeSize, -cubeSize,  // bottom-left
                 cubeSize, cubeSize, -cubeSize,   // top-left
                 -cubeSize, cubeSize, -cubeSize,  // top-right
-                -cubeSize, -cubeSize, -cubeSize, // bottom-right
+                -cubeSize, -cubeSize, -cubeSize); // bottom-right
 
-                // Top face - vertices in counter-clockwise order when viewed from top
+        // Top face - light green
+        offset = putQuad(vertices, offset, 0.5f, 1.0f, 0.5f,
                 -cubeSize, cubeSize, cubeSize,   // front-left
                 -cubeSize, cubeSize, -cubeSize,  // back-left
                 cubeSize, cubeSize, -cubeSize,   // back-right
-                cubeSize, cubeSize, cubeSize,    // front-right
+                cubeSize, cubeSize, cubeSize);   // front-right
 
-                // Bottom face - vertices in counter-clockwise order when viewed from bottom
+        // Bottom face - light yellow
+        offset = putQuad(vertices, offset, 1.0f, 1.0f, 0.5f,
                 -cubeSize, -cubeSize, -cubeSize, // back-left
                 -cubeSize, -cubeSize, cubeSize,  // front-left
                 cubeSize, -cubeSize, cubeSize,   // front-right
-                cubeSize, -cubeSize, -cubeSize,  // back-right
+                cubeSize, -cubeSize, -cubeSize); // back-right
 
-                // Right face - vertices in counter-clockwise order when viewed from right
+        // Right face - light purple
+        offset = putQuad(vertices, offset, 0.8f, 0.5f, 0.8f,
                 cubeSize, -cubeSize, cubeSize,   // bottom-front
                 cubeSize, cubeSize, cubeSize,    // top-front
                 cubeSize, cubeSize, -cubeSize,   // top-back
-                cubeSize, -cubeSize, -cubeSize,  // bottom-back
+                cubeSize, -cubeSize, -cubeSize); // bottom-back
 
-                // Left face - vertices in counter-clockwise order when viewed from left
+        // Left face - light cyan
+        offset = putQuad(vertices, offset, 0.5f, 0.8f, 0.8f,
                 -cubeSize, -cubeSize, -cubeSize, // bottom-back
                 -cubeSize, cubeSize, -cubeSize,  // top-back
                 -cubeSize, cubeSize, cubeSize,   // top-front
-                -cubeSize, -cubeSize, cubeSize   // bottom-front
-        };
-
-        // Create cube colors with distinct colors for each face to better visualize orientation
-        float[] cubeColors = new float[24 * 4]; // 24 vertices, 4 color components each
-
-        // Front face - light red
-        for (int i = 0; i < 4; i++) {
-            cubeColors[i * 4] = 1.0f;     // R
-            cubeColors[i * 4 + 1] = 0.5f; // G
-            cubeColors[i * 4 + 2] = 0.5f; // B
-            cubeColors[i * 4 + 3] = 0.7f; // A
-        }
-
-        // Back face - light blue
-        for (int i = 4; i < 8; i++) {
-            cubeColors[i * 4] = 0.5f;     // R
-            cubeColors[i * 4 + 1] = 0.5f; // G
-            cubeColors[i * 4 + 2] = 1.0f; // B
-            cubeColors[i * 4 + 3] = 0.7f; // A
-        }
-
-        // Top face - light green
-        for (int i = 8; i < 12; i++) {
-            cubeColors[i * 4] = 0.5f;     // R
-            cubeColors[i * 4 + 1] = 1.0f; // G
-            cubeColors[i * 4 + 2] = 0.5f; // B
-            cubeColors[i * 4 + 3] = 0.7f; // A
-        }
-
-        // Bottom face - light yellow
-        for (int i = 12; i < 16; i++) {
-            cubeColors[i * 4] = 1.0f;     // R
-            cubeColors[i * 4 + 1] = 1.0f; // G
-            cubeColors[i * 4 + 2] = 0.5f; // B
-            cubeColors[i * 4 + 3] = 0.7f; // A
+                -cubeSize, -cubeSize, cubeSize); // bottom-front
+
+        // X, Y, Z axes (RED, GREEN, BLUE), drawn as lines from the origin
+        offset = putVertex(vertices, offset, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f, 1.0f);
+        offset = putVertex(vertices, offset, axisLength, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f, 1.0f);
+        offset = putVertex(vertices, offset, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f, 1.0f);
+        offset = putVertex(vertices, offset, 0.0f, axisLength, 0.0f, 0.0f, 1.0f, 0.0f, 1.0f);
+        offset = putVertex(vertices, offset, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 1.0f);
+        putVertex(vertices, offset, 0.0f, 0.0f, axisLength, 0.0f, 0.0f, 1.0f, 1.0f);
+
+        // Cube indices, two triangles per face
+        byte[] cubeIndices = new byte[CUBE_INDEX_COUNT];
+        for (int face = 0; face < 6; face++) {
+            int first = face * 4;
+            int i = face * 6;
+            cubeIndices[i] = (byte) first;
+            cubeIndices[i + 1] = (byte) (first + 1);
+            cubeIndices[i + 2] = (byte) (first + 2);
+            cubeIndices[i + 3] = (byte) first;
+            cubeIndices[i + 4] = (byte) (first + 2);
+            cubeIndices[i + 5] = (byte) (first + 3);
         }
 
-        // Right face - light purple
-        for (int i = 16; i < 20; i++) {
-            cubeColors[i * 4] = 0.8f;     // R
-            cubeColors[i * 4 + 1] = 0.5f; // G
-            cubeColors[i * 4 + 2] = 0.8f; // B
-            cubeColors[i * 4 + 3] = 0.7f; // A
-        }
+        vertexData = ByteBuffer.allocateDirect(vertices.length * BYTES_PER_FLOAT)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        vertexData.put(vertices);
+        vertexData.position(0);
 
-        // Left face - light cyan
-        for (int i = 20; i < 24; i++) {
-            cubeColors[i * 4] = 0.5f;     // R
-            cubeColors[i * 4 + 1] = 0.8f; // G
-            cubeColors[i * 4 + 2] = 0.8f; // B
-            cubeColors[i * 4 + 3] = 0.7f; // A
-        }
+        indexData = ByteBuffer.allocateDirect(cubeIndices.length);
+        indexData.put(cubeIndices);
+        indexData.position(0);
+    }
 
-        // Create cube indices - Fixed to match the new vertex ordering
-        byte[] cubeIndices = {
-                0, 1, 2, 0, 2, 3,       // Front face
-                4, 5, 6, 4, 6, 7,       // Back face
-                8, 9, 10, 8, 10, 11,    // Top face
-                12, 13, 14, 12, 14, 15, // Bottom face
-                16, 17, 18, 16, 18, 19, // Right face
-                20, 21, 22, 20, 22, 23  // Left face
-        };
-
-        cubeVertexBuffer = createFloatBuffer(cubeVertices);
-        cubeColorBuffer = createFloatBuffer(cubeColors);
-
-        cubeIndexBuffer = ByteBuffer.allocateDirect(cubeIndices.length);
-        cubeIndexBuffer.put(cubeIndices);
-        cubeIndexBuffer.position(0);
+    private static int putQuad(float[] out, int offset, float r, float g, float b,
+                               float x0, float y0, float z0, float x1, float y1, float z1,
+                               float x2, float y2, float z2, float x3, float y3, float z3) {
+        // Semi-transparent faces
+        float a = 0.7f;
+        offset = putVertex(out, offset, x0, y0, z0, r, g, b, a);
+        offset = putVertex(out, offset, x1, y1, z1, r, g, b, a);
+        offset = putVertex(out, offset, x2, y2, z2, r, g, b, a);
+        return putVertex(out, offset, x3, y3, z3, r, g, b, a);
     }
 
-    private FloatBuffer createFloatBuffer(float[] data) {
-        FloatBuffer buffer = ByteBuffer.allocateDirect(data.length * 4)
-                .order(ByteOrder.nativeOrder())
-                .asFloatBuffer();
-        buffer.put(data);
-        buffer.position(0);
-        return buffer;
+    private static int putVertex(float[] out, int offset, float x, float y, float z,
+                                 float r, float g, float b, float a) {
+        out[offset++] = x;
+        out[offset++] = y;
+        out[offset++] = z;
+        out[offset++] = r;
+        out[offset++] = g;
+        out[offset++] = b;
+        out[offset++] = a;
+        return offset;
     }
 
     @Override
@@ -250,6 +204,24 @@ public class Axis3DRenderer implements GLSurfaceView.Renderer {
         positionHandle = GLES20.glGetAttribLocation(program, "vPosition");
         colorHandle = GLES20.glGetAttribLocation(program, "vColor");
         mvpMatrixHandle = GLES20.glGetUniformLocation(program, "uMVPMatrix");
+
+        // Upload the geometry once; a new surface means a new context and new buffers
+        GLES20.glGenBuffers(bufferIds.length, bufferIds, 0);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, bufferIds[0]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexData.capacity() * BYTES_PER_FLOAT,
+                vertexData, GLES20.GL_STATIC_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, bufferIds[1]);
+        GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexData.capacity(),
+                indexData, GLES20.GL_STATIC_DRAW);
+
+        // The program, buffers and attribute layout never change: bind them once
+        GLES20.glUseProgram(program);
+        GLES20.glEnableVertexAttribArray(positionHandle);
+        GLES20.glVertexAttribPointer(positionHandle, POSITION_SIZE, GLES20.GL_FLOAT, false, STRIDE, 0);
+        GLES20.glEnableVertexAttribArray(colorHandle);
+        GLES20.glVertexAttribPointer(colorHandle, COLOR_SIZE, GLES20.GL_FLOAT, false, STRIDE,
+                POSITION_SIZE * BYTES_PER_FLOAT);
+        GLES20.glLineWidth(5.0f);
     }
 
     @Override
@@ -266,6 +238,9 @@ public class Axis3DRenderer implements GLSurfaceView.Renderer {
                 0, 0, 3,  // Camera position
                 0, 0, 0,  // Look at position
                 0, 1, 0); // Up vector
+
+        // The camera is fixed: combine view and projection once
+        Matrix.multiplyMM(viewProjectionMatrix, 0, projectionMatrix, 0, viewMatrix, 0);
     }
 
     @Override
@@ -273,84 +248,37 @@ public class Axis3DRenderer implements GLSurfaceView.Renderer {
         // Clear the screen
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
 
-        // Use the shader program
-        GLES20.glUseProgram(program);
-
-        // Set up model matrix with rotations
-        Matrix.setIdentityM(modelMatrix, 0);
+        // Newest complete orientation from the sensor thread, no lock on the render path,
+        // carried forward to the time this frame will actually be displayed
+        OrientationExchange source = orientationSource;
+        if (source != null) {
+            predictor.update(source);
+            predictor.predict(SystemClock.elapsedRealtimeNanos() + presentLatencyNanos, rotation);
+        }
 
-        // Apply rotations in the correct order
-        Matrix.rotateM(modelMatrix, 0, roll, 0, 1, 0);   // Y-axis rotation (roll)
-        Matrix.rotateM(modelMatrix, 0, pitch, 1, 0, 0);  // X-axis rotation (pitch)
-        Matrix.rotateM(modelMatrix, 0, -azimuth, 0, 0, 1); // Z-axis rotation (azimuth)
+        // Model matrix straight from the rotation quaternion
+        Quaternions.toMatrix4(rotation, modelMatrix, 0);
 
         // Calculate the model-view-projection matrix
-        Matrix.multiplyMM(mvpMatrix, 0, viewMatrix, 0, modelMatrix, 0);
-        Matrix.multiplyMM(mvpMatrix, 0, projectionMatrix, 0, mvpMatrix, 0);
+        Matrix.multiplyMM(mvpMatrix, 0, viewProjectionMatrix, 0, modelMatrix, 0);
 
         // Set the MVP matrix
         GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
 
-        // Draw the cube first (semi-transparent)
-        drawCube();
-
-        // Draw the axes
-        drawAxis(xAxisVertexBuffer, xAxisColorBuffer);
-        drawAxis(yAxisVertexBuffer, yAxisColorBuffer);
-        drawAxis(zAxisVertexBuffer, zAxisColorBuffer);
-
-        // Draw axis labels
-        drawAxisLabels();
-    }
-
-    private void drawAxis(FloatBuffer vertexBuffer, FloatBuffer colorBuffer) {
-        // Set vertex attributes
-        GLES20.glEnableVertexAttribArray(positionHandle);
-        GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 0, vertexBuffer);
-
-        // Set color attributes
-        GLES20.glEnableVertexAttribArray(colorHandle);
-        GLES20.glVertexAttribPointer(colorHandle, 4, GLES20.GL_FLOAT, false, 0, colorBuffer);
-
-        // Draw the line
-        GLES20.glLineWidth(5.0f);
-        GLES20.glDrawArrays(GLES20.GL_LINES, 0, 2);
-
-        // Disable vertex arrays
-        GLES20.glDisableVertexAttribArray(positionHandle);
-        GLES20.glDisableVertexAttribArray(colorHandle);
+        // Draw the cube first (semi-transparent), then all three axes in one call
+        GLES20.glDrawElements(GLES20.GL_TRIANGLES, CUBE_INDEX_COUNT, GLES20.GL_UNSIGNED_BYTE, 0);
+        GLES20.glDrawArrays(GLES20.GL_LINES, AXIS_FIRST_VERTEX, AXIS_VERTEX_COUNT);
     }
 
-    private void drawCube() {
-        // Set vertex attributes
-        GLES20.glEnableVertexAttribArray(positionHandle);
-        GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 0, cubeVertexBuffer);
-
-        // Set color attributes
-        GLES20.glEnableVertexAttribArray(colorHandle);
-        GLES20.glVertexAttribPointer(colorHandle, 4, GLES20.GL_FLOAT, false, 0, cubeColorBuffer);
-
-        // Draw the cube using indices
-        GLES20.glDrawElements(GLES20.GL_TRIANGLES, 36, GLES20.GL_UNSIGNED_BYTE, cubeIndexBuffer);
-
-        // Disable vertex arrays
-        GLES20.glDisableVertexAttribArray(positionHandle);
-        GLES20.glDisableVertexAttribArray(colorHandle);
-    }
-
-    private void drawAxisLabels() {
-        // In OpenGL ES 2.0, text rendering is not built-in
-        // For simplicity, we'll draw small shapes at the end of each axis
-        // For a real app, you might want to use a texture atlas or bitmap font
-
-        // Draw a small sphere at the end of each axis
-        // This is simplified - in a real app, you'd use proper text rendering
+    /**
+     * @param source orientations published by a single writer thread; this renderer is its reader
+     */
+    public void setOrientationSource(OrientationExchange source) {
+        orientationSource = source;
     }
 
-    public void setOrientation(float azimuth, float pitch, float roll) {
-        this.azimuth = azimuth;
-        this.pitch = pitch;
-        this.roll = roll;
+    public void setPresentLatencyNanos(long nanos) {
+        presentLatencyNanos = nanos;
     }
 
     private int loadShader(int type, String shaderCode) {
@@ -3,9 +3,25 @@ package com.iir4g8.tpsensor.ui.movement;
 import android.content.Context;
 import android.opengl.GLSurfaceView;
 import android.util.AttributeSet;
+import android.view.Display;
 
+import com.iir4g8.tpsensor.processing.OrientationExchange;
+import com.iir4g8.tpsensor.processing.Quaternions;
+
+/**
+ * Draws the device orientation in 3D.
+ * <p>
+ * While the device moves the view renders continuously, once per vsync, with the
+ * orientation predicted for the moment each frame is shown. When it is stationary it
+ * falls back to rendering on demand, and only when the orientation changed visibly.
+ */
 public class Axis3DView extends GLSurfaceView {
+    // Smallest change worth a redraw while idle
+    private static final float IDLE_REDRAW_RADIANS = (float) Math.toRadians(0.25);
+
     private Axis3DRenderer renderer;
+    private boolean continuous;
+    private final float[] lastRequested = {1f, 0f, 0f, 0f};
 
     public Axis3DView(Context context) {
         super(context);
@@ -29,8 +45,47 @@ public class Axis3DView extends GLSurfaceView {
         setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
     }
 
-    public void setOrientation(float azimuth, float pitch, float roll) {
-        renderer.setOrientation(azimuth, pitch, roll);
-        requestRender(); // Request a render update
+    /**
+     * Sets where frames read the device-to-world rotation from. The exchange is written
+     * directly by the sensor thread; {@link #requestRender()} then draws its newest value.
+     */
+    public void setOrientationSource(OrientationExchange source) {
+        renderer.setOrientationSource(source);
+    }
+
+    /**
+     * Switches between rendering every vsync (device moving) and on demand (stationary).
+     */
+    public void setContinuous(boolean continuous) {
+        if (this.continuous == continuous) {
+            return;
+        }
+        this.continuous = continuous;
+        setRenderMode(continuous ? RENDERMODE_CONTINUOUSLY : RENDERMODE_WHEN_DIRTY);
+        if (!continuous) {
+            // Settle on the final orientation
+            requestRender();
+        }
+    }
+
+    /**
+     * Requests a frame for a new orientation when idle and it differs visibly from the
+     * last one requested. Does nothing while rendering continuously.
+     */
+    public void onOrientationChanged(float[] quaternion) {
+        if (continuous || Quaternions.angle(quaternion, lastRequested) < IDLE_REDRAW_RADIANS) {
+            return;
+        }
+        System.arraycopy(quaternion, 0, lastRequested, 0, 4);
+        requestRender();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        Display display = getDisplay();
+        if (display != null && display.getRefreshRate() > 0f) {
+            renderer.setPresentLatencyNanos((long) (1_000_000_000L / display.getRefreshRate()));
+        }
     }
 }
\ No newline at end of file
@@ -1,10 +1,6 @@
 package com.iir4g8.tpsensor.ui.movement;
 
-import android.content.Context;
 import android.graphics.Color;
-import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Bundle;
 import android.os.Handler;
@@ -20,39 +16,107 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
 import com.iir4g8.tpsensor.R;
-
-public class MovementFragment extends Fragment implements SensorEventListener {
-
-    private SensorManager sensorManager;
-    private Sensor accelerometer;
-    private Sensor magnetometer;
-    private Sensor gyroscope;
+import com.iir4g8.tpsensor.processing.ActivityClassifier;
+import com.iir4g8.tpsensor.processing.MotionDetector;
+import com.iir4g8.tpsensor.processing.OrientationExchange;
+import com.iir4g8.tpsensor.processing.Quaternions;
+import com.iir4g8.tpsensor.processing.RateController;
+import com.iir4g8.tpsensor.replay.ReplaySession;
+import com.iir4g8.tpsensor.sensor.ActivityTracker;
+import com.iir4g8.tpsensor.sensor.AttitudeProvider;
+import com.iir4g8.tpsensor.sensor.SensorHub;
+import com.iir4g8.tpsensor.sensor.SensorSource;
+import com.iir4g8.tpsensor.ui.frame.FramePublisher;
+import com.iir4g8.tpsensor.ui.frame.FrameSnapshot;
+import com.iir4g8.tpsensor.ui.text.TextReadout;
+
+public class MovementFragment extends Fragment implements AttitudeProvider.Listener, FramePublisher.Consumer {
+
+    private SensorHub sensorHub;
+    // The hub, or the replayed recording, delivered on the hub thread either way
+    private SensorSource source;
+    // Hardware-fused rotation vector when the device has one, app-side fusion otherwise
+    private AttitudeProvider attitude;
 
     private TextView azimuthText;
     private TextView pitchText;
     private TextView rollText;
     private TextView azimuthDirectionText;
     private TextView movementStatusText;
+    private TextView activityText;
+    private TextReadout azimuthReadout;
+    private TextReadout pitchReadout;
+    private TextReadout rollReadout;
+    private TextReadout directionReadout;
+    private TextReadout activityReadout;
 
     // 3D rendering
     private Axis3DView axis3DView;
 
-    private float[] lastAccelerometer = new float[3];
-    private float[] lastMagnetometer = new float[3];
-    private float[] rotationMatrix = new float[9];
-    private float[] orientation = new float[3];
-
-    private boolean hasAccelerometerData = false;
-    private boolean hasMagnetometerData = false;
-
-    private float lastAzimuth = 0f;
-    private float lastPitch = 0f;
-    private float lastRoll = 0f;
-
-    private float movementThreshold = 2.0f; // Degrees
-    private boolean isMoving = false;
-    private Handler handler = new Handler(Looper.getMainLooper());
-    private Runnable movementTimeoutRunnable;
+    // Movement detection state, only touched on the hub thread: moving above about
+    // 20°/s over a quarter second, still after a second below about 9°/s
+    private final MotionDetector motionDetector = new MotionDetector(
+            0.35f, 0.15f, 250_000_000L, 1_000_000_000L, 64);
+    // Full rate while moving, UI rate once the device has been still for a few seconds
+    private final RateController samplingRate = new RateController(
+            new int[]{SensorManager.SENSOR_DELAY_GAME, SensorManager.SENSOR_DELAY_UI},
+            1f, 0f, 3_000_000_000L, 1f);
+
+    // Quaternion handed from the hub thread to the main thread once per display frame
+    private FramePublisher publisher;
+    // ...and straight to the GL thread, which always draws the newest one
+    private final OrientationExchange renderOrientation = new OrientationExchange();
+    private final float[] displayOrientation = new float[3];
+
+    // Movement status changes are rare and posted directly
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean displayMoving;
+    private final Runnable movementStatusUpdate = new Runnable() {
+        @Override
+        public void run() {
+            updateMovementStatus();
+        }
+    };
+
+    // Walking, running... from the accelerometer spectrum, analysed twice a second. After
+    // STILL_HOPS_TO_PARK STILL results in a row its 200 Hz accelerometer is parked, until
+    // the gyroscope sees movement or, for a vehicle moving without turning, the next
+    // periodic recheck. Started and stopped on the hub thread, in order with the
+    // attitude callbacks; the counters are hub thread state
+    private static final int STILL_HOPS_TO_PARK = 10;
+    private static final long ACTIVITY_RECHECK_MS = 30_000L;
+    private ActivityTracker activityTracker;
+    private int stillHops;
+    private boolean activityParked;
+    private volatile ActivityClassifier.Activity displayActivity = ActivityClassifier.Activity.UNKNOWN;
+    private volatile float displayCadence;
+    private final Runnable activityUpdate = new Runnable() {
+        @Override
+        public void run() {
+            updateActivity();
+        }
+    };
+    private final Runnable startActivityTracking = new Runnable() {
+        @Override
+        public void run() {
+            startActivityTracking(0);
+        }
+    };
+    private final Runnable recheckActivity = new Runnable() {
+        @Override
+        public void run() {
+            // A single STILL window parks it again
+            startActivityTracking(STILL_HOPS_TO_PARK - 1);
+        }
+    };
+    private final Runnable stopActivityTracking = new Runnable() {
+        @Override
+        public void run() {
+            sensorHub.getHandler().removeCallbacks(recheckActivity);
+            activityTracker.stop();
+            activityParked = false;
+        }
+    };
 
     public MovementFragment() {
         // Required empty public constructor
@@ -62,23 +126,52 @@ public class MovementFragment extends Fragment implements SensorEventListener {
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        sensorManager = (SensorManager) getActivity().getSystemService(Context.SENSOR_SERVICE);
+        sensorHub = SensorHub.getInstance(requireContext());
+
+        // Pick the orientation source
+        SensorSource replay = ReplaySession.getSource();
+        if (replay != null) {
+            source = replay;
+            attitude = new AttitudeProvider(replay, sensorHub.getHandler(),
+                    AttitudeProvider.selectRecorded(AttitudeProvider.Quantity.ATTITUDE), this);
+            Toast.makeText(getContext(), "Replaying recording " + ReplaySession.getSessionName(),
+                    Toast.LENGTH_SHORT).show();
+        } else {
+            source = sensorHub;
+            attitude = new AttitudeProvider(sensorHub, AttitudeProvider.Quantity.ATTITUDE, this);
+        }
 
-        // Initialize sensors
-        accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-        magnetometer = sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
-        gyroscope = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+        publisher = new FramePublisher(4, this);
 
-        // Create movement timeout runnable
-        movementTimeoutRunnable = new Runnable() {
+        activityTracker = new ActivityTracker(source, 100, new ActivityTracker.Listener() {
             @Override
-            public void run() {
-                if (isMoving) {
-                    isMoving = false;
-                    updateMovementStatus();
+            public void onActivity(ActivityClassifier.Activity activity, float cadence) {
+                publishActivity(activity, cadence);
+                stillHops = activity == ActivityClassifier.Activity.STILL ? stillHops + 1 : 0;
+                if (stillHops >= STILL_HOPS_TO_PARK) {
+                    activityTracker.stop();
+                    activityParked = true;
+                    sensorHub.getHandler().postDelayed(recheckActivity, ACTIVITY_RECHECK_MS);
                 }
             }
-        };
+        });
+    }
+
+    /** Hub thread. */
+    private void startActivityTracking(int initialStillHops) {
+        sensorHub.getHandler().removeCallbacks(recheckActivity);
+        activityParked = false;
+        stillHops = initialStillHops;
+        activityTracker.start();
+    }
+
+    private void publishActivity(ActivityClassifier.Activity activity, float cadence) {
+        // Only post when the shown text would change
+        if (activity != displayActivity || Math.round(cadence) != Math.round(displayCadence)) {
+            displayActivity = activity;
+            displayCadence = cadence;
+            mainHandler.post(activityUpdate);
+        }
     }
 
     @Override
@@ -92,6 +185,12 @@ public class MovementFragment extends Fragment implements SensorEventListener {
         rollText = root.findViewById(R.id.text_roll);
         azimuthDirectionText = root.findViewById(R.id.text_azimuth_direction);
         movementStatusText = root.findViewById(R.id.text_movement_status);
+        activityText = root.findViewById(R.id.text_activity);
+        azimuthReadout = new TextReadout(azimuthText);
+        pitchReadout = new TextReadout(pitchText);
+        rollReadout = new TextReadout(rollText);
+        directionReadout = new TextReadout(azimuthDirectionText);
+        activityReadout = new TextReadout(activityText, 48);
 
         // Initialize 3D renderer
         setupRenderer(root);
@@ -102,6 +201,7 @@ public class MovementFragment extends Fragment implements SensorEventListener {
     private void setupRenderer(View root) {
         // Create the 3D view
         axis3DView = new Axis3DView(getContext());
+        axis3DView.setOrientationSource(renderOrientation);
 
         // Add to the container
         FrameLayout container = root.findViewById(R.id.device_3d_container);
@@ -112,22 +212,18 @@ public class MovementFragment extends Fragment implements SensorEventListener {
     public void onResume() {
         super.onResume();
 
-        // Register sensor listeners
-        if (accelerometer != null) {
-            sensorManager.registerListener(this, accelerometer, SensorManager.SENSOR_DELAY_GAME);
-        } else {
-            Toast.makeText(getContext(), "Accelerometer not available", Toast.LENGTH_SHORT).show();
-        }
+        publisher.start();
 
-        if (magnetometer != null) {
-            sensorManager.registerListener(this, magnetometer, SensorManager.SENSOR_DELAY_GAME);
+        // Subscribe to the sensors
+        if (attitude.isAvailable()) {
+            motionDetector.reset();
+            samplingRate.reset();
+            publishMovementStatus();
+            attitude.start(samplingRate.getSamplingPeriodUs());
         } else {
-            Toast.makeText(getContext(), "Magnetometer not available", Toast.LENGTH_SHORT).show();
-        }
-
-        if (gyroscope != null) {
-            sensorManager.registerListener(this, gyroscope, SensorManager.SENSOR_DELAY_GAME);
+            Toast.makeText(getContext(), "Orientation sensors not available", Toast.LENGTH_SHORT).show();
         }
+        sensorHub.getHandler().post(startActivityTracking);
 
         // Resume the OpenGL surface
         if (axis3DView != null) {
@@ -138,8 +234,11 @@ public class MovementFragment extends Fragment implements SensorEventListener {
     @Override
     public void onPause() {
         super.onPause();
-        sensorManager.unregisterListener(this);
-        handler.removeCallbacks(movementTimeoutRunnable);
+        attitude.stop();
+        sensorHub.getHandler().post(stopActivityTracking);
+        mainHandler.removeCallbacks(movementStatusUpdate);
+        mainHandler.removeCallbacks(activityUpdate);
+        publisher.stop();
 
         // Pause the OpenGL surface
         if (axis3DView != null) {
@@ -148,60 +247,59 @@ public class MovementFragment extends Fragment implements SensorEventListener {
     }
 
     @Override
-    public void onSensorChanged(SensorEvent event) {
-        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-            System.arraycopy(event.values, 0, lastAccelerometer, 0, event.values.length);
-            hasAccelerometerData = true;
-        } else if (event.sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD) {
-            System.arraycopy(event.values, 0, lastMagnetometer, 0, event.values.length);
-            hasMagnetometerData = true;
+    public void onAttitude(long timestampNanos, float[] quaternion, float[] angularVelocity) {
+        // Straight to the GL thread; with an angular velocity the renderer extrapolates
+        // to the display time, without one it interpolates between samples
+        renderOrientation.publish(timestampNanos, quaternion, 0, angularVelocity);
+        publisher.publish(timestampNanos, quaternion, 0);
+
+        // Check for movement; the stop timeout is judged on the sample timestamps
+        if (motionDetector.updateAttitude(timestampNanos, quaternion, angularVelocity)) {
+            publishMovementStatus();
+            if (motionDetector.isMoving() && activityParked) {
+                startActivityTracking(0);
+            }
         }
+        if (samplingRate.setActive(motionDetector.isMoving(), timestampNanos)) {
+            attitude.setSamplingPeriod(samplingRate.getSamplingPeriodUs());
+        }
+    }
 
-        if (hasAccelerometerData && hasMagnetometerData) {
-            boolean success = SensorManager.getRotationMatrix(
-                    rotationMatrix, null, lastAccelerometer, lastMagnetometer);
-
-            if (success) {
-                SensorManager.getOrientation(rotationMatrix, orientation);
-
-                // Convert from radians to degrees
-                float azimuth = (float) Math.toDegrees(orientation[0]); // Z-axis rotation
-                float pitch = (float) Math.toDegrees(orientation[1]);   // X-axis rotation
-                float roll = (float) Math.toDegrees(orientation[2]);    // Y-axis rotation
-
-                // Normalize azimuth to 0-360
-                if (azimuth < 0) {
-                    azimuth += 360;
-                }
-
-                // Update UI
-                updateOrientationDisplay(azimuth, pitch, roll);
-
-                // Check for movement
-                checkForMovement(azimuth, pitch, roll);
-
-                // Update 3D model rotation
-                if (axis3DView != null) {
-                    axis3DView.setOrientation(azimuth, pitch, roll);
-                }
+    private static float toAzimuthDegrees(float radians) {
+        // Normalize azimuth to 0-360
+        float azimuth = (float) Math.toDegrees(radians);
+        return azimuth < 0 ? azimuth + 360 : azimuth;
+    }
 
-                // Save current values for next comparison
-                lastAzimuth = azimuth;
-                lastPitch = pitch;
-                lastRoll = roll;
-            }
+    @Override
+    public void onFrame(FrameSnapshot snapshot) {
+        // Only the newest orientation of the frame is shown
+        float[] latest = snapshot.latest;
+        Quaternions.toOrientation(latest, displayOrientation);
+        updateOrientationDisplay(toAzimuthDegrees(displayOrientation[0]),
+                (float) Math.toDegrees(displayOrientation[1]),  // X-axis rotation
+                (float) Math.toDegrees(displayOrientation[2])); // Y-axis rotation
+
+        // The 3D model reads the orientation itself; while idle it only needs a nudge
+        if (axis3DView != null) {
+            axis3DView.onOrientationChanged(latest);
         }
     }
 
+    private void publishMovementStatus() {
+        displayMoving = motionDetector.isMoving();
+        mainHandler.post(movementStatusUpdate);
+    }
+
     private void updateOrientationDisplay(float azimuth, float pitch, float roll) {
-        // Update text views with formatted values
-        azimuthText.setText(String.format("%.1f°", azimuth));
-        pitchText.setText(String.format("%.1f°", pitch));
-        rollText.setText(String.format("%.1f°", roll));
+        // Update text views with formatted values, unchanged ones are skipped
+        azimuthReadout.begin().append(azimuth, 1).append('°').commit();
+        pitchReadout.begin().append(pitch, 1).append('°').commit();
+        rollReadout.begin().append(roll, 1).append('°').commit();
 
         // Update direction text (N, NE, E, SE, S, SW, W, NW)
         String direction = getDirectionFromAzimuth(azimuth);
-        azimuthDirectionText.setText("(" + direction + ")");
+        directionReadout.begin().append('(').append(direction).append(')').commit();
     }
 
     private String getDirectionFromAzimuth(float azimuth) {
@@ -224,36 +322,37 @@ public class MovementFragment extends Fragment implements SensorEventListener {
         }
     }
 
-    private void checkForMovement(float azimuth, float pitch, float roll) {
-        // Calculate the absolute difference between current and last values
-        float azimuthDiff = Math.abs(azimuth - lastAzimuth);
-        // Handle the case when crossing the 0/360 boundary
-        if (azimuthDiff > 180) {
-            azimuthDiff = 360 - azimuthDiff;
+    private void updateActivity() {
+        ActivityClassifier.Activity activity = displayActivity;
+        activityReadout.begin().append("Activity: ").append(activityLabel(activity));
+        if (activity == ActivityClassifier.Activity.WALKING || activity == ActivityClassifier.Activity.RUNNING) {
+            activityReadout.append(", ").append(displayCadence, 0).append(" steps/min");
         }
+        activityReadout.commit();
+    }
 
-        float pitchDiff = Math.abs(pitch - lastPitch);
-        float rollDiff = Math.abs(roll - lastRoll);
-
-        // Check if any of the differences exceed the threshold
-        if (azimuthDiff > movementThreshold ||
-                pitchDiff > movementThreshold ||
-                rollDiff > movementThreshold) {
-
-            // Device is moving
-            if (!isMoving) {
-                isMoving = true;
-                updateMovementStatus();
-            }
-
-            // Reset the timeout
-            handler.removeCallbacks(movementTimeoutRunnable);
-            handler.postDelayed(movementTimeoutRunnable, 1000); // 1 second timeout
+    private static String activityLabel(ActivityClassifier.Activity activity) {
+        switch (activity) {
+            case STILL:
+                return "still";
+            case WALKING:
+                return "walking";
+            case RUNNING:
+                return "running";
+            case VEHICLE:
+                return "in a vehicle";
+            default:
+                return "--";
         }
     }
 
     private void updateMovementStatus() {
-        if (isMoving) {
+        // Render every vsync only while there is motion to show
+        if (axis3DView != null) {
+            axis3DView.setContinuous(displayMoving);
+        }
+
+        if (displayMoving) {
             movementStatusText.setText("Device is moving");
             movementStatusText.setTextColor(Color.RED);
         } else {
@@ -261,9 +360,4 @@ public class MovementFragment extends Fragment implements SensorEventListener {
             movementStatusText.setTextColor(Color.GREEN);
         }
     }
-
-    @Override
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {
-        // Not used
-    }
 }
@@ -1,14 +1,9 @@
 package com.iir4g8.tpsensor.ui.proximity;
 
-import android.content.Context;
 import android.graphics.Color;
 import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Bundle;
-import android.os.Handler;
-import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import android.util.Log;
@@ -16,37 +11,51 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
-import android.widget.Toast;
 
 import com.github.mikephil.charting.charts.LineChart;
 import com.github.mikephil.charting.components.XAxis;
 import com.github.mikephil.charting.components.YAxis;
-import com.github.mikephil.charting.data.Entry;
-import com.github.mikephil.charting.data.LineData;
 import com.github.mikephil.charting.data.LineDataSet;
-import com.github.mikephil.charting.utils.ColorTemplate;
 
-import java.util.ArrayList;
-import java.util.Date;
 import java.util.Random;
 
 import com.iir4g8.tpsensor.R;
+import com.iir4g8.tpsensor.data.Downsampler;
+import com.iir4g8.tpsensor.data.TimeSeriesBuffer;
+import com.iir4g8.tpsensor.replay.ReplaySource;
+import com.iir4g8.tpsensor.replay.ScriptedStream;
+import com.iir4g8.tpsensor.replay.Waveform;
+import com.iir4g8.tpsensor.sensor.SensorHub;
+import com.iir4g8.tpsensor.sensor.SensorSample;
+import com.iir4g8.tpsensor.sensor.SensorSampleListener;
+import com.iir4g8.tpsensor.sensor.SensorSource;
+import com.iir4g8.tpsensor.ui.chart.DownsampledSeries;
+import com.iir4g8.tpsensor.ui.frame.FramePublisher;
+import com.iir4g8.tpsensor.ui.frame.FrameSnapshot;
+import com.iir4g8.tpsensor.ui.text.TextReadout;
 
 /**
  * A simple {@link Fragment} subclass.
  */
-public class ProximityFragment extends Fragment implements SensorEventListener {
+public class ProximityFragment extends Fragment implements SensorSampleListener, FramePublisher.Consumer {
     private LineChart chart;
-    private SensorManager mSensorManager;
+    private SensorHub mSensorHub;
     private Sensor mProximitySensor;
-    static ArrayList<Entry> entries = new ArrayList<>();
+    private final TimeSeriesBuffer history = new TimeSeriesBuffer(HISTORY_CAPACITY);
+    private DownsampledSeries series;
     private boolean useMockData = false;
-    private Handler mockDataHandler;
-    private Random random = new Random();
+    private SensorSource source;
+    private FramePublisher publisher;
     private TextView statusText;
     private TextView currentValueText;
+    private TextReadout currentValueReadout;
     private float maxRange = 10.0f; // Default max range
 
+    private static final int HISTORY_CAPACITY = 4096; // Samples kept in memory
+    private static final int MAX_VISIBLE_ENTRIES = 20;
+    private static final long MOCK_PERIOD_NANOS = 1_000_000_000L; // One simulated reading per second
+    private static final long MOCK_SEED = 1L;
+
     public ProximityFragment() {
         // Required empty public constructor
     }
@@ -54,16 +63,30 @@ public class ProximityFragment extends Fragment implements SensorEventListener {
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        mSensorManager = (SensorManager)getActivity().getSystemService(Context.SENSOR_SERVICE);
-        mProximitySensor = mSensorManager.getDefaultSensor(Sensor.TYPE_PROXIMITY);
+        mSensorHub = SensorHub.getInstance(requireContext());
+        mProximitySensor = mSensorHub.getDefaultSensor(Sensor.TYPE_PROXIMITY);
+        publisher = new FramePublisher(1, this);
 
         if(mProximitySensor == null){
             useMockData = true;
-            mockDataHandler = new Handler();
+            source = new ReplaySource(mSensorHub.getHandler(),
+                    new ScriptedStream(Sensor.TYPE_PROXIMITY, MOCK_PERIOD_NANOS, MOCK_SEED,
+                            new Waveform() {
+                                @Override
+                                public float valueAt(long timestampNanos, Random random) {
+                                    // Random distances (0 = near, maxRange = far)
+                                    // Occasionally show 0 to simulate object detection
+                                    if (random.nextInt(10) < 2) { // 20% chance of detecting something close
+                                        return 0f;
+                                    }
+                                    return random.nextFloat() * maxRange;
+                                }
+                            }), 1f);
         } else {
             // Get the maximum range of the proximity sensor
             maxRange = mProximitySensor.getMaximumRange();
             Log.d("ProximityFragment", "Proximity sensor max range: " + maxRange);
+            source = mSensorHub;
         }
     }
 
@@ -92,6 +115,19 @@ public class ProximityFragment extends Fragment implements SensorEventListener {
         xAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
         xAxis.setDrawGridLines(false);
 
+        // Proximity is a near/far step signal: min/max decimation keeps every edge
+        series = new DownsampledSeries(chart, history, "Proximity - Distance (cm)",
+                MAX_VISIBLE_ENTRIES, Downsampler.Strategy.MIN_MAX);
+        LineDataSet dataSet = series.getDataSet();
+        dataSet.setDrawCircles(true);
+        dataSet.setCircleRadius(4f);
+        dataSet.setDrawValues(false);
+        dataSet.setLineWidth(2f);
+        dataSet.setColor(Color.BLUE);
+        dataSet.setCircleColor(Color.BLUE);
+        dataSet.setHighLightColor(Color.rgb(244, 117, 117));
+        dataSet.setMode(LineDataSet.Mode.CUBIC_BEZIER);
+
         // Add status text view
         statusText = new TextView(getContext());
         statusText.setTextSize(16);
@@ -102,6 +138,7 @@ public class ProximityFragment extends Fragment implements SensorEventListener {
         currentValueText.setTextSize(24);
         currentValueText.setPadding(20, 0, 20, 20);
         currentValueText.setTextColor(Color.BLACK);
+        currentValueReadout = new TextReadout(currentValueText);
 
         if (useMockData) {
             statusText.setText("Proximity sensor not available. Showing simulated data.");
@@ -119,94 +156,42 @@ public class ProximityFragment extends Fragment implements SensorEventListener {
         return root;
     }
 
-    private void addEntry(float value) {
-        // Update the current value text
-        currentValueText.setText("Current distance: " + value + " cm");
-
-        entries.add(new Entry(entries.size(), value));
-
-        LineDataSet dataSet;
-        if (chart.getData() != null &&
-                chart.getData().getDataSetCount() > 0) {
-            dataSet = (LineDataSet) chart.getData().getDataSetByIndex(0);
-            dataSet.addEntry(new Entry(entries.size() - 1, value));
-            chart.getData().notifyDataChanged();
-            chart.notifyDataSetChanged();
-        } else {
-            dataSet = new LineDataSet(entries, "Proximity - Distance (cm)");
-            dataSet.setDrawCircles(true);
-            dataSet.setCircleRadius(4f);
-            dataSet.setDrawValues(false);
-            dataSet.setLineWidth(2f);
-            dataSet.setColor(Color.BLUE);
-            dataSet.setCircleColor(Color.BLUE);
-            dataSet.setHighLightColor(Color.rgb(244, 117, 117));
-            dataSet.setMode(LineDataSet.Mode.CUBIC_BEZIER);
-
-            LineData data = new LineData(dataSet);
-            chart.setData(data);
-        }
-
-        // Limit visible entries
-        chart.setVisibleXRangeMaximum(20);
-        if (entries.size() > 20)
-            chart.moveViewToX(entries.size() - 21);
-
-        chart.invalidate();
-    }
-
-    private void generateMockData() {
-        // Generate random proximity values (0 = near, maxRange = far)
-        // Occasionally show 0 to simulate object detection
-        float mockValue;
-        if (random.nextInt(10) < 2) { // 20% chance of detecting something close
-            mockValue = 0f;
-        } else {
-            mockValue = random.nextFloat() * maxRange;
+    @Override
+    public void onFrame(FrameSnapshot snapshot) {
+        for (int i = 0; i < snapshot.count; i++) {
+            history.append(snapshot.timestamps[i], snapshot.values[i]);
         }
 
-        addEntry(mockValue);
+        // Update the current value text, once per display frame
+        currentValueReadout.begin().append("Current distance: ").append(snapshot.latest[0], 1).append(" cm").commit();
 
-        // Schedule next update
-        mockDataHandler.postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                generateMockData();
-            }
-        }, 1000); // Update every second
+        // The series keeps the last MAX_VISIBLE_ENTRIES samples in view
+        series.onAppended();
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        entries.clear();
+        history.clear();
+        series.reset();
 
-        if (useMockData) {
-            generateMockData();
-        } else {
-            mSensorManager.registerListener(this, mProximitySensor, SensorManager.SENSOR_DELAY_NORMAL);
-        }
+        publisher.start();
+        source.subscribe(Sensor.TYPE_PROXIMITY, SensorManager.SENSOR_DELAY_NORMAL, this);
     }
 
     @Override
     public void onPause() {
         super.onPause();
-        if (useMockData) {
-            mockDataHandler.removeCallbacksAndMessages(null);
-        } else {
-            mSensorManager.unregisterListener(this);
-        }
-        entries.clear();
+        source.unsubscribeAll(this);
+        publisher.stop();
+        history.clear();
     }
 
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {
-        // Not used
-    }
-
-    public void onSensorChanged(SensorEvent event) {
-        if (event.sensor.getType() == Sensor.TYPE_PROXIMITY) {
-            float distance = event.values[0];
-            addEntry(distance);
+    @Override
+    public void onSensorSample(SensorSample sample) {
+        if (sample.sensorType == Sensor.TYPE_PROXIMITY) {
+            // Hub thread: queue the reading for the next display frame
+            publisher.publish(sample.timestampNanos, sample.values[0]);
         }
     }
 }
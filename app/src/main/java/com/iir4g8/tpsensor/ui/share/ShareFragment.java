@@ -1,9 +1,16 @@
 package com.iir4g8.tpsensor.ui.share;
 
+import android.content.Intent;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.ProgressBar;
+import android.widget.RadioGroup;
+import android.widget.Spinner;
 import android.widget.TextView;
 
 import androidx.annotation.Nullable;
@@ -12,23 +19,116 @@ import androidx.fragment.app.Fragment;
 import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModelProvider;
 import com.iir4g8.tpsensor.R;
+import com.iir4g8.tpsensor.export.ExportFormat;
+import com.iir4g8.tpsensor.export.ExportSource;
+import com.iir4g8.tpsensor.export.SessionExporter;
 
+import java.util.List;
+
+/**
+ * Exports a recorded session or a recent time range, then hands the file to another
+ * app through the share sheet. The export itself runs in {@link ShareViewModel}.
+ */
 public class ShareFragment extends Fragment {
 
     private ShareViewModel shareViewModel;
+    private List<ExportSource> sources;
 
     public View onCreateView(@NonNull LayoutInflater inflater,
                              ViewGroup container, Bundle savedInstanceState) {
         shareViewModel =
                 new ViewModelProvider(this).get(ShareViewModel.class);
         View root = inflater.inflate(R.layout.fragment_share, container, false);
-        final TextView textView = root.findViewById(R.id.text_share);
-        shareViewModel.getText().observe(getViewLifecycleOwner(), new Observer<String>() {
+        final Spinner rangeSpinner = root.findViewById(R.id.export_range);
+        final RadioGroup formatGroup = root.findViewById(R.id.export_format);
+        final CheckBox compressBox = root.findViewById(R.id.export_compress);
+        final Button exportButton = root.findViewById(R.id.export_button);
+        final ProgressBar progressBar = root.findViewById(R.id.export_progress);
+        final TextView statusText = root.findViewById(R.id.export_status);
+        progressBar.setMax(ShareViewModel.PROGRESS_MAX);
+
+        shareViewModel.getSources().observe(getViewLifecycleOwner(), new Observer<List<ExportSource>>() {
+            @Override
+            public void onChanged(@Nullable List<ExportSource> list) {
+                sources = list;
+                ArrayAdapter<ExportSource> adapter = new ArrayAdapter<>(requireContext(),
+                        android.R.layout.simple_spinner_item, list);
+                adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+                rangeSpinner.setAdapter(adapter);
+            }
+        });
+        shareViewModel.getProgress().observe(getViewLifecycleOwner(), new Observer<Integer>() {
+            @Override
+            public void onChanged(@Nullable Integer value) {
+                progressBar.setProgress(value != null ? value : 0);
+            }
+        });
+        shareViewModel.getStatus().observe(getViewLifecycleOwner(), new Observer<String>() {
             @Override
             public void onChanged(@Nullable String s) {
-                textView.setText(s);
+                statusText.setText(s);
+            }
+        });
+        shareViewModel.isRunning().observe(getViewLifecycleOwner(), new Observer<Boolean>() {
+            @Override
+            public void onChanged(@Nullable Boolean running) {
+                exportButton.setText(Boolean.TRUE.equals(running) ? "Cancel" : "Export");
+                updateExportButton(exportButton);
+            }
+        });
+        shareViewModel.hasRecordings().observe(getViewLifecycleOwner(), new Observer<Boolean>() {
+            @Override
+            public void onChanged(@Nullable Boolean recorded) {
+                updateExportButton(exportButton);
+            }
+        });
+        shareViewModel.getResult().observe(getViewLifecycleOwner(), new Observer<SessionExporter.Result>() {
+            @Override
+            public void onChanged(@Nullable SessionExporter.Result result) {
+                if (result != null) {
+                    shareViewModel.onResultShared();
+                    share(result);
+                }
+            }
+        });
+
+        exportButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (Boolean.TRUE.equals(shareViewModel.isRunning().getValue())) {
+                    shareViewModel.cancelExport();
+                    return;
+                }
+                int position = rangeSpinner.getSelectedItemPosition();
+                if (sources == null || position < 0 || position >= sources.size()) {
+                    return;
+                }
+                ExportFormat format = formatGroup.getCheckedRadioButtonId() == R.id.format_binary
+                        ? ExportFormat.BINARY : ExportFormat.CSV;
+                shareViewModel.startExport(sources.get(position), format, compressBox.isChecked());
             }
         });
         return root;
     }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        // Pick up sessions recorded while this screen was away
+        shareViewModel.loadSources();
+    }
+
+    /** Export needs a recording; Cancel is always available. */
+    private void updateExportButton(Button exportButton) {
+        exportButton.setEnabled(Boolean.TRUE.equals(shareViewModel.isRunning().getValue())
+                || Boolean.TRUE.equals(shareViewModel.hasRecordings().getValue()));
+    }
+
+    private void share(SessionExporter.Result result) {
+        Intent intent = new Intent(Intent.ACTION_SEND)
+                .setType(result.mimeType)
+                .putExtra(Intent.EXTRA_STREAM, result.uri)
+                .addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        startActivity(Intent.createChooser(intent, "Share export"));
+    }
 }
\ No newline at end of file
@@ -1,19 +1,179 @@
 package com.iir4g8.tpsensor.ui.share;
 
+import android.app.Application;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
-import androidx.lifecycle.ViewModel;
 
-public class ShareViewModel extends ViewModel {
+import com.iir4g8.tpsensor.data.TieredHistory;
+import com.iir4g8.tpsensor.export.ExportFormat;
+import com.iir4g8.tpsensor.export.ExportSource;
+import com.iir4g8.tpsensor.export.SessionExporter;
+import com.iir4g8.tpsensor.store.SessionStore;
+
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs exports on a background executor and keeps their state across configuration
+ * changes. Progress is in thousandths of the rows to export.
+ */
+public class ShareViewModel extends AndroidViewModel {
+
+    private static final String TAG = "ShareViewModel";
+    static final int PROGRESS_MAX = 1000;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final SessionExporter exporter;
+
+    private final MutableLiveData<List<ExportSource>> sources = new MutableLiveData<>();
+    private final MutableLiveData<Integer> progress = new MutableLiveData<>();
+    private final MutableLiveData<String> status = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> running = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> recorded = new MutableLiveData<>();
+    private final MutableLiveData<SessionExporter.Result> result = new MutableLiveData<>();
+
+    private Future<?> task;
+    // Cancels through the exporter's progress polling: interrupting the thread would
+    // close the file channel under the encoder
+    private volatile boolean cancelRequested;
 
-    private MutableLiveData<String> mText;
+    public ShareViewModel(@NonNull Application application) {
+        super(application);
+        exporter = new SessionExporter(application);
+        running.setValue(false);
+        status.setValue("Choose what to export");
+        loadSources();
+    }
+
+    public LiveData<List<ExportSource>> getSources() {
+        return sources;
+    }
+
+    public LiveData<Integer> getProgress() {
+        return progress;
+    }
+
+    public LiveData<String> getStatus() {
+        return status;
+    }
+
+    public LiveData<Boolean> isRunning() {
+        return running;
+    }
+
+    /** Whether the store holds at least one session, i.e. there is something to export. */
+    public LiveData<Boolean> hasRecordings() {
+        return recorded;
+    }
+
+    /** Finished export waiting to be shared, null once {@link #onResultShared()} is called. */
+    public LiveData<SessionExporter.Result> getResult() {
+        return result;
+    }
+
+    public void onResultShared() {
+        result.setValue(null);
+    }
+
+    /** Reloads the recorded sessions, after the fixed recent ranges. */
+    public void loadSources() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<ExportSource> list = new ArrayList<>();
+                list.add(ExportSource.lastSpan(TieredHistory.HOUR_NANOS, "Last hour"));
+                list.add(ExportSource.lastSpan(24 * TieredHistory.HOUR_NANOS, "Last 24 hours"));
+                DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+                Cursor cursor = SessionStore.getInstance(getApplication()).querySessions();
+                try {
+                    while (cursor.moveToNext()) {
+                        String label = String.format(Locale.getDefault(), "%s, %s (%d samples)",
+                                cursor.getString(1), dateFormat.format(new Date(cursor.getLong(2))),
+                                cursor.getLong(4));
+                        list.add(ExportSource.session(cursor.getLong(0), label));
+                    }
+                    if (cursor.getCount() == 0) {
+                        // The recent ranges read the same recordings: nothing to export yet
+                        status.postValue("Nothing recorded yet. Start a recording with the record button, then export it here.");
+                    }
+                    recorded.postValue(cursor.getCount() > 0);
+                } finally {
+                    cursor.close();
+                }
+                sources.postValue(list);
+            }
+        });
+    }
+
+    public void startExport(final ExportSource source, final ExportFormat format, final boolean compress) {
+        if (Boolean.TRUE.equals(running.getValue())) {
+            return;
+        }
+        running.setValue(true);
+        cancelRequested = false;
+        progress.setValue(0);
+        status.setValue("Exporting " + source + "…");
+        task = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SessionExporter.Result done = exporter.export(source, format, compress,
+                            new SessionExporter.ProgressListener() {
+                                @Override
+                                public void onExportProgress(long rows, long totalRows) {
+                                    if (totalRows > 0L) {
+                                        progress.postValue((int) Math.min(PROGRESS_MAX, rows * PROGRESS_MAX / totalRows));
+                                    }
+                                }
+
+                                @Override
+                                public boolean isCancelled() {
+                                    return cancelRequested;
+                                }
+                            });
+                    progress.postValue(PROGRESS_MAX);
+                    status.postValue(String.format(Locale.getDefault(), "Exported %d samples, %.1f kB",
+                            done.rowCount, done.byteCount / 1024.0));
+                    result.postValue(done);
+                } catch (InterruptedIOException | ClosedByInterruptException e) {
+                    progress.postValue(0);
+                    status.postValue("Export cancelled");
+                } catch (Exception e) {
+                    Log.e(TAG, "Export failed", e);
+                    progress.postValue(0);
+                    status.postValue("Export failed: " + e.getMessage());
+                } finally {
+                    running.postValue(false);
+                }
+            }
+        });
+    }
 
-    public ShareViewModel() {
-        mText = new MutableLiveData<>();
-        mText.setValue("This is share fragment");
+    public void cancelExport() {
+        cancelRequested = true;
+        // Unschedules an export that has not started yet, whose task will not report back
+        if (task != null && task.cancel(false)) {
+            progress.setValue(0);
+            status.setValue("Export cancelled");
+            running.setValue(false);
+        }
     }
 
-    public LiveData<String> getText() {
-        return mText;
+    @Override
+    protected void onCleared() {
+        executor.shutdownNow();
     }
 }
\ No newline at end of file
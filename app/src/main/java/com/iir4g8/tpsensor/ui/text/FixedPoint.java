@@ -0,0 +1,77 @@
+package com.iir4g8.tpsensor.ui.text;
+
+/**
+ * Writes numbers as decimal text into a {@code char[]} without allocating.
+ * <p>
+ * Output matches {@code String.format(Locale.US, "%.Nf", value)} for the magnitudes
+ * sensors produce: rounding is half away from zero, there is no grouping, and a value
+ * that rounds to zero has no minus sign.
+ */
+public final class FixedPoint {
+
+    public static final int MAX_DECIMALS = 6;
+
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L};
+
+    private FixedPoint() {
+    }
+
+    /** Upper bound of the characters {@link #format} writes for any value. */
+    public static int maxLength(int decimals) {
+        // Sign, 19 digits of a long, point
+        return 21 + decimals;
+    }
+
+    /**
+     * Writes {@code value} with {@code decimals} digits after the point into {@code out}
+     * at {@code offset}, which must have room for {@link #maxLength} characters.
+     *
+     * @return the index after the last character written
+     */
+    public static int format(float value, int decimals, char[] out, int offset) {
+        if (decimals < 0 || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("decimals: " + decimals);
+        }
+        if (Float.isNaN(value)) {
+            return appendAscii("NaN", out, offset);
+        }
+        if (Float.isInfinite(value)) {
+            return appendAscii(value > 0 ? "Infinity" : "-Infinity", out, offset);
+        }
+
+        // Math.round saturates instead of overflowing for huge values
+        long scaled = Math.round(Math.abs((double) value) * POWERS_OF_TEN[decimals]);
+        if (value < 0 && scaled != 0) {
+            out[offset++] = '-';
+        }
+        long integer = scaled / POWERS_OF_TEN[decimals];
+        long fraction = scaled % POWERS_OF_TEN[decimals];
+
+        offset = appendDigits(integer, 1, out, offset);
+        if (decimals > 0) {
+            out[offset++] = '.';
+            offset = appendDigits(fraction, decimals, out, offset);
+        }
+        return offset;
+    }
+
+    /** Writes a non-negative number, left-padded with zeros to at least {@code minDigits}. */
+    private static int appendDigits(long value, int minDigits, char[] out, int offset) {
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+        int end = offset + digits;
+        for (int i = end - 1; i >= offset; i--) {
+            out[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+    private static int appendAscii(String text, char[] out, int offset) {
+        text.getChars(0, text.length(), out, offset);
+        return offset + text.length();
+    }
+}
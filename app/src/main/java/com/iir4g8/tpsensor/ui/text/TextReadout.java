@@ -0,0 +1,99 @@
+package com.iir4g8.tpsensor.ui.text;
+
+import android.widget.TextView;
+
+/**
+ * Live text of a {@link TextView}, composed without allocating.
+ * <p>
+ * Text is built between {@link #begin()} and {@link #commit()} into a scratch
+ * {@code char[]}, then compared with what the view shows. Identical text is dropped
+ * without touching the view; otherwise the two buffers are swapped and the new one is
+ * handed over with {@link TextView#setText(char[], int, int)}. The view keeps a
+ * reference to the array it displays, so that array is never written to again until
+ * it has been replaced.
+ * <p>
+ * Main thread only.
+ */
+public final class TextReadout {
+
+    private final TextView view;
+    private char[] shown;
+    private int shownLength = -1;
+    private char[] scratch;
+    private int length;
+
+    public TextReadout(TextView view) {
+        this(view, 32);
+    }
+
+    public TextReadout(TextView view, int capacity) {
+        this.view = view;
+        this.shown = new char[capacity];
+        this.scratch = new char[capacity];
+    }
+
+    public TextReadout begin() {
+        length = 0;
+        return this;
+    }
+
+    public TextReadout append(String text) {
+        ensureCapacity(text.length());
+        text.getChars(0, text.length(), scratch, length);
+        length += text.length();
+        return this;
+    }
+
+    public TextReadout append(char c) {
+        ensureCapacity(1);
+        scratch[length++] = c;
+        return this;
+    }
+
+    /** Appends {@code value} with a fixed number of decimals, see {@link FixedPoint}. */
+    public TextReadout append(float value, int decimals) {
+        ensureCapacity(FixedPoint.maxLength(decimals));
+        length = FixedPoint.format(value, decimals, scratch, length);
+        return this;
+    }
+
+    /**
+     * Shows the text built since {@link #begin()}, unless it is already shown.
+     *
+     * @return true if the view was updated
+     */
+    public boolean commit() {
+        if (length == shownLength && regionEquals(scratch, shown, length)) {
+            return false;
+        }
+        char[] previous = shown;
+        shown = scratch;
+        shownLength = length;
+        scratch = previous.length >= shown.length ? previous : new char[shown.length];
+        view.setText(shown, 0, shownLength);
+        return true;
+    }
+
+    /** Forgets what is shown, so that the next {@link #commit()} always updates the view. */
+    public void invalidate() {
+        shownLength = -1;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > scratch.length) {
+            // Only happens while the longest text is first seen
+            char[] grown = new char[Math.max(scratch.length * 2, length + extra)];
+            System.arraycopy(scratch, 0, grown, 0, length);
+            scratch = grown;
+        }
+    }
+
+    private static boolean regionEquals(char[] a, char[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,56 +1,81 @@
 package com.iir4g8.tpsensor.ui.thermometer;
 
-import android.content.Context;
 import android.graphics.Color;
 import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
-import android.hardware.SensorManager;
 import android.os.Bundle;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
-import android.os.Handler;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
-import android.widget.Toast;
 
 import com.github.mikephil.charting.charts.LineChart;
 import com.github.mikephil.charting.components.XAxis;
 import com.github.mikephil.charting.components.YAxis;
-import com.github.mikephil.charting.data.Entry;
-import com.github.mikephil.charting.data.LineData;
 import com.github.mikephil.charting.data.LineDataSet;
-import com.github.mikephil.charting.interfaces.datasets.ILineDataSet;
-
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.Random;
 
 import com.iir4g8.tpsensor.R;
-
-public class ThermoFragment extends Fragment implements SensorEventListener {
+import com.iir4g8.tpsensor.data.Downsampler;
+import com.iir4g8.tpsensor.data.TieredHistory;
+import com.iir4g8.tpsensor.processing.RateController;
+import com.iir4g8.tpsensor.processing.StreamingStats;
+import com.iir4g8.tpsensor.replay.ReplaySession;
+import com.iir4g8.tpsensor.replay.ReplaySource;
+import com.iir4g8.tpsensor.replay.ScriptedStream;
+import com.iir4g8.tpsensor.replay.Waveform;
+import com.iir4g8.tpsensor.sensor.AdaptiveSubscription;
+import com.iir4g8.tpsensor.sensor.SensorHistories;
+import com.iir4g8.tpsensor.sensor.SensorHub;
+import com.iir4g8.tpsensor.sensor.SensorSample;
+import com.iir4g8.tpsensor.sensor.SensorSampleListener;
+import com.iir4g8.tpsensor.sensor.SensorSource;
+import com.iir4g8.tpsensor.ui.chart.DownsampledSeries;
+import com.iir4g8.tpsensor.ui.chart.HistoryRangeBar;
+import com.iir4g8.tpsensor.ui.chart.RollupSeries;
+import com.iir4g8.tpsensor.ui.frame.FramePublisher;
+import com.iir4g8.tpsensor.ui.frame.FrameSnapshot;
+import com.iir4g8.tpsensor.ui.text.TextReadout;
+
+public class ThermoFragment extends Fragment implements SensorSampleListener, FramePublisher.Consumer,
+        HistoryRangeBar.Listener {
 
     private LineChart chart;
-    private SensorManager mSensorManager;
+    private SensorHub mSensorHub;
     private Sensor mTempSensor;
-    static ArrayList<Entry> entries = new ArrayList<>();
+    // Raw samples plus 1 s, 1 min and 1 h rollups. Device readings go to the app-wide
+    // history, which outlives this screen; replayed and simulated ones stay here
+    private TieredHistory history;
+    private DownsampledSeries series;
+    private RollupSeries rollups;
     private boolean useMockData = false;
-    private Handler mockDataHandler;
-    private Random random = new Random();
+    private String replayedSession; // Null unless a recording is replayed
+    private SensorSource source;
+    private AdaptiveSubscription subscription;
+    private FramePublisher publisher;
     private TextView statusText;
     private TextView currentTempText;
+    private TextReadout currentTempReadout;
 
     // Constants for chart scaling
     private static final float MIN_TEMP = -50f;  // Minimum temperature to display
     private static final float MAX_TEMP = 100f;  // Maximum temperature to display
     private static final int MAX_VISIBLE_ENTRIES = 50; // Maximum number of visible entries
+    private static final int HISTORY_CAPACITY = 4096; // Samples kept in memory
+    private static final long MOCK_PERIOD_NANOS = 1_000_000_000L; // One simulated reading per second
+    private static final long MOCK_SEED = 1L;
+    // Sampling steps down from SENSOR_DELAY_NORMAL to 1 s and 5 s while the reading is flat
+    private static final int[] SAMPLING_PERIODS_US = {200_000, 1_000_000, 5_000_000};
+    private static final float ACTIVE_RATE = 0.1f; // °C per second
+    private static final float QUIET_RATE = 0.02f;
+    private static final long QUIET_HOLD_NANOS = 10_000_000_000L;
+    private static final float ACTIVITY_SMOOTHING_SECONDS = 2f;
+
+    private static final long STATS_WINDOW_NANOS = 60_000_000_000L; // Last minute of readings
 
-    // For tracking extreme values
-    private float minRecordedTemp = Float.MAX_VALUE;
-    private float maxRecordedTemp = Float.MIN_VALUE;
+    // Session min/max plus windowed mean and spread, at constant cost per reading
+    private final StreamingStats stats = StreamingStats.ofDuration(STATS_WINDOW_NANOS, HISTORY_CAPACITY);
 
     public ThermoFragment() {
     }
@@ -58,13 +83,29 @@ public class ThermoFragment extends Fragment implements SensorEventListener {
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        mSensorManager = (SensorManager)getActivity().getSystemService(Context.SENSOR_SERVICE);
-        mTempSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_AMBIENT_TEMPERATURE);
-
-        if(mTempSensor == null){
+        mSensorHub = SensorHub.getInstance(requireContext());
+        mTempSensor = mSensorHub.getDefaultSensor(Sensor.TYPE_AMBIENT_TEMPERATURE);
+        publisher = new FramePublisher(1, this);
+
+        SensorSource replay = ReplaySession.getSource();
+        if (replay != null) {
+            replayedSession = ReplaySession.getSessionName();
+            source = replay;
+        } else if(mTempSensor == null){
             useMockData = true;
-            mockDataHandler = new Handler();
+            // Scripted temperature between 20-30°C, replayed through the hub thread like real readings
+            source = new ReplaySource(mSensorHub.getHandler(),
+                    new ScriptedStream(Sensor.TYPE_AMBIENT_TEMPERATURE, MOCK_PERIOD_NANOS, MOCK_SEED,
+                            Waveform.uniform(20f, 30f)), 1f);
+        } else {
+            source = mSensorHub;
         }
+        history = source == mSensorHub
+                ? SensorHistories.getInstance().get(Sensor.TYPE_AMBIENT_TEMPERATURE)
+                : TieredHistory.withDefaultTiers(HISTORY_CAPACITY);
+        subscription = new AdaptiveSubscription(source, Sensor.TYPE_AMBIENT_TEMPERATURE,
+                new RateController(SAMPLING_PERIODS_US, ACTIVE_RATE, QUIET_RATE,
+                        QUIET_HOLD_NANOS, ACTIVITY_SMOOTHING_SECONDS), this);
     }
 
     @Override
@@ -82,8 +123,16 @@ public class ThermoFragment extends Fragment implements SensorEventListener {
 
         // Add current temperature display
         currentTempText = root.findViewById(R.id.current_temp_text);
+        currentTempReadout = new TextReadout(currentTempText, 96);
 
-        if (useMockData) {
+        // Live / 1 h / 24 h selector right above the chart
+        ViewGroup parent = (ViewGroup) chart.getParent();
+        parent.addView(new HistoryRangeBar(getContext(), this), 2);
+
+        if (replayedSession != null) {
+            statusText.setText("Replaying recording " + replayedSession);
+            statusText.setTextColor(Color.BLUE);
+        } else if (useMockData) {
             statusText.setText("Temperature sensor not available. Showing simulated data.");
             statusText.setTextColor(Color.RED);
         } else {
@@ -127,66 +176,51 @@ public class ThermoFragment extends Fragment implements SensorEventListener {
         // Disable right Y axis
         chart.getAxisRight().setEnabled(false);
 
-        // Create empty data
-        LineData data = new LineData();
-        data.setValueTextColor(Color.BLACK);
-        chart.setData(data);
+        // Create the data set, fed through the downsampling stage
+        series = new DownsampledSeries(chart, history.getRaw(), "Temperature (°C)",
+                MAX_VISIBLE_ENTRIES, Downsampler.Strategy.LTTB);
+        configureDataSet(series.getDataSet());
+        rollups = new RollupSeries(chart, history, "Temperature (°C), minutes ago",
+                Downsampler.Strategy.LTTB);
+        configureDataSet(rollups.getDataSet());
+        chart.getData().setValueTextColor(Color.BLACK);
 
         // Refresh
         chart.invalidate();
     }
 
-    private void addEntry(float value) {
-        // Validate temperature value - ignore extreme values that are likely errors
-        if (value < -300 || value > 300) {
-            Log.w("ThermoFragment", "Ignoring extreme temperature value: " + value);
-            return;
-        }
-
-        // Update min/max recorded temperatures
-        minRecordedTemp = Math.min(minRecordedTemp, value);
-        maxRecordedTemp = Math.max(maxRecordedTemp, value);
-
-        // Update current temperature display
-        updateCurrentTemperature(value);
-
-        // Add entry to the chart
-        LineData data = chart.getData();
-
-        if (data == null) {
-            // Create new dataset if none exists
-            LineDataSet set = new LineDataSet(null, "Temperature (°C)");
-            configureDataSet(set);
-            data = new LineData(set);
-            chart.setData(data);
+    @Override
+    public void onFrame(FrameSnapshot snapshot) {
+        boolean appended = false;
+        for (int i = 0; i < snapshot.count; i++) {
+            appended |= addEntry(snapshot.timestamps[i], snapshot.values[i]);
         }
 
-        // Get the dataset
-        ILineDataSet set = data.getDataSetByIndex(0);
-        if (set == null) {
-            set = createSet();
-            data.addDataSet(set);
+        if (appended) {
+            // One chart and text update per display frame
+            if (rollups.isShown()) {
+                rollups.onAppended();
+            } else {
+                series.onAppended();
+            }
+            updateCurrentTemperature(history.getRaw().latestValue());
         }
+    }
 
-        // Add the new data point
-        data.addEntry(new Entry(set.getEntryCount(), value), 0);
-
-        // Limit the number of visible entries to prevent overcrowding
-        if (set.getEntryCount() > MAX_VISIBLE_ENTRIES) {
-            chart.setVisibleXRangeMaximum(MAX_VISIBLE_ENTRIES);
-            chart.moveViewToX(data.getEntryCount() - MAX_VISIBLE_ENTRIES);
+    private boolean addEntry(long timestampNanos, float value) {
+        // Validate temperature value - ignore extreme values that are likely errors
+        if (value < -300 || value > 300) {
+            Log.w("ThermoFragment", "Ignoring extreme temperature value: " + value);
+            return false;
         }
 
-        // Notify chart of data change
-        data.notifyDataChanged();
-        chart.notifyDataSetChanged();
-        chart.invalidate();
-    }
+        // Update the running statistics
+        stats.add(timestampNanos, value);
 
-    private LineDataSet createSet() {
-        LineDataSet set = new LineDataSet(null, "Temperature (°C)");
-        configureDataSet(set);
-        return set;
+        // Add the sample to the history, the chart only draws what fits on screen.
+        // Skips what the recording service already added
+        SensorHistories.appendNewer(history, timestampNanos, value);
+        return true;
     }
 
     private void configureDataSet(LineDataSet set) {
@@ -205,62 +239,54 @@ public class ThermoFragment extends Fragment implements SensorEventListener {
     }
 
     private void updateCurrentTemperature(float temperature) {
-        if (currentTempText != null) {
-            currentTempText.setText(String.format("Current: %.1f°C (Min: %.1f°C, Max: %.1f°C)",
-                    temperature, minRecordedTemp, maxRecordedTemp));
+        if (currentTempReadout != null) {
+            currentTempReadout.begin()
+                    .append("Current: ").append(temperature, 1)
+                    .append("°C (Min: ").append(stats.getTotalMin(), 1)
+                    .append("°C, Max: ").append(stats.getTotalMax(), 1)
+                    .append("°C)\nLast minute: ").append(stats.getMean(), 1)
+                    .append(" ± ").append(stats.getStdDev(), 2)
+                    .append("°C")
+                    .commit();
         }
     }
 
-    private void generateMockData() {
-        // Generate temperature between 20-30°C
-        float mockTemp = 20 + random.nextFloat() * 10;
-        addEntry(mockTemp);
-
-        // Schedule next update
-        mockDataHandler.postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                generateMockData();
-            }
-        }, 1000); // Update every second
-    }
-
     @Override
     public void onResume() {
         super.onResume();
 
-        // Reset min/max values
-        minRecordedTemp = Float.MAX_VALUE;
-        maxRecordedTemp = Float.MIN_VALUE;
+        // Reset the statistics
+        stats.reset();
 
-        // Clear existing data
-        if (chart.getData() != null) {
-            chart.getData().clearValues();
-            chart.invalidate();
+        // The history is kept, only the live window is redrawn
+        if (!rollups.isShown()) {
+            series.reset();
         }
 
-        if (useMockData) {
-            generateMockData();
-        } else {
-            mSensorManager.registerListener(this, mTempSensor, SensorManager.SENSOR_DELAY_NORMAL);
-        }
+        publisher.start();
+        subscription.start();
     }
 
     @Override
     public void onPause() {
         super.onPause();
-        if (useMockData) {
-            mockDataHandler.removeCallbacksAndMessages(null);
-        } else {
-            mSensorManager.unregisterListener(this);
-        }
+        subscription.stop();
+        publisher.stop();
     }
 
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {
-        // Not used
+    @Override
+    public void onRangeSelected(long spanNanos) {
+        if (spanNanos == 0L) {
+            rollups.hide();
+            series.attach();
+        } else {
+            rollups.show(spanNanos);
+        }
     }
 
-    public void onSensorChanged(SensorEvent event) {
-        addEntry(event.values[0]);
+    @Override
+    public void onSensorSample(SensorSample sample) {
+        // Hub thread: queue the reading for the next display frame
+        publisher.publish(sample.timestampNanos, sample.values[0]);
     }
 }
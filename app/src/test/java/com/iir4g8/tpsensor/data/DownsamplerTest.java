@@ -0,0 +1,65 @@
+package com.iir4g8.tpsensor.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DownsamplerTest {
+
+    private static float[] ramp(int count) {
+        float[] xs = new float[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = i;
+        }
+        return xs;
+    }
+
+    @Test
+    public void lttb_keepsEndPointsAndRespectsBudget() {
+        float[] xs = ramp(1000);
+        float[] ys = new float[1000];
+        for (int i = 0; i < ys.length; i++) {
+            ys[i] = (float) Math.sin(i / 50.0);
+        }
+        float[] outX = new float[1000];
+        float[] outY = new float[1000];
+
+        int n = Downsampler.lttb(xs, ys, 0, 1000, 100, outX, outY);
+
+        assertEquals(100, n);
+        assertEquals(0f, outX[0], 0f);
+        assertEquals(999f, outX[n - 1], 0f);
+        for (int i = 1; i < n; i++) {
+            assertTrue(outX[i] > outX[i - 1]);
+        }
+    }
+
+    @Test
+    public void lttb_copiesWhenUnderBudget() {
+        float[] xs = ramp(10);
+        float[] ys = ramp(10);
+        float[] outX = new float[10];
+        float[] outY = new float[10];
+
+        assertEquals(10, Downsampler.lttb(xs, ys, 0, 10, 50, outX, outY));
+        assertArrayEquals(ys, outY, 0f);
+    }
+
+    @Test
+    public void minMax_preservesSingleSampleSpike() {
+        float[] xs = ramp(1000);
+        float[] ys = new float[1000];
+        ys[637] = 42f;
+        float[] outX = new float[1000];
+        float[] outY = new float[1000];
+
+        int n = Downsampler.minMax(xs, ys, 0, 1000, 20, outX, outY);
+
+        assertTrue(n <= 40);
+        boolean found = false;
+        for (int i = 0; i < n; i++) {
+            found |= outY[i] == 42f && outX[i] == 637f;
+        }
+        assertTrue(found);
+    }
+}
@@ -0,0 +1,87 @@
+package com.iir4g8.tpsensor.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TieredHistoryTest {
+
+    private static final long SECOND = TieredHistory.SECOND_NANOS;
+    private static final long MINUTE = TieredHistory.MINUTE_NANOS;
+    private static final long HOUR = TieredHistory.HOUR_NANOS;
+
+    @Test
+    public void rollup_aggregatesPerBucket() {
+        RollupBuffer rollup = new RollupBuffer(SECOND, 4);
+        rollup.add(0L, 1f);
+        rollup.add(SECOND / 2, 3f);
+        rollup.add(SECOND, 10f);
+
+        assertEquals(2, rollup.size());
+        assertEquals(0L, rollup.getStart(0));
+        assertEquals(1f, rollup.getMin(0), 0f);
+        assertEquals(3f, rollup.getMax(0), 0f);
+        assertEquals(2f, rollup.getMean(0), 0f);
+        assertEquals(2, rollup.getCount(0));
+        assertEquals(SECOND, rollup.getStart(1));
+    }
+
+    @Test
+    public void rollup_evictsOldestBucket() {
+        RollupBuffer rollup = new RollupBuffer(SECOND, 3);
+        for (int i = 0; i < 5; i++) {
+            rollup.add(i * SECOND, i);
+        }
+        assertEquals(3, rollup.size());
+        assertTrue(rollup.hasEvicted());
+        assertEquals(2 * SECOND, rollup.getStart(0));
+        assertEquals(1, rollup.indexAtOrAfter(3 * SECOND + 1));
+    }
+
+    @Test
+    public void tiers_stayConsistent() {
+        TieredHistory history = TieredHistory.withDefaultTiers(100);
+        // Two hours at one sample per second, value = minute of the day
+        for (long t = 0; t < 2 * HOUR; t += SECOND) {
+            history.append(t, t / MINUTE);
+        }
+        float[] means = new float[history.maxTierSize()];
+        float[] maxs = new float[history.maxTierSize()];
+        int n = history.read(3, 0L, 2 * HOUR, null, null, maxs, means, 0, means.length);
+        assertEquals(2, n);
+        assertEquals(29.5f, means[0], 1e-3f);
+        assertEquals(59f, maxs[0], 0f);
+
+        n = history.read(2, HOUR, HOUR + 9 * MINUTE, null, null, null, means, 0, means.length);
+        assertEquals(10, n);
+        assertEquals(60f, means[0], 0f);
+    }
+
+    @Test
+    public void selectTier_picksCoarsestThatFitsTheBudget() {
+        TieredHistory history = TieredHistory.withDefaultTiers(1000);
+        long end = 25 * HOUR;
+        for (long t = 0; t <= end; t += SECOND) {
+            history.append(t, 0f);
+        }
+        // A minute over 1000 pixels: only raw samples are fine enough
+        assertEquals(0, history.selectTier(end - MINUTE, end, 1000));
+        // An hour: 1 s buckets, raw samples no longer reach back
+        assertEquals(1, history.selectTier(end - HOUR, end, 1000));
+        // A day over 1000 pixels: 86 s per pixel, read the 1 min tier
+        assertEquals(2, history.selectTier(end - 24 * HOUR, end, 1000));
+        // A day over 10 pixels: the hourly tier is enough
+        assertEquals(3, history.selectTier(end - 24 * HOUR, end, 10));
+    }
+
+    @Test
+    public void selectTier_usesRawWhileHistoryIsShort() {
+        TieredHistory history = TieredHistory.withDefaultTiers(1000);
+        for (long t = 0; t < 10 * SECOND; t += SECOND / 10) {
+            history.append(t, 0f);
+        }
+        // Nothing was evicted, every tier covers a range that starts before the history
+        assertEquals(3, history.selectTier(-24 * HOUR, 10 * SECOND, 10));
+        assertEquals(0, history.selectTier(0L, 10 * SECOND, 1000));
+    }
+}
@@ -0,0 +1,68 @@
+package com.iir4g8.tpsensor.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TimeSeriesBufferTest {
+
+    @Test
+    public void append_keepsInsertionOrder() {
+        TimeSeriesBuffer buffer = new TimeSeriesBuffer(4);
+        buffer.append(10, 1f);
+        buffer.append(20, 2f);
+
+        assertEquals(2, buffer.size());
+        assertEquals(10, buffer.getTimestamp(0));
+        assertEquals(2f, buffer.getValue(1), 0f);
+        assertEquals(1, buffer.getSequence(1));
+    }
+
+    @Test
+    public void append_overwritesOldestWhenFull() {
+        TimeSeriesBuffer buffer = new TimeSeriesBuffer(3);
+        for (int i = 0; i < 5; i++) {
+            buffer.append(i * 10, i);
+        }
+
+        assertEquals(3, buffer.size());
+        assertEquals(5, buffer.appendedCount());
+        assertEquals(2f, buffer.getValue(0), 0f);
+        assertEquals(2, buffer.getSequence(0));
+        assertEquals(4f, buffer.latestValue(), 0f);
+        assertEquals(40, buffer.latestTimestamp());
+    }
+
+    @Test
+    public void copyTo_unwrapsAcrossTheEnd() {
+        TimeSeriesBuffer buffer = new TimeSeriesBuffer(4);
+        for (int i = 0; i < 6; i++) {
+            buffer.append(i, i);
+        }
+        long[] timestamps = new long[4];
+        float[] values = new float[4];
+        buffer.copyTo(0, 4, timestamps, values, 0);
+
+        assertArrayEquals(new long[]{2, 3, 4, 5}, timestamps);
+        assertArrayEquals(new float[]{2, 3, 4, 5}, values, 0f);
+    }
+
+    @Test
+    public void indexAtOrAfter_findsFirstMatchingTimestamp() {
+        TimeSeriesBuffer buffer = new TimeSeriesBuffer(4);
+        for (int i = 0; i < 6; i++) {
+            buffer.append(i * 100, i);
+        }
+
+        assertEquals(0, buffer.indexAtOrAfter(0));
+        assertEquals(1, buffer.indexAtOrAfter(250));
+        assertEquals(4, buffer.indexAtOrAfter(1000));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getValue_rejectsIndexPastSize() {
+        TimeSeriesBuffer buffer = new TimeSeriesBuffer(4);
+        buffer.append(0, 0f);
+        buffer.getValue(1);
+    }
+}
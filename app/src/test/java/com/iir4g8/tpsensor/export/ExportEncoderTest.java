@@ -0,0 +1,156 @@
+package com.iir4g8.tpsensor.export;
+
+import com.iir4g8.tpsensor.processing.GorillaDecoder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class ExportEncoderTest {
+
+    private static final float[] XYZ = {0.5f, -9.81f, 1e-3f};
+
+    @Test
+    public void csv_writesHeaderAndPadsMissingValues() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExportEncoder encoder = new ExportEncoder(Channels.newChannel(out), ExportFormat.CSV, false);
+        encoder.write(1, 1_700_000_000_123_456_789L, 3, XYZ, 0, 3);
+        encoder.write(13, -5L, 0, XYZ, 1, 1);
+        encoder.finish();
+        encoder.close();
+
+        assertEquals(ExportEncoder.CSV_HEADER
+                        + "1,1700000000123456789,3,0.5,-9.81,0.001,,,\n"
+                        + "13,-5,0,-9.81,,,,,\n",
+                new String(out.toByteArray(), StandardCharsets.US_ASCII));
+        assertEquals(2L, encoder.getRowCount());
+        assertEquals(out.size(), encoder.getWrittenBytes());
+    }
+
+    @Test
+    public void csv_writesFixedDecimalsWithoutTrailingZeros() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExportEncoder encoder = new ExportEncoder(Channels.newChannel(out), ExportFormat.CSV, false);
+        encoder.write(2, 0L, 0, new float[]{20f, 1234.5f, -1e-7f, 0.123456f, Float.NaN}, 0, 5);
+        encoder.finish();
+        encoder.close();
+
+        assertEquals(ExportEncoder.CSV_HEADER + "2,0,0,20,1234.5,0,0.123456,NaN,\n",
+                new String(out.toByteArray(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void gzip_roundTripsManyChunks() throws IOException {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ExportEncoder plainEncoder = new ExportEncoder(Channels.newChannel(plain), ExportFormat.CSV, false);
+        ExportEncoder gzipEncoder = new ExportEncoder(Channels.newChannel(compressed), ExportFormat.CSV, true);
+        float[] values = new float[3];
+        for (int i = 0; i < 50_000; i++) {
+            values[0] = (float) Math.sin(i / 100.0);
+            values[1] = i % 7;
+            values[2] = -i;
+            plainEncoder.write(1, i * 10_000_000L, 3, values, 0, 3);
+            gzipEncoder.write(1, i * 10_000_000L, 3, values, 0, 3);
+        }
+        plainEncoder.finish();
+        gzipEncoder.finish();
+
+        assertTrue(plain.size() > 10 * ExportEncoder.CHUNK_SIZE);
+        assertTrue(compressed.size() < plain.size() / 2);
+        assertEquals(plain.size(), gzipEncoder.getEncodedBytes());
+        assertArrayEquals(plain.toByteArray(),
+                readAll(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))));
+    }
+
+    @Test
+    public void binary_groupsRowsIntoGorillaFrames() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExportEncoder encoder = new ExportEncoder(Channels.newChannel(out), ExportFormat.BINARY, false);
+        int rows = ExportEncoder.FRAME_ROWS + 10;
+        for (int i = 0; i < rows; i++) {
+            encoder.write(1, 1_000L + i * 10_000_000L, 2, XYZ, 0, 3);
+        }
+        encoder.write(5, 42L, 1, XYZ, 0, 1);
+        encoder.finish();
+
+        ByteBuffer in = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[4];
+        in.get(magic);
+        assertArrayEquals(ExportEncoder.BINARY_MAGIC, magic);
+        assertEquals(ExportEncoder.BINARY_VERSION, in.getInt());
+
+        GorillaDecoder decoder = new GorillaDecoder();
+        int[] expectedRows = {ExportEncoder.FRAME_ROWS, 10, 1};
+        int[] expectedSensors = {1, 1, 5};
+        int[] expectedCounts = {3, 3, 1};
+        long[] timestamps = new long[ExportEncoder.FRAME_ROWS];
+        float[] values = new float[ExportEncoder.FRAME_ROWS];
+        for (int frame = 0; frame < expectedRows.length; frame++) {
+            assertEquals(expectedSensors[frame], in.getInt());
+            int valueCount = in.getInt();
+            assertEquals(expectedCounts[frame], valueCount);
+            for (int channel = -1; channel < valueCount; channel++) {
+                assertEquals(expectedRows[frame], decoder.begin(in, in.position()));
+                decoder.decode(timestamps, values, 0);
+                float expected = channel < 0 ? (frame == 2 ? 1f : 2f) : XYZ[channel];
+                assertEquals(expected, values[expectedRows[frame] - 1], 0f);
+                in.position(in.position() + decoder.getBlockBytes());
+            }
+            if (frame == 1) {
+                assertEquals(1_000L + (rows - 1) * 10_000_000L, timestamps[9]);
+            }
+        }
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    public void writes_neverExceedOneChunk() throws IOException {
+        final int[] largestWrite = new int[1];
+        WritableByteChannel channel = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                int n = src.remaining();
+                largestWrite[0] = Math.max(largestWrite[0], n);
+                src.position(src.limit());
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        ExportEncoder encoder = new ExportEncoder(channel, ExportFormat.CSV, true);
+        for (int i = 0; i < 200_000; i++) {
+            encoder.write(1, i, 0, XYZ, 0, 3);
+        }
+        encoder.finish();
+        assertTrue(largestWrite[0] > 0);
+        assertTrue(largestWrite[0] <= ExportEncoder.CHUNK_SIZE);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n; (n = in.read(buffer)) > 0; ) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
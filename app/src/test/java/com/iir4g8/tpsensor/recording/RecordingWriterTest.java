@@ -0,0 +1,127 @@
+package com.iir4g8.tpsensor.recording;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RecordingWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final RecordingFormat FORMAT = new RecordingFormat(3, 4);
+
+    private static void appendRamp(RecordingWriter writer, int count) throws Exception {
+        float[] values = new float[3];
+        for (int i = 0; i < count; i++) {
+            values[0] = i;
+            values[1] = -i;
+            values[2] = i * 0.5f;
+            writer.append(1, 1_000L * i, 3, values, 3);
+        }
+    }
+
+    @Test
+    public void roundTrip_readsEveryRecordInOrder() throws Exception {
+        File dir = folder.getRoot();
+        RecordingWriter writer = new RecordingWriter(dir, "s", FORMAT, RolloverPolicy.defaults());
+        appendRamp(writer, 10);
+        writer.close();
+
+        RecordingReader reader = new RecordingReader(RecordingReader.listSegments(dir, "s"));
+        float[] values = new float[3];
+        int n = 0;
+        while (reader.next()) {
+            assertEquals(1, reader.sensorType());
+            assertEquals(1_000L * n, reader.timestampNanos());
+            assertEquals(3, reader.accuracy());
+            assertEquals(3, reader.copyValues(values));
+            assertEquals(-n, values[1], 0f);
+            n++;
+        }
+        reader.close();
+
+        assertEquals(10, n);
+        assertEquals(0, reader.getCorruptBlocks());
+    }
+
+    @Test
+    public void rollover_splitsIntoSegmentsAndDropsOldest() throws Exception {
+        File dir = folder.getRoot();
+        // Room for exactly two blocks of four records per segment
+        RolloverPolicy policy = new RolloverPolicy(FORMAT.blockOffset(2), 0, 2);
+        RecordingWriter writer = new RecordingWriter(dir, "s", FORMAT, policy);
+        appendRamp(writer, 20);
+        writer.close();
+
+        List<File> segments = RecordingReader.listSegments(dir, "s");
+        assertEquals(2, segments.size());
+        assertEquals(RecordingWriter.segmentName("s", 1), segments.get(0).getName());
+
+        RecordingReader reader = new RecordingReader(segments);
+        assertTrue(reader.next());
+        assertEquals(8_000L, reader.timestampNanos());
+        reader.close();
+    }
+
+    @Test
+    public void unsealedBlock_isReadableWithoutClose() throws Exception {
+        File dir = folder.getRoot();
+        RecordingWriter writer = new RecordingWriter(dir, "s", FORMAT, RolloverPolicy.defaults());
+        appendRamp(writer, 6);
+        writer.flush();
+
+        // Simulates a crash: the segment is read while the writer still holds it
+        RecordingReader reader = new RecordingReader(RecordingReader.listSegments(dir, "s"));
+        int n = 0;
+        while (reader.next()) {
+            n++;
+        }
+        reader.close();
+        writer.close();
+
+        assertEquals(6, n);
+    }
+
+    @Test
+    public void corruptBlock_isSkipped() throws Exception {
+        File dir = folder.getRoot();
+        RecordingWriter writer = new RecordingWriter(dir, "s", FORMAT, RolloverPolicy.defaults());
+        appendRamp(writer, 8);
+        writer.close();
+
+        File segment = RecordingReader.listSegments(dir, "s").get(0);
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        raf.seek(FORMAT.blockOffset(0) + RecordingFormat.BLOCK_HEADER_SIZE + 5);
+        raf.write(0x7f);
+        raf.close();
+
+        RecordingReader reader = new RecordingReader(segment);
+        assertTrue(reader.next());
+        assertEquals(4_000L, reader.timestampNanos());
+        reader.close();
+        assertEquals(1, reader.getCorruptBlocks());
+    }
+
+    @Test
+    public void latestSession_picksTheNameSortingLast() throws Exception {
+        File dir = folder.getRoot();
+        assertNull(RecordingReader.latestSession(dir));
+
+        String[] sessions = {"session-20260101-090000", "session-20260102-080000", "session-20251231-235959"};
+        for (String session : sessions) {
+            RecordingWriter writer = new RecordingWriter(dir, session, FORMAT, RolloverPolicy.defaults());
+            appendRamp(writer, 1);
+            writer.close();
+        }
+        assertTrue(new File(dir, "notes.txt").createNewFile());
+
+        assertEquals("session-20260102-080000", RecordingReader.latestSession(dir));
+    }
+}
@@ -0,0 +1,39 @@
+package com.iir4g8.tpsensor.replay;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReplayClockTest {
+
+    @Test
+    public void realTime_keepsOriginalGaps() {
+        ReplayClock clock = new ReplayClock(1f);
+        clock.anchor(1_000L, 50_000L);
+
+        assertEquals(1_000L, clock.dueWallNanos(50_000L));
+        assertEquals(11_000L, clock.dueWallNanos(60_000L));
+    }
+
+    @Test
+    public void speedUp_compressesGaps() {
+        ReplayClock clock = new ReplayClock(4f);
+        clock.anchor(0L, 0L);
+
+        assertEquals(250L, clock.dueWallNanos(1_000L));
+    }
+
+    @Test
+    public void unpaced_isAlwaysDue() {
+        ReplayClock clock = new ReplayClock(ReplayClock.AS_FAST_AS_POSSIBLE);
+        clock.anchor(0L, 0L);
+
+        assertTrue(clock.isUnpaced());
+        assertEquals(Long.MIN_VALUE, clock.dueWallNanos(Long.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeSpeed_isRejected() {
+        new ReplayClock(-1f);
+    }
+}
@@ -0,0 +1,53 @@
+package com.iir4g8.tpsensor.replay;
+
+import com.iir4g8.tpsensor.sensor.SensorSample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScriptedStreamTest {
+
+    private static ScriptedStream noisySine(long seed) {
+        return new ScriptedStream(5, 10_000_000L, seed,
+                Waveform.sine(20f, 5f, 1.0).plus(Waveform.uniform(-0.5f, 0.5f)),
+                Waveform.square(0f, 1f, 0.1));
+    }
+
+    @Test
+    public void next_advancesByPeriodFromZero() {
+        ScriptedStream stream = noisySine(1L);
+        SensorSample sample = new SensorSample();
+
+        assertTrue(stream.next(sample));
+        assertEquals(0L, sample.timestampNanos);
+        assertTrue(stream.next(sample));
+        assertEquals(10_000_000L, sample.timestampNanos);
+        assertEquals(5, sample.sensorType);
+        assertEquals(2, sample.valueCount);
+    }
+
+    @Test
+    public void sameSeed_replaysIdentically() {
+        ScriptedStream a = noisySine(42L);
+        ScriptedStream b = noisySine(42L);
+        SensorSample sa = new SensorSample();
+        SensorSample sb = new SensorSample();
+
+        for (int i = 0; i < 1000; i++) {
+            a.next(sa);
+            b.next(sb);
+            assertEquals(sa.values[0], sb.values[0], 0f);
+            assertEquals(sa.values[1], sb.values[1], 0f);
+        }
+    }
+
+    @Test
+    public void square_switchesEveryHalfPeriod() {
+        Waveform square = Waveform.square(-1f, 1f, 1.0);
+
+        assertEquals(1f, square.valueAt(0L, null), 0f);
+        assertEquals(-1f, square.valueAt(600_000_000L, null), 0f);
+        assertEquals(1f, square.valueAt(1_100_000_000L, null), 0f);
+    }
+}
@@ -0,0 +1,28 @@
+package com.iir4g8.tpsensor.sensor;
+
+import android.hardware.SensorManager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FifoBatchingTest {
+
+    @Test
+    public void latency_fillsMostOfTheFifo() {
+        // 3000 events at 50 Hz: 60 s to fill, 48 s with the safety margin
+        assertEquals(48_000_000, FifoBatching.maxReportLatencyUs(3000, SensorManager.SENSOR_DELAY_GAME, 5_000));
+        assertEquals(8_000_000, FifoBatching.maxReportLatencyUs(1000, 10_000, 5_000));
+    }
+
+    @Test
+    public void fastest_usesTheSensorMinimumDelay() {
+        assertEquals(4_000_000, FifoBatching.maxReportLatencyUs(1000, SensorManager.SENSOR_DELAY_FASTEST, 5_000));
+    }
+
+    @Test
+    public void noFifo_meansNoBatching() {
+        assertEquals(0, FifoBatching.maxReportLatencyUs(0, SensorManager.SENSOR_DELAY_NORMAL, 5_000));
+        assertEquals(0, FifoBatching.maxReportLatencyUs(1000, SensorManager.SENSOR_DELAY_FASTEST, 0));
+    }
+}
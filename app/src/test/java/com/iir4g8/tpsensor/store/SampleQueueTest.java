@@ -0,0 +1,116 @@
+package com.iir4g8.tpsensor.store;
+
+import com.iir4g8.tpsensor.sensor.SensorBatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SampleQueueTest {
+
+    private static final float[] VALUES = {1f, 2f, 3f};
+
+    @Test
+    public void drain_movesRowsInOrder() throws InterruptedException {
+        SampleQueue queue = new SampleQueue(8, 4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(1, i, 3, VALUES, i % 2, 2, 0L));
+        }
+        SampleRows rows = new SampleRows(16);
+        assertEquals(4, queue.drain(rows, 0L));
+        assertEquals(4, rows.count);
+        assertEquals(2L, rows.timestamps[2]);
+        assertEquals(2, rows.valueCounts[1]);
+        assertEquals(2f, rows.values[SampleRows.STRIDE], 0f);
+        assertEquals(3f, rows.values[SampleRows.STRIDE + 1], 0f);
+    }
+
+    @Test
+    public void drain_waitsForAFullBatch() throws InterruptedException {
+        final SampleQueue queue = new SampleQueue(64, 10);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 10; i++) {
+                    queue.offer(1, i, 0, VALUES, 0, 1, 0L);
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        producer.start();
+        SampleRows rows = new SampleRows(64);
+        // Well within the delay: one batch of ten, not a drain per row
+        assertEquals(10, queue.drain(rows, 5_000_000_000L));
+        producer.join();
+    }
+
+    @Test
+    public void fullQueue_dropsAfterTimeout() throws InterruptedException {
+        SampleQueue queue = new SampleQueue(2, 2);
+        assertTrue(queue.offer(1, 0L, 0, VALUES, 0, 1, 0L));
+        assertTrue(queue.offer(1, 1L, 0, VALUES, 0, 1, 0L));
+        long start = System.nanoTime();
+        assertFalse(queue.offer(1, 2L, 0, VALUES, 0, 1, 20_000_000L));
+        assertTrue(System.nanoTime() - start >= 20_000_000L);
+        assertEquals(1L, queue.getDroppedCount());
+
+        SampleRows rows = new SampleRows(1);
+        assertEquals(1, queue.drain(rows, 0L));
+        assertTrue(queue.offer(1, 3L, 0, VALUES, 0, 1, 0L));
+    }
+
+    @Test
+    public void stalledQueue_waitsOncePerStall() throws InterruptedException {
+        SampleQueue queue = new SampleQueue(1, 1);
+        assertTrue(queue.offer(1, 0L, 0, VALUES, 0, 1, 0L));
+        assertFalse(queue.offer(1, 1L, 0, VALUES, 0, 1, 20_000_000L));
+        // Still full: dropped without another wait
+        long start = System.nanoTime();
+        assertFalse(queue.offer(1, 2L, 0, VALUES, 0, 1, 5_000_000_000L));
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+        assertEquals(2L, queue.getDroppedCount());
+
+        SampleRows rows = new SampleRows(1);
+        assertEquals(1, queue.drain(rows, 0L));
+        assertTrue(queue.offer(1, 3L, 0, VALUES, 0, 1, 0L));
+    }
+
+    @Test
+    public void batch_sharesOneTimeoutAndDropsTheRest() throws InterruptedException {
+        SampleQueue queue = new SampleQueue(4, 4);
+        SensorBatch batch = new SensorBatch(1, 256);
+        batch.count = 256;
+        batch.valueCount = 1;
+        for (int i = 0; i < batch.count; i++) {
+            batch.timestamps[i] = i;
+            batch.values[i * SensorBatch.STRIDE] = i;
+        }
+        long start = System.nanoTime();
+        assertEquals(4, queue.offer(batch, 1_000L, 20_000_000L));
+        // One 20 ms wait for the whole batch, not one per row
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+        assertEquals(252L, queue.getDroppedCount());
+
+        SampleRows rows = new SampleRows(4);
+        assertEquals(4, queue.drain(rows, 0L));
+        assertEquals(1_003L, rows.timestamps[3]);
+        assertEquals(3f, rows.values[3 * SampleRows.STRIDE], 0f);
+    }
+
+    @Test
+    public void close_drainsTheRestThenStops() throws InterruptedException {
+        SampleQueue queue = new SampleQueue(8, 8);
+        queue.offer(1, 0L, 0, VALUES, 0, 1, 0L);
+        queue.close();
+        assertFalse(queue.offer(1, 1L, 0, VALUES, 0, 1, 0L));
+
+        SampleRows rows = new SampleRows(8);
+        // Closed: no waiting for the batch to fill
+        assertEquals(1, queue.drain(rows, Long.MAX_VALUE));
+        assertEquals(0, queue.drain(rows, Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,94 @@
+package com.iir4g8.tpsensor.ui.chart;
+
+import com.github.mikephil.charting.data.Entry;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EntryRingTest {
+
+    private static Entry[] entries(int count) {
+        Entry[] entries = new Entry[count];
+        for (int i = 0; i < count; i++) {
+            entries[i] = new Entry(i, i);
+        }
+        return entries;
+    }
+
+    @Test
+    public void removeFirstThenAdd_wrapsWithoutShifting() {
+        Entry[] e = entries(6);
+        List<Entry> ring = new SlidingLineDataSet.EntryRing(3);
+        ring.add(e[0]);
+        ring.add(e[1]);
+        ring.add(e[2]);
+        for (int i = 3; i < 6; i++) {
+            assertSame(e[i - 3], ring.remove(0));
+            ring.add(e[i]);
+        }
+
+        assertEquals(3, ring.size());
+        assertSame(e[3], ring.get(0));
+        assertSame(e[5], ring.get(2));
+    }
+
+    @Test
+    public void add_growsPastTheInitialCapacityInOrder() {
+        Entry[] e = entries(5);
+        List<Entry> ring = new SlidingLineDataSet.EntryRing(2);
+        ring.add(e[1]);
+        ring.remove(0);
+        for (Entry entry : e) {
+            ring.add(entry);
+        }
+
+        assertEquals(5, ring.size());
+        for (int i = 0; i < 5; i++) {
+            assertSame(e[i], ring.get(i));
+        }
+    }
+
+    @Test
+    public void insertAndRemoveInTheMiddle_shiftTheRest() {
+        Entry[] e = entries(4);
+        List<Entry> ring = new SlidingLineDataSet.EntryRing(4);
+        ring.add(e[0]);
+        ring.add(e[2]);
+        ring.add(1, e[1]);
+        ring.add(0, e[3]);
+
+        assertSame(e[3], ring.get(0));
+        assertSame(e[1], ring.get(2));
+        assertSame(e[1], ring.remove(2));
+        assertSame(e[2], ring.get(2));
+        assertTrue(ring.remove(e[3]));
+        assertEquals(2, ring.size());
+        assertSame(e[0], ring.get(0));
+    }
+
+    @Test
+    public void subListClear_truncatesTheTail() {
+        Entry[] e = entries(5);
+        List<Entry> ring = new SlidingLineDataSet.EntryRing(5);
+        for (Entry entry : e) {
+            ring.add(entry);
+        }
+        ring.remove(0);
+        ring.add(e[0]);
+        ring.subList(2, 5).clear();
+
+        assertEquals(2, ring.size());
+        assertSame(e[1], ring.get(0));
+        assertSame(e[2], ring.get(1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_pastTheEndThrows() {
+        List<Entry> ring = new SlidingLineDataSet.EntryRing(4);
+        ring.add(new Entry(0f, 0f));
+        ring.get(1);
+    }
+}
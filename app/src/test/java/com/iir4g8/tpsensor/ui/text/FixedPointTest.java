@@ -0,0 +1,48 @@
+package com.iir4g8.tpsensor.ui.text;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class FixedPointTest {
+
+    private static String format(float value, int decimals) {
+        char[] out = new char[FixedPoint.maxLength(decimals)];
+        int end = FixedPoint.format(value, decimals, out, 0);
+        return new String(out, 0, end);
+    }
+
+    @Test
+    public void matchesStringFormat() {
+        float[] values = {0f, 1f, -1f, 0.05f, 0.15f, 9.99f, 23.456f, -12.345f, 359.96f, 1234.5f, 48.123456f};
+        for (float value : values) {
+            for (int decimals = 0; decimals <= 3; decimals++) {
+                String expected = String.format(Locale.US, "%." + decimals + "f", (double) value);
+                assertEquals(value + " / " + decimals, expected, format(value, decimals));
+            }
+        }
+    }
+
+    @Test
+    public void negativeValueRoundingToZero_hasNoSign() {
+        assertEquals("0.0", format(-0.01f, 1));
+        assertEquals("0", format(-0f, 0));
+    }
+
+    @Test
+    public void writesAtOffset() {
+        char[] out = {'x', 'x', 'x', 'x', 'x', 'x'};
+        int end = FixedPoint.format(-2.5f, 1, out, 1);
+
+        assertEquals(5, end);
+        assertEquals("x-2.5x", new String(out));
+    }
+
+    @Test
+    public void nonFiniteValues() {
+        assertEquals("NaN", format(Float.NaN, 2));
+        assertEquals("-Infinity", format(Float.NEGATIVE_INFINITY, 2));
+    }
+}
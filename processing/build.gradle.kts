@@ -0,0 +1,25 @@
+// Sensor math without any Android dependency, so it can be tested and benchmarked on the JVM.
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+// ./gradlew :processing:jmh
+jmh {
+    jmhVersion = libs.versions.jmh
+    // "gc" adds gc.alloc.rate.norm (bytes/op) next to the ns/op score
+    profilers = listOf("gc")
+    resultFormat = "JSON"
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+}
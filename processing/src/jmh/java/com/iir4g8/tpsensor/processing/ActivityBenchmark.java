@@ -0,0 +1,91 @@
+package com.iir4g8.tpsensor.processing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the accelerometer activity analysis. {@link #fft} is one transform of a
+ * window; {@link #addSample} is the per-sample cost at 200 Hz with the analysis of a
+ * hop amortised over its samples, which has to stay far below the 5 ms between samples.
+ * Run with {@code ./gradlew :processing:jmh}; gc.alloc.rate.norm must stay at 0 B/op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ActivityBenchmark {
+
+    private static final int TRACE_LENGTH = 4096; // Power of two, see next()
+    private static final long PERIOD_NANOS = 5_000_000L;
+
+    @State(Scope.Thread)
+    public static class FftState {
+
+        @Param({"256", "512", "1024"})
+        public int size;
+
+        RealFft fft;
+        float[] window;
+        float[] data;
+
+        @Setup
+        public void setUp() {
+            fft = new RealFft(size);
+            window = new float[size];
+            data = new float[size];
+            Random random = new Random(42);
+            for (int i = 0; i < size; i++) {
+                window[i] = (float) random.nextGaussian();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ClassifierState {
+
+        /** Samples between analyses: 10, 4 and 2 analyses per second at 200 Hz. */
+        @Param({"20", "50", "100"})
+        public int hopSize;
+
+        ActivityClassifier classifier;
+        final float[] trace = new float[TRACE_LENGTH];
+        long timestampNanos;
+        int index;
+
+        @Setup
+        public void setUp() {
+            classifier = new ActivityClassifier(512, hopSize);
+            // Walking at 1.8 steps per second with sensor noise
+            Random random = new Random(42);
+            for (int i = 0; i < TRACE_LENGTH; i++) {
+                trace[i] = 9.81f + 2f * (float) Math.sin(2.0 * Math.PI * 1.8 * i * PERIOD_NANOS * 1e-9)
+                        + (float) random.nextGaussian() * 0.3f;
+            }
+        }
+
+        float next() {
+            index = (index + 1) & (TRACE_LENGTH - 1);
+            return trace[index];
+        }
+    }
+
+    @Benchmark
+    public float fft(FftState state) {
+        System.arraycopy(state.window, 0, state.data, 0, state.size);
+        state.fft.forward(state.data);
+        return state.data[1];
+    }
+
+    @Benchmark
+    public boolean addSample(ClassifierState state) {
+        state.timestampNanos += PERIOD_NANOS;
+        return state.classifier.add(state.timestampNanos, 0.3f, 0.2f, state.next());
+    }
+}
@@ -0,0 +1,102 @@
+package com.iir4g8.tpsensor.processing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-point cost of the Gorilla codec, against copying the same points uncompressed.
+ * Each invocation encodes or decodes one block of {@link #BLOCK} points, so scores
+ * are ns per point. The compression ratio of each trace is checked by
+ * {@code GorillaCodecTest}.
+ * Run with {@code ./gradlew :processing:jmh}; gc.alloc.rate.norm must stay at 0 B/op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GorillaBenchmark {
+
+    private static final int BLOCK = 1024;
+    private static final long PERIOD_NANOS = 200_000_000L;
+
+    /** temperature: 0.1 °C steps at a jittered 5 Hz; magnetic: noisy field magnitude at 50 Hz. */
+    @Param({"temperature", "magnetic"})
+    public String trace;
+
+    /** 1: lossless timestamps; 1 ms: sensor jitter dropped, as environmental streams allow. */
+    @Param({"1", "1000000"})
+    public int unitNanos;
+
+    private final long[] timestamps = new long[BLOCK];
+    private final float[] values = new float[BLOCK];
+    private final long[] decodedTimestamps = new long[BLOCK];
+    private final float[] decodedValues = new float[BLOCK];
+
+    private GorillaEncoder encoder;
+    private final GorillaDecoder decoder = new GorillaDecoder();
+    private final ByteBuffer encodeBuffer = ByteBuffer.allocateDirect(BLOCK * GorillaEncoder.MAX_POINT_BYTES + 64);
+    private final ByteBuffer encoded = ByteBuffer.allocateDirect(BLOCK * GorillaEncoder.MAX_POINT_BYTES + 64);
+    private final ByteBuffer raw = ByteBuffer.allocateDirect(BLOCK * 12);
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        long t = 0L;
+        for (int i = 0; i < BLOCK; i++) {
+            if ("temperature".equals(trace)) {
+                t += PERIOD_NANOS + random.nextInt(100_000);
+                values[i] = Math.round((21f + (float) Math.sin(i / 300.0)) * 10f) / 10f;
+            } else {
+                t += PERIOD_NANOS / 10 + random.nextInt(100_000);
+                values[i] = 48f + (float) random.nextGaussian() * 0.3f;
+            }
+            timestamps[i] = t;
+        }
+        encoder = new GorillaEncoder(unitNanos);
+        encoder.begin(encoded);
+        for (int i = 0; i < BLOCK; i++) {
+            encoder.add(timestamps[i], values[i]);
+        }
+        encoder.finish();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public int encode() {
+        encodeBuffer.clear();
+        encoder.begin(encodeBuffer);
+        for (int i = 0; i < BLOCK; i++) {
+            encoder.add(timestamps[i], values[i]);
+        }
+        return encoder.finish();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public int decode() {
+        decoder.begin(encoded, 0);
+        return decoder.decode(decodedTimestamps, decodedValues, 0);
+    }
+
+    /** Baseline: the fixed-width layout the recordings use, 12 bytes per point. */
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public int copyUncompressed() {
+        raw.clear();
+        for (int i = 0; i < BLOCK; i++) {
+            raw.putLong(timestamps[i]);
+            raw.putFloat(values[i]);
+        }
+        return raw.position();
+    }
+}
@@ -0,0 +1,110 @@
+package com.iir4g8.tpsensor.processing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-event cost of each stage the sensor callbacks run. Every invocation consumes
+ * the next reading of a pre-generated trace, so the JIT cannot fold the inputs.
+ * Run with {@code ./gradlew :processing:jmh}; the gc profiler reports
+ * {@code gc.alloc.rate.norm}, which must stay at 0 B/op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SensorPipelineBenchmark {
+
+    private static final int TRACE_LENGTH = 4096; // Power of two, see next()
+
+    private final float[][] accelerometer = new float[TRACE_LENGTH][3];
+    private final float[][] magnetometer = new float[TRACE_LENGTH][3];
+    private final float[][] gyroscope = new float[TRACE_LENGTH][3];
+
+    private final OrientationFusion fusion = new OrientationFusion();
+    private final MotionDetector motionDetector = new MotionDetector(0.35f, 0.15f, 250_000_000L, 1_000_000_000L, 64);
+    private final QuaternionFilter filter = new QuaternionFilter();
+    private final float[] quaternion = new float[4];
+    private long timestampNanos;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        // A hand-held phone: gravity mostly on Z, slow heading drift, sensor noise
+        Random random = new Random(42);
+        for (int i = 0; i < TRACE_LENGTH; i++) {
+            double heading = 2 * Math.PI * i / TRACE_LENGTH;
+            accelerometer[i][0] = (float) random.nextGaussian() * 0.2f;
+            accelerometer[i][1] = 1.5f + (float) random.nextGaussian() * 0.2f;
+            accelerometer[i][2] = 9.6f + (float) random.nextGaussian() * 0.2f;
+            magnetometer[i][0] = 20f * (float) Math.sin(heading) + (float) random.nextGaussian();
+            magnetometer[i][1] = 20f * (float) Math.cos(heading) + (float) random.nextGaussian();
+            magnetometer[i][2] = -40f + (float) random.nextGaussian();
+            gyroscope[i][0] = (float) random.nextGaussian() * 0.05f;
+            gyroscope[i][1] = (float) random.nextGaussian() * 0.05f;
+            gyroscope[i][2] = (float) (2 * Math.PI / TRACE_LENGTH * 200) + (float) random.nextGaussian() * 0.05f;
+        }
+        fusion.setAccelerometer(accelerometer[0]);
+        fusion.setMagnetometer(magnetometer[0]);
+
+        filter.updateMagnetometer(magnetometer[0]);
+        filter.updateAccelerometer(accelerometer[0], timestampNanos);
+    }
+
+    private int next() {
+        index = (index + 1) & (TRACE_LENGTH - 1);
+        return index;
+    }
+
+    /** Accelerometer + magnetometer to azimuth/pitch/roll, as in the compass and movement screens. */
+    @Benchmark
+    public float fusion() {
+        int i = next();
+        fusion.setAccelerometer(accelerometer[i]);
+        fusion.setMagnetometer(magnetometer[i]);
+        fusion.update();
+        return fusion.getAzimuthDegrees() + fusion.getPitchDegrees() + fusion.getRollDegrees();
+    }
+
+    /** One 200 Hz gyroscope step of the quaternion filter, the per-event cost with a gyroscope. */
+    @Benchmark
+    public float quaternionFilterGyroscope() {
+        timestampNanos += 5_000_000L;
+        filter.updateGyroscope(gyroscope[next()], timestampNanos);
+        filter.getQuaternion(quaternion);
+        return quaternion[0];
+    }
+
+    /** One accelerometer + magnetometer correction of the quaternion filter. */
+    @Benchmark
+    public float quaternionFilterCorrection() {
+        int i = next();
+        timestampNanos += 20_000_000L;
+        filter.updateMagnetometer(magnetometer[i]);
+        filter.updateAccelerometer(accelerometer[i], timestampNanos);
+        filter.getQuaternion(quaternion);
+        return quaternion[0];
+    }
+
+    /** Field strength of one magnetometer reading. */
+    @Benchmark
+    public float magnitude() {
+        float[] m = magnetometer[next()];
+        return VectorMath.magnitude(m[0], m[1], m[2]);
+    }
+
+    /** Movement check run after every fused orientation, fed the 200 Hz gyroscope trace. */
+    @Benchmark
+    public boolean motionDetector() {
+        float[] w = gyroscope[next()];
+        timestampNanos += 5_000_000L;
+        return motionDetector.update(timestampNanos, w[0], w[1], w[2]);
+    }
+}
@@ -0,0 +1,218 @@
+package com.iir4g8.tpsensor.processing;
+
+/**
+ * Step cadence and activity from the accelerometer, through the spectrum of its magnitude.
+ * <p>
+ * Samples go into a ring of the last {@code windowSize} magnitudes. Every
+ * {@code hopSize} samples the window is copied out in order, its mean (gravity) is
+ * removed, a Hann window is applied and a {@link RealFft} gives the power spectrum.
+ * Each step shakes the magnitude once, so walking and running show a sharp peak at the
+ * step rate; the sample rate comes from the timestamps, so the frequency scale follows
+ * the rate the sensor actually delivers.
+ *
+ * <ul>
+ * <li>{@link Activity#STILL}: the magnitude varies by less than {@link #STILL_RMS}.</li>
+ * <li>{@link Activity#WALKING} / {@link Activity#RUNNING}: a peak between
+ * {@link #MIN_STEP_HZ} and {@link #MAX_STEP_HZ} holds at least {@link #MIN_PERIODICITY}
+ * of the power; running above {@link #RUNNING_STEP_HZ} or {@link #RUNNING_RMS}.</li>
+ * <li>{@link Activity#VEHICLE}: motion without a step rhythm, as vibration and sway
+ * in a car or train.</li>
+ * </ul>
+ *
+ * All buffers are allocated up front; adding a sample or analysing a hop allocates
+ * nothing. Not thread-safe.
+ */
+public final class ActivityClassifier {
+
+    public enum Activity {
+        /** Not enough samples yet. */
+        UNKNOWN,
+        STILL,
+        WALKING,
+        RUNNING,
+        VEHICLE
+    }
+
+    /** m/s², standard deviation of the magnitude below which the device is still. */
+    public static final float STILL_RMS = 0.15f;
+    public static final float MIN_STEP_HZ = 0.8f;
+    public static final float MAX_STEP_HZ = 3.5f;
+    public static final float RUNNING_STEP_HZ = 2.4f;
+    public static final float RUNNING_RMS = 5f;
+    /** Share of the non-DC power in the step peak (and its neighbour bins) for a gait. */
+    public static final float MIN_PERIODICITY = 0.25f;
+
+    private final int windowSize;
+    private final int hopSize;
+    private final RealFft fft;
+    private final float[] hann;
+
+    // Ring of the newest windowSize samples, oldest at head once full
+    private final float[] magnitudes;
+    private final long[] timestamps;
+    private int head;
+    private int count;
+    private int sinceHop;
+
+    // Analysis scratch
+    private final float[] frame;
+    private final float[] power;
+
+    private Activity activity = Activity.UNKNOWN;
+    private float rms;
+    private float stepHz;
+    private float periodicity;
+    private float sampleRateHz;
+
+    /**
+     * @param windowSize samples per analysis, a power of two; 512 covers 2.5 s at 200 Hz
+     * @param hopSize    samples between two analyses, at most {@code windowSize}
+     */
+    public ActivityClassifier(int windowSize, int hopSize) {
+        if (hopSize <= 0 || hopSize > windowSize) {
+            throw new IllegalArgumentException("hopSize must be in 1.." + windowSize + ": " + hopSize);
+        }
+        this.fft = new RealFft(windowSize);
+        this.windowSize = windowSize;
+        this.hopSize = hopSize;
+        this.hann = RealFft.hannWindow(windowSize);
+        this.magnitudes = new float[windowSize];
+        this.timestamps = new long[windowSize];
+        this.frame = new float[windowSize];
+        this.power = new float[windowSize / 2 + 1];
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    /** Forgets every sample. */
+    public void reset() {
+        head = 0;
+        count = 0;
+        sinceHop = 0;
+        activity = Activity.UNKNOWN;
+        rms = 0f;
+        stepHz = 0f;
+        periodicity = 0f;
+        sampleRateHz = 0f;
+    }
+
+    /**
+     * Adds one accelerometer sample, m/s².
+     *
+     * @return true when a new analysis is available
+     */
+    public boolean add(long timestampNanos, float x, float y, float z) {
+        int index = head + count < windowSize ? head + count : head + count - windowSize;
+        if (count < windowSize) {
+            count++;
+        } else {
+            head = head + 1 == windowSize ? 0 : head + 1;
+        }
+        magnitudes[index] = (float) Math.sqrt(x * x + y * y + z * z);
+        timestamps[index] = timestampNanos;
+        if (++sinceHop < hopSize || count < windowSize) {
+            return false;
+        }
+        sinceHop = 0;
+        analyze();
+        return true;
+    }
+
+    public Activity getActivity() {
+        return activity;
+    }
+
+    /** Steps per minute while walking or running, 0 otherwise. */
+    public float getCadence() {
+        return activity == Activity.WALKING || activity == Activity.RUNNING ? stepHz * 60f : 0f;
+    }
+
+    /** Strongest frequency of the step band, Hz. */
+    public float getStepFrequency() {
+        return stepHz;
+    }
+
+    /** Standard deviation of the magnitude over the window, m/s². */
+    public float getRms() {
+        return rms;
+    }
+
+    public float getPeriodicity() {
+        return periodicity;
+    }
+
+    /** Sample rate measured over the last window. */
+    public float getSampleRate() {
+        return sampleRateHz;
+    }
+
+    /** Power spectrum of the last analysis, {@code windowSize / 2 + 1} bins; do not modify. */
+    public float[] getPower() {
+        return power;
+    }
+
+    private void analyze() {
+        long span = timestamps[head == 0 ? windowSize - 1 : head - 1] - timestamps[head];
+        if (span <= 0L) {
+            return;
+        }
+        sampleRateHz = (windowSize - 1) * 1e9f / span;
+
+        float mean = 0f;
+        for (int i = 0; i < windowSize; i++) {
+            mean += magnitudes[i];
+        }
+        mean /= windowSize;
+        float variance = 0f;
+        for (int i = 0; i < windowSize; i++) {
+            int index = head + i < windowSize ? head + i : head + i - windowSize;
+            float value = magnitudes[index] - mean;
+            variance += value * value;
+            frame[i] = value * hann[i];
+        }
+        rms = (float) Math.sqrt(variance / windowSize);
+        fft.forward(frame);
+        fft.power(frame, power);
+
+        float binHz = sampleRateHz / windowSize;
+        int minBin = Math.max(1, (int) Math.ceil(MIN_STEP_HZ / binHz));
+        int maxBin = Math.min(power.length - 2, (int) (MAX_STEP_HZ / binHz));
+        float total = 0f;
+        for (int k = 1; k < power.length; k++) {
+            total += power[k];
+        }
+        periodicity = 0f;
+        stepHz = 0f;
+        if (minBin <= maxBin && total > 0f) {
+            int peak = minBin;
+            for (int k = minBin + 1; k <= maxBin; k++) {
+                if (power[k] > power[peak]) {
+                    peak = k;
+                }
+            }
+            // The Hann window spreads a pure tone over the peak bin and its neighbours
+            periodicity = (power[peak - 1] + power[peak] + power[peak + 1]) / total;
+            stepHz = (peak + parabolicOffset(power[peak - 1], power[peak], power[peak + 1])) * binHz;
+        }
+
+        if (rms < STILL_RMS) {
+            activity = Activity.STILL;
+        } else if (periodicity >= MIN_PERIODICITY) {
+            activity = stepHz >= RUNNING_STEP_HZ || rms >= RUNNING_RMS ? Activity.RUNNING : Activity.WALKING;
+        } else {
+            activity = Activity.VEHICLE;
+        }
+    }
+
+    /** Offset of the true peak from the middle of three bins, -0.5 .. 0.5. */
+    private static float parabolicOffset(float left, float middle, float right) {
+        float denominator = left - 2f * middle + right;
+        return denominator < 0f ? 0.5f * (left - right) / denominator : 0f;
+    }
+}
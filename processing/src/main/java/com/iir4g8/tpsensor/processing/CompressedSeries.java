@@ -0,0 +1,171 @@
+package com.iir4g8.tpsensor.processing;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Append-only (timestamp, float) series kept Gorilla-compressed in one buffer.
+ * <p>
+ * Points go into blocks of at most {@code pointsPerBlock} points. An index of block
+ * offsets and first timestamps gives random access at block granularity: a range
+ * query binary-searches the index and decodes only the blocks it overlaps. The open
+ * block is readable too; it is synced on the first read after an append.
+ * <p>
+ * The buffer and index are allocated up front and never grow; {@link #append} reports
+ * when they are full. No other method allocates. Not thread-safe.
+ */
+public final class CompressedSeries {
+
+    private final ByteBuffer buffer;
+    private final int pointsPerBlock;
+    private final GorillaEncoder encoder;
+    private final GorillaDecoder decoder = new GorillaDecoder();
+
+    private final int[] blockOffsets;
+    private final long[] blockFirstTimestamps;
+    private int blockCount;
+    private long pointCount;
+    private long lastTimestamp;
+    private int end;        // end of the encoded data
+    private boolean synced; // whether the open block is decodable as it stands
+    private boolean full;
+
+    /**
+     * @param buffer         storage, used from its position to its limit
+     * @param pointsPerBlock granularity of random access
+     * @param unitNanos      timestamp resolution, see {@link GorillaEncoder}
+     */
+    public CompressedSeries(ByteBuffer buffer, int pointsPerBlock, int unitNanos) {
+        if (pointsPerBlock <= 1) {
+            throw new IllegalArgumentException("pointsPerBlock must be above 1: " + pointsPerBlock);
+        }
+        this.buffer = buffer;
+        this.pointsPerBlock = pointsPerBlock;
+        this.encoder = new GorillaEncoder(unitNanos);
+        // Blocks are cut when full, and a point takes at least two bits
+        int maxBlocks = buffer.remaining() / (GorillaEncoder.HEADER_SIZE + (pointsPerBlock - 1) / 4) + 1;
+        this.blockOffsets = new int[maxBlocks];
+        this.blockFirstTimestamps = new long[maxBlocks];
+    }
+
+    /** @return false when the buffer is full; the point is not stored */
+    public boolean append(long timestampNanos, float value) {
+        if (full) {
+            return false;
+        }
+        if (blockCount == 0 || encoder.getCount() == pointsPerBlock || !encoder.add(timestampNanos, value)) {
+            if (blockCount > 0) {
+                encoder.finish();
+            }
+            if (buffer.remaining() < GorillaEncoder.HEADER_SIZE || blockCount == blockOffsets.length) {
+                full = true;
+                synced = true;
+                return false;
+            }
+            blockOffsets[blockCount] = buffer.position();
+            blockFirstTimestamps[blockCount] = timestampNanos;
+            blockCount++;
+            encoder.begin(buffer);
+            encoder.add(timestampNanos, value);
+        }
+        pointCount++;
+        lastTimestamp = timestampNanos;
+        end = blockOffsets[blockCount - 1] + encoder.getBlockBytes();
+        synced = false;
+        return true;
+    }
+
+    /** Whether {@link #append} has run out of room. */
+    public boolean isFull() {
+        return full;
+    }
+
+    public long size() {
+        return pointCount;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    public long latestTimestamp() {
+        return lastTimestamp;
+    }
+
+    /** Bytes used by all blocks, the open one included. */
+    public int getEncodedBytes() {
+        return blockCount == 0 ? 0 : end - blockOffsets[0];
+    }
+
+    /** Timestamp of the first point of a block, straight from the index. */
+    public long getBlockFirstTimestamp(int block) {
+        return blockFirstTimestamps[block];
+    }
+
+    /** @return the last block starting at or before {@code timestampNanos}, 0 if none does */
+    public int blockAt(long timestampNanos) {
+        int low = 0;
+        int high = blockCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (blockFirstTimestamps[mid] <= timestampNanos) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Decodes one block into the arrays, either of which may be null.
+     *
+     * @return the number of points written, at most the block size given to the constructor
+     */
+    public int readBlock(int block, long[] timestampsOut, float[] valuesOut, int offset) {
+        sync();
+        decoder.begin(buffer, blockOffsets[block]);
+        return decoder.decode(timestampsOut, valuesOut, offset);
+    }
+
+    /**
+     * Decodes the points in {@code [fromNanos, toNanos]}, oldest first, at most
+     * {@code maxCount} of them. Only the blocks overlapping the range are read.
+     *
+     * @return the number of points written
+     */
+    public int read(long fromNanos, long toNanos, long[] timestampsOut, float[] valuesOut,
+                    int offset, int maxCount) {
+        sync();
+        int n = 0;
+        for (int block = blockAt(fromNanos); block < blockCount && n < maxCount; block++) {
+            if (blockFirstTimestamps[block] > toNanos) {
+                break;
+            }
+            decoder.begin(buffer, blockOffsets[block]);
+            while (n < maxCount && decoder.next()) {
+                long t = decoder.getTimestamp();
+                if (t < fromNanos) {
+                    continue;
+                }
+                if (t > toNanos) {
+                    return n;
+                }
+                if (timestampsOut != null) {
+                    timestampsOut[offset + n] = t;
+                }
+                if (valuesOut != null) {
+                    valuesOut[offset + n] = decoder.getValue();
+                }
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private void sync() {
+        if (!synced && blockCount > 0) {
+            encoder.sync();
+            synced = true;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.iir4g8.tpsensor.processing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming decoder of the blocks written by {@link GorillaEncoder}.
+ * <p>
+ * {@link #begin} reads a block header, then each {@link #next()} decodes one point
+ * into {@link #getTimestamp()} and {@link #getValue()}. Reads use absolute positions,
+ * so the source buffer's position is left alone and several decoders can share it.
+ * No method allocates. Not thread-safe.
+ */
+public final class GorillaDecoder {
+
+    private ByteBuffer in;
+    private int blockStart;
+    private int readPosition;
+    private int payloadEnd;
+    private int count;
+    private int remaining;
+    private int unitNanos;
+    private long firstTimestamp;
+
+    private long units;
+    private long delta;
+    private int valueBits;
+    private int leading;
+    private int trailing;
+    private long timestamp;
+
+    // Bits read from the buffer and not consumed yet, right-aligned
+    private long bits;
+    private int bitCount;
+
+    /**
+     * Opens the block starting at {@code blockStart}.
+     *
+     * @return the number of points in the block
+     */
+    public int begin(ByteBuffer in, int blockStart) {
+        this.in = in;
+        this.blockStart = blockStart;
+        count = in.getInt(blockStart + GorillaEncoder.OFF_COUNT);
+        unitNanos = in.getInt(blockStart + GorillaEncoder.OFF_UNIT);
+        firstTimestamp = in.getLong(blockStart + GorillaEncoder.OFF_FIRST_TIMESTAMP);
+        valueBits = in.getInt(blockStart + GorillaEncoder.OFF_FIRST_VALUE);
+        readPosition = blockStart + GorillaEncoder.HEADER_SIZE;
+        payloadEnd = readPosition + in.getInt(blockStart + GorillaEncoder.OFF_PAYLOAD_BYTES);
+        remaining = count;
+        units = 0L;
+        delta = 0L;
+        leading = 0;
+        trailing = 0;
+        bits = 0L;
+        bitCount = 0;
+        return count;
+    }
+
+    /** Size in bytes of the open block, header included. */
+    public int getBlockBytes() {
+        return payloadEnd - blockStart;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /** Timestamp of the first point, without decoding the block. */
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    /** Decodes the next point; false once the block is exhausted. */
+    public boolean next() {
+        if (remaining == 0) {
+            return false;
+        }
+        if (remaining-- == count) {
+            timestamp = firstTimestamp;
+            return true;
+        }
+        readTimestamp();
+        readValue();
+        timestamp = firstTimestamp + units * unitNanos;
+        return true;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public float getValue() {
+        return Float.intBitsToFloat(valueBits);
+    }
+
+    /**
+     * Decodes the rest of the block into the arrays, either of which may be null.
+     *
+     * @return the number of points written
+     */
+    public int decode(long[] timestampsOut, float[] valuesOut, int offset) {
+        int n = 0;
+        while (next()) {
+            if (timestampsOut != null) {
+                timestampsOut[offset + n] = timestamp;
+            }
+            if (valuesOut != null) {
+                valuesOut[offset + n] = Float.intBitsToFloat(valueBits);
+            }
+            n++;
+        }
+        return n;
+    }
+
+    private void readTimestamp() {
+        long dod;
+        if (readBits(1) == 0L) {
+            dod = 0L;
+        } else if (readBits(1) == 0L) {
+            dod = signed(readBits(8), 8);
+        } else if (readBits(1) == 0L) {
+            dod = signed(readBits(16), 16);
+        } else if (readBits(1) == 0L) {
+            dod = signed(readBits(24), 24);
+        } else if (readBits(1) == 0L) {
+            dod = signed(readBits(32), 32);
+        } else {
+            dod = readBits(64);
+        }
+        delta += dod;
+        units += delta;
+    }
+
+    private void readValue() {
+        if (readBits(1) == 0L) {
+            return;
+        }
+        if (readBits(1) == 1L) {
+            leading = (int) readBits(5);
+            trailing = 32 - leading - ((int) readBits(5) + 1);
+        }
+        int xor = (int) readBits(32 - leading - trailing) << trailing;
+        valueBits ^= xor;
+    }
+
+    private static long signed(long value, int n) {
+        return (value << (64 - n)) >> (64 - n);
+    }
+
+    private long readBits(int n) {
+        long result = 0L;
+        while (n > 0) {
+            if (bitCount == 0) {
+                refill();
+            }
+            int take = Math.min(bitCount, n);
+            long chunk = (bits >>> (bitCount - take)) & (take == 64 ? -1L : (1L << take) - 1L);
+            result = take == 64 ? chunk : (result << take) | chunk;
+            bitCount -= take;
+            n -= take;
+        }
+        return result;
+    }
+
+    private void refill() {
+        if (payloadEnd - readPosition >= 8) {
+            // Big-endian whatever the buffer order, matching the encoder
+            long word = in.getLong(readPosition);
+            bits = in.order() == ByteOrder.BIG_ENDIAN ? word : Long.reverseBytes(word);
+            bitCount = 64;
+            readPosition += 8;
+        } else if (readPosition < payloadEnd) {
+            bits = in.get(readPosition++) & 0xFFL;
+            bitCount = 8;
+        } else {
+            throw new IllegalStateException("block payload is truncated");
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.iir4g8.tpsensor.processing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming encoder of (timestamp, float) series into self-contained compressed blocks,
+ * after Facebook's Gorilla time series database (Pelkonen et al., VLDB 2015).
+ * <p>
+ * Timestamps are stored as the delta of their delta, which is zero for a steady
+ * sampling rate. Values are XORed with the previous value; slowly changing readings
+ * share sign, exponent and high mantissa bits, so only a short run of meaningful bits
+ * remains. A point of a steady, slowly changing stream takes a few bits instead of 12
+ * bytes.
+ *
+ * <pre>
+ * block     := count:int unitNanos:int firstTimestamp:long firstValue:int payloadBytes:int payload
+ * timestamp := '0'                          delta of delta is 0
+ *            | '10' dod:8 | '110' dod:16 | '1110' dod:24 | '11110' dod:32 | '11111' dod:64
+ * value     := '0'                          same bits as the previous value
+ *            | '10' meaningful              inside the previous leading/trailing zero window
+ *            | '11' leading:5 length-1:5 meaningful
+ * </pre>
+ *
+ * Header integers follow the buffer's byte order; the payload is a big-endian bit
+ * stream. Timestamps are counted in {@code unitNanos} from the first one, so a unit
+ * above 1 ns drops sensor jitter the consumer does not need. {@link #sync()} makes the
+ * open block decodable without closing it. No method allocates. Not thread-safe.
+ */
+public final class GorillaEncoder {
+
+    public static final int HEADER_SIZE = 24;
+    /** Upper bound of the bytes one point can add to the payload. */
+    public static final int MAX_POINT_BYTES = 16;
+
+    static final int OFF_COUNT = 0;
+    static final int OFF_UNIT = 4;
+    static final int OFF_FIRST_TIMESTAMP = 8;
+    static final int OFF_FIRST_VALUE = 16;
+    static final int OFF_PAYLOAD_BYTES = 20;
+
+    private final int unitNanos;
+
+    private ByteBuffer out;
+    private int blockStart;
+    private int count;
+    private long firstTimestamp;
+    private int firstValue;
+    private long previousUnits;
+    private long previousDelta;
+    private int previousValue;
+    private int previousLeading;
+    private int previousTrailing;
+
+    // Bits not yet written to the buffer, right-aligned
+    private long bits;
+    private int bitCount;
+
+    /** @param unitNanos timestamp resolution, 1 for lossless timestamps */
+    public GorillaEncoder(int unitNanos) {
+        if (unitNanos <= 0) {
+            throw new IllegalArgumentException("unitNanos must be positive: " + unitNanos);
+        }
+        this.unitNanos = unitNanos;
+    }
+
+    public int getUnitNanos() {
+        return unitNanos;
+    }
+
+    /** Starts a block at the position of {@code out}. */
+    public void begin(ByteBuffer out) {
+        if (out.remaining() < HEADER_SIZE) {
+            throw new IllegalArgumentException("no room for a block header");
+        }
+        this.out = out;
+        blockStart = out.position();
+        out.position(blockStart + HEADER_SIZE);
+        count = 0;
+        firstTimestamp = 0L;
+        firstValue = 0;
+        bits = 0L;
+        bitCount = 0;
+    }
+
+    /** Number of points in the open block. */
+    public int getCount() {
+        return count;
+    }
+
+    /** Bytes the open block would take if it was finished now. */
+    public int getBlockBytes() {
+        return out.position() - blockStart + (bitCount + 7) / 8;
+    }
+
+    /**
+     * Appends a point to the open block.
+     *
+     * @return false, leaving the block unchanged, when the buffer may not have room for
+     * the point; finish the block and begin another one
+     */
+    public boolean add(long timestampNanos, float value) {
+        int valueBits = Float.floatToRawIntBits(value);
+        if (count == 0) {
+            firstTimestamp = timestampNanos;
+            firstValue = valueBits;
+            previousUnits = 0L;
+            previousDelta = 0L;
+            previousValue = valueBits;
+            previousLeading = Integer.MAX_VALUE;
+            previousTrailing = 0;
+            count = 1;
+            return true;
+        }
+        // Pending bits plus the point must fit
+        if (out.remaining() < MAX_POINT_BYTES + 8) {
+            return false;
+        }
+        long units = Math.floorDiv(timestampNanos - firstTimestamp + unitNanos / 2, unitNanos);
+        long delta = units - previousUnits;
+        writeTimestamp(delta - previousDelta);
+        previousUnits = units;
+        previousDelta = delta;
+        writeValue(valueBits);
+        count++;
+        return true;
+    }
+
+    private void writeTimestamp(long dod) {
+        if (dod == 0L) {
+            writeBits(0L, 1);
+        } else if (dod >= -(1L << 7) && dod < (1L << 7)) {
+            writeBits(0b10L, 2);
+            writeBits(dod, 8);
+        } else if (dod >= -(1L << 15) && dod < (1L << 15)) {
+            writeBits(0b110L, 3);
+            writeBits(dod, 16);
+        } else if (dod >= -(1L << 23) && dod < (1L << 23)) {
+            writeBits(0b1110L, 4);
+            writeBits(dod, 24);
+        } else if (dod >= Integer.MIN_VALUE && dod <= Integer.MAX_VALUE) {
+            writeBits(0b11110L, 5);
+            writeBits(dod, 32);
+        } else {
+            writeBits(0b11111L, 5);
+            writeBits(dod, 64);
+        }
+    }
+
+    private void writeValue(int valueBits) {
+        int xor = valueBits ^ previousValue;
+        previousValue = valueBits;
+        if (xor == 0) {
+            writeBits(0L, 1);
+            return;
+        }
+        int leading = Integer.numberOfLeadingZeros(xor);
+        int trailing = Integer.numberOfTrailingZeros(xor);
+        if (leading >= previousLeading && trailing >= previousTrailing) {
+            // Fits the previous window, no need to repeat its bounds
+            writeBits(0b10L, 2);
+            writeBits(xor >>> previousTrailing, 32 - previousLeading - previousTrailing);
+            return;
+        }
+        int length = 32 - leading - trailing;
+        writeBits(0b11L, 2);
+        writeBits(leading, 5);
+        writeBits(length - 1, 5);
+        writeBits(xor >>> trailing, length);
+        previousLeading = leading;
+        previousTrailing = trailing;
+    }
+
+    private void writeBits(long value, int n) {
+        while (n > 0) {
+            int take = Math.min(64 - bitCount, n);
+            long chunk = (value >>> (n - take)) & mask(take);
+            bits = take == 64 ? chunk : (bits << take) | chunk;
+            bitCount += take;
+            n -= take;
+            if (bitCount == 64) {
+                out.putLong(out.order() == ByteOrder.BIG_ENDIAN ? bits : Long.reverseBytes(bits));
+                bits = 0L;
+                bitCount = 0;
+            }
+        }
+    }
+
+    private static long mask(int n) {
+        return n == 64 ? -1L : (1L << n) - 1L;
+    }
+
+    /**
+     * Makes the open block decodable as it stands: patches the header and writes the
+     * pending bits after the buffer position without moving it. Appending can go on.
+     */
+    public void sync() {
+        int position = out.position();
+        long pending = bits << (64 - bitCount);
+        int pendingBytes = (bitCount + 7) / 8;
+        for (int i = 0; i < pendingBytes; i++) {
+            out.put(position + i, (byte) (pending >>> (56 - 8 * i)));
+        }
+        out.putInt(blockStart + OFF_COUNT, count);
+        out.putInt(blockStart + OFF_UNIT, unitNanos);
+        out.putLong(blockStart + OFF_FIRST_TIMESTAMP, firstTimestamp);
+        out.putInt(blockStart + OFF_FIRST_VALUE, firstValue);
+        out.putInt(blockStart + OFF_PAYLOAD_BYTES, position + pendingBytes - blockStart - HEADER_SIZE);
+    }
+
+    /**
+     * Closes the block and leaves the buffer positioned right after it.
+     *
+     * @return the size of the block in bytes
+     */
+    public int finish() {
+        sync();
+        out.position(out.position() + (bitCount + 7) / 8);
+        int size = out.position() - blockStart;
+        bits = 0L;
+        bitCount = 0;
+        out = null;
+        return size;
+    }
+}
@@ -0,0 +1,97 @@
+package com.iir4g8.tpsensor.processing;
+
+/**
+ * Critically damped spring that moves a displayed heading towards a target heading.
+ * <p>
+ * The target can change at any time without restarting anything: the spring keeps its
+ * position and velocity and simply heads for the new target, never overshooting it.
+ * Headings are in degrees; the spring always turns the short way round, so going from
+ * 350 to 10 crosses north instead of sweeping back through 180.
+ * <p>
+ * Each {@link #step} uses the exact solution of the spring equation, so it stays
+ * stable for any frame time. No method allocates. Not thread-safe.
+ */
+public final class HeadingSpring {
+
+    // Close enough to the target to stop animating
+    private static final float SETTLED_DEGREES = 0.05f;
+    private static final float SETTLED_DEGREES_PER_SECOND = 0.5f;
+
+    private final float omega;
+
+    // Unwrapped position, so that the velocity stays continuous across 0/360
+    private float heading;
+    private float velocity;
+    private float target;
+    private boolean settled = true;
+
+    /**
+     * @param omega natural frequency in rad/s; the spring covers about 90% of a step in
+     *              {@code 4 / omega} seconds
+     */
+    public HeadingSpring(float omega) {
+        this.omega = omega;
+    }
+
+    /** Jumps to {@code degrees} without animating. */
+    public void reset(float degrees) {
+        heading = wrap(degrees);
+        target = heading;
+        velocity = 0f;
+        settled = true;
+    }
+
+    public void setTarget(float degrees) {
+        // Re-express the target next to the current position, at most 180 degrees away
+        float delta = wrap(degrees - heading);
+        if (delta > 180f) {
+            delta -= 360f;
+        }
+        target = heading + delta;
+        settled = false;
+    }
+
+    /**
+     * Advances the animation by {@code seconds}.
+     *
+     * @return true while the heading is still moving
+     */
+    public boolean step(float seconds) {
+        if (settled) {
+            return false;
+        }
+        float offset = heading - target;
+        float decay = (float) Math.exp(-omega * seconds);
+        float temp = (velocity + omega * offset) * seconds;
+        offset = (offset + temp) * decay;
+        velocity = (velocity - omega * temp) * decay;
+
+        if (Math.abs(offset) < SETTLED_DEGREES && Math.abs(velocity) < SETTLED_DEGREES_PER_SECOND) {
+            offset = 0f;
+            velocity = 0f;
+            settled = true;
+        }
+        heading = target + offset;
+        if (settled || Math.abs(heading) > 720f) {
+            // Keep the unwrapped values small
+            float shift = heading - wrap(heading);
+            heading -= shift;
+            target -= shift;
+        }
+        return !settled;
+    }
+
+    public boolean isSettled() {
+        return settled;
+    }
+
+    /** Displayed heading, 0 to 360. */
+    public float getHeading() {
+        return wrap(heading);
+    }
+
+    private static float wrap(float degrees) {
+        float wrapped = degrees % 360f;
+        return wrapped < 0f ? wrapped + 360f : wrapped;
+    }
+}
@@ -0,0 +1,191 @@
+package com.iir4g8.tpsensor.processing;
+
+/**
+ * Decides whether the device is moving from its angular rate, on sensor timestamps only.
+ * <p>
+ * Each sample adds its squared rate, weighted by the time since the previous sample, to
+ * a sliding window of {@code windowNanos}; the root mean square rate of the window is
+ * the motion level. A slow continuous turn, whose change between two samples is tiny,
+ * still fills the window. Movement starts as soon as the level rises above
+ * {@code startThreshold} and ends once it has stayed below {@code stopThreshold} for
+ * {@code holdNanos}. Between the two thresholds the state holds, so noise around one
+ * level cannot make it flap.
+ * <p>
+ * The stop timeout is a single deadline, armed the first time the level drops below
+ * {@code stopThreshold} and compared with the timestamps of later samples; nothing is
+ * scheduled or cancelled per sample. Sensors keep reporting while the device is still,
+ * so the deadline is always checked.
+ * <p>
+ * No method allocates. Not thread-safe.
+ */
+public final class MotionDetector {
+
+    // Longer gaps between orientations give no usable angular rate
+    private static final long MAX_RATE_GAP_NANOS = 200_000_000L;
+
+    private final float startThreshold;
+    private final float stopThreshold;
+    private final long windowNanos;
+    private final long holdNanos;
+
+    // Samples in the window, oldest at head: timestamp and squared rate times duration
+    private final long[] timestamps;
+    private final double[] energies;
+    private final long[] durations;
+    private int head;
+    private int size;
+    private double energySum;
+    private long durationSum;
+
+    // Flags rather than 0 timestamps: streams may legitimately start at 0
+    private long lastNanos;
+    private boolean hasPrevious;
+    private boolean moving;
+    private long stopDeadlineNanos;
+    private boolean stopArmed;
+
+    private final float[] previousQuaternion = new float[4];
+    private final float[] rate = new float[3];
+
+    /**
+     * @param startThreshold RMS angular rate, rad/s, above which the device moves
+     * @param stopThreshold  RMS angular rate, rad/s, below which it may stop
+     * @param capacity       most samples kept in the window; at higher rates the window
+     *                       covers only the newest {@code capacity} samples
+     */
+    public MotionDetector(float startThreshold, float stopThreshold, long windowNanos, long holdNanos,
+                          int capacity) {
+        if (stopThreshold > startThreshold || windowNanos <= 0L || capacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.startThreshold = startThreshold;
+        this.stopThreshold = stopThreshold;
+        this.windowNanos = windowNanos;
+        this.holdNanos = holdNanos;
+        this.timestamps = new long[capacity];
+        this.energies = new double[capacity];
+        this.durations = new long[capacity];
+    }
+
+    /** Back to still with an empty window. */
+    public void reset() {
+        head = 0;
+        size = 0;
+        energySum = 0.0;
+        durationSum = 0L;
+        lastNanos = 0L;
+        hasPrevious = false;
+        moving = false;
+        stopArmed = false;
+    }
+
+    public boolean isMoving() {
+        return moving;
+    }
+
+    /** Root mean square angular rate over the window, rad/s. */
+    public float getLevel() {
+        return durationSum > 0L ? (float) Math.sqrt(Math.max(0.0, energySum) / durationSum) : 0f;
+    }
+
+    /**
+     * Feeds one angular rate sample, rad/s.
+     *
+     * @return true when {@link #isMoving()} changed
+     */
+    public boolean update(long timestampNanos, float wx, float wy, float wz) {
+        long previous = lastNanos;
+        boolean first = !hasPrevious;
+        lastNanos = timestampNanos;
+        hasPrevious = true;
+        if (first || timestampNanos <= previous) {
+            return false;
+        }
+        // A long gap counts for one window at most
+        long duration = Math.min(timestampNanos - previous, windowNanos);
+        add(timestampNanos, ((double) wx * wx + (double) wy * wy + (double) wz * wz) * duration, duration);
+        return advance(timestampNanos, getLevel());
+    }
+
+    /**
+     * Feeds one orientation, as delivered by an attitude source.
+     *
+     * @param quaternion      device-to-world rotation, w x y z
+     * @param angularVelocity rad/s in device axes, or null to differentiate the orientations
+     * @return true when {@link #isMoving()} changed
+     */
+    public boolean updateAttitude(long timestampNanos, float[] quaternion, float[] angularVelocity) {
+        boolean changed = false;
+        if (angularVelocity != null) {
+            changed = update(timestampNanos, angularVelocity[0], angularVelocity[1], angularVelocity[2]);
+        } else {
+            long gap = timestampNanos - lastNanos;
+            if (hasPrevious && gap > 0L && gap <= MAX_RATE_GAP_NANOS) {
+                Quaternions.angularVelocity(previousQuaternion, quaternion, gap * 1e-9f, rate);
+                changed = update(timestampNanos, rate[0], rate[1], rate[2]);
+            } else {
+                // Nothing to differentiate against: start the window afresh
+                lastNanos = timestampNanos;
+                hasPrevious = true;
+            }
+        }
+        System.arraycopy(quaternion, 0, previousQuaternion, 0, 4);
+        return changed;
+    }
+
+    private void add(long timestampNanos, double energy, long duration) {
+        if (size == timestamps.length) {
+            evictOldest();
+        }
+        int tail = head + size < timestamps.length ? head + size : head + size - timestamps.length;
+        timestamps[tail] = timestampNanos;
+        energies[tail] = energy;
+        durations[tail] = duration;
+        size++;
+        energySum += energy;
+        durationSum += duration;
+        long windowStart = timestampNanos - windowNanos;
+        while (size > 1 && timestamps[head] <= windowStart) {
+            evictOldest();
+        }
+    }
+
+    private void evictOldest() {
+        energySum -= energies[head];
+        durationSum -= durations[head];
+        head = head + 1 == timestamps.length ? 0 : head + 1;
+        size--;
+        if (size == 0) {
+            // Drop the rounding left over by the running sum
+            energySum = 0.0;
+        }
+    }
+
+    private boolean advance(long timestampNanos, float level) {
+        if (level > startThreshold) {
+            stopArmed = false;
+            if (!moving) {
+                moving = true;
+                return true;
+            }
+            return false;
+        }
+        if (!moving) {
+            return false;
+        }
+        if (level >= stopThreshold) {
+            stopArmed = false;
+            return false;
+        }
+        if (!stopArmed) {
+            stopDeadlineNanos = timestampNanos + holdNanos;
+            stopArmed = true;
+        }
+        if (timestampNanos >= stopDeadlineNanos) {
+            moving = false;
+            stopArmed = false;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,111 @@
+package com.iir4g8.tpsensor.processing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands timestamped orientations, optionally with the angular velocity they were
+ * measured with, from one writer thread to one reader thread without locks or allocation.
+ * <p>
+ * Three slots rotate between the writer, the reader and a shared middle slot
+ * (a triple buffer). The writer fills its own slot and swaps it with the middle
+ * one; the reader swaps the middle slot in when it is newer. Each side only ever
+ * touches a slot it owns, so a read never sees half of a write, and neither side
+ * waits for the other. The reader always gets the newest complete orientation;
+ * intermediate ones published between two reads are skipped.
+ * <p>
+ * {@link #publish} must only be called from one thread, and {@link #update} and the
+ * getters from one (possibly different) thread.
+ */
+public final class OrientationExchange {
+
+    // Set in the middle index when it holds a slot the reader has not seen yet
+    private static final int FRESH = 4;
+    private static final int INDEX_MASK = 3;
+
+    private final float[][] quaternions = new float[3][4];
+    private final long[] timestamps = new long[3];
+    private final float[][] angularVelocities = new float[3][3];
+    private final boolean[] hasAngularVelocity = new boolean[3];
+
+    private final AtomicInteger middle = new AtomicInteger(1);
+    // Writer thread only
+    private int back = 0;
+    // Reader thread only
+    private int front = 2;
+
+    public OrientationExchange() {
+        for (float[] q : quaternions) {
+            Quaternions.setIdentity(q);
+        }
+    }
+
+    /**
+     * Writer side: makes {@code quaternion[offset..offset+3]} (w x y z) the newest
+     * orientation, observed at {@code timestampNanos}.
+     */
+    public void publish(long timestampNanos, float[] quaternion, int offset) {
+        publish(timestampNanos, quaternion, offset, null);
+    }
+
+    /**
+     * Same as {@link #publish(long, float[], int)}, with the angular velocity (rad/s,
+     * device axes) at that time, or {@code null} when it is not known.
+     */
+    public void publish(long timestampNanos, float[] quaternion, int offset, float[] angularVelocity) {
+        float[] q = quaternions[back];
+        q[0] = quaternion[offset];
+        q[1] = quaternion[offset + 1];
+        q[2] = quaternion[offset + 2];
+        q[3] = quaternion[offset + 3];
+        timestamps[back] = timestampNanos;
+        if (angularVelocity != null) {
+            float[] rate = angularVelocities[back];
+            rate[0] = angularVelocity[0];
+            rate[1] = angularVelocity[1];
+            rate[2] = angularVelocity[2];
+        }
+        hasAngularVelocity[back] = angularVelocity != null;
+        // The volatile swap publishes the slot contents along with the index
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Reader side: switches to the newest published orientation.
+     *
+     * @return true if it changed since the previous call
+     */
+    public boolean update() {
+        if ((middle.get() & FRESH) == 0) {
+            return false;
+        }
+        front = middle.getAndSet(front) & INDEX_MASK;
+        return true;
+    }
+
+    /** Copies the reader's current orientation, w x y z. */
+    public void getQuaternion(float[] out) {
+        float[] q = quaternions[front];
+        out[0] = q[0];
+        out[1] = q[1];
+        out[2] = q[2];
+        out[3] = q[3];
+    }
+
+    /** Timestamp of the reader's current orientation, 0 before the first publish. */
+    public long getTimestampNanos() {
+        return timestamps[front];
+    }
+
+    /** True if the reader's current orientation was published with an angular velocity. */
+    public boolean hasAngularVelocity() {
+        return hasAngularVelocity[front];
+    }
+
+    /** Copies the angular velocity of the reader's current orientation, if it has one. */
+    public void getAngularVelocity(float[] out) {
+        float[] rate = angularVelocities[front];
+        out[0] = rate[0];
+        out[1] = rate[1];
+        out[2] = rate[2];
+    }
+}
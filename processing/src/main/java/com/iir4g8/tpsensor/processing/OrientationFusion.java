@@ -0,0 +1,131 @@
+package com.iir4g8.tpsensor.processing;
+
+/**
+ * Orientation from the accelerometer and magnetometer.
+ * <p>
+ * Same algorithm as {@code SensorManager.getRotationMatrix} and
+ * {@code SensorManager.getOrientation}, reimplemented without Android so the fusion
+ * step can be tested and benchmarked on the JVM. All state is preallocated;
+ * {@link #update()} does not allocate.
+ */
+public final class OrientationFusion {
+
+    private static final float STANDARD_GRAVITY = 9.80665f;
+    // Below 10% of g the device is in free fall and gravity gives no direction
+    private static final float FREE_FALL_GRAVITY_SQUARED = 0.01f * STANDARD_GRAVITY * STANDARD_GRAVITY;
+
+    private final float[] gravity = new float[3];
+    private final float[] geomagnetic = new float[3];
+    private final float[] rotationMatrix = new float[9];
+    private final float[] orientation = new float[3];
+    private boolean hasGravity;
+    private boolean hasGeomagnetic;
+
+    public void setAccelerometer(float[] values) {
+        System.arraycopy(values, 0, gravity, 0, 3);
+        hasGravity = true;
+    }
+
+    public void setMagnetometer(float[] values) {
+        System.arraycopy(values, 0, geomagnetic, 0, 3);
+        hasGeomagnetic = true;
+    }
+
+    public boolean isReady() {
+        return hasGravity && hasGeomagnetic;
+    }
+
+    /**
+     * Recomputes the orientation from the latest readings.
+     *
+     * @return false when either sensor has not reported yet or the readings are degenerate
+     * (free fall, or a magnetic field parallel to gravity)
+     */
+    public boolean update() {
+        if (!isReady() || !getRotationMatrix(rotationMatrix, gravity, geomagnetic)) {
+            return false;
+        }
+        getOrientation(rotationMatrix, orientation);
+        return true;
+    }
+
+    /** Rotation around Z in degrees, normalized to 0-360. */
+    public float getAzimuthDegrees() {
+        float azimuth = (float) Math.toDegrees(orientation[0]);
+        return azimuth < 0 ? azimuth + 360 : azimuth;
+    }
+
+    /** Rotation around X in degrees. */
+    public float getPitchDegrees() {
+        return (float) Math.toDegrees(orientation[1]);
+    }
+
+    /** Rotation around Y in degrees. */
+    public float getRollDegrees() {
+        return (float) Math.toDegrees(orientation[2]);
+    }
+
+    /** Row-major 3x3 rotation matrix of the last successful update. */
+    public float[] getRotationMatrix() {
+        return rotationMatrix;
+    }
+
+    /**
+     * Fills the 3x3 rotation matrix {@code r} transforming device coordinates to world
+     * coordinates (X east, Y magnetic north, Z up).
+     */
+    public static boolean getRotationMatrix(float[] r, float[] gravity, float[] geomagnetic) {
+        float ax = gravity[0];
+        float ay = gravity[1];
+        float az = gravity[2];
+        float normSqA = ax * ax + ay * ay + az * az;
+        if (normSqA < FREE_FALL_GRAVITY_SQUARED) {
+            return false;
+        }
+
+        float ex = geomagnetic[0];
+        float ey = geomagnetic[1];
+        float ez = geomagnetic[2];
+        // East = magnetic field x gravity
+        float hx = ey * az - ez * ay;
+        float hy = ez * ax - ex * az;
+        float hz = ex * ay - ey * ax;
+        float normH = (float) Math.sqrt(hx * hx + hy * hy + hz * hz);
+        if (normH < 0.1f) {
+            return false;
+        }
+        float invH = 1.0f / normH;
+        hx *= invH;
+        hy *= invH;
+        hz *= invH;
+
+        float invA = 1.0f / (float) Math.sqrt(normSqA);
+        ax *= invA;
+        ay *= invA;
+        az *= invA;
+
+        // North = gravity x east
+        float mx = ay * hz - az * hy;
+        float my = az * hx - ax * hz;
+        float mz = ax * hy - ay * hx;
+
+        r[0] = hx;
+        r[1] = hy;
+        r[2] = hz;
+        r[3] = mx;
+        r[4] = my;
+        r[5] = mz;
+        r[6] = ax;
+        r[7] = ay;
+        r[8] = az;
+        return true;
+    }
+
+    /** Azimuth, pitch and roll in radians from a 3x3 rotation matrix. */
+    public static float[] getOrientation(float[] r, float[] values) {
+        values[0] = (float) Math.atan2(r[1], r[4]);
+        values[1] = (float) Math.asin(-r[7]);
+        values[2] = (float) Math.atan2(-r[6], r[8]);
+        return values;
+    }
+}
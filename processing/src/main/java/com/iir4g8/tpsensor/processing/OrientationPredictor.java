@@ -0,0 +1,83 @@
+package com.iir4g8.tpsensor.processing;
+
+/**
+ * Estimates the orientation at a future display time from the latest samples.
+ * <p>
+ * When the newest sample carries an angular velocity (gyroscope), the orientation is
+ * extrapolated from it up to the requested time, at most {@code maxHorizonNanos} ahead
+ * of the sample. Without one, the estimate runs one sample period behind and
+ * interpolates between the last two samples, which is smooth but adds that period of
+ * latency.
+ * <p>
+ * Timestamps must share the time base of the samples. No method allocates. Not
+ * thread-safe.
+ */
+public final class OrientationPredictor {
+
+    public static final long DEFAULT_MAX_HORIZON_NANOS = 50_000_000L;
+
+    private static final float NANOS_TO_SECONDS = 1e-9f;
+
+    private final long maxHorizonNanos;
+
+    private final float[] previous = new float[4];
+    private long previousNanos;
+    private final float[] current = new float[4];
+    private long currentNanos;
+    private int sampleCount;
+
+    private final float[] rate = new float[3];
+    private boolean hasRate;
+
+    public OrientationPredictor() {
+        this(DEFAULT_MAX_HORIZON_NANOS);
+    }
+
+    public OrientationPredictor(long maxHorizonNanos) {
+        this.maxHorizonNanos = maxHorizonNanos;
+        reset();
+    }
+
+    public void reset() {
+        Quaternions.setIdentity(previous);
+        Quaternions.setIdentity(current);
+        previousNanos = 0L;
+        currentNanos = 0L;
+        sampleCount = 0;
+        hasRate = false;
+    }
+
+    /** Takes in the newest orientation of {@code exchange}, if it has a new one. */
+    public void update(OrientationExchange exchange) {
+        if (!exchange.update()) {
+            return;
+        }
+        System.arraycopy(current, 0, previous, 0, 4);
+        previousNanos = currentNanos;
+        exchange.getQuaternion(current);
+        currentNanos = exchange.getTimestampNanos();
+        hasRate = exchange.hasAngularVelocity();
+        if (hasRate) {
+            exchange.getAngularVelocity(rate);
+        }
+        sampleCount++;
+    }
+
+    /** Writes the estimated orientation at {@code displayNanos} into {@code out}. */
+    public void predict(long displayNanos, float[] out) {
+        if (hasRate) {
+            long ahead = Math.max(0L, Math.min(displayNanos - currentNanos, maxHorizonNanos));
+            Quaternions.integrate(current, rate[0], rate[1], rate[2], ahead * NANOS_TO_SECONDS, out);
+            return;
+        }
+        long period = currentNanos - previousNanos;
+        if (sampleCount < 2 || period <= 0L) {
+            System.arraycopy(current, 0, out, 0, 4);
+            return;
+        }
+        // Show the time one period ago, which always lies between the last two samples
+        long target = displayNanos - period;
+        float t = (float) (target - previousNanos) / period;
+        Quaternions.slerp(previous, current, Math.max(0f, Math.min(1f, t)), out);
+    }
+}
@@ -0,0 +1,223 @@
+package com.iir4g8.tpsensor.processing;
+
+/**
+ * Mahony-style complementary orientation filter.
+ * <p>
+ * Gyroscope samples are integrated into a quaternion at their full rate, which is
+ * smooth and reacts without delay but drifts. Accelerometer samples, optionally with
+ * the latest magnetometer reading, pull the estimate back towards gravity and magnetic
+ * north: the error between the measured and the predicted directions is applied as a
+ * small proportional rotation, and its integral is fed back as a gyroscope bias. The
+ * magnetometer only corrects the heading, never the tilt.
+ * The correction needs no trigonometry and can run at a lower rate than the gyroscope.
+ * <p>
+ * The whole state is a handful of floats; no method allocates. Not thread-safe.
+ */
+public final class QuaternionFilter {
+
+    public static final float DEFAULT_KP = 2.0f;
+    public static final float DEFAULT_KI = 0.005f;
+
+    private static final float NANOS_TO_SECONDS = 1e-9f;
+    // Gaps longer than this (pause, dropped events) are not integrated
+    private static final float MAX_STEP_SECONDS = 0.2f;
+
+    private final float kp;
+    private final float ki;
+
+    // Device-to-world rotation, w x y z
+    private final float[] q = new float[4];
+    private boolean initialized;
+
+    // Integral of the correction error, acts as a gyroscope bias estimate (rad/s)
+    private float biasX;
+    private float biasY;
+    private float biasZ;
+
+    private float magX;
+    private float magY;
+    private float magZ;
+    private boolean hasMagnetometer;
+
+    private long lastGyroNanos;
+    // Latest bias-corrected gyroscope reading
+    private float rateX;
+    private float rateY;
+    private float rateZ;
+    private long lastCorrectionNanos;
+
+    // Scratch for the initial alignment only
+    private final float[] gravity = new float[3];
+    private final float[] geomagnetic = new float[3];
+    private final float[] rotation = new float[9];
+
+    public QuaternionFilter() {
+        this(DEFAULT_KP, DEFAULT_KI);
+    }
+
+    public QuaternionFilter(float kp, float ki) {
+        this.kp = kp;
+        this.ki = ki;
+        reset();
+    }
+
+    public void reset() {
+        Quaternions.setIdentity(q);
+        initialized = false;
+        hasMagnetometer = false;
+        biasX = 0f;
+        biasY = 0f;
+        biasZ = 0f;
+        lastGyroNanos = 0L;
+        lastCorrectionNanos = 0L;
+        rateX = 0f;
+        rateY = 0f;
+        rateZ = 0f;
+    }
+
+    /** True once the first accelerometer and magnetometer pair has aligned the estimate. */
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    /** Stores the latest magnetic field; it is used by the next accelerometer correction. */
+    public void updateMagnetometer(float[] values) {
+        magX = values[0];
+        magY = values[1];
+        magZ = values[2];
+        hasMagnetometer = true;
+    }
+
+    /**
+     * Integrates one gyroscope sample (rad/s, device axes).
+     */
+    public void updateGyroscope(float[] values, long timestampNanos) {
+        long previous = lastGyroNanos;
+        lastGyroNanos = timestampNanos;
+        rateX = values[0] + biasX;
+        rateY = values[1] + biasY;
+        rateZ = values[2] + biasZ;
+        if (!initialized || previous == 0L) {
+            return;
+        }
+        float dt = (timestampNanos - previous) * NANOS_TO_SECONDS;
+        if (dt <= 0f || dt > MAX_STEP_SECONDS) {
+            return;
+        }
+        rotate(rateX, rateY, rateZ, dt);
+    }
+
+    /**
+     * Corrects the estimate with one accelerometer sample (m/s^2, device axes) and the
+     * latest magnetometer reading. The first call with both sensors available aligns the
+     * quaternion directly.
+     */
+    public void updateAccelerometer(float[] values, long timestampNanos) {
+        float ax = values[0];
+        float ay = values[1];
+        float az = values[2];
+
+        if (!initialized) {
+            if (hasMagnetometer) {
+                align(ax, ay, az);
+            }
+            lastCorrectionNanos = timestampNanos;
+            return;
+        }
+
+        float dt = (timestampNanos - lastCorrectionNanos) * NANOS_TO_SECONDS;
+        lastCorrectionNanos = timestampNanos;
+        if (dt <= 0f || dt > MAX_STEP_SECONDS) {
+            return;
+        }
+
+        float normA = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        if (normA == 0f) {
+            return;
+        }
+        ax /= normA;
+        ay /= normA;
+        az /= normA;
+
+        float w = q[0], x = q[1], y = q[2], z = q[3];
+
+        // Predicted "up" in device coordinates: third row of the rotation matrix
+        float vx = 2f * (x * z - w * y);
+        float vy = 2f * (y * z + w * x);
+        float vz = 1f - 2f * (x * x + y * y);
+
+        // Error = measured x predicted
+        float ex = ay * vz - az * vy;
+        float ey = az * vx - ax * vz;
+        float ez = ax * vy - ay * vx;
+
+        if (hasMagnetometer) {
+            // Horizontal part of the field in world coordinates (first two rows of the matrix)
+            float hx = (1f - 2f * (y * y + z * z)) * magX + 2f * (x * y - w * z) * magY + 2f * (x * z + w * y) * magZ;
+            float hy = 2f * (x * y + w * z) * magX + (1f - 2f * (x * x + z * z)) * magY + 2f * (y * z - w * x) * magZ;
+            float horizontal = (float) Math.sqrt(hx * hx + hy * hy);
+            if (horizontal > 0f) {
+                // Heading error only: a rotation about "up" that turns the field back to north.
+                // Keeps magnetic disturbances and dip from tilting the estimate.
+                float yawError = hx / horizontal;
+                ex += yawError * vx;
+                ey += yawError * vy;
+                ez += yawError * vz;
+            }
+        }
+
+        if (ki > 0f) {
+            biasX += ki * ex * dt;
+            biasY += ki * ey * dt;
+            biasZ += ki * ez * dt;
+        }
+        rotate(kp * ex, kp * ey, kp * ez, dt);
+    }
+
+    /** Copies the current quaternion (w, x, y, z) into {@code out}. */
+    public void getQuaternion(float[] out) {
+        out[0] = q[0];
+        out[1] = q[1];
+        out[2] = q[2];
+        out[3] = q[3];
+    }
+
+    /** Copies the latest bias-corrected angular velocity (rad/s, device axes) into {@code out}. */
+    public void getAngularVelocity(float[] out) {
+        out[0] = rateX;
+        out[1] = rateY;
+        out[2] = rateZ;
+    }
+
+    /** Azimuth, pitch and roll in radians. */
+    public float[] getOrientation(float[] values) {
+        return Quaternions.toOrientation(q, values);
+    }
+
+    /** q <- q * exp(omega * dt / 2), first order. */
+    private void rotate(float gx, float gy, float gz, float dt) {
+        float half = 0.5f * dt;
+        gx *= half;
+        gy *= half;
+        gz *= half;
+        float w = q[0], x = q[1], y = q[2], z = q[3];
+        q[0] = w - x * gx - y * gy - z * gz;
+        q[1] = x + w * gx + y * gz - z * gy;
+        q[2] = y + w * gy - x * gz + z * gx;
+        q[3] = z + w * gz + x * gy - y * gx;
+        Quaternions.normalize(q);
+    }
+
+    private void align(float ax, float ay, float az) {
+        gravity[0] = ax;
+        gravity[1] = ay;
+        gravity[2] = az;
+        geomagnetic[0] = magX;
+        geomagnetic[1] = magY;
+        geomagnetic[2] = magZ;
+        if (OrientationFusion.getRotationMatrix(rotation, gravity, geomagnetic)) {
+            Quaternions.fromRotationMatrix(rotation, q);
+            initialized = true;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.iir4g8.tpsensor.processing;
+
+/**
+ * Helpers for unit quaternions stored as {@code float[4]} in {@code w, x, y, z} order.
+ * <p>
+ * A quaternion here rotates device coordinates into world coordinates (X east,
+ * Y magnetic north, Z up), the same frame as {@link OrientationFusion#getRotationMatrix}.
+ */
+public final class Quaternions {
+
+    private Quaternions() {
+    }
+
+    public static void setIdentity(float[] q) {
+        q[0] = 1f;
+        q[1] = 0f;
+        q[2] = 0f;
+        q[3] = 0f;
+    }
+
+    public static void normalize(float[] q) {
+        float norm = (float) Math.sqrt(q[0] * q[0] + q[1] * q[1] + q[2] * q[2] + q[3] * q[3]);
+        if (norm == 0f) {
+            setIdentity(q);
+            return;
+        }
+        float inv = 1f / norm;
+        q[0] *= inv;
+        q[1] *= inv;
+        q[2] *= inv;
+        q[3] *= inv;
+    }
+
+    /**
+     * Quaternion of an Android rotation vector ({@code TYPE_ROTATION_VECTOR} and its game
+     * and geomagnetic variants): x, y, z, then w when {@code count} is at least 4.
+     */
+    public static void fromRotationVector(float[] rv, int count, float[] q) {
+        float x = rv[0], y = rv[1], z = rv[2];
+        if (count >= 4) {
+            q[0] = rv[3];
+        } else {
+            // Older devices leave out w, the vector is a unit quaternion
+            float w2 = 1f - x * x - y * y - z * z;
+            q[0] = w2 > 0f ? (float) Math.sqrt(w2) : 0f;
+        }
+        q[1] = x;
+        q[2] = y;
+        q[3] = z;
+        normalize(q);
+    }
+
+    /**
+     * Constant angular velocity (rad/s, device axes) that turns {@code from} into
+     * {@code to} in {@code seconds}; the inverse of {@link #integrate}.
+     */
+    public static void angularVelocity(float[] from, float[] to, float seconds, float[] out) {
+        // delta = conjugate(from) * to
+        float aw = from[0], ax = -from[1], ay = -from[2], az = -from[3];
+        float bw = to[0], bx = to[1], by = to[2], bz = to[3];
+        float w = aw * bw - ax * bx - ay * by - az * bz;
+        float x = aw * bx + ax * bw + ay * bz - az * by;
+        float y = aw * by - ax * bz + ay * bw + az * bx;
+        float z = aw * bz + ax * by - ay * bx + az * bw;
+        if (w < 0f) {
+            // Shortest rotation
+            w = -w;
+            x = -x;
+            y = -y;
+            z = -z;
+        }
+        float sin = (float) Math.sqrt(x * x + y * y + z * z);
+        float scale = sin < 1e-6f
+                ? 2f / seconds
+                : 2f * (float) Math.atan2(sin, w) / (sin * seconds);
+        out[0] = x * scale;
+        out[1] = y * scale;
+        out[2] = z * scale;
+    }
+
+    /**
+     * Rotates {@code q} by a constant angular velocity (rad/s, device axes) held for
+     * {@code seconds}: out = q * exp(omega * seconds / 2). {@code out} may be {@code q}.
+     */
+    public static void integrate(float[] q, float wx, float wy, float wz, float seconds, float[] out) {
+        float rate = (float) Math.sqrt(wx * wx + wy * wy + wz * wz);
+        float angle = rate * seconds;
+        float w = q[0], x = q[1], y = q[2], z = q[3];
+        if (angle < 1e-6f) {
+            out[0] = w;
+            out[1] = x;
+            out[2] = y;
+            out[3] = z;
+            return;
+        }
+        float s = (float) Math.sin(0.5f * angle) / rate;
+        float dw = (float) Math.cos(0.5f * angle);
+        float dx = wx * s;
+        float dy = wy * s;
+        float dz = wz * s;
+        out[0] = w * dw - x * dx - y * dy - z * dz;
+        out[1] = w * dx + x * dw + y * dz - z * dy;
+        out[2] = w * dy - x * dz + y * dw + z * dx;
+        out[3] = w * dz + x * dy - y * dx + z * dw;
+    }
+
+    /**
+     * Spherical interpolation from {@code a} (t = 0) to {@code b} (t = 1) along the
+     * shortest arc. {@code out} may be {@code a} or {@code b}.
+     */
+    public static void slerp(float[] a, float[] b, float t, float[] out) {
+        float bw = b[0], bx = b[1], by = b[2], bz = b[3];
+        float cos = a[0] * bw + a[1] * bx + a[2] * by + a[3] * bz;
+        if (cos < 0f) {
+            // q and -q are the same rotation; take the short way round
+            cos = -cos;
+            bw = -bw;
+            bx = -bx;
+            by = -by;
+            bz = -bz;
+        }
+        float wa;
+        float wb;
+        if (cos > 0.9995f) {
+            // Nearly identical: linear interpolation is exact enough and avoids 0/0
+            wa = 1f - t;
+            wb = t;
+        } else {
+            float theta = (float) Math.acos(cos);
+            float sin = (float) Math.sin(theta);
+            wa = (float) Math.sin((1f - t) * theta) / sin;
+            wb = (float) Math.sin(t * theta) / sin;
+        }
+        out[0] = wa * a[0] + wb * bw;
+        out[1] = wa * a[1] + wb * bx;
+        out[2] = wa * a[2] + wb * by;
+        out[3] = wa * a[3] + wb * bz;
+        normalize(out);
+    }
+
+    /** Angle in radians of the rotation between two unit quaternions, 0 to pi. */
+    public static float angle(float[] a, float[] b) {
+        float cos = Math.abs(a[0] * b[0] + a[1] * b[1] + a[2] * b[2] + a[3] * b[3]);
+        return 2f * (float) Math.acos(Math.min(1f, cos));
+    }
+
+    /** Quaternion of a row-major 3x3 rotation matrix. */
+    public static void fromRotationMatrix(float[] r, float[] q) {
+        float trace = r[0] + r[4] + r[8];
+        if (trace > 0f) {
+            float s = (float) Math.sqrt(trace + 1f) * 2f;
+            q[0] = 0.25f * s;
+            q[1] = (r[7] - r[5]) / s;
+            q[2] = (r[2] - r[6]) / s;
+            q[3] = (r[3] - r[1]) / s;
+        } else if (r[0] > r[4] && r[0] > r[8]) {
+            float s = (float) Math.sqrt(1f + r[0] - r[4] - r[8]) * 2f;
+            q[0] = (r[7] - r[5]) / s;
+            q[1] = 0.25f * s;
+            q[2] = (r[1] + r[3]) / s;
+            q[3] = (r[2] + r[6]) / s;
+        } else if (r[4] > r[8]) {
+            float s = (float) Math.sqrt(1f + r[4] - r[0] - r[8]) * 2f;
+            q[0] = (r[2] - r[6]) / s;
+            q[1] = (r[1] + r[3]) / s;
+            q[2] = 0.25f * s;
+            q[3] = (r[5] + r[7]) / s;
+        } else {
+            float s = (float) Math.sqrt(1f + r[8] - r[0] - r[4]) * 2f;
+            q[0] = (r[3] - r[1]) / s;
+            q[1] = (r[2] + r[6]) / s;
+            q[2] = (r[5] + r[7]) / s;
+            q[3] = 0.25f * s;
+        }
+        normalize(q);
+    }
+
+    /** Row-major 3x3 rotation matrix of a unit quaternion. */
+    public static void toRotationMatrix(float[] q, float[] r) {
+        float w = q[0], x = q[1], y = q[2], z = q[3];
+        r[0] = 1f - 2f * (y * y + z * z);
+        r[1] = 2f * (x * y - w * z);
+        r[2] = 2f * (x * z + w * y);
+        r[3] = 2f * (x * y + w * z);
+        r[4] = 1f - 2f * (x * x + z * z);
+        r[5] = 2f * (y * z - w * x);
+        r[6] = 2f * (x * z - w * y);
+        r[7] = 2f * (y * z + w * x);
+        r[8] = 1f - 2f * (x * x + y * y);
+    }
+
+    /**
+     * Column-major 4x4 model matrix of a unit quaternion, as expected by OpenGL.
+     * Writes 16 floats starting at {@code offset}.
+     */
+    public static void toMatrix4(float[] q, float[] m, int offset) {
+        float w = q[0], x = q[1], y = q[2], z = q[3];
+        m[offset] = 1f - 2f * (y * y + z * z);
+        m[offset + 1] = 2f * (x * y + w * z);
+        m[offset + 2] = 2f * (x * z - w * y);
+        m[offset + 3] = 0f;
+        m[offset + 4] = 2f * (x * y - w * z);
+        m[offset + 5] = 1f - 2f * (x * x + z * z);
+        m[offset + 6] = 2f * (y * z + w * x);
+        m[offset + 7] = 0f;
+        m[offset + 8] = 2f * (x * z + w * y);
+        m[offset + 9] = 2f * (y * z - w * x);
+        m[offset + 10] = 1f - 2f * (x * x + y * y);
+        m[offset + 11] = 0f;
+        m[offset + 12] = 0f;
+        m[offset + 13] = 0f;
+        m[offset + 14] = 0f;
+        m[offset + 15] = 1f;
+    }
+
+    /**
+     * Azimuth, pitch and roll in radians, with the conventions of
+     * {@link OrientationFusion#getOrientation}.
+     */
+    public static float[] toOrientation(float[] q, float[] values) {
+        float w = q[0], x = q[1], y = q[2], z = q[3];
+        float r1 = 2f * (x * y - w * z);
+        float r4 = 1f - 2f * (x * x + z * z);
+        float r6 = 2f * (x * z - w * y);
+        float r7 = 2f * (y * z + w * x);
+        float r8 = 1f - 2f * (x * x + y * y);
+        values[0] = (float) Math.atan2(r1, r4);
+        values[1] = (float) Math.asin(Math.max(-1f, Math.min(1f, -r7)));
+        values[2] = (float) Math.atan2(-r6, r8);
+        return values;
+    }
+}
@@ -0,0 +1,131 @@
+package com.iir4g8.tpsensor.processing;
+
+/**
+ * Chooses a sampling period for a stream from how fast its signal changes.
+ * <p>
+ * Activity is the smoothed absolute rate of change of the signal, in units per
+ * second, so it reads the same whatever the current sampling rate. As soon as it
+ * rises above {@code activeThreshold} the controller jumps back to the fastest period.
+ * Only after it has stayed below {@code quietThreshold} for {@code quietHoldNanos}
+ * does it step down one period, then waits the same time again before the next step.
+ * Between the two thresholds nothing changes, which keeps the rate from flapping.
+ * <p>
+ * No method allocates. Not thread-safe.
+ */
+public final class RateController {
+
+    private final int[] periodsUs;
+    private final float activeThreshold;
+    private final float quietThreshold;
+    private final long quietHoldNanos;
+    private final float smoothingSeconds;
+
+    private int level;
+    private float activity;
+    private float lastValue;
+    private long lastNanos;
+    private long quietSinceNanos;
+    // Kept apart from the timestamps: streams may legitimately start at 0
+    private boolean hasPrevious;
+    private boolean quietTimerStarted;
+
+    /**
+     * @param periodsUs        sampling periods from fastest to slowest, handed back as is
+     * @param smoothingSeconds time constant of the activity average
+     */
+    public RateController(int[] periodsUs, float activeThreshold, float quietThreshold,
+                          long quietHoldNanos, float smoothingSeconds) {
+        if (periodsUs.length == 0 || quietThreshold > activeThreshold) {
+            throw new IllegalArgumentException();
+        }
+        this.periodsUs = periodsUs.clone();
+        this.activeThreshold = activeThreshold;
+        this.quietThreshold = quietThreshold;
+        this.quietHoldNanos = quietHoldNanos;
+        this.smoothingSeconds = smoothingSeconds;
+        reset();
+    }
+
+    /** Back to the fastest period with no history. */
+    public void reset() {
+        level = 0;
+        activity = 0f;
+        lastNanos = 0L;
+        quietSinceNanos = 0L;
+        hasPrevious = false;
+        quietTimerStarted = false;
+    }
+
+    public int getSamplingPeriodUs() {
+        return periodsUs[level];
+    }
+
+    /** Smoothed rate of change, units per second. */
+    public float getActivity() {
+        return activity;
+    }
+
+    /**
+     * Feeds one sample of the stream.
+     *
+     * @return true when {@link #getSamplingPeriodUs()} changed
+     */
+    public boolean update(long timestampNanos, float value) {
+        long previous = lastNanos;
+        float previousValue = lastValue;
+        boolean first = !hasPrevious;
+        lastNanos = timestampNanos;
+        lastValue = value;
+        hasPrevious = true;
+        if (first || timestampNanos <= previous) {
+            restartQuietTimer(timestampNanos);
+            return false;
+        }
+        float dt = (timestampNanos - previous) * 1e-9f;
+        float derivative = Math.abs(value - previousValue) / dt;
+        // Exponential average with a time constant, independent of the sampling period
+        float alpha = 1f - (float) Math.exp(-dt / smoothingSeconds);
+        activity += alpha * (derivative - activity);
+        return evaluate(activity >= activeThreshold, activity <= quietThreshold, timestampNanos);
+    }
+
+    /**
+     * Feeds an external activity decision instead of a signal, e.g. a movement detector
+     * that already has its own hysteresis.
+     *
+     * @return true when {@link #getSamplingPeriodUs()} changed
+     */
+    public boolean setActive(boolean active, long timestampNanos) {
+        return evaluate(active, !active, timestampNanos);
+    }
+
+    private boolean evaluate(boolean active, boolean quiet, long timestampNanos) {
+        if (active) {
+            restartQuietTimer(timestampNanos);
+            if (level != 0) {
+                level = 0;
+                return true;
+            }
+            return false;
+        }
+        if (!quiet) {
+            // Hysteresis band: hold the current period, restart the quiet timer
+            restartQuietTimer(timestampNanos);
+            return false;
+        }
+        if (!quietTimerStarted) {
+            restartQuietTimer(timestampNanos);
+        }
+        if (timestampNanos - quietSinceNanos >= quietHoldNanos && level < periodsUs.length - 1) {
+            level++;
+            restartQuietTimer(timestampNanos);
+            return true;
+        }
+        return false;
+    }
+
+    private void restartQuietTimer(long timestampNanos) {
+        quietSinceNanos = timestampNanos;
+        quietTimerStarted = true;
+    }
+}
@@ -0,0 +1,141 @@
+package com.iir4g8.tpsensor.processing;
+
+/**
+ * In-place radix-2 FFT of real signals of one power-of-two size.
+ * <p>
+ * The {@code n} real samples are treated as {@code n / 2} complex ones, transformed
+ * with an iterative Cooley-Tukey FFT and split into the spectrum of the real signal,
+ * which halves the work of a complex transform. The result is packed into the input
+ * array:
+ *
+ * <pre>
+ * data[0] = Re X[0]      data[1] = Re X[n / 2]      (both bins are real)
+ * data[2k] = Re X[k]     data[2k + 1] = Im X[k]     for 0 &lt; k &lt; n / 2
+ * </pre>
+ *
+ * Twiddle factors and the bit-reversal permutation are computed once per instance;
+ * no method allocates. Instances are immutable and can be shared between threads.
+ */
+public final class RealFft {
+
+    private final int size;
+    // cos and sin of 2 pi k / size, for k < size / 2
+    private final float[] cos;
+    private final float[] sin;
+    // Bit-reversal permutation of the size / 2 complex points
+    private final int[] reversed;
+
+    public RealFft(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size must be a power of two >= 4: " + size);
+        }
+        this.size = size;
+        int half = size / 2;
+        cos = new float[half];
+        sin = new float[half];
+        for (int k = 0; k < half; k++) {
+            double angle = 2.0 * Math.PI * k / size;
+            cos[k] = (float) Math.cos(angle);
+            sin[k] = (float) Math.sin(angle);
+        }
+        reversed = new int[half];
+        int bits = Integer.numberOfTrailingZeros(half);
+        for (int i = 0; i < half; i++) {
+            reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /** Symmetric Hann window of {@code size} points, to multiply samples with before {@link #forward}. */
+    public static float[] hannWindow(int size) {
+        float[] window = new float[size];
+        for (int i = 0; i < size; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / (size - 1)));
+        }
+        return window;
+    }
+
+    /** Replaces the first {@link #getSize()} samples of {@code data} by their packed spectrum. */
+    public void forward(float[] data) {
+        int half = size / 2;
+        complexForward(data, half);
+
+        // Split the half-size complex spectrum Z into the spectrum X of the real signal:
+        // X[k] = E[k] + W^k O[k], X[half - k] = conj(E[k] - W^k O[k]), W = exp(-2 pi i / size)
+        float z0 = data[0];
+        float z1 = data[1];
+        data[0] = z0 + z1;
+        data[1] = z0 - z1;
+        for (int k = 1; k <= half / 2; k++) {
+            int a = 2 * k;
+            int b = 2 * (half - k);
+            float are = data[a];
+            float aim = data[a + 1];
+            float bre = data[b];
+            float bim = data[b + 1];
+            // Even part E = (Z[k] + conj(Z[half - k])) / 2, odd part O = (Z[k] - conj(Z[half - k])) / 2i
+            float ere = 0.5f * (are + bre);
+            float eim = 0.5f * (aim - bim);
+            float ore = 0.5f * (aim + bim);
+            float oim = -0.5f * (are - bre);
+            // W^k O
+            float tre = cos[k] * ore + sin[k] * oim;
+            float tim = cos[k] * oim - sin[k] * ore;
+            data[a] = ere + tre;
+            data[a + 1] = eim + tim;
+            data[b] = ere - tre;
+            data[b + 1] = tim - eim;
+        }
+    }
+
+    /**
+     * Power of each bin of a packed spectrum: {@code power[k] = |X[k]|^2} for
+     * {@code 0 <= k <= size / 2}.
+     */
+    public void power(float[] spectrum, float[] power) {
+        int half = size / 2;
+        power[0] = spectrum[0] * spectrum[0];
+        power[half] = spectrum[1] * spectrum[1];
+        for (int k = 1; k < half; k++) {
+            float re = spectrum[2 * k];
+            float im = spectrum[2 * k + 1];
+            power[k] = re * re + im * im;
+        }
+    }
+
+    private void complexForward(float[] data, int n) {
+        for (int i = 0; i < n; i++) {
+            int j = reversed[i];
+            if (j > i) {
+                float re = data[2 * i];
+                float im = data[2 * i + 1];
+                data[2 * i] = data[2 * j];
+                data[2 * i + 1] = data[2 * j + 1];
+                data[2 * j] = re;
+                data[2 * j + 1] = im;
+            }
+        }
+        for (int length = 2; length <= n; length <<= 1) {
+            int halfLength = length / 2;
+            // Twiddle exp(-2 pi i j / length) is entry j * stride of the size-point table
+            int stride = size / length;
+            for (int start = 0; start < n; start += length) {
+                for (int j = 0; j < halfLength; j++) {
+                    float wre = cos[j * stride];
+                    float wim = -sin[j * stride];
+                    int p = 2 * (start + j);
+                    int q = 2 * (start + j + halfLength);
+                    float vre = data[q] * wre - data[q + 1] * wim;
+                    float vim = data[q] * wim + data[q + 1] * wre;
+                    data[q] = data[p] - vre;
+                    data[q + 1] = data[p + 1] - vim;
+                    data[p] += vre;
+                    data[p + 1] += vim;
+                }
+            }
+        }
+    }
+}
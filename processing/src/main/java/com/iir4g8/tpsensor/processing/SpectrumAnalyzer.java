@@ -0,0 +1,195 @@
+package com.iir4g8.tpsensor.processing;
+
+import java.util.Arrays;
+
+/**
+ * Rolling power spectrum of each channel of a vector sensor (short-time Fourier transform).
+ * <p>
+ * Every channel keeps a ring of its last {@code windowSize} samples. Every
+ * {@code hopSize} samples a frame is analysed: per channel the window is copied out in
+ * order, its mean is removed, a Hann window is applied and a {@link RealFft} gives the
+ * power of each bin. Hann windows overlapping by half or three quarters of their length
+ * add up to a constant, so every sample weighs the same in the sequence of frames. Each
+ * frame also updates an exponential average over about {@code averagingFrames} frames,
+ * in which steady lines, such as mains hum or a motor, stand out of the noise.
+ * <p>
+ * The sample rate is measured from the timestamps of the window, so bin frequencies
+ * follow whatever rate the sensor actually delivers. All buffers are allocated up
+ * front; adding a sample or analysing a frame allocates nothing. Not thread-safe.
+ */
+public final class SpectrumAnalyzer {
+
+    private final int channels;
+    private final int windowSize;
+    private final int hopSize;
+    private final float averaging;
+    private final RealFft fft;
+    private final float[] hann;
+    // Turns |X[k]|² into the share of the signal's mean square in bin k (one-sided)
+    private final float binScale;
+
+    // Ring of the newest windowSize samples per channel, oldest at head once full
+    private final float[][] samples;
+    private final long[] timestamps;
+    private int head;
+    private int count;
+    private int sinceHop;
+
+    private final float[] frame;
+    private final float[][] power;
+    private final float[][] averagePower;
+    private long frameCount;
+    private float sampleRateHz;
+
+    /**
+     * @param windowSize      samples per frame, a power of two
+     * @param hopSize         samples between frames; windowSize / 2 or / 4 for even coverage
+     * @param averagingFrames time constant of the average spectrum, in frames
+     */
+    public SpectrumAnalyzer(int channels, int windowSize, int hopSize, int averagingFrames) {
+        if (channels <= 0 || hopSize <= 0 || hopSize > windowSize || averagingFrames <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.channels = channels;
+        this.fft = new RealFft(windowSize);
+        this.windowSize = windowSize;
+        this.hopSize = hopSize;
+        this.averaging = 1f / averagingFrames;
+        this.hann = RealFft.hannWindow(windowSize);
+        float sum = 0f;
+        for (float w : hann) {
+            sum += w * w;
+        }
+        this.binScale = 2f / (windowSize * sum);
+        this.samples = new float[channels][windowSize];
+        this.timestamps = new long[windowSize];
+        this.frame = new float[windowSize];
+        this.power = new float[channels][windowSize / 2 + 1];
+        this.averagePower = new float[channels][windowSize / 2 + 1];
+    }
+
+    public int getChannelCount() {
+        return channels;
+    }
+
+    /** Bins per spectrum, from 0 Hz to the Nyquist frequency. */
+    public int getBinCount() {
+        return windowSize / 2 + 1;
+    }
+
+    /** Forgets every sample and the average. */
+    public void reset() {
+        head = 0;
+        count = 0;
+        sinceHop = 0;
+        frameCount = 0L;
+        sampleRateHz = 0f;
+        for (int c = 0; c < channels; c++) {
+            Arrays.fill(power[c], 0f);
+            Arrays.fill(averagePower[c], 0f);
+        }
+    }
+
+    /**
+     * Adds one sample of every channel, taken from {@code values[offset ...]}.
+     *
+     * @return true when a new frame has been analysed
+     */
+    public boolean add(long timestampNanos, float[] values, int offset) {
+        int index = head + count < windowSize ? head + count : head + count - windowSize;
+        if (count < windowSize) {
+            count++;
+        } else {
+            head = head + 1 == windowSize ? 0 : head + 1;
+        }
+        for (int c = 0; c < channels; c++) {
+            samples[c][index] = values[offset + c];
+        }
+        timestamps[index] = timestampNanos;
+        if (++sinceHop < hopSize || count < windowSize) {
+            return false;
+        }
+        sinceHop = 0;
+        long span = timestamps[index] - timestamps[head];
+        if (span <= 0L) {
+            return false;
+        }
+        sampleRateHz = (windowSize - 1) * 1e9f / span;
+        for (int c = 0; c < channels; c++) {
+            analyze(c);
+        }
+        frameCount++;
+        return true;
+    }
+
+    /** Frames analysed since the last reset. */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /** Sample rate measured over the last frame, Hz. */
+    public float getSampleRate() {
+        return sampleRateHz;
+    }
+
+    public float getBinFrequency(int bin) {
+        return bin * sampleRateHz / windowSize;
+    }
+
+    /**
+     * Power per bin of the last frame, units²; the bins add up to the mean square of the
+     * channel around its mean. Do not modify.
+     */
+    public float[] getPower(int channel) {
+        return power[channel];
+    }
+
+    /** Exponentially averaged power per bin, units²; do not modify. */
+    public float[] getAveragePower(int channel) {
+        return averagePower[channel];
+    }
+
+    /**
+     * Strongest bin of the average spectrum over all channels, the DC bin excluded.
+     *
+     * @return the bin, or 0 before the first frame
+     */
+    public int getPeakBin() {
+        int peak = 0;
+        float best = 0f;
+        for (int k = 1; k < getBinCount(); k++) {
+            float sum = 0f;
+            for (int c = 0; c < channels; c++) {
+                sum += averagePower[c][k];
+            }
+            if (sum > best) {
+                best = sum;
+                peak = k;
+            }
+        }
+        return peak;
+    }
+
+    private void analyze(int channel) {
+        float[] ring = samples[channel];
+        float mean = 0f;
+        for (int i = 0; i < windowSize; i++) {
+            mean += ring[i];
+        }
+        mean /= windowSize;
+        for (int i = 0; i < windowSize; i++) {
+            int index = head + i < windowSize ? head + i : head + i - windowSize;
+            frame[i] = (ring[index] - mean) * hann[i];
+        }
+        fft.forward(frame);
+        float[] out = power[channel];
+        fft.power(frame, out);
+        float[] average = averagePower[channel];
+        float alpha = frameCount == 0L ? 1f : averaging;
+        for (int k = 0; k < out.length; k++) {
+            // DC and Nyquist bins have no negative-frequency twin
+            out[k] *= k == 0 || k == out.length - 1 ? 0.5f * binScale : binScale;
+            average[k] += alpha * (out[k] - average[k]);
+        }
+    }
+}
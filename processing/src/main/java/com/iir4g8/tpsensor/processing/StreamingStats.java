@@ -0,0 +1,199 @@
+package com.iir4g8.tpsensor.processing;
+
+/**
+ * Running statistics of a scalar stream, over a sliding window and since the last reset.
+ * <p>
+ * The window holds at most {@code capacity} samples and, for a time window, only those
+ * younger than {@code windowNanos}. Mean and variance use Welford's update, run
+ * backwards when a sample leaves the window. Window minimum and maximum come from
+ * monotonic deques of sample sequence numbers: each sample enters and leaves each
+ * deque at most once, so every operation is amortised O(1) however large the window.
+ * <p>
+ * All state lives in primitive arrays sized up front; no method allocates.
+ * Empty statistics read as {@code NaN}. Not thread-safe.
+ */
+public final class StreamingStats {
+
+    private final int capacity;
+    private final long windowNanos;
+
+    // Samples in the window, slot = sequence % capacity
+    private final long[] timestamps;
+    private final float[] values;
+    private long first; // sequence of the oldest sample in the window
+    private long next;  // sequence of the next sample
+
+    // Sequences of candidate minima (increasing values) and maxima (decreasing values)
+    private final long[] minQueue;
+    private final long[] maxQueue;
+    private int minHead;
+    private int minSize;
+    private int maxHead;
+    private int maxSize;
+
+    private double windowMean;
+    private double windowM2;
+
+    private long totalCount;
+    private double totalMean;
+    private double totalM2;
+    private float totalMin;
+    private float totalMax;
+
+    /** Window of the last {@code capacity} samples. */
+    public static StreamingStats ofCount(int capacity) {
+        return new StreamingStats(capacity, Long.MAX_VALUE);
+    }
+
+    /** Window of the samples younger than {@code windowNanos}, at most {@code capacity} of them. */
+    public static StreamingStats ofDuration(long windowNanos, int capacity) {
+        return new StreamingStats(capacity, windowNanos);
+    }
+
+    private StreamingStats(int capacity, long windowNanos) {
+        if (capacity <= 0 || windowNanos <= 0L) {
+            throw new IllegalArgumentException("capacity and window must be positive");
+        }
+        this.capacity = capacity;
+        this.windowNanos = windowNanos;
+        this.timestamps = new long[capacity];
+        this.values = new float[capacity];
+        this.minQueue = new long[capacity];
+        this.maxQueue = new long[capacity];
+        reset();
+    }
+
+    public void reset() {
+        first = 0L;
+        next = 0L;
+        minHead = 0;
+        minSize = 0;
+        maxHead = 0;
+        maxSize = 0;
+        windowMean = 0.0;
+        windowM2 = 0.0;
+        totalCount = 0L;
+        totalMean = 0.0;
+        totalM2 = 0.0;
+        totalMin = Float.POSITIVE_INFINITY;
+        totalMax = Float.NEGATIVE_INFINITY;
+    }
+
+    /** Adds a sample; timestamps are expected in non-decreasing order. */
+    public void add(long timestampNanos, float value) {
+        expire(timestampNanos);
+        if (next - first == capacity) {
+            evictOldest();
+        }
+
+        int slot = (int) (next % capacity);
+        timestamps[slot] = timestampNanos;
+        values[slot] = value;
+
+        long n = next - first + 1;
+        double delta = value - windowMean;
+        windowMean += delta / n;
+        windowM2 += delta * (value - windowMean);
+
+        while (minSize > 0 && values[slot(minQueue, minHead, minSize - 1)] >= value) {
+            minSize--;
+        }
+        minQueue[(minHead + minSize) % capacity] = next;
+        minSize++;
+        while (maxSize > 0 && values[slot(maxQueue, maxHead, maxSize - 1)] <= value) {
+            maxSize--;
+        }
+        maxQueue[(maxHead + maxSize) % capacity] = next;
+        maxSize++;
+        next++;
+
+        totalCount++;
+        delta = value - totalMean;
+        totalMean += delta / totalCount;
+        totalM2 += delta * (value - totalMean);
+        totalMin = Math.min(totalMin, value);
+        totalMax = Math.max(totalMax, value);
+    }
+
+    /**
+     * Drops the samples that have aged out of a time window by {@code nowNanos}, for
+     * streams that may go quiet. {@link #add} does this on its own.
+     */
+    public void expire(long nowNanos) {
+        while (next > first && nowNanos - timestamps[(int) (first % capacity)] >= windowNanos) {
+            evictOldest();
+        }
+    }
+
+    private void evictOldest() {
+        float value = values[(int) (first % capacity)];
+        long n = next - first;
+        if (n == 1) {
+            windowMean = 0.0;
+            windowM2 = 0.0;
+        } else {
+            // Welford's update in reverse
+            double delta = value - windowMean;
+            windowMean -= delta / (n - 1);
+            windowM2 = Math.max(0.0, windowM2 - delta * (value - windowMean));
+        }
+        if (minSize > 0 && minQueue[minHead] == first) {
+            minHead = (minHead + 1) % capacity;
+            minSize--;
+        }
+        if (maxSize > 0 && maxQueue[maxHead] == first) {
+            maxHead = (maxHead + 1) % capacity;
+            maxSize--;
+        }
+        first++;
+    }
+
+    private int slot(long[] queue, int head, int index) {
+        return (int) (queue[(head + index) % capacity] % capacity);
+    }
+
+    /** Number of samples in the window. */
+    public int getCount() {
+        return (int) (next - first);
+    }
+
+    public float getMin() {
+        return minSize == 0 ? Float.NaN : values[slot(minQueue, minHead, 0)];
+    }
+
+    public float getMax() {
+        return maxSize == 0 ? Float.NaN : values[slot(maxQueue, maxHead, 0)];
+    }
+
+    public float getMean() {
+        return next == first ? Float.NaN : (float) windowMean;
+    }
+
+    /** Sample standard deviation of the window, 0 for a single sample. */
+    public float getStdDev() {
+        long n = next - first;
+        return n == 0 ? Float.NaN : n == 1 ? 0f : (float) Math.sqrt(windowM2 / (n - 1));
+    }
+
+    /** Number of samples since the last reset. */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public float getTotalMin() {
+        return totalCount == 0 ? Float.NaN : totalMin;
+    }
+
+    public float getTotalMax() {
+        return totalCount == 0 ? Float.NaN : totalMax;
+    }
+
+    public float getTotalMean() {
+        return totalCount == 0 ? Float.NaN : (float) totalMean;
+    }
+
+    public float getTotalStdDev() {
+        return totalCount == 0 ? Float.NaN
+                : totalCount == 1 ? 0f : (float) Math.sqrt(totalM2 / (totalCount - 1));
+    }
+}
@@ -0,0 +1,18 @@
+package com.iir4g8.tpsensor.processing;
+
+public final class VectorMath {
+
+    private VectorMath() {
+    }
+
+    /** Euclidean norm of a 3-axis reading. */
+    public static float magnitude(float x, float y, float z) {
+        return (float) Math.sqrt(x * x + y * y + z * z);
+    }
+
+    /** Smallest absolute difference between two angles in degrees, in 0-180. */
+    public static float angleDifference(float a, float b) {
+        float diff = Math.abs(a - b) % 360f;
+        return diff > 180f ? 360f - diff : diff;
+    }
+}
@@ -0,0 +1,76 @@
+package com.iir4g8.tpsensor.processing;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ActivityClassifierTest {
+
+    private static final long PERIOD = 5_000_000L; // 200 Hz
+    private static final float G = 9.81f;
+
+    /** Feeds 5 s of a vertical acceleration and returns the classifier after the last hop. */
+    private static ActivityClassifier feed(float stepHz, float amplitude, float noise) {
+        ActivityClassifier classifier = new ActivityClassifier(512, 100);
+        Random random = new Random(3);
+        for (int i = 0; i < 1000; i++) {
+            double t = i * PERIOD * 1e-9;
+            float z = G + amplitude * (float) Math.sin(2.0 * Math.PI * stepHz * t)
+                    + noise * (float) random.nextGaussian();
+            classifier.add(i * PERIOD + (random.nextInt(200_000) - 100_000), 0.3f, 0.2f, z);
+        }
+        return classifier;
+    }
+
+    @Test
+    public void hops_comeEveryHopSizeOnceTheWindowIsFull() {
+        ActivityClassifier classifier = new ActivityClassifier(64, 16);
+        int analyses = 0;
+        for (int i = 0; i < 64 + 16 * 3; i++) {
+            if (classifier.add(i * PERIOD, 0f, 0f, G)) {
+                analyses++;
+                assertTrue(i >= 63);
+            }
+        }
+        // One as the window fills, then one per hop
+        assertEquals(4, analyses);
+        assertEquals(200f, classifier.getSampleRate(), 0.1f);
+    }
+
+    @Test
+    public void tableNoise_isStill() {
+        ActivityClassifier classifier = feed(0f, 0f, 0.03f);
+        assertEquals(ActivityClassifier.Activity.STILL, classifier.getActivity());
+        assertEquals(0f, classifier.getCadence(), 0f);
+    }
+
+    @Test
+    public void walking_givesItsCadence() {
+        ActivityClassifier classifier = feed(1.8f, 2f, 0.3f);
+        assertEquals(ActivityClassifier.Activity.WALKING, classifier.getActivity());
+        assertEquals(108f, classifier.getCadence(), 3f);
+    }
+
+    @Test
+    public void running_isFasterAndHarder() {
+        ActivityClassifier classifier = feed(2.8f, 8f, 0.5f);
+        assertEquals(ActivityClassifier.Activity.RUNNING, classifier.getActivity());
+        assertEquals(168f, classifier.getCadence(), 3f);
+    }
+
+    @Test
+    public void vibrationWithoutRhythm_isVehicle() {
+        ActivityClassifier classifier = feed(0f, 0f, 0.6f);
+        assertEquals(ActivityClassifier.Activity.VEHICLE, classifier.getActivity());
+    }
+
+    @Test
+    public void reset_forgetsTheWindow() {
+        ActivityClassifier classifier = feed(1.8f, 2f, 0.3f);
+        classifier.reset();
+        assertEquals(ActivityClassifier.Activity.UNKNOWN, classifier.getActivity());
+        assertFalse(classifier.add(PERIOD, 0f, 0f, G));
+    }
+}
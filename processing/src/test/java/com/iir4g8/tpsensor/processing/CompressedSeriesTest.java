@@ -0,0 +1,58 @@
+package com.iir4g8.tpsensor.processing;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class CompressedSeriesTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void read_decodesOnlyTheRange() {
+        CompressedSeries series = new CompressedSeries(ByteBuffer.allocate(64 * 1024), 64, 1);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(series.append(i * SECOND, i));
+        }
+        assertEquals(1000, series.size());
+        assertEquals(16, series.getBlockCount());
+        assertEquals(2, series.blockAt(130 * SECOND));
+
+        long[] timestamps = new long[100];
+        float[] values = new float[100];
+        int n = series.read(130 * SECOND, 199 * SECOND, timestamps, values, 0, 100);
+        assertEquals(70, n);
+        assertEquals(130 * SECOND, timestamps[0]);
+        assertEquals(199f, values[69], 0f);
+    }
+
+    @Test
+    public void openBlock_isReadable() {
+        CompressedSeries series = new CompressedSeries(ByteBuffer.allocate(4096), 64, 1);
+        series.append(0L, 1f);
+        series.append(SECOND, 2f);
+        float[] values = new float[4];
+        assertEquals(2, series.readBlock(0, null, values, 0));
+        series.append(2 * SECOND, 3f);
+        assertEquals(3, series.read(0L, 10 * SECOND, null, values, 0, 4));
+        assertEquals(3f, values[2], 0f);
+    }
+
+    @Test
+    public void append_reportsFull() {
+        CompressedSeries series = new CompressedSeries(ByteBuffer.allocate(256), 16, 1);
+        int stored = 0;
+        while (series.append(stored * SECOND + (stored * 7919L) % 1000, (float) Math.sqrt(stored))) {
+            stored++;
+        }
+        assertTrue(series.isFull());
+        assertFalse(series.append(Long.MAX_VALUE, 0f));
+        assertTrue(series.getEncodedBytes() <= 256);
+
+        float[] values = new float[stored];
+        assertEquals(stored, series.read(0L, Long.MAX_VALUE, null, values, 0, stored));
+        assertEquals((float) Math.sqrt(stored - 1), values[stored - 1], 0f);
+    }
+}
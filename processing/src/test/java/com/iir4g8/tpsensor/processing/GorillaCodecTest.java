@@ -0,0 +1,153 @@
+package com.iir4g8.tpsensor.processing;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GorillaCodecTest {
+
+    private static final long PERIOD = 200_000_000L; // 5 Hz
+
+    @Test
+    public void roundTrip_isLossless() {
+        Random random = new Random(7);
+        int n = 2000;
+        long[] timestamps = new long[n];
+        float[] values = new float[n];
+        long t = 123_456_789_000L;
+        for (int i = 0; i < n; i++) {
+            // Jittered period, occasional gaps, and values of every kind
+            t += PERIOD + random.nextInt(200_000) - 100_000 + (i % 500 == 0 ? 60_000_000_000L : 0L);
+            timestamps[i] = t;
+            values[i] = i % 100 == 0 ? Float.NaN
+                    : i % 37 == 0 ? -random.nextFloat() * 1e6f
+                    : 20f + random.nextFloat();
+        }
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(order);
+            GorillaEncoder encoder = new GorillaEncoder(1);
+            encoder.begin(buffer);
+            for (int i = 0; i < n; i++) {
+                assertTrue(encoder.add(timestamps[i], values[i]));
+            }
+            int size = encoder.finish();
+            assertEquals(size, buffer.position());
+
+            GorillaDecoder decoder = new GorillaDecoder();
+            assertEquals(n, decoder.begin(buffer, 0));
+            assertEquals(size, decoder.getBlockBytes());
+            for (int i = 0; i < n; i++) {
+                assertTrue(decoder.next());
+                assertEquals(timestamps[i], decoder.getTimestamp());
+                assertEquals(Float.floatToRawIntBits(values[i]), Float.floatToRawIntBits(decoder.getValue()));
+            }
+            assertFalse(decoder.next());
+        }
+    }
+
+    @Test
+    public void slowSignal_compressesTenfold() {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        GorillaEncoder encoder = new GorillaEncoder(1);
+        encoder.begin(buffer);
+        int n = 3600;
+        for (int i = 0; i < n; i++) {
+            // A temperature sensor reporting 0.1 °C steps at a steady rate
+            float value = Math.round((21f + (float) Math.sin(i / 600.0)) * 10f) / 10f;
+            assertTrue(encoder.add(i * PERIOD, value));
+        }
+        int size = encoder.finish();
+        assertTrue("size " + size, size * 10 < n * 12);
+    }
+
+    /** Compressed size of the GorillaBenchmark traces, against 12 bytes per point. */
+    private static double benchmarkRatio(boolean temperature, int unitNanos) {
+        int n = 1024;
+        Random random = new Random(42);
+        ByteBuffer buffer = ByteBuffer.allocate(n * GorillaEncoder.MAX_POINT_BYTES + 64);
+        GorillaEncoder encoder = new GorillaEncoder(unitNanos);
+        encoder.begin(buffer);
+        long t = 0L;
+        for (int i = 0; i < n; i++) {
+            float value;
+            if (temperature) {
+                t += PERIOD + random.nextInt(100_000);
+                value = Math.round((21f + (float) Math.sin(i / 300.0)) * 10f) / 10f;
+            } else {
+                t += PERIOD / 10 + random.nextInt(100_000);
+                value = 48f + (float) random.nextGaussian() * 0.3f;
+            }
+            assertTrue(encoder.add(t, value));
+        }
+        return n * 12.0 / encoder.finish();
+    }
+
+    @Test
+    public void benchmarkTraces_compressionRatios() {
+        // Jittered timestamps cost most of the lossless size; a 1 ms unit drops the jitter
+        assertTrue(benchmarkRatio(true, 1) > 3.5);
+        assertTrue(benchmarkRatio(true, 1_000_000) > 20.0);
+        // Gaussian noise leaves few shared bits between values
+        assertTrue(benchmarkRatio(false, 1) > 1.8);
+        assertTrue(benchmarkRatio(false, 1_000_000) > 3.0);
+    }
+
+    @Test
+    public void sync_makesTheOpenBlockReadable() {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        GorillaEncoder encoder = new GorillaEncoder(1);
+        GorillaDecoder decoder = new GorillaDecoder();
+        encoder.begin(buffer);
+        for (int i = 0; i < 100; i++) {
+            encoder.add(i * PERIOD, i * 0.5f);
+            encoder.sync();
+            assertEquals(i + 1, decoder.begin(buffer, 0));
+            long[] timestamps = new long[i + 1];
+            float[] values = new float[i + 1];
+            assertEquals(i + 1, decoder.decode(timestamps, values, 0));
+            assertEquals(i * PERIOD, timestamps[i]);
+            assertEquals(i * 0.5f, values[i], 0f);
+        }
+    }
+
+    @Test
+    public void fullBuffer_rejectsThePoint() {
+        ByteBuffer buffer = ByteBuffer.allocate(GorillaEncoder.HEADER_SIZE + 40);
+        GorillaEncoder encoder = new GorillaEncoder(1);
+        encoder.begin(buffer);
+        Random random = new Random(1);
+        int added = 0;
+        while (encoder.add(added * PERIOD + random.nextInt(), random.nextFloat())) {
+            added++;
+        }
+        int size = encoder.finish();
+        assertTrue(size <= buffer.capacity());
+
+        GorillaDecoder decoder = new GorillaDecoder();
+        assertEquals(added, decoder.begin(buffer, 0));
+        assertEquals(added, decoder.decode(null, null, 0));
+    }
+
+    @Test
+    public void coarseUnit_roundsTimestamps() {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        GorillaEncoder encoder = new GorillaEncoder(1_000_000);
+        encoder.begin(buffer);
+        encoder.add(5_000_123L, 1f);
+        encoder.add(5_000_123L + PERIOD + 400_000L, 1f);
+        encoder.add(5_000_123L + 2 * PERIOD + 600_000L, 1f);
+        encoder.finish();
+
+        long[] timestamps = new long[3];
+        GorillaDecoder decoder = new GorillaDecoder();
+        decoder.begin(buffer, 0);
+        decoder.decode(timestamps, null, 0);
+        assertEquals(5_000_123L, timestamps[0]);
+        assertEquals(5_000_123L + PERIOD, timestamps[1]);
+        assertEquals(5_000_123L + 2 * PERIOD + 1_000_000L, timestamps[2]);
+    }
+}
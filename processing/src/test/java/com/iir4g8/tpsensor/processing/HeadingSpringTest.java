@@ -0,0 +1,59 @@
+package com.iir4g8.tpsensor.processing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HeadingSpringTest {
+
+    private static final float FRAME = 1f / 60f;
+
+    @Test
+    public void crossingNorth_takesTheShortWay() {
+        HeadingSpring spring = new HeadingSpring(20f);
+        spring.reset(350f);
+        spring.setTarget(10f);
+
+        for (int i = 0; i < 120 && spring.step(FRAME); i++) {
+            float heading = spring.getHeading();
+            // Never swings through south
+            assertTrue("heading " + heading, heading >= 349.9f || heading <= 10.1f);
+        }
+
+        assertTrue(spring.isSettled());
+        assertEquals(10f, spring.getHeading(), 0.01f);
+    }
+
+    @Test
+    public void neverOvershoots() {
+        HeadingSpring spring = new HeadingSpring(20f);
+        spring.reset(0f);
+        spring.setTarget(90f);
+
+        float previous = 0f;
+        while (spring.step(FRAME)) {
+            float heading = spring.getHeading();
+            assertTrue(heading >= previous);
+            assertTrue(heading <= 90f);
+            previous = heading;
+        }
+        assertEquals(90f, spring.getHeading(), 0.01f);
+    }
+
+    @Test
+    public void retargeting_keepsPositionAndStaysStable() {
+        HeadingSpring spring = new HeadingSpring(20f);
+        spring.reset(0f);
+        spring.setTarget(90f);
+        spring.step(FRAME);
+        float before = spring.getHeading();
+
+        spring.setTarget(180f);
+        assertEquals(before, spring.getHeading(), 0f);
+
+        // A long frame (stall) does not blow up
+        spring.step(1f);
+        assertEquals(180f, spring.getHeading(), 0.01f);
+        assertFalse(spring.step(FRAME));
+    }
+}
@@ -0,0 +1,112 @@
+package com.iir4g8.tpsensor.processing;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MotionDetectorTest {
+
+    private static final long PERIOD = 20_000_000L; // 50 Hz
+    private static final long SECOND = 1_000_000_000L;
+
+    private static MotionDetector detector() {
+        return new MotionDetector(0.35f, 0.15f, 250_000_000L, SECOND, 64);
+    }
+
+    @Test
+    public void gyroscopeNoise_isNotMovement() {
+        MotionDetector detector = detector();
+        Random random = new Random(1);
+        for (long t = PERIOD; t < 10 * SECOND; t += PERIOD) {
+            detector.update(t, (float) random.nextGaussian() * 0.05f,
+                    (float) random.nextGaussian() * 0.05f, (float) random.nextGaussian() * 0.05f);
+            assertFalse(detector.isMoving());
+        }
+    }
+
+    @Test
+    public void slowContinuousTurn_isMovement() {
+        // 0.5 rad/s is under 0.6° per sample, which a per-sample angle check misses
+        MotionDetector detector = detector();
+        boolean changed = false;
+        for (long t = PERIOD; t <= 300_000_000L; t += PERIOD) {
+            changed |= detector.update(t, 0f, 0f, 0.5f);
+        }
+        assertTrue(changed);
+        assertTrue(detector.isMoving());
+        assertEquals(0.5f, detector.getLevel(), 1e-4f);
+    }
+
+    @Test
+    public void stop_waitsForTheHoldAndIgnoresTheHysteresisBand() {
+        MotionDetector detector = detector();
+        long t = PERIOD;
+        for (; t <= SECOND; t += PERIOD) {
+            detector.update(t, 1f, 0f, 0f);
+        }
+        assertTrue(detector.isMoving());
+        // Between the thresholds: still moving however long it lasts
+        for (; t <= 5 * SECOND; t += PERIOD) {
+            assertFalse(detector.update(t, 0.25f, 0f, 0f));
+        }
+        assertTrue(detector.isMoving());
+        // Below the stop threshold: still after the window drains plus the hold
+        long quietStart = t;
+        long stoppedAt = 0L;
+        for (; t <= 8 * SECOND && stoppedAt == 0L; t += PERIOD) {
+            if (detector.update(t, 0.01f, 0f, 0f)) {
+                stoppedAt = t;
+            }
+        }
+        assertFalse(detector.isMoving());
+        assertTrue(stoppedAt - quietStart >= SECOND);
+        assertTrue(stoppedAt - quietStart <= SECOND + 250_000_000L + PERIOD);
+    }
+
+    @Test
+    public void briefQuiet_rearmsTheTimeout() {
+        MotionDetector detector = detector();
+        long t = PERIOD;
+        for (; t <= SECOND; t += PERIOD) {
+            detector.update(t, 1f, 0f, 0f);
+        }
+        for (int burst = 0; burst < 5; burst++) {
+            long end = t + 800_000_000L;
+            for (; t < end; t += PERIOD) {
+                detector.update(t, 0f, 0f, 0f);
+            }
+            end = t + 100_000_000L;
+            for (; t < end; t += PERIOD) {
+                detector.update(t, 0f, 2f, 0f);
+            }
+        }
+        assertTrue(detector.isMoving());
+    }
+
+    @Test
+    public void streamStartingAtZero_countsItsSecondSample() {
+        // Replayed and scripted streams count from 0
+        MotionDetector detector = detector();
+        assertFalse(detector.update(0L, 1f, 0f, 0f));
+        assertTrue(detector.update(PERIOD, 1f, 0f, 0f));
+        assertEquals(1f, detector.getLevel(), 1e-4f);
+    }
+
+    @Test
+    public void updateAttitude_differentiatesOrientationsWithoutARate() {
+        MotionDetector detector = detector();
+        float[] q = {1f, 0f, 0f, 0f};
+        for (long t = PERIOD; t <= 500_000_000L; t += PERIOD) {
+            detector.updateAttitude(t, q, null);
+            // 1 rad/s about Z
+            Quaternions.integrate(q, 0f, 0f, 1f, PERIOD * 1e-9f, q);
+        }
+        assertTrue(detector.isMoving());
+        assertEquals(1f, detector.getLevel(), 1e-2f);
+        detector.reset();
+        assertFalse(detector.isMoving());
+        assertEquals(0f, detector.getLevel(), 0f);
+    }
+}
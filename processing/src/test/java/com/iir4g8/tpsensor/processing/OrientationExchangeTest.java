@@ -0,0 +1,68 @@
+package com.iir4g8.tpsensor.processing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OrientationExchangeTest {
+
+    @Test
+    public void update_returnsNewestPublished() {
+        OrientationExchange exchange = new OrientationExchange();
+        float[] q = new float[4];
+
+        assertFalse(exchange.update());
+        exchange.getQuaternion(q);
+        assertEquals(1f, q[0], 0f);
+        assertEquals(0L, exchange.getTimestampNanos());
+
+        exchange.publish(10L, new float[]{0f, 1f, 0f, 0f}, 0);
+        exchange.publish(20L, new float[]{9f, 0f, 0f, 0f, 1f}, 1);
+
+        assertTrue(exchange.update());
+        exchange.getQuaternion(q);
+        assertEquals(20L, exchange.getTimestampNanos());
+        assertEquals(0f, q[0], 0f);
+        assertEquals(1f, q[3], 0f);
+
+        assertFalse(exchange.update());
+        assertEquals(20L, exchange.getTimestampNanos());
+    }
+
+    @Test
+    public void concurrentReader_neverSeesTornOrientation() throws Exception {
+        final OrientationExchange exchange = new OrientationExchange();
+        final int writes = 200_000;
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                float[] q = new float[4];
+                for (int i = 1; i <= writes; i++) {
+                    q[0] = i;
+                    q[1] = i;
+                    q[2] = i;
+                    q[3] = i;
+                    exchange.publish(i, q, 0);
+                }
+            }
+        });
+        writer.start();
+
+        float[] q = new float[4];
+        long last = 0L;
+        while (last < writes) {
+            if (!exchange.update()) {
+                continue;
+            }
+            exchange.getQuaternion(q);
+            long timestamp = exchange.getTimestampNanos();
+            assertTrue(timestamp > last);
+            assertEquals(timestamp, (long) q[0]);
+            assertEquals(q[0], q[1], 0f);
+            assertEquals(q[0], q[2], 0f);
+            assertEquals(q[0], q[3], 0f);
+            last = timestamp;
+        }
+        writer.join();
+    }
+}
@@ -0,0 +1,52 @@
+package com.iir4g8.tpsensor.processing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OrientationFusionTest {
+
+    private static final float[] FLAT = {0f, 0f, 9.81f};
+
+    @Test
+    public void update_requiresBothSensors() {
+        OrientationFusion fusion = new OrientationFusion();
+        fusion.setAccelerometer(FLAT);
+
+        assertFalse(fusion.update());
+    }
+
+    @Test
+    public void flatFacingNorth_isZero() {
+        OrientationFusion fusion = new OrientationFusion();
+        fusion.setAccelerometer(FLAT);
+        fusion.setMagnetometer(new float[]{0f, 20f, -40f});
+
+        assertTrue(fusion.update());
+        assertEquals(0f, fusion.getAzimuthDegrees(), 0.01f);
+        assertEquals(0f, fusion.getPitchDegrees(), 0.01f);
+        assertEquals(0f, fusion.getRollDegrees(), 0.01f);
+    }
+
+    @Test
+    public void flatFacingEastAndWest_azimuthIsNormalized() {
+        OrientationFusion fusion = new OrientationFusion();
+        fusion.setAccelerometer(FLAT);
+
+        // North lies along -X when the top of the device points east
+        fusion.setMagnetometer(new float[]{-20f, 0f, -40f});
+        assertTrue(fusion.update());
+        assertEquals(90f, fusion.getAzimuthDegrees(), 0.01f);
+
+        fusion.setMagnetometer(new float[]{20f, 0f, -40f});
+        assertTrue(fusion.update());
+        assertEquals(270f, fusion.getAzimuthDegrees(), 0.01f);
+    }
+
+    @Test
+    public void freeFall_isRejected() {
+        float[] r = new float[9];
+
+        assertFalse(OrientationFusion.getRotationMatrix(r, new float[]{0f, 0f, 0.5f}, new float[]{0f, 20f, -40f}));
+    }
+}
@@ -0,0 +1,66 @@
+package com.iir4g8.tpsensor.processing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OrientationPredictorTest {
+
+    private static final float[] IDENTITY = {1f, 0f, 0f, 0f};
+    private static final long MS = 1_000_000L;
+
+    private static float azimuthDegrees(float[] q) {
+        return (float) Math.toDegrees(Quaternions.toOrientation(q, new float[3])[0]);
+    }
+
+    @Test
+    public void angularVelocity_isExtrapolatedToDisplayTime() {
+        OrientationExchange exchange = new OrientationExchange();
+        OrientationPredictor predictor = new OrientationPredictor();
+        float[] rate = {0f, 0f, (float) Math.toRadians(-90)}; // Turning right, 90 deg/s
+        exchange.publish(100 * MS, IDENTITY, 0, rate);
+        predictor.update(exchange);
+
+        float[] q = new float[4];
+        predictor.predict(120 * MS, q);
+        assertEquals(1.8f, azimuthDegrees(q), 0.01f);
+
+        // Never further than the horizon past the sample
+        predictor.predict(1_000 * MS, q);
+        assertEquals(4.5f, azimuthDegrees(q), 0.01f);
+    }
+
+    @Test
+    public void withoutAngularVelocity_interpolatesOnePeriodBehind() {
+        OrientationExchange exchange = new OrientationExchange();
+        OrientationPredictor predictor = new OrientationPredictor();
+        float[] east = new float[4];
+        Quaternions.integrate(IDENTITY, 0f, 0f, (float) Math.toRadians(-90), 1f, east);
+
+        exchange.publish(0L, IDENTITY, 0);
+        predictor.update(exchange);
+        exchange.publish(20 * MS, east, 0);
+        predictor.update(exchange);
+
+        float[] q = new float[4];
+        predictor.predict(30 * MS, q);
+        assertEquals(45f, azimuthDegrees(q), 0.01f);
+
+        predictor.predict(60 * MS, q);
+        assertEquals(90f, azimuthDegrees(q), 0.01f);
+    }
+
+    @Test
+    public void slerp_takesTheShortArc() {
+        float[] a = new float[4];
+        float[] b = new float[4];
+        Quaternions.integrate(IDENTITY, 0f, 0f, 1f, (float) Math.toRadians(170), a);
+        Quaternions.integrate(IDENTITY, 0f, 0f, -1f, (float) Math.toRadians(170), b);
+
+        float[] q = new float[4];
+        Quaternions.slerp(a, b, 0.5f, q);
+
+        assertEquals(180f, Math.abs(azimuthDegrees(q)), 0.01f);
+        assertEquals((float) Math.toRadians(20), Quaternions.angle(a, b), 1e-4f);
+    }
+}
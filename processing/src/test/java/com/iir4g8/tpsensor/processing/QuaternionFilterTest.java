@@ -0,0 +1,87 @@
+package com.iir4g8.tpsensor.processing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class QuaternionFilterTest {
+
+    private static final float[] FLAT = {0f, 0f, 9.81f};
+    private static final float[] NORTH = {0f, 20f, -40f};
+    private static final long STEP = 5_000_000L; // 200 Hz
+
+    private static float azimuthDegrees(QuaternionFilter filter) {
+        float azimuth = (float) Math.toDegrees(filter.getOrientation(new float[3])[0]);
+        return azimuth < 0 ? azimuth + 360 : azimuth;
+    }
+
+    private static QuaternionFilter alignedFilter() {
+        QuaternionFilter filter = new QuaternionFilter();
+        filter.updateMagnetometer(NORTH);
+        filter.updateAccelerometer(FLAT, STEP);
+        return filter;
+    }
+
+    @Test
+    public void firstAccelerometerAndMagnetometer_alignTheEstimate() {
+        QuaternionFilter filter = new QuaternionFilter();
+        filter.updateAccelerometer(FLAT, STEP);
+        assertFalse(filter.isInitialized());
+
+        filter.updateMagnetometer(new float[]{-20f, 0f, -40f});
+        filter.updateAccelerometer(FLAT, 2 * STEP);
+
+        assertTrue(filter.isInitialized());
+        assertEquals(90f, azimuthDegrees(filter), 0.01f);
+    }
+
+    @Test
+    public void gyroscope_integratesRotationAboutZ() {
+        QuaternionFilter filter = alignedFilter();
+        float[] rate = {0f, 0f, (float) (Math.PI / 2)}; // 90 deg/s counter-clockwise
+
+        long t = STEP;
+        for (int i = 0; i <= 200; i++) {
+            filter.updateGyroscope(rate, t);
+            t += STEP;
+        }
+
+        // Turning left from north ends up facing west
+        assertEquals(270f, azimuthDegrees(filter), 0.5f);
+    }
+
+    @Test
+    public void corrections_removeGyroscopeDrift() {
+        QuaternionFilter filter = alignedFilter();
+        float[] bias = {0.01f, -0.01f, 0.02f}; // A poorly calibrated gyroscope
+
+        long t = STEP;
+        for (int i = 0; i < 4000; i++) {
+            filter.updateGyroscope(bias, t);
+            if (i % 4 == 0) {
+                filter.updateAccelerometer(FLAT, t);
+            }
+            t += STEP;
+        }
+
+        // 20 s at 0.02 rad/s would drift by 23 degrees without corrections
+        float azimuth = azimuthDegrees(filter);
+        assertTrue("azimuth " + azimuth, azimuth < 2f || azimuth > 358f);
+        float[] angles = filter.getOrientation(new float[3]);
+        assertEquals(0f, (float) Math.toDegrees(angles[1]), 2f);
+        assertEquals(0f, (float) Math.toDegrees(angles[2]), 2f);
+    }
+
+    @Test
+    public void quaternion_roundTripsThroughRotationMatrix() {
+        float[] r = new float[9];
+        float[] q = new float[4];
+        float[] back = new float[9];
+        assertTrue(OrientationFusion.getRotationMatrix(r, new float[]{3f, 4f, 8f}, new float[]{10f, -20f, -30f}));
+
+        Quaternions.fromRotationMatrix(r, q);
+        Quaternions.toRotationMatrix(q, back);
+
+        assertArrayEquals(r, back, 1e-5f);
+    }
+}
@@ -0,0 +1,36 @@
+package com.iir4g8.tpsensor.processing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class QuaternionsTest {
+
+    @Test
+    public void angularVelocity_invertsIntegrate() {
+        float[] start = new float[4];
+        Quaternions.fromRotationVector(new float[]{0.1f, -0.2f, 0.3f}, 3, start);
+
+        float[] end = new float[4];
+        Quaternions.integrate(start, 0.5f, -1.5f, 2f, 0.02f, end);
+
+        float[] rate = new float[3];
+        Quaternions.angularVelocity(start, end, 0.02f, rate);
+        assertEquals(0.5f, rate[0], 1e-3f);
+        assertEquals(-1.5f, rate[1], 1e-3f);
+        assertEquals(2f, rate[2], 1e-3f);
+    }
+
+    @Test
+    public void fromRotationVector_reconstructsMissingW() {
+        float[] withW = new float[4];
+        float[] withoutW = new float[4];
+        float[] rv = {0f, 0f, (float) Math.sin(0.5), (float) Math.cos(0.5)};
+
+        Quaternions.fromRotationVector(rv, 4, withW);
+        Quaternions.fromRotationVector(rv, 3, withoutW);
+
+        assertArrayEquals(withW, withoutW, 1e-6f);
+        assertEquals((float) Math.cos(0.5), withW[0], 1e-6f);
+    }
+}
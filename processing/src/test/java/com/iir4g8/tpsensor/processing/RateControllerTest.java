@@ -0,0 +1,87 @@
+package com.iir4g8.tpsensor.processing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RateControllerTest {
+
+    private static final int[] PERIODS = {200_000, 1_000_000, 5_000_000};
+    private static final long SECOND = 1_000_000_000L;
+
+    private static RateController controller() {
+        return new RateController(PERIODS, 1f, 0.2f, 3 * SECOND, 1f);
+    }
+
+    @Test
+    public void flatSignal_stepsDownOneLevelPerHold() {
+        RateController rate = controller();
+        long t = SECOND;
+        for (; t <= 4 * SECOND; t += SECOND / 5) {
+            rate.update(t, 20f);
+        }
+        assertEquals(1_000_000, rate.getSamplingPeriodUs());
+
+        for (; t <= 8 * SECOND; t += SECOND) {
+            rate.update(t, 20f);
+        }
+        assertEquals(5_000_000, rate.getSamplingPeriodUs());
+    }
+
+    @Test
+    public void activity_jumpsBackToFastest() {
+        RateController rate = controller();
+        long t = SECOND;
+        for (; t <= 10 * SECOND; t += SECOND) {
+            rate.update(t, 20f);
+        }
+        assertEquals(5_000_000, rate.getSamplingPeriodUs());
+
+        // 10 units in 5 s is 2 units/s, well above the active threshold once smoothed
+        boolean changed = false;
+        for (int i = 0; i < 5 && !changed; i++) {
+            t += SECOND;
+            changed = rate.update(t, 20f + 2f * (i + 1));
+        }
+        assertTrue(changed);
+        assertEquals(200_000, rate.getSamplingPeriodUs());
+    }
+
+    @Test
+    public void hysteresisBand_holdsTheRate() {
+        RateController rate = controller();
+        long t = SECOND;
+        float value = 0f;
+        // 0.5 units/s: between the quiet and active thresholds
+        for (; t <= 20 * SECOND; t += SECOND / 5) {
+            value += 0.1f;
+            assertFalse(rate.update(t, value));
+        }
+        assertEquals(200_000, rate.getSamplingPeriodUs());
+    }
+
+    @Test
+    public void externalActivity() {
+        RateController rate = controller();
+        assertFalse(rate.setActive(false, SECOND));
+        assertTrue(rate.setActive(false, 4 * SECOND));
+        assertEquals(1_000_000, rate.getSamplingPeriodUs());
+        assertTrue(rate.setActive(true, 5 * SECOND));
+        assertEquals(200_000, rate.getSamplingPeriodUs());
+    }
+
+    @Test
+    public void streamStartingAtZero_holdsFromTheFirstSample() {
+        // Replayed and scripted streams count from 0
+        RateController rate = controller();
+        long t = 0L;
+        for (; t < 3 * SECOND; t += SECOND / 5) {
+            assertFalse(rate.update(t, 20f));
+        }
+        assertTrue(rate.update(t, 20f));
+
+        rate.reset();
+        assertFalse(rate.setActive(false, 0L));
+        assertTrue(rate.setActive(false, 3 * SECOND));
+    }
+}
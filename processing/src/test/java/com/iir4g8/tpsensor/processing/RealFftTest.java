@@ -0,0 +1,71 @@
+package com.iir4g8.tpsensor.processing;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RealFftTest {
+
+    @Test
+    public void forward_matchesADirectDft() {
+        Random random = new Random(7);
+        for (int n : new int[]{4, 8, 16, 64, 512}) {
+            float[] signal = new float[n];
+            for (int i = 0; i < n; i++) {
+                signal[i] = (float) random.nextGaussian();
+            }
+            float[] data = signal.clone();
+            new RealFft(n).forward(data);
+
+            for (int k = 0; k <= n / 2; k++) {
+                double re = 0.0;
+                double im = 0.0;
+                for (int i = 0; i < n; i++) {
+                    re += signal[i] * Math.cos(2.0 * Math.PI * k * i / n);
+                    im -= signal[i] * Math.sin(2.0 * Math.PI * k * i / n);
+                }
+                float tolerance = 1e-4f * n;
+                if (k == 0) {
+                    assertEquals(re, data[0], tolerance);
+                } else if (k == n / 2) {
+                    assertEquals(re, data[1], tolerance);
+                } else {
+                    assertEquals("re " + k + "/" + n, re, data[2 * k], tolerance);
+                    assertEquals("im " + k + "/" + n, im, data[2 * k + 1], tolerance);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void power_peaksAtTheToneBin() {
+        int n = 256;
+        RealFft fft = new RealFft(n);
+        float[] data = new float[n];
+        for (int i = 0; i < n; i++) {
+            data[i] = (float) Math.cos(2.0 * Math.PI * 10 * i / n);
+        }
+        float[] power = new float[n / 2 + 1];
+        fft.forward(data);
+        fft.power(data, power);
+
+        assertEquals((n / 2f) * (n / 2f), power[10], 1e-1f);
+        assertEquals(0f, power[11], 1e-3f);
+        assertEquals(0f, power[0], 1e-3f);
+    }
+
+    @Test
+    public void hannWindow_isSymmetricAndZeroAtTheEnds() {
+        float[] window = RealFft.hannWindow(9);
+        assertEquals(0f, window[0], 1e-7f);
+        assertEquals(1f, window[4], 1e-7f);
+        assertEquals(window[2], window[6], 1e-7f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void size_mustBeAPowerOfTwo() {
+        new RealFft(100);
+    }
+}
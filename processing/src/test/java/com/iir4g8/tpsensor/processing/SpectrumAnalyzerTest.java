@@ -0,0 +1,63 @@
+package com.iir4g8.tpsensor.processing;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SpectrumAnalyzerTest {
+
+    private static final long PERIOD = 5_000_000L; // 200 Hz
+
+    @Test
+    public void frames_comeEveryHopOnceTheWindowIsFull() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(3, 128, 32, 8);
+        float[] values = new float[3];
+        int frames = 0;
+        for (int i = 0; i < 128 + 32 * 4; i++) {
+            if (analyzer.add(i * PERIOD, values, 0)) {
+                frames++;
+            }
+        }
+        assertEquals(5, frames);
+        assertEquals(5L, analyzer.getFrameCount());
+        assertEquals(200f, analyzer.getSampleRate(), 0.1f);
+        assertEquals(65, analyzer.getBinCount());
+    }
+
+    @Test
+    public void mainsHum_showsAsALineOnItsAxis() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(3, 128, 32, 8);
+        Random random = new Random(5);
+        float[] values = new float[3];
+        for (int i = 0; i < 2000; i++) {
+            double t = i * PERIOD * 1e-9;
+            values[0] = 20f + 0.5f * (float) Math.sin(2.0 * Math.PI * 50.0 * t) + 0.05f * (float) random.nextGaussian();
+            values[1] = -10f + 0.05f * (float) random.nextGaussian();
+            values[2] = 40f + 0.05f * (float) random.nextGaussian();
+            analyzer.add(i * PERIOD, values, 0);
+        }
+        int peak = analyzer.getPeakBin();
+        assertEquals(50f, analyzer.getBinFrequency(peak), 200f / 128);
+        float[] x = analyzer.getAveragePower(0);
+        float[] y = analyzer.getAveragePower(1);
+        assertTrue(x[peak] > 100f * y[peak]);
+        // Power of a sine of amplitude A, summed over its main lobe, is about A² / 2
+        assertEquals(0.125f, x[peak - 1] + x[peak] + x[peak + 1], 0.03f);
+    }
+
+    @Test
+    public void reset_clearsTheSpectra() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(1, 16, 8, 4);
+        float[] value = new float[1];
+        for (int i = 0; i < 64; i++) {
+            value[0] = i % 2;
+            analyzer.add(i * PERIOD, value, 0);
+        }
+        assertTrue(analyzer.getPeakBin() > 0);
+        analyzer.reset();
+        assertEquals(0, analyzer.getPeakBin());
+        assertEquals(0L, analyzer.getFrameCount());
+    }
+}
@@ -0,0 +1,84 @@
+package com.iir4g8.tpsensor.processing;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StreamingStatsTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void empty_readsNaN() {
+        StreamingStats stats = StreamingStats.ofCount(4);
+        assertEquals(0, stats.getCount());
+        assertTrue(Float.isNaN(stats.getMin()));
+        assertTrue(Float.isNaN(stats.getMean()));
+        assertTrue(Float.isNaN(stats.getTotalMax()));
+    }
+
+    @Test
+    public void negativeValues_haveCorrectMax() {
+        StreamingStats stats = StreamingStats.ofCount(4);
+        stats.add(1L, -12f);
+        stats.add(2L, -15f);
+        assertEquals(-12f, stats.getTotalMax(), 0f);
+        assertEquals(-15f, stats.getTotalMin(), 0f);
+    }
+
+    @Test
+    public void countWindow_matchesBruteForce() {
+        int window = 50;
+        StreamingStats stats = StreamingStats.ofCount(window);
+        Random random = new Random(3);
+        float[] all = new float[1000];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = (float) (random.nextGaussian() * 5.0 + 20.0);
+            stats.add(i, all[i]);
+
+            int from = Math.max(0, i - window + 1);
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            double sum = 0.0;
+            for (int j = from; j <= i; j++) {
+                min = Math.min(min, all[j]);
+                max = Math.max(max, all[j]);
+                sum += all[j];
+            }
+            int n = i - from + 1;
+            double mean = sum / n;
+            double squares = 0.0;
+            for (int j = from; j <= i; j++) {
+                squares += (all[j] - mean) * (all[j] - mean);
+            }
+            assertEquals(n, stats.getCount());
+            assertEquals(min, stats.getMin(), 0f);
+            assertEquals(max, stats.getMax(), 0f);
+            assertEquals(mean, stats.getMean(), 1e-3);
+            assertEquals(n > 1 ? Math.sqrt(squares / (n - 1)) : 0.0, stats.getStdDev(), 1e-3);
+        }
+        assertEquals(all.length, stats.getTotalCount());
+    }
+
+    @Test
+    public void timeWindow_evictsOldSamples() {
+        StreamingStats stats = StreamingStats.ofDuration(10 * SECOND, 100);
+        stats.add(0L, 100f);
+        for (int i = 1; i <= 10; i++) {
+            stats.add(i * SECOND, i);
+        }
+        // The first sample is exactly one window old
+        assertEquals(10, stats.getCount());
+        assertEquals(10f, stats.getMax(), 0f);
+        assertEquals(1f, stats.getMin(), 0f);
+        assertEquals(5.5f, stats.getMean(), 1e-5f);
+        assertEquals(100f, stats.getTotalMax(), 0f);
+
+        stats.expire(25 * SECOND);
+        assertEquals(0, stats.getCount());
+        assertTrue(Float.isNaN(stats.getMax()));
+        assertEquals(11, stats.getTotalCount());
+    }
+}
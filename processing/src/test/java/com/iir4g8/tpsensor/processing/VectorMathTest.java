@@ -0,0 +1,21 @@
+package com.iir4g8.tpsensor.processing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VectorMathTest {
+
+    @Test
+    public void magnitude_isEuclideanNorm() {
+        assertEquals(5f, VectorMath.magnitude(3f, 4f, 0f), 1e-6f);
+        assertEquals(13f, VectorMath.magnitude(-3f, 4f, 12f), 1e-5f);
+    }
+
+    @Test
+    public void angleDifference_takesShortestWay() {
+        assertEquals(10f, VectorMath.angleDifference(355f, 5f), 1e-4f);
+        assertEquals(180f, VectorMath.angleDifference(0f, 180f), 0f);
+        assertEquals(20f, VectorMath.angleDifference(-10f, 370f), 1e-4f);
+    }
+}
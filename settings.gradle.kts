@@ -22,4 +22,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "TP Sensor"
 include(":app")
+include(":processing")
  
\ No newline at end of file